@@ -22,17 +22,19 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
-import android.location.GpsStatus;
 import android.location.Location;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.TrackRecorder;
+import com.android.gpstest.util.MapCameraFilter;
+import com.android.gpstest.util.UIUtils;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.maps.CameraUpdateFactory;
@@ -43,9 +45,13 @@ import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
-import com.google.maps.android.SphericalUtil;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
 
-import androidx.annotation.RequiresApi;
+import java.util.ArrayList;
+
+import androidx.core.content.ContextCompat;
+import androidx.core.view.ViewCompat;
 
 public class GpsMapFragment extends SupportMapFragment
         implements GpsTestListener, View.OnClickListener, LocationSource,
@@ -71,6 +77,12 @@ public class GpsMapFragment extends SupportMapFragment
     // Amount of time the user must not touch the map for the automatic camera movements to kick in
     public static final long MOVE_MAP_INTERACTION_THRESHOLD = 5 * 1000; // milliseconds
 
+    // Width of the track line, in dp
+    public static final float TRACK_WIDTH_DP = 4.0f;
+
+    // When no vertices were added, the end of the track follows the newest fix at most this often
+    public static final long TRACK_TAIL_UPDATE_THRESHOLD = 1000; // milliseconds
+
     private static final String PREFERENCE_SHOWED_DIALOG = "showed_google_map_install_dialog";
 
     public final static String TAG = "GpsMapFragment";
@@ -95,6 +107,36 @@ public class GpsMapFragment extends SupportMapFragment
 
     private boolean mTilt;
 
+    // Single line for the whole track, and a copy of the points it was last given
+    private Polyline mTrackLine;
+
+    private final ArrayList<LatLng> mTrackPoints = new ArrayList<>();
+
+    private int mTrackVertexCount;
+
+    private int mTrackVersion;
+
+    private long mLastTrackUpdateTime;
+
+    // Latest orientation, applied to the camera on the next frame
+    private double mOrientation, mOrientationTilt;
+
+    private boolean mCameraUpdatePosted;
+
+    private final Runnable mCameraUpdate = new Runnable() {
+        @Override
+        public void run() {
+            updateCamera();
+        }
+    };
+
+    // Skips camera moves that are too small to see
+    private final MapCameraFilter mCameraFilter = new MapCameraFilter();
+
+    private final CameraPosition.Builder mCameraPositionBuilder = CameraPosition.builder();
+
+    private CameraPosition mAppliedCameraPosition;
+
     /**
      * Clamps a value between the given positive min and max.  If abs(value) is less than
      * min, then min is returned.  If abs(value) is greater than max, then max is returned.
@@ -179,6 +221,16 @@ public class GpsMapFragment extends SupportMapFragment
         super.onResume();
     }
 
+    @Override
+    public void onPause() {
+        View view = getView();
+        if (view != null) {
+            view.removeCallbacks(mCameraUpdate);
+        }
+        mCameraUpdatePosted = false;
+        super.onPause();
+    }
+
     public void onClick(View v) {
     }
 
@@ -213,6 +265,48 @@ public class GpsMapFragment extends SupportMapFragment
                 mMap.animateCamera(CameraUpdateFactory.newCameraPosition(cameraPosition));
             }
             mGotFix = true;
+            updateTrack();
+        }
+    }
+
+    /**
+     * Updates the track line from the track recorded by the activity.  New vertices are appended
+     * to the copy of the points, and the copy is only rebuilt when the recorder simplified the
+     * track again.  The last point follows the newest fix.
+     */
+    private void updateTrack() {
+        TrackRecorder track = GpsTestActivity.getInstance().getTrack();
+        if (!track.hasLast()) {
+            return;
+        }
+        boolean changed = false;
+        if (mTrackLine == null) {
+            mTrackLine = mMap.addPolyline(new PolylineOptions()
+                    .color(ContextCompat.getColor(Application.get(), R.color.track))
+                    .width(UIUtils.dpToPixels(Application.get(), TRACK_WIDTH_DP)));
+            mTrackPoints.clear();
+            mTrackVertexCount = 0;
+            changed = true;
+        } else if (mTrackVersion != track.getVersion()) {
+            mTrackPoints.clear();
+            mTrackVertexCount = 0;
+            changed = true;
+        } else if (mTrackPoints.size() > mTrackVertexCount) {
+            // Remove the point that followed the previous fix
+            mTrackPoints.remove(mTrackPoints.size() - 1);
+        }
+        mTrackVersion = track.getVersion();
+        for (int i = mTrackVertexCount; i < track.getVertexCount(); i++) {
+            mTrackPoints.add(new LatLng(track.getLatitude(i), track.getLongitude(i)));
+            changed = true;
+        }
+        mTrackVertexCount = track.getVertexCount();
+        mTrackPoints.add(new LatLng(track.getLastLatitude(), track.getLastLongitude()));
+
+        long now = SystemClock.elapsedRealtime();
+        if (changed || now - mLastTrackUpdateTime > TRACK_TAIL_UPDATE_THRESHOLD) {
+            mTrackLine.setPoints(mTrackPoints);
+            mLastTrackUpdateTime = now;
         }
     }
 
@@ -225,18 +319,13 @@ public class GpsMapFragment extends SupportMapFragment
     public void onProviderDisabled(String provider) {
     }
 
-    @Deprecated
-    public void onGpsStatusChanged(int event, GpsStatus status) {
-    }
-
     @Override
     public void onGnssFirstFix(int ttffMillis) {
 
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status) {
+    public void onGnssEpoch(GnssEpoch epoch) {
     }
 
     @Override
@@ -256,6 +345,14 @@ public class GpsMapFragment extends SupportMapFragment
     public void onNmeaMessage(String message, long timestamp) {
     }
 
+    @Override
+    public void onSatelliteSelected(int key) {
+    }
+
+    @Override
+    public void onGnssAnomaly(int anomaly, double value) {
+    }
+
     @Override
     public void onOrientationChanged(double orientation, double tilt) {
         // For performance reasons, only proceed if this fragment is visible
@@ -267,6 +364,27 @@ public class GpsMapFragment extends SupportMapFragment
             return;
         }
 
+        // Sensors report faster than the screen refreshes, so only the latest sample is used
+        mOrientation = orientation;
+        mOrientationTilt = tilt;
+        View view = getView();
+        if (!mCameraUpdatePosted && view != null) {
+            ViewCompat.postOnAnimation(view, mCameraUpdate);
+            mCameraUpdatePosted = true;
+        }
+    }
+
+    /**
+     * Moves the camera to the latest orientation, once per frame
+     */
+    private void updateCamera() {
+        mCameraUpdatePosted = false;
+        if (mMap == null) {
+            return;
+        }
+        double orientation = mOrientation;
+        double tilt = mOrientationTilt;
+
         /*
         If we have a location fix, and we have a preference to rotate the map based on sensors,
         and the user hasn't touched the map lately, then do the map camera reposition
@@ -281,15 +399,21 @@ public class GpsMapFragment extends SupportMapFragment
 
             float clampedTilt = (float) clamp(CAMERA_MIN_TILT, tilt, CAMERA_MAX_TILT);
 
-            double offset = TARGET_OFFSET_METERS * (clampedTilt / CAMERA_MAX_TILT);
+            double offset = mTilt ? TARGET_OFFSET_METERS * (clampedTilt / CAMERA_MAX_TILT) : 0;
+
+            if (!mCameraFilter.update(mLatLng.latitude, mLatLng.longitude, orientation,
+                    clampedTilt, offset)) {
+                // Within the dead-band of the current camera position
+                return;
+            }
 
-            CameraPosition cameraPosition = CameraPosition.builder().
+            CameraPosition cameraPosition = mCameraPositionBuilder.
                     tilt(clampedTilt).
                     bearing((float) orientation).
                     zoom((float) (CAMERA_ANCHOR_ZOOM + (tilt / CAMERA_MAX_TILT))).
-                    target(mTilt ? SphericalUtil.computeOffset(mLatLng, offset, orientation)
-                            : mLatLng).
+                    target(new LatLng(mCameraFilter.getLatitude(), mCameraFilter.getLongitude())).
                     build();
+            mAppliedCameraPosition = cameraPosition;
             mMap.moveCamera(CameraUpdateFactory.newCameraPosition(cameraPosition));
         }
     }
@@ -320,6 +444,10 @@ public class GpsMapFragment extends SupportMapFragment
             mLastMapTouchTime = System.currentTimeMillis();
         }
         mlastCameraPosition = cameraPosition;
+        if (!cameraPosition.equals(mAppliedCameraPosition)) {
+            // The camera was moved by the user or an animation, so the next update must move it
+            mCameraFilter.reset();
+        }
     }
 
     @Override
@@ -358,6 +486,11 @@ public class GpsMapFragment extends SupportMapFragment
         mMap.setOnMapLongClickListener(this);
         mMap.setOnMyLocationButtonClickListener(this);
 
+        // Draw the track recorded so far on the new map
+        mTrackLine = null;
+        mCameraFilter.reset();
+        updateTrack();
+
         GpsTestActivity.getInstance().addListener(this);
     }
 
@@ -26,12 +26,30 @@ public class DilutionOfPrecision {
 
     double mVerticalDop;
 
+    // NaN if unknown (e.g., parsed from NMEA)
+    double mTimeDop = Double.NaN;
+
+    public DilutionOfPrecision() {
+        this(Double.NaN, Double.NaN, Double.NaN);
+    }
+
     public DilutionOfPrecision(double positionDop, double horizontalDop, double verticalDop) {
         this.mPositionDop = positionDop;
         this.mHorizontalDop = horizontalDop;
         this.mVerticalDop = verticalDop;
     }
 
+    /**
+     * Sets all DOP values, so an instance can be reused
+     */
+    public void set(double positionDop, double horizontalDop, double verticalDop,
+            double timeDop) {
+        this.mPositionDop = positionDop;
+        this.mHorizontalDop = horizontalDop;
+        this.mVerticalDop = verticalDop;
+        this.mTimeDop = timeDop;
+    }
+
     public double getPositionDop() {
         return mPositionDop;
     }
@@ -55,4 +73,12 @@ public class DilutionOfPrecision {
     public void setVerticalDop(double verticalDop) {
         this.mVerticalDop = verticalDop;
     }
+
+    public double getTimeDop() {
+        return mTimeDop;
+    }
+
+    public void setTimeDop(double timeDop) {
+        this.mTimeDop = timeDop;
+    }
 }
@@ -17,40 +17,92 @@
 
 package com.android.gpstest;
 
+import android.annotation.SuppressLint;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.LayerDrawable;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
-import android.location.GpsStatus;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
+import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.Animation;
 import android.view.animation.Transformation;
+import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
+import android.widget.SeekBar;
 import android.widget.TextView;
-
+import android.widget.Toast;
+
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.GnssEpochPool;
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteStatusPartition;
+import com.android.gpstest.model.SbasType;
+import com.android.gpstest.model.SkyHeatmap;
+import com.android.gpstest.nav.EphemerisStore;
+import com.android.gpstest.nav.SkyPrediction;
+import com.android.gpstest.pvt.Pseudoranges;
 import com.android.gpstest.util.MathUtils;
+import com.android.gpstest.util.PreferenceUtils;
 import com.android.gpstest.util.UIUtils;
+import com.android.gpstest.view.GpsSkyTextureView;
 import com.android.gpstest.view.GpsSkyView;
-
+import com.android.gpstest.view.SkyPlotView;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import androidx.annotation.Nullable;
 
 import androidx.annotation.RequiresApi;
+import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.interpolator.view.animation.FastOutSlowInInterpolator;
 
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+
 public class GpsSkyFragment extends Fragment implements GpsTestListener {
 
     public final static String TAG = "GpsSkyFragment";
 
-    private GpsSkyView mSkyView;
+    // Resolution of the sky prediction - the window is chosen from R.array.sky_prediction_values
+    private static final int PREDICTION_STEP_SECONDS = 60;
+
+    @SuppressLint("SimpleDateFormat") // See #117
+    private final SimpleDateFormat mPredictionTimeFormat = new SimpleDateFormat(
+            DateFormat.is24HourFormat(Application.get().getApplicationContext())
+                    ? "HH:mm" : "hh:mm a");
+
+    private FrameLayout mSkyViewContainer;
+
+    private SkyPlotView mSkyView;
+
+    // Signal strength heatmap accumulated over the session, or null if it isn't shown
+    private SkyHeatmap mHeatmap;
 
     private List<View> mLegendLines;
 
@@ -65,18 +117,67 @@ public class GpsSkyFragment extends Fragment implements GpsTestListener {
 
     private boolean mUseLegacyGnssApi = false;
 
+    private View mPredictionBar;
+
+    private TextView mPredictionTime;
+
+    private SeekBar mPredictionSeek;
+
+    // True while the sky view shows predicted instead of current satellites
+    private boolean mPredicting;
+
+    // Sky predicted from decoded orbits, or null while it's being computed
+    private SkyPrediction mPrediction;
+
+    // Time of the first step of mPrediction, in milliseconds since 1 January 1970
+    private long mPredictionStartMillis;
+
+    // Incremented for each prediction, so results of abandoned predictions are dropped
+    private int mPredictionGeneration;
+
+    private final GnssEpochPool mPredictionEpochPool = new GnssEpochPool();
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
         View v = inflater.inflate(R.layout.gps_sky, container,false);
 
-        mSkyView = v.findViewById(R.id.sky_view);
+        mSkyViewContainer = v.findViewById(R.id.sky_view_container);
+        createSkyView();
 
         initLegendViews(v);
 
         mSnrCn0InViewAvg = v.findViewById(R.id.cn0_indicator_in_view);
         mSnrCn0UsedAvg = v.findViewById(R.id.cn0_indicator_used);
 
+        mPredictionBar = v.findViewById(R.id.sky_prediction_bar);
+        mPredictionTime = v.findViewById(R.id.sky_prediction_time);
+        mPredictionSeek = v.findViewById(R.id.sky_prediction_seek);
+        mPredictionSeek.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                showPredictionStep(progress);
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        if (mPredicting) {
+            // The view was recreated while predicting
+            mPredictionBar.setVisibility(View.VISIBLE);
+            if (mPrediction != null) {
+                mPredictionSeek.setMax(mPrediction.getStepCount() - 1);
+            } else {
+                mPredictionSeek.setEnabled(false);
+                mPredictionTime.setText(R.string.sky_prediction_computing);
+            }
+        }
+
         GpsTestActivity.getInstance().addListener(this);
         return v;
     }
@@ -84,6 +185,28 @@ public class GpsSkyFragment extends Fragment implements GpsTestListener {
     @Override
     public void onResume() {
         super.onResume();
+        // The sky view preferences may have changed
+        createSkyView();
+        if (Application.getPrefs().getBoolean(getString(R.string.pref_key_sky_heatmap), false)) {
+            if (mHeatmap == null) {
+                mHeatmap = new SkyHeatmap();
+            }
+        } else {
+            mHeatmap = null;
+        }
+        if (mPredicting) {
+            // Predicted positions aren't added to trails or the heatmap
+            mSkyView.setTrailDurationMinutes(0);
+            mSkyView.setHeatmap(null);
+            if (mPrediction != null) {
+                showPredictionStep(mPredictionSeek.getProgress());
+            }
+        } else {
+            mSkyView.setTrailDurationMinutes(PreferenceUtils.getSkyTrailDurationMinutes());
+            mSkyView.setHeatmap(mHeatmap);
+        }
+        // Show or hide the heatmap menu items
+        getActivity().invalidateOptionsMenu();
         int color;
         if (Application.getPrefs().getBoolean(getString(R.string.pref_key_dark_theme), false)) {
             // Dark theme
@@ -100,6 +223,46 @@ public class GpsSkyFragment extends Fragment implements GpsTestListener {
         }
     }
 
+    @Override
+    public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.sky_menu, menu);
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        menu.setGroupVisible(R.id.sky_group, mHeatmap != null);
+        menu.findItem(R.id.predict_sky).setChecked(mPredicting);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        final int id = item.getItemId();
+        if (id == R.id.predict_sky) {
+            if (mPredicting) {
+                stopPrediction();
+                getActivity().invalidateOptionsMenu();
+            } else {
+                showPredictionWindowDialog();
+            }
+            return true;
+        } else if (id == R.id.export_heatmap) {
+            exportHeatmap();
+            return true;
+        } else if (id == R.id.clear_heatmap) {
+            if (mHeatmap != null) {
+                mHeatmap.clear();
+            }
+            return true;
+        }
+        return false;
+    }
+
     public void onLocationChanged(Location loc) {
     }
 
@@ -123,49 +286,36 @@ public class GpsSkyFragment extends Fragment implements GpsTestListener {
 
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status) {
-        mSkyView.setGnssStatus(status);
-        mUseLegacyGnssApi = false;
+    public void onGnssEpoch(GnssEpoch epoch) {
+        if (mPredicting) {
+            return;
+        }
+        mSkyView.setGnssEpoch(epoch);
+        mUseLegacyGnssApi = epoch.isLegacy();
         updateSnrCn0AvgMeterText();
         updateSnrCn0Avgs();
     }
 
     @Override
     public void onGnssStarted() {
+        if (mPredicting) {
+            return;
+        }
         mSkyView.setStarted();
     }
 
     @Override
     public void onGnssStopped() {
+        if (mPredicting) {
+            return;
+        }
         mSkyView.setStopped();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
     public void onGnssMeasurementsReceived(GnssMeasurementsEvent event) {
-        mSkyView.setGnssMeasurementEvent(event);
-    }
-
-    @Deprecated
-    public void onGpsStatusChanged(int event, GpsStatus status) {
-        switch (event) {
-            case GpsStatus.GPS_EVENT_STARTED:
-                mSkyView.setStarted();
-                break;
-
-            case GpsStatus.GPS_EVENT_STOPPED:
-                mSkyView.setStopped();
-                break;
-
-            case GpsStatus.GPS_EVENT_SATELLITE_STATUS:
-                mSkyView.setSats(status);
-                mUseLegacyGnssApi = true;
-                updateSnrCn0AvgMeterText();
-                updateSnrCn0Avgs();
-                break;
-        }
     }
 
     @Override
@@ -184,6 +334,277 @@ public class GpsSkyFragment extends Fragment implements GpsTestListener {
     public void onNmeaMessage(String message, long timestamp) {
     }
 
+    @Override
+    public void onSatelliteSelected(int key) {
+        if (mSkyView != null) {
+            mSkyView.setSelectedSatellite(key);
+        }
+    }
+
+    @Override
+    public void onGnssAnomaly(int anomaly, double value) {
+    }
+
+    /**
+     * Adds the sky view selected in preferences to the layout, replacing the current sky view if
+     * a different one was selected
+     */
+    private void createSkyView() {
+        boolean useRenderThread = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN &&
+                Application.getPrefs().getBoolean(getString(R.string.pref_key_sky_render_thread), false);
+        if (mSkyView != null && useRenderThread == (mSkyView instanceof GpsSkyTextureView)) {
+            return;
+        }
+        if (mSkyView != null) {
+            // Release the epoch held by the old view
+            mSkyView.setStopped();
+        }
+        mSkyViewContainer.removeAllViews();
+        if (useRenderThread) {
+            mSkyView = new GpsSkyTextureView(getActivity());
+        } else {
+            mSkyView = new GpsSkyView(getActivity());
+        }
+        mSkyViewContainer.addView((View) mSkyView);
+        mSkyView.setSelectedSatellite(GpsTestActivity.getInstance().getSelectedSatellite());
+        mSkyView.setOnSatelliteSelectedListener(this::onSkySatelliteSelected);
+    }
+
+    /**
+     * Called when the sky view is tapped or long-pressed - a tap selects the satellite under it,
+     * or clears the selection if the satellite is already selected or there's no satellite, and a
+     * long press selects the satellite and shows its row in the status view
+     */
+    private void onSkySatelliteSelected(int key, boolean longPress) {
+        GpsTestActivity activity = GpsTestActivity.getInstance();
+        if (activity == null) {
+            return;
+        }
+        if (longPress) {
+            if (key != SatelliteGroups.NO_KEY) {
+                activity.showSatelliteStatus(key);
+            }
+        } else if (key == activity.getSelectedSatellite()) {
+            activity.setSelectedSatellite(SatelliteGroups.NO_KEY);
+        } else {
+            activity.setSelectedSatellite(key);
+        }
+    }
+
+    /**
+     * Asks how far ahead to predict the sky, and then starts the prediction
+     */
+    private void showPredictionWindowDialog() {
+        final String[] hours = getResources().getStringArray(R.array.sky_prediction_values);
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.sky_prediction_window_title)
+                .setItems(R.array.sky_prediction_entries, (dialog, index) -> {
+                    startPrediction(Integer.parseInt(hours[index]));
+                    getActivity().invalidateOptionsMenu();
+                })
+                .show();
+    }
+
+    /**
+     * Switches the sky view to the satellites predicted from decoded orbits over the provided
+     * number of hours from now, seen from the last location.  The whole window is computed on a
+     * background thread, and then the seek bar shows any time in it without computing again.
+     */
+    private void startPrediction(int hours) {
+        GpsTestActivity activity = GpsTestActivity.getInstance();
+        final Location location = activity.getLastLocation();
+        if (location == null) {
+            Toast.makeText(getActivity(), R.string.sky_prediction_no_location, Toast.LENGTH_LONG)
+                    .show();
+            return;
+        }
+        mPredicting = true;
+        mPrediction = null;
+        mPredictionBar.setVisibility(View.VISIBLE);
+        mPredictionSeek.setEnabled(false);
+        mPredictionTime.setText(R.string.sky_prediction_computing);
+        // Predicted positions aren't added to trails or the heatmap
+        mSkyView.setTrailDurationMinutes(0);
+        mSkyView.setHeatmap(null);
+        mSkyView.setStopped();
+
+        final int generation = ++mPredictionGeneration;
+        final EphemerisStore store = activity.getEphemerisStore();
+        final long startMillis = System.currentTimeMillis();
+        final Handler handler = new Handler();
+        final double startGpsTime = SkyPrediction.getGpsTimeSeconds(startMillis);
+        final int stepCount = hours * 3600 / PREDICTION_STEP_SECONDS + 1;
+        new Thread(() -> {
+            final SkyPrediction prediction;
+            // Fork/join is only available on Lollipop and higher
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                prediction = computePredictionInParallel(store, location, startGpsTime,
+                        stepCount);
+            } else {
+                prediction = SkyPrediction.compute(store, location.getLatitude(),
+                        location.getLongitude(), location.getAltitude(), startGpsTime,
+                        PREDICTION_STEP_SECONDS, stepCount);
+            }
+            handler.post(() -> onPredictionComputed(generation, prediction, startMillis));
+        }, "SkyPrediction").start();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private static SkyPrediction computePredictionInParallel(EphemerisStore store,
+            Location location, double startGpsTime, int stepCount) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return SkyPrediction.compute(store, location.getLatitude(), location.getLongitude(),
+                    location.getAltitude(), startGpsTime, PREDICTION_STEP_SECONDS, stepCount,
+                    pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void onPredictionComputed(int generation, SkyPrediction prediction,
+            long startMillis) {
+        if (generation != mPredictionGeneration || !isAdded()) {
+            return;
+        }
+        boolean hasOrbits = false;
+        for (int i = 0; i < prediction.size(); i++) {
+            if (prediction.isValid(i)) {
+                hasOrbits = true;
+                break;
+            }
+        }
+        if (!hasOrbits) {
+            Toast.makeText(getActivity(), R.string.sky_prediction_no_orbits, Toast.LENGTH_LONG)
+                    .show();
+            stopPrediction();
+            getActivity().invalidateOptionsMenu();
+            return;
+        }
+        mPrediction = prediction;
+        mPredictionStartMillis = startMillis;
+        mPredictionSeek.setMax(prediction.getStepCount() - 1);
+        mPredictionSeek.setEnabled(true);
+        if (mPredictionSeek.getProgress() == 0) {
+            showPredictionStep(0);
+        } else {
+            // Calls showPredictionStep()
+            mPredictionSeek.setProgress(0);
+        }
+    }
+
+    /**
+     * Shows the satellites above the horizon at the provided step of the prediction
+     */
+    private void showPredictionStep(int step) {
+        SkyPrediction prediction = mPrediction;
+        if (prediction == null || mSkyView == null) {
+            return;
+        }
+        GnssEpoch epoch = mPredictionEpochPool.obtain();
+        SatelliteStatusPartition gnss = epoch.getGnss();
+        for (int i = 0; i < prediction.size(); i++) {
+            float elevation = prediction.getElevationDegrees(step, i);
+            // Also skips invalid slots, which are NaN
+            if (!(elevation >= 0.0f)) {
+                continue;
+            }
+            GnssType gnssType = prediction.getConstellationType(i)
+                    == Pseudoranges.CONSTELLATION_GALILEO ? GnssType.GALILEO : GnssType.NAVSTAR;
+            boolean fromAlmanac = prediction.isFromAlmanac(i);
+            gnss.add(prediction.getSvid(i), gnssType, SbasType.UNKNOWN, 0.0f, fromAlmanac,
+                    !fromAlmanac, false, elevation, prediction.getAzimuthDegrees(step, i),
+                    NO_DATA);
+        }
+        epoch.finish(false, SystemClock.elapsedRealtime(),
+                SatelliteStatusPartition.SORT_BY_CONSTELLATION);
+        mSkyView.setGnssEpoch(epoch);
+        epoch.release();
+
+        int seconds = (int) (step * prediction.getStepSeconds());
+        mPredictionTime.setText(getString(R.string.sky_prediction_time,
+                mPredictionTimeFormat.format(new Date(mPredictionStartMillis + seconds * 1000L)),
+                seconds / 60));
+    }
+
+    /**
+     * Switches the sky view back to the current satellites
+     */
+    private void stopPrediction() {
+        mPredicting = false;
+        mPrediction = null;
+        mPredictionGeneration++;
+        mPredictionBar.setVisibility(View.GONE);
+        mSkyView.setStopped();
+        mSkyView.setTrailDurationMinutes(PreferenceUtils.getSkyTrailDurationMinutes());
+        mSkyView.setHeatmap(mHeatmap);
+    }
+
+    /**
+     * Writes the heatmap as CSV and binary files to the app's external files directory, on a
+     * background thread so the UI isn't blocked by file I/O or by the heatmap lock
+     */
+    private void exportHeatmap() {
+        if (mHeatmap == null) {
+            return;
+        }
+        final File dir = getActivity().getExternalFilesDir("heatmaps");
+        if (dir == null) {
+            Log.e(TAG, "External storage isn't available for the heatmap");
+            Toast.makeText(getActivity(), R.string.heatmap_export_error, Toast.LENGTH_LONG).show();
+            return;
+        }
+        final String name = "heatmap-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US)
+                .format(new Date());
+        final SkyHeatmap heatmap = mHeatmap;
+        final Handler handler = new Handler();
+        new Thread(() -> {
+            boolean success;
+            try {
+                writeHeatmap(heatmap, new File(dir, name + ".csv"), new File(dir, name + ".bin"));
+                success = true;
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing heatmap: " + e);
+                success = false;
+            }
+            final boolean exported = success;
+            handler.post(() -> onHeatmapExported(exported, dir));
+        }, "HeatmapExport").start();
+    }
+
+    /**
+     * Writes the heatmap to the provided CSV and binary files, closing each file even if writing
+     * or closing the other one fails
+     */
+    private static void writeHeatmap(SkyHeatmap heatmap, File csvFile, File binaryFile)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(csvFile), "UTF-8"));
+        try {
+            heatmap.writeCsv(writer);
+        } finally {
+            writer.close();
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(binaryFile));
+        try {
+            heatmap.writeBinary(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void onHeatmapExported(boolean success, File dir) {
+        if (!isAdded()) {
+            return;
+        }
+        if (success) {
+            Toast.makeText(getActivity(), getString(R.string.heatmap_exported, dir.getPath()),
+                    Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(getActivity(), R.string.heatmap_export_error, Toast.LENGTH_LONG).show();
+        }
+    }
+
     /**
      * Initialize the views in the C/N0 and Shape legends
      * @param v view in which the legend view IDs can be found via view.findViewById()
@@ -20,12 +20,10 @@ package com.android.gpstest;
 import android.annotation.SuppressLint;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.graphics.Color;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
-import android.location.GpsSatellite;
-import android.location.GpsStatus;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
@@ -41,23 +39,28 @@ import android.widget.LinearLayout;
 import android.widget.TableRow;
 import android.widget.TextView;
 
+import com.android.gpstest.anomaly.AnomalyDetector;
 import com.android.gpstest.model.ConstellationType;
+import com.android.gpstest.model.GnssEpoch;
 import com.android.gpstest.model.GnssType;
-import com.android.gpstest.model.SatelliteStatus;
+import com.android.gpstest.model.SatelliteGroup;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteStatusPartition;
+import com.android.gpstest.model.SbasType;
+import com.android.gpstest.pvt.CycleSlipDetector;
+import com.android.gpstest.pvt.DopCalculator;
+import com.android.gpstest.pvt.PvtSolution;
 import com.android.gpstest.util.GpsTestUtil;
 import com.android.gpstest.util.MathUtils;
 import com.android.gpstest.util.PreferenceUtils;
-import com.android.gpstest.util.SortUtil;
 import com.android.gpstest.util.UIUtils;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AlertDialog;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -85,9 +88,30 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
             mAltitudeMslView, mHorVertAccuracyLabelView, mHorVertAccuracyView,
             mSpeedView, mSpeedAccuracyView, mBearingView, mBearingAccuracyView, mNumSats,
             mPdopLabelView, mPdopView, mHvdopLabelView, mHvdopView, mGnssNotAvailableView,
-            mSbasNotAvailableView;
+            mSbasNotAvailableView, mRawFixView, mRawFixErrorView, mTdopLabelView, mTdopView,
+            mAdrView, mAdrSlipsView, mAnomalyView, mFilterRawAccuracyView, mFilterShiftView;
 
-    private TableRow mSpeedBearingAccuracyRow;
+    private TableRow mSpeedBearingAccuracyRow, mRawFixRow, mAdrRow, mAnomalyRow, mFilterRow;
+
+    // Fixes from raw measurements older than this aren't compared to the device fix
+    private static final long MAX_RAW_FIX_AGE_NANOS = 2000000000L;
+
+    private final PvtSolution mRawFix = new PvtSolution();
+
+    private final float[] mRawFixDistance = new float[1];
+
+    private final float[] mFilterShift = new float[1];
+
+    // DOP from the geometry of the satellites used in the fix, which is shown instead of DOP from
+    // NMEA when it's available
+    private final DopCalculator mDopCalculator = new DopCalculator();
+
+    private final DilutionOfPrecision mGeometryDop = new DilutionOfPrecision();
+
+    private boolean mHasGeometryDop;
+
+    // Groups (GnssType ordinals) of the satellites last added to mDopCalculator
+    private int mDopGroups;
 
     private RecyclerView mGnssStatusList;
     private RecyclerView mSbasStatusList;
@@ -95,9 +119,20 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
     private SatelliteStatusAdapter mGnssAdapter;
     private SatelliteStatusAdapter mSbasAdapter;
 
-    private List<SatelliteStatus> mGnssStatus = new ArrayList<>();
+    // Signals of the current epoch grouped by satellite, for one row per satellite
+    private final SatelliteGroups mGnssGroups = new SatelliteGroups();
+
+    private final SatelliteGroups mSbasGroups = new SatelliteGroups();
+
+    private boolean mGroupBySatellite;
+
+    // Reused to build the per-band columns of grouped rows
+    private final StringBuilder mBandLabels = new StringBuilder();
+
+    private final StringBuilder mBandCn0 = new StringBuilder();
 
-    private List<SatelliteStatus> mSbasStatus = new ArrayList<>();
+    // Latest epoch shown in the lists, shared with the other listeners
+    private GnssEpoch mEpoch;
 
     private int mSvCount, mUsedInFixCount;
 
@@ -110,6 +145,8 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
     private Drawable mFlagUsa, mFlagRussia, mFlagJapan, mFlagChina, mFlagGalileo, mFlagIndia,
             mFlagEU, mFlagICAO;
 
+    private int mSelectedRowColor;
+
     private boolean mUseLegacyGnssApi = false;
 
     private String mTtff = "";
@@ -147,8 +184,30 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         mPdopView = v.findViewById(R.id.pdop);
         mHvdopLabelView = v.findViewById(R.id.hvdop_label);
         mHvdopView = v.findViewById(R.id.hvdop);
+        mTdopLabelView = v.findViewById(R.id.tdop_label);
+        mTdopView = v.findViewById(R.id.tdop);
+
+        // Tapping DOP shows how much each constellation contributes to it
+        View.OnClickListener dopClickListener = view -> showDopByConstellationDialog();
+        mPdopLabelView.setOnClickListener(dopClickListener);
+        mPdopView.setOnClickListener(dopClickListener);
+        mHvdopLabelView.setOnClickListener(dopClickListener);
+        mHvdopView.setOnClickListener(dopClickListener);
+        mTdopLabelView.setOnClickListener(dopClickListener);
+        mTdopView.setOnClickListener(dopClickListener);
 
         mSpeedBearingAccuracyRow = v.findViewById(R.id.speed_bearing_acc_row);
+        mRawFixRow = v.findViewById(R.id.raw_fix_row);
+        mRawFixView = v.findViewById(R.id.raw_fix);
+        mRawFixErrorView = v.findViewById(R.id.raw_fix_error);
+        mFilterRow = v.findViewById(R.id.filter_row);
+        mFilterRawAccuracyView = v.findViewById(R.id.filter_raw_accuracy);
+        mFilterShiftView = v.findViewById(R.id.filter_shift);
+        mAdrRow = v.findViewById(R.id.adr_row);
+        mAdrView = v.findViewById(R.id.adr);
+        mAdrSlipsView = v.findViewById(R.id.adr_slips);
+        mAnomalyRow = v.findViewById(R.id.anomaly_row);
+        mAnomalyView = v.findViewById(R.id.anomaly);
 
         mGnssNotAvailableView = v.findViewById(R.id.gnss_not_available);
         mSbasNotAvailableView = v.findViewById(R.id.sbas_not_available);
@@ -165,6 +224,8 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         mFlagEU = getResources().getDrawable(R.drawable.ic_flag_european_union);
         mFlagICAO = getResources().getDrawable(R.drawable.ic_flag_icao);
 
+        mSelectedRowColor = ContextCompat.getColor(getContext(), R.color.selected_satellite_row);
+
         // GNSS
         LinearLayoutManager llmGnss = new LinearLayoutManager(getContext());
         llmGnss.setAutoMeasureEnabled(true);
@@ -214,10 +275,16 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
                 mNumSats.setText("");
                 mPdopView.setText("");
                 mHvdopView.setText("");
+                mTdopView.setText("");
+                mHasGeometryDop = false;
 
                 mSvCount = 0;
-                mGnssStatus.clear();
-                mSbasStatus.clear();
+                if (mEpoch != null) {
+                    mEpoch.release();
+                    mEpoch = null;
+                }
+                mGnssGroups.clear();
+                mSbasGroups.clear();
                 mGnssAdapter.notifyDataSetChanged();
                 mSbasAdapter.notifyDataSetChanged();
             }
@@ -268,6 +335,56 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         }
     }
 
+    /**
+     * Update views for the fix computed from raw measurements, and its distance from the provided
+     * location
+     * @param location
+     */
+    private void updateRawFix(Location location) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N
+                || !GpsTestActivity.getInstance().getRawFix(mRawFix)
+                || location.getElapsedRealtimeNanos() - mRawFix.getElapsedRealtimeNanos()
+                > MAX_RAW_FIX_AGE_NANOS) {
+            mRawFixRow.setVisibility(View.GONE);
+            return;
+        }
+        mRawFixRow.setVisibility(View.VISIBLE);
+        mRawFixView.setText(String.valueOf(mRawFix.getSatelliteCount()));
+        Location.distanceBetween(location.getLatitude(), location.getLongitude(),
+                mRawFix.getLatitude(), mRawFix.getLongitude(), mRawFixDistance);
+        if (mPrefDistanceUnits.equalsIgnoreCase(METERS)) {
+            mRawFixErrorView.setText(mRes.getString(R.string.gps_accuracy_value_meters, mRawFixDistance[0]));
+        } else {
+            // Feet
+            mRawFixErrorView.setText(mRes.getString(R.string.gps_accuracy_value_feet, UIUtils.toFeet(mRawFixDistance[0])));
+        }
+    }
+
+    /**
+     * Update views for the accuracy of the raw location from the provider, and its distance from
+     * the provided location if it was smoothed by the location filter
+     * @param location
+     */
+    private void updateFilteredLocation(Location location) {
+        GpsTestActivity gta = GpsTestActivity.getInstance();
+        Location raw = gta.getLastLocation();
+        if (raw == null || location != gta.getFilteredLocation()) {
+            mFilterRow.setVisibility(View.GONE);
+            return;
+        }
+        mFilterRow.setVisibility(View.VISIBLE);
+        Location.distanceBetween(location.getLatitude(), location.getLongitude(),
+                raw.getLatitude(), raw.getLongitude(), mFilterShift);
+        if (mPrefDistanceUnits.equalsIgnoreCase(METERS)) {
+            mFilterRawAccuracyView.setText(mRes.getString(R.string.gps_accuracy_value_meters, raw.getAccuracy()));
+            mFilterShiftView.setText(mRes.getString(R.string.gps_accuracy_value_meters, mFilterShift[0]));
+        } else {
+            // Feet
+            mFilterRawAccuracyView.setText(mRes.getString(R.string.gps_accuracy_value_feet, UIUtils.toFeet(raw.getAccuracy())));
+            mFilterShiftView.setText(mRes.getString(R.string.gps_accuracy_value_feet, UIUtils.toFeet(mFilterShift[0])));
+        }
+    }
+
     /**
      * Update views for speed and bearing location accuracies based on the provided location
      * @param location
@@ -304,6 +421,12 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         setStarted(gta.mStarted);
 
         setupUnitPreferences();
+
+        boolean groupBySatellite = Application.getPrefs()
+                .getBoolean(getString(R.string.pref_key_group_sats), true);
+        if (groupBySatellite != mGroupBySatellite) {
+            setGroupBySatellite(groupBySatellite);
+        }
     }
 
     @Override
@@ -311,15 +434,46 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         inflater.inflate(R.menu.status_menu, menu);
     }
 
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.group_sats).setChecked(mGroupBySatellite);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         final int id = item.getItemId();
         if (id == R.id.sort_sats) {
             showSortByDialog();
+        } else if (id == R.id.group_sats) {
+            PreferenceUtils.saveBoolean(getString(R.string.pref_key_group_sats),
+                    !mGroupBySatellite);
+            setGroupBySatellite(!mGroupBySatellite);
+            getActivity().invalidateOptionsMenu();
+            return true;
         }
         return false;
     }
 
+    /**
+     * Shows one row per satellite, with a line for each band in the carrier frequency and C/N0
+     * columns, or one row per signal
+     *
+     * @param groupBySatellite true to show one row per satellite, false for one row per signal
+     */
+    private void setGroupBySatellite(boolean groupBySatellite) {
+        mGroupBySatellite = groupBySatellite;
+        if (groupBySatellite) {
+            updateGroups();
+        } else {
+            mGnssGroups.clear();
+            mSbasGroups.clear();
+        }
+        if (mGnssAdapter != null) {
+            mGnssAdapter.notifyDataSetChanged();
+            mSbasAdapter.notifyDataSetChanged();
+        }
+    }
+
     @Override
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
@@ -389,6 +543,8 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         }
         updateLocationAccuracies(location);
         updateSpeedAndBearingAccuracies(location);
+        updateRawFix(location);
+        updateFilteredLocation(location);
         updateFixTime();
     }
 
@@ -401,30 +557,6 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
     public void onProviderDisabled(String provider) {
     }
 
-    @Deprecated
-    public void onGpsStatusChanged(int event, GpsStatus status) {
-        switch (event) {
-            case GpsStatus.GPS_EVENT_STARTED:
-                setStarted(true);
-                break;
-
-            case GpsStatus.GPS_EVENT_STOPPED:
-                setStarted(false);
-                break;
-
-            case GpsStatus.GPS_EVENT_FIRST_FIX:
-                mTtff = UIUtils.getTtffString(status.getTimeToFirstFix());
-                if (mTTFFView != null) {
-                    mTTFFView.setText(mTtff);
-                }
-                break;
-
-            case GpsStatus.GPS_EVENT_SATELLITE_STATUS:
-                updateLegacyStatus(status);
-                break;
-        }
-    }
-
     @Override
     public void onGnssFirstFix(int ttffMillis) {
         mTtff = UIUtils.getTtffString(ttffMillis);
@@ -433,10 +565,9 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         }
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status) {
-        updateGnssStatus(status);
+    public void onGnssEpoch(GnssEpoch epoch) {
+        updateEpoch(epoch);
     }
 
     @Override
@@ -452,13 +583,79 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
     @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
     public void onGnssMeasurementsReceived(GnssMeasurementsEvent event) {
-        // No-op
+        updateAdrContinuity(event.getClock().getTimeNanos());
+    }
+
+    /**
+     * Shows how many signals have continuous carrier phase in the provided epoch out of those
+     * with a valid ADR, and the total number of slips
+     *
+     * @param timeNanos GnssClock.getTimeNanos() of the epoch
+     */
+    private void updateAdrContinuity(long timeNanos) {
+        CycleSlipDetector detector = GpsTestActivity.getInstance().getCycleSlipDetector();
+        if (detector == null || detector.getSignalCount() == 0) {
+            mAdrRow.setVisibility(View.GONE);
+            return;
+        }
+        int continuous = 0;
+        int tracked = 0;
+        int slips = 0;
+        for (int i = 0; i < detector.getSignalCount(); i++) {
+            if (detector.isContinuous(i, timeNanos)) {
+                continuous++;
+            }
+            if (detector.getValidEpochCount(i) > 0) {
+                tracked++;
+            }
+            slips += detector.getSlipCount(i);
+        }
+        mAdrRow.setVisibility(View.VISIBLE);
+        mAdrView.setText(mRes.getString(R.string.gps_adr_value, continuous, tracked));
+        mAdrSlipsView.setText(String.valueOf(slips));
     }
 
     @Override
     public void onOrientationChanged(double orientation, double tilt) {
     }
 
+    @Override
+    public void onGnssAnomaly(int anomaly, double value) {
+        String message;
+        switch (anomaly) {
+            case AnomalyDetector.ANOMALY_CN0_DROP:
+                message = mRes.getString(R.string.anomaly_cn0_drop, value);
+                break;
+            case AnomalyDetector.ANOMALY_UNIFORM_CN0:
+                message = mRes.getString(R.string.anomaly_uniform_cn0, value);
+                break;
+            case AnomalyDetector.ANOMALY_AGC_CHANGE:
+                message = mRes.getString(R.string.anomaly_agc_change, value);
+                break;
+            case AnomalyDetector.ANOMALY_DOPPLER:
+                message = mRes.getString(R.string.anomaly_doppler, (int) value);
+                break;
+            case AnomalyDetector.ANOMALY_CLOCK_JUMP:
+                message = mRes.getString(R.string.anomaly_clock_jump, value);
+                break;
+            default:
+                return;
+        }
+        // The latest alert stays shown, with the time it was raised
+        mAnomalyRow.setVisibility(View.VISIBLE);
+        mAnomalyView.setText(mRes.getString(R.string.gps_anomaly_value, message,
+                mDateFormat.format(System.currentTimeMillis())));
+    }
+
+    @Override
+    public void onSatelliteSelected(int key) {
+        if (mGnssAdapter != null) {
+            // Move the highlight to the row of the selected satellite
+            mGnssAdapter.notifyDataSetChanged();
+            mSbasAdapter.notifyDataSetChanged();
+        }
+    }
+
     @Override
     public void onNmeaMessage(String message, long timestamp) {
         if (!isAdded()) {
@@ -477,7 +674,7 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         }
         if (message.startsWith("$GNGSA") || message.startsWith("$GPGSA")) {
             DilutionOfPrecision dop = GpsTestUtil.getDop(message);
-            if (dop != null && mNavigating) {
+            if (dop != null && mNavigating && !mHasGeometryDop) {
                 showDopViews();
                 mPdopView.setText(mRes.getString(R.string.pdop_value, dop.getPositionDop()));
                 mHvdopView.setText(
@@ -494,9 +691,8 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         mHvdopView.setVisibility(View.VISIBLE);
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void updateGnssStatus(GnssStatus status) {
-        mUseLegacyGnssApi = false;
+    private void updateEpoch(GnssEpoch epoch) {
+        mUseLegacyGnssApi = epoch.isLegacy();
         setStarted(true);
         updateFixTime();
 
@@ -505,142 +701,175 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
             return;
         }
 
-        mSnrCn0Title = mRes.getString(R.string.gps_cn0_column_label);
-
-        final int length = status.getSatelliteCount();
-        mSvCount = 0;
-        mUsedInFixCount = 0;
-        mGnssStatus.clear();
-        mSbasStatus.clear();
-        while (mSvCount < length) {
-            SatelliteStatus satStatus = new SatelliteStatus(status.getSvid(mSvCount), GpsTestUtil.getGnssConstellationType(status.getConstellationType(mSvCount)),
-                    status.getCn0DbHz(mSvCount),
-                    status.hasAlmanacData(mSvCount),
-                    status.hasEphemerisData(mSvCount),
-                    status.usedInFix(mSvCount),
-                    status.getElevationDegrees(mSvCount),
-                    status.getAzimuthDegrees(mSvCount));
-            if (GpsTestUtil.isGnssCarrierFrequenciesSupported()) {
-                if (status.hasCarrierFrequencyHz(mSvCount)) {
-                    satStatus.setHasCarrierFrequency(true);
-                    satStatus.setCarrierFrequencyHz(status.getCarrierFrequencyHz(mSvCount));
-                }
-            }
-
-            if (satStatus.getGnssType() == GnssType.SBAS) {
-                satStatus.setSbasType(GpsTestUtil.getSbasConstellationType(satStatus.getSvid()));
-                mSbasStatus.add(satStatus);
-            } else {
-                mGnssStatus.add(satStatus);
-            }
-
-            if (satStatus.getUsedInFix()) {
-                mUsedInFixCount++;
-            }
+        if (mUseLegacyGnssApi) {
+            mSnrCn0Title = mRes.getString(R.string.gps_snr_column_label);
+        } else {
+            mSnrCn0Title = mRes.getString(R.string.gps_cn0_column_label);
+        }
 
-            mSvCount++;
+        // The epoch is already sorted, and is kept until the adapters are done with it
+        epoch.retain();
+        if (mEpoch != null) {
+            mEpoch.release();
         }
+        mEpoch = epoch;
+        mSvCount = epoch.getSvCount();
+        mUsedInFixCount = epoch.getUsedInFixCount();
+        updateGroups();
 
         mNumSats.setText(mRes.getString(R.string.gps_num_sats_value, mUsedInFixCount, mSvCount));
 
+        updateGeometryDop(epoch);
         refreshViews();
     }
 
-    @Deprecated
-    private void updateLegacyStatus(GpsStatus status) {
-        mUseLegacyGnssApi = true;
-        setStarted(true);
-        updateFixTime();
-
-        if (!UIUtils.isFragmentAttached(this)) {
-            // Fragment isn't visible, so return to avoid IllegalStateException (see #85)
+    /**
+     * Computes DOP from the elevation and azimuth of the GNSS satellites used in the fix, and
+     * shows it if the geometry can be solved
+     */
+    private void updateGeometryDop(GnssEpoch epoch) {
+        SatelliteStatusPartition gnss = epoch.getGnss();
+        mDopCalculator.begin();
+        mDopGroups = 0;
+        for (int i = 0; i < gnss.size(); i++) {
+            if (gnss.getUsedInFix(i)) {
+                int group = gnss.getGnssType(i).ordinal();
+                mDopCalculator.add(group, gnss.getSvid(i), gnss.getElevationDegrees(i),
+                        gnss.getAzimuthDegrees(i));
+                mDopGroups |= DopCalculator.getGroupMask(group);
+            }
+        }
+        mHasGeometryDop = mDopCalculator.compute(DopCalculator.ALL_GROUPS, mGeometryDop);
+        if (!mHasGeometryDop) {
+            // Fall back to DOP from NMEA, if the device outputs it, which doesn't include TDOP
+            mTdopLabelView.setVisibility(View.GONE);
+            mTdopView.setVisibility(View.GONE);
             return;
         }
+        showDopViews();
+        mPdopView.setText(mRes.getString(R.string.pdop_value, mGeometryDop.getPositionDop()));
+        mHvdopView.setText(mRes.getString(R.string.hvdop_value, mGeometryDop.getHorizontalDop(),
+                mGeometryDop.getVerticalDop()));
+        mTdopLabelView.setVisibility(View.VISIBLE);
+        mTdopView.setVisibility(View.VISIBLE);
+        mTdopView.setText(mRes.getString(R.string.tdop_value, mGeometryDop.getTimeDop()));
+    }
 
-        mSnrCn0Title = mRes.getString(R.string.gps_snr_column_label);
-
-        Iterator<GpsSatellite> satellites = status.getSatellites().iterator();
-
-        mSvCount = 0;
-        mUsedInFixCount = 0;
-        mGnssStatus.clear();
-        mSbasStatus.clear();
-        while (satellites.hasNext()) {
-            GpsSatellite satellite = satellites.next();
+    /**
+     * Groups the signals of the current epoch by satellite, in the order of the sorted signals,
+     * if rows are grouped by satellite
+     */
+    private void updateGroups() {
+        if (!mGroupBySatellite || mEpoch == null) {
+            return;
+        }
+        updateGroups(mGnssGroups, mEpoch.getGnss());
+        updateGroups(mSbasGroups, mEpoch.getSbas());
+    }
 
-            SatelliteStatus satStatus = new SatelliteStatus(satellite.getPrn(), GpsTestUtil.getGnssType(satellite.getPrn()),
-                    satellite.getSnr(),
-                    satellite.hasAlmanac(),
-                    satellite.hasEphemeris(),
-                    satellite.usedInFix(),
-                    satellite.getElevation(),
-                    satellite.getAzimuth());
+    private static void updateGroups(SatelliteGroups groups, SatelliteStatusPartition signals) {
+        groups.beginEpoch();
+        groups.addSignals(signals);
+        groups.endEpoch();
+        groups.sortLike(signals);
+    }
 
-            if (satStatus.getGnssType() == GnssType.SBAS) {
-                satStatus.setSbasType(GpsTestUtil.getSbasConstellationTypeLegacy(satStatus.getSvid()));
-                mSbasStatus.add(satStatus);
-            } else {
-                mGnssStatus.add(satStatus);
-            }
-            if (satellite.usedInFix()) {
-                mUsedInFixCount++;
+    /**
+     * Shows the DOP of each constellation used in the fix on its own, and of all the others
+     * without it, from the satellites of the last epoch
+     */
+    private void showDopByConstellationDialog() {
+        StringBuilder message = new StringBuilder();
+        if (!mHasGeometryDop) {
+            message.append(getString(R.string.dop_by_constellation_unavailable));
+        } else {
+            boolean multiple = Integer.bitCount(mDopGroups) > 1;
+            DilutionOfPrecision dop = new DilutionOfPrecision();
+            for (GnssType type : GnssType.values()) {
+                int groupMask = DopCalculator.getGroupMask(type.ordinal());
+                if ((mDopGroups & groupMask) == 0) {
+                    continue;
+                }
+                String name = getConstellationName(type);
+                appendDop(message, getString(R.string.dop_by_constellation_only, name),
+                        groupMask, dop);
+                if (multiple) {
+                    appendDop(message, getString(R.string.dop_by_constellation_without, name),
+                            DopCalculator.ALL_GROUPS & ~groupMask, dop);
+                }
             }
-            mSvCount++;
         }
 
-        mNumSats.setText(mRes.getString(R.string.gps_num_sats_value, mUsedInFixCount, mSvCount));
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(R.string.dop_by_constellation_title);
+        builder.setMessage(message.toString());
+        builder.setPositiveButton(android.R.string.ok, null);
+        AlertDialog dialog = builder.create();
+        dialog.setOwnerActivity(getActivity());
+        dialog.show();
+    }
 
-        refreshViews();
+    /**
+     * Appends a line with the DOP of the provided groups to the message
+     */
+    private void appendDop(StringBuilder message, String label, int groupMask,
+            DilutionOfPrecision dop) {
+        if (message.length() > 0) {
+            message.append('\n');
+        }
+        if (mDopCalculator.compute(groupMask, dop)) {
+            message.append(getString(R.string.dop_by_constellation_value, label,
+                    dop.getPositionDop(), dop.getHorizontalDop(), dop.getVerticalDop()));
+        } else {
+            message.append(getString(R.string.dop_by_constellation_none, label));
+        }
     }
 
-    private void refreshViews() {
-        sortLists();
+    private String getConstellationName(GnssType type) {
+        switch (type) {
+            case NAVSTAR:
+                return getString(R.string.gnss_name_navstar);
+            case GLONASS:
+                return getString(R.string.gnss_name_glonass);
+            case GALILEO:
+                return getString(R.string.gnss_name_galileo);
+            case QZSS:
+                return getString(R.string.gnss_name_qzss);
+            case BEIDOU:
+                return getString(R.string.gnss_name_beidou);
+            default:
+                return type.name();
+        }
+    }
 
+    private void refreshViews() {
         updateListVisibility();
         mGnssAdapter.notifyDataSetChanged();
         mSbasAdapter.notifyDataSetChanged();
     }
 
-    private void sortLists() {
-        final int sortBy = PreferenceUtils.getSatSortOrderFromPreferences();
-        // Below switch statement order must match arrays.xml sort_sats order
-        switch (sortBy) {
-            case 0:
-                // Sort by Constellation
-                mGnssStatus = SortUtil.Companion.sortByGnssThenId(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortBySbasThenId(mSbasStatus);
-                break;
-            case 1:
-                // Sort by Carrier Frequency
-                mGnssStatus = SortUtil.Companion.sortByCarrierFrequencyThenId(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortByCarrierFrequencyThenId(mSbasStatus);
-                break;
-            case 2:
-                // Sort by Signal Strength
-                mGnssStatus = SortUtil.Companion.sortByCn0(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortByCn0(mSbasStatus);
-                break;
-            case 3:
-                // Sort by Used in Fix
-                mGnssStatus = SortUtil.Companion.sortByUsedThenId(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortByUsedThenId(mSbasStatus);
-                break;
-            case 4:
-                // Sort by Constellation, Carrier Frequency
-                mGnssStatus = SortUtil.Companion.sortByGnssThenCarrierFrequencyThenId(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortBySbasThenCarrierFrequencyThenId(mSbasStatus);
-                break;
-            case 5:
-                // Sort by Constellation, Signal Strength
-                mGnssStatus = SortUtil.Companion.sortByGnssThenCn0ThenId(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortBySbasThenCn0ThenId(mSbasStatus);
-                break;
-            case 6:
-                // Sort by Constellation, Used in Fix
-                mGnssStatus = SortUtil.Companion.sortByGnssThenUsedThenId(mGnssStatus);
-                mSbasStatus = SortUtil.Companion.sortBySbasThenUsedThenId(mSbasStatus);
-                break;
+    /**
+     * Returns the signals of the given type from the latest epoch, or null if there isn't one
+     *
+     * @param constellationType GNSS or SBAS
+     * @return the signals of the given type from the latest epoch, or null if there isn't one
+     */
+    private SatelliteStatusPartition getSignals(ConstellationType constellationType) {
+        if (mEpoch == null) {
+            return null;
         }
+        return constellationType == GNSS ? mEpoch.getGnss() : mEpoch.getSbas();
+    }
+
+    /**
+     * Returns the satellites of the given type from the latest epoch, if rows are grouped by
+     * satellite
+     *
+     * @param constellationType GNSS or SBAS
+     * @return the satellites of the given type from the latest epoch
+     */
+    private SatelliteGroups getGroups(ConstellationType constellationType) {
+        return constellationType == GNSS ? mGnssGroups : mSbasGroups;
     }
 
     private void setupUnitPreferences() {
@@ -657,14 +886,16 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
      * Sets the visibility of the lists
      */
     private void updateListVisibility() {
-        if (!mGnssStatus.isEmpty()) {
+        SatelliteStatusPartition gnss = getSignals(GNSS);
+        SatelliteStatusPartition sbas = getSignals(SBAS);
+        if (gnss != null && !gnss.isEmpty()) {
             mGnssNotAvailableView.setVisibility(View.GONE);
             mGnssStatusList.setVisibility(View.VISIBLE);
         } else {
             mGnssNotAvailableView.setVisibility(View.VISIBLE);
             mGnssStatusList.setVisibility(View.GONE);
         }
-        if (!mSbasStatus.isEmpty()) {
+        if (sbas != null && !sbas.isEmpty()) {
             mSbasNotAvailableView.setVisibility(View.GONE);
             mSbasStatusList.setVisibility(View.VISIBLE);
         } else {
@@ -780,15 +1011,17 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
         @Override
         public int getItemCount() {
             // Add 1 for header row
-            if (mConstellationType == GNSS) {
-                return mGnssStatus.size() + 1;
-            } else {
-                return mSbasStatus.size() + 1;
+            SatelliteStatusPartition sats = getSignals(mConstellationType);
+            if (sats == null) {
+                return 1;
             }
+            return (mGroupBySatellite ? getGroups(mConstellationType).size() : sats.size()) + 1;
         }
 
         public void onBindViewHolder(ViewHolder v, final int position) {
             if (position == 0) {
+                v.itemView.setBackgroundColor(Color.TRANSPARENT);
+
                 // Show the header field for the GNSS flag and hide the ImageView
                 v.getFlagHeader().setVisibility(View.VISIBLE);
                 v.getFlag().setVisibility(View.GONE);
@@ -821,23 +1054,34 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
                 // There is a header at 0, so the first data row will be at position - 1, etc.
                 int dataRow = position - 1;
 
-                List<SatelliteStatus> sats;
-                if (mConstellationType == GNSS) {
-                    sats = mGnssStatus;
+                SatelliteStatusPartition sats = getSignals(mConstellationType);
+                SatelliteGroup group = null;
+                int i;
+                if (mGroupBySatellite) {
+                    // Flags and other per-signal data come from the first signal of the satellite
+                    SatelliteGroups groups = getGroups(mConstellationType);
+                    group = groups.getSorted(dataRow);
+                    i = groups.getSortedSignal(dataRow);
                 } else {
-                    sats = mSbasStatus;
+                    i = sats.getSortedIndex(dataRow);
                 }
 
+                // Highlight the satellite selected in the sky view
+                GpsTestActivity activity = GpsTestActivity.getInstance();
+                boolean selected = activity != null && activity.getSelectedSatellite()
+                        == SatelliteGroups.createKey(sats.getGnssType(i), sats.getSvid(i));
+                v.itemView.setBackgroundColor(selected ? mSelectedRowColor : Color.TRANSPARENT);
+
                 // Show the row field for the GNSS flag mImage and hide the header
                 v.getFlagHeader().setVisibility(View.GONE);
                 v.getFlag().setVisibility(View.VISIBLE);
                 v.getFlagLayout().setVisibility(View.VISIBLE);
 
                 // Populate status data for this row
-                v.getSvId().setText(Integer.toString(sats.get(dataRow).getSvid()));
+                v.getSvId().setText(Integer.toString(sats.getSvid(i)));
                 v.getFlag().setScaleType(ImageView.ScaleType.FIT_START);
 
-                GnssType type = sats.get(dataRow).getGnssType();
+                GnssType type = sats.getGnssType(i);
                 switch (type) {
                     case NAVSTAR:
                         v.getFlag().setVisibility(View.VISIBLE);
@@ -860,67 +1104,114 @@ public class GpsStatusFragment extends Fragment implements GpsTestListener {
                         v.getFlag().setImageDrawable(mFlagGalileo);
                         break;
                     case SBAS:
-                        setSbasFlag(sats.get(dataRow), v.getFlag());
+                        setSbasFlag(sats.getSbasType(i), v.getFlag());
                         break;
                     case UNKNOWN:
                         v.getFlag().setVisibility(View.INVISIBLE);
                         break;
                 }
-                if (GpsTestUtil.isGnssCarrierFrequenciesSupported()) {
-                    if (sats.get(dataRow).getCarrierFrequencyHz() != NO_DATA) {
-                        // Convert Hz to MHz
-                        float carrierMhz = MathUtils.toMhz(sats.get(dataRow).getCarrierFrequencyHz());
-                        String carrierLabel = GpsTestUtil.getCarrierFrequencyLabel(sats.get(dataRow).getGnssType(),
-                                sats.get(dataRow).getSvid(),
-                                carrierMhz);
-                        if (carrierLabel != null) {
-                            // Make sure it's the normal text size (in case it's previously been
-                            // resized to show raw number).  Use another TextView for default text size.
-                            v.getCarrierFrequency().setTextSize(COMPLEX_UNIT_PX, v.getSvId().getTextSize());
-                            // Show label such as "L1"
-                            v.getCarrierFrequency().setText(carrierLabel);
-                        } else {
-                            // Shrink the size so we can show raw number
-                            v.getCarrierFrequency().setTextSize(COMPLEX_UNIT_DIP, 10);
-                            // Show raw number for carrier frequency
-                            v.getCarrierFrequency().setText(String.format("%.3f", carrierMhz));
-                        }
-                    } else {
-                        v.getCarrierFrequency().setText("");
-                    }
-                } else {
-                    v.getCarrierFrequency().setVisibility(View.GONE);
-                }
-                if (sats.get(dataRow).getCn0DbHz() != NO_DATA) {
-                    v.getSignal().setText(String.format("%.1f", sats.get(dataRow).getCn0DbHz()));
+                if (group != null) {
+                    setBands(v, group);
                 } else {
-                    v.getSignal().setText("");
+                    setSignal(v, sats, i);
                 }
 
-                if (sats.get(dataRow).getElevationDegrees() != NO_DATA) {
+                if (sats.getElevationDegrees(i) != NO_DATA) {
                     v.getElevation().setText(mRes.getString(R.string.gps_elevation_column_value,
-                            sats.get(dataRow).getElevationDegrees()));
+                            sats.getElevationDegrees(i)));
                 } else {
                     v.getElevation().setText("");
                 }
 
-                if (sats.get(dataRow).getAzimuthDegrees() != NO_DATA) {
+                if (sats.getAzimuthDegrees(i) != NO_DATA) {
                     v.getAzimuth().setText(mRes.getString(R.string.gps_azimuth_column_value,
-                            sats.get(dataRow).getAzimuthDegrees()));
+                            sats.getAzimuthDegrees(i)));
                 } else {
                     v.getAzimuth().setText("");
                 }
 
+                boolean hasAlmanac = group != null ? group.getHasAlmanac() : sats.getHasAlmanac(i);
+                boolean hasEphemeris = group != null ? group.getHasEphemeris()
+                        : sats.getHasEphemeris(i);
+                boolean usedInFix = group != null ? group.getUsedInFix() : sats.getUsedInFix(i);
                 char[] flags = new char[3];
-                flags[0] = !sats.get(dataRow).getHasAlmanac() ? ' ' : 'A';
-                flags[1] = !sats.get(dataRow).getHasEphemeris() ? ' ' : 'E';
-                flags[2] = !sats.get(dataRow).getUsedInFix() ? ' ' : 'U';
+                flags[0] = !hasAlmanac ? ' ' : 'A';
+                flags[1] = !hasEphemeris ? ' ' : 'E';
+                flags[2] = !usedInFix ? ' ' : 'U';
                 v.getStatusFlags().setText(new String(flags));
             }
         }
 
-        private void setSbasFlag(SatelliteStatus status, ImageView flag) {
-            switch(status.getSbasType()) {
+        private void setSignal(ViewHolder v, SatelliteStatusPartition sats, int i) {
+            if (GpsTestUtil.isGnssCarrierFrequenciesSupported()) {
+                if (sats.getHasCarrierFrequency(i)) {
+                    // Convert Hz to MHz
+                    float carrierMhz = MathUtils.toMhz(sats.getCarrierFrequencyHz(i));
+                    String carrierLabel = GpsTestUtil.getCarrierFrequencyLabel(sats.getGnssType(i),
+                            sats.getSvid(i),
+                            carrierMhz);
+                    if (carrierLabel != null) {
+                        // Make sure it's the normal text size (in case it's previously been
+                        // resized to show raw number).  Use another TextView for default text size.
+                        v.getCarrierFrequency().setTextSize(COMPLEX_UNIT_PX, v.getSvId().getTextSize());
+                        // Show label such as "L1"
+                        v.getCarrierFrequency().setText(carrierLabel);
+                    } else {
+                        // Shrink the size so we can show raw number
+                        v.getCarrierFrequency().setTextSize(COMPLEX_UNIT_DIP, 10);
+                        // Show raw number for carrier frequency
+                        v.getCarrierFrequency().setText(String.format("%.3f", carrierMhz));
+                    }
+                } else {
+                    v.getCarrierFrequency().setText("");
+                }
+            } else {
+                v.getCarrierFrequency().setVisibility(View.GONE);
+            }
+            if (sats.getCn0DbHz(i) != NO_DATA) {
+                v.getSignal().setText(String.format("%.1f", sats.getCn0DbHz(i)));
+            } else {
+                v.getSignal().setText("");
+            }
+        }
+
+        /**
+         * Shows the bands of a satellite as one line per band in the carrier frequency and C/N0
+         * columns, so each C/N0 is next to its band label
+         */
+        private void setBands(ViewHolder v, SatelliteGroup group) {
+            boolean carrierSupported = GpsTestUtil.isGnssCarrierFrequenciesSupported();
+            mBandLabels.setLength(0);
+            mBandCn0.setLength(0);
+            for (int band = 0; band < group.getBandCount(); band++) {
+                if (band > 0) {
+                    mBandLabels.append('\n');
+                    mBandCn0.append('\n');
+                }
+                float carrierHz = group.getCarrierFrequencyHz(band);
+                if (carrierSupported && carrierHz != NO_DATA) {
+                    float carrierMhz = MathUtils.toMhz(carrierHz);
+                    String carrierLabel = GpsTestUtil.getCarrierFrequencyLabel(
+                            group.getGnssType(), group.getSvid(), carrierMhz);
+                    mBandLabels.append(carrierLabel != null ? carrierLabel
+                            : String.format("%.3f", carrierMhz));
+                }
+                if (group.getCn0DbHz(band) != NO_DATA) {
+                    mBandCn0.append(String.format("%.1f", group.getCn0DbHz(band)));
+                }
+            }
+            if (carrierSupported) {
+                v.getCarrierFrequency().setVisibility(View.VISIBLE);
+                v.getCarrierFrequency().setTextSize(COMPLEX_UNIT_PX, v.getSvId().getTextSize());
+                v.getCarrierFrequency().setText(mBandLabels.toString());
+            } else {
+                v.getCarrierFrequency().setVisibility(View.GONE);
+            }
+            v.getSignal().setText(mBandCn0.toString());
+        }
+
+        private void setSbasFlag(SbasType sbasType, ImageView flag) {
+            switch(sbasType) {
                 case WAAS:
                     flag.setVisibility(View.VISIBLE);
                     flag.setImageDrawable(mFlagUsa);
@@ -34,6 +34,7 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.location.GnssClock;
 import android.location.GnssMeasurement;
 import android.location.GnssMeasurementsEvent;
 import android.location.GnssNavigationMessage;
@@ -48,6 +49,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.util.Log;
@@ -62,6 +64,19 @@ import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.android.gpstest.anomaly.AnomalyDetector;
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.GnssEpochPool;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteStatusPartition;
+import com.android.gpstest.model.TrackRecorder;
+import com.android.gpstest.nav.EphemerisStore;
+import com.android.gpstest.nav.NavigationMessageDecoder;
+import com.android.gpstest.pvt.CycleSlipDetector;
+import com.android.gpstest.pvt.LocationFilter;
+import com.android.gpstest.pvt.PvtEngine;
+import com.android.gpstest.pvt.PvtSolution;
+import com.android.gpstest.util.DeclinationCache;
 import com.android.gpstest.util.GpsTestUtil;
 import com.android.gpstest.util.LocationUtils;
 import com.android.gpstest.util.MathUtils;
@@ -111,6 +126,12 @@ public class GpsTestActivity extends AppCompatActivity
 
     private static final int SECONDS_TO_MILLISECONDS = 1000;
 
+    // Number of magnetic declinations to keep, each for a 0.1 degree cell and a month
+    private static final int DECLINATION_CACHE_SIZE = 64;
+
+    // Vertical accuracy of a location without one, relative to its horizontal accuracy
+    private static final float VERTICAL_ACCURACY_FACTOR = 1.5f;
+
     private static final String GPS_STARTED = "gps_started";
 
     private static final int LOCATION_PERMISSION_REQUEST = 1;
@@ -165,6 +186,8 @@ public class GpsTestActivity extends AppCompatActivity
 
     boolean mWriteGnssMeasurementToLog;
 
+    boolean mWriteNavMessageToLog;
+
     boolean mLogNmea;
 
     boolean mWriteNmeaTimestampToLog;
@@ -187,8 +210,6 @@ public class GpsTestActivity extends AppCompatActivity
     /**
      * Android N (7.0) and above status and listeners
      */
-    private GnssStatus mGnssStatus;
-
     private GnssStatus.Callback mGnssStatusListener;
 
     private GnssMeasurementsEvent.Callback mGnssMeasurementsListener;
@@ -200,9 +221,43 @@ public class GpsTestActivity extends AppCompatActivity
     // Listeners for Fragments
     private ArrayList<GpsTestListener> mGpsTestListeners = new ArrayList<GpsTestListener>();
 
+    // Key of the selected satellite, shared by all fragments
+    private int mSelectedSatelliteKey = SatelliteGroups.NO_KEY;
+
+    // Track of the device since the app started, drawn by the map fragments
+    private final TrackRecorder mTrack = new TrackRecorder();
+
+    // Ephemerides decoded from navigation messages, used for fixes from raw measurements
+    private final EphemerisStore mEphemerisStore = new EphemerisStore();
+
+    private final NavigationMessageDecoder mNavMessageDecoder =
+            new NavigationMessageDecoder(mEphemerisStore);
+
+    // Computes fixes from raw measurements, or null if they aren't being computed
+    private PvtEngine mPvtEngine;
+
+    // Carrier phase continuity of each signal, or null if it isn't tracked
+    private CycleSlipDetector mCycleSlipDetector;
+
+    // Interference and spoofing detection, or null if it's disabled
+    private AnomalyDetector mAnomalyDetector;
+
+    // Reuses the snapshots of satellite status that are shared with all listeners
+    private final GnssEpochPool mEpochPool = new GnssEpochPool();
+
     private Location mLastLocation;
 
-    private GeomagneticField mGeomagneticField;
+    // Smooths the locations passed to listeners, or null if they aren't filtered
+    private LocationFilter mLocationFilter;
+
+    // Last location passed to listeners by mLocationFilter, or null if there isn't one
+    private Location mFilteredLocation;
+
+    private final DeclinationCache mDeclinationCache =
+            new DeclinationCache(DECLINATION_CACHE_SIZE);
+
+    // Magnetic declination at the last location in degrees, or NaN if there isn't a location
+    private float mDeclination = Float.NaN;
 
     private long minTime; // Min Time between location updates, in milliseconds
 
@@ -356,6 +411,10 @@ public class GpsTestActivity extends AppCompatActivity
 
         checkNmeaLog(settings);
 
+        checkAnomalyDetection(settings);
+
+        checkLocationFilter(settings);
+
         if (GpsTestUtil.isGnssStatusListenerSupported()) {
             checkGnssMeasurementOutput(settings);
         }
@@ -381,6 +440,9 @@ public class GpsTestActivity extends AppCompatActivity
         }
         if (GpsTestUtil.isGnssStatusListenerSupported()) {
             removeGnssMeasurementsListener();
+            if (mPvtEngine != null) {
+                mPvtEngine.stop();
+            }
         }
         // Check if the user has chosen to stop GNSS whenever app is in background
         if (Application.getPrefs().getBoolean(getString(R.string.pref_key_stop_gnss_in_background), false)) {
@@ -669,6 +731,101 @@ public class GpsTestActivity extends AppCompatActivity
         mGpsTestListeners.add(listener);
     }
 
+    /**
+     * Returns the key of the selected satellite (see SatelliteGroups.createKey()), or
+     * SatelliteGroups.NO_KEY if no satellite is selected
+     *
+     * @return the key of the selected satellite, or SatelliteGroups.NO_KEY if no satellite is
+     * selected
+     */
+    int getSelectedSatellite() {
+        return mSelectedSatelliteKey;
+    }
+
+    /**
+     * Selects the provided satellite in all fragments
+     *
+     * @param key key of the satellite to select (see SatelliteGroups.createKey()), or
+     *            SatelliteGroups.NO_KEY to clear the selection
+     */
+    void setSelectedSatellite(int key) {
+        if (key == mSelectedSatelliteKey) {
+            return;
+        }
+        mSelectedSatelliteKey = key;
+        for (GpsTestListener listener : mGpsTestListeners) {
+            listener.onSatelliteSelected(key);
+        }
+    }
+
+    /**
+     * Returns the track of the device since the app started.  It must only be used on the main
+     * thread.
+     *
+     * @return the track of the device since the app started
+     */
+    TrackRecorder getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Returns the last location received from the location provider
+     *
+     * @return the last location received from the location provider, or null if there isn't one
+     */
+    Location getLastLocation() {
+        return mLastLocation;
+    }
+
+    /**
+     * Returns the last location smoothed by the location filter, which is the location passed to
+     * listeners when the filter is enabled
+     *
+     * @return the last filtered location, or null if locations aren't being filtered
+     */
+    Location getFilteredLocation() {
+        return mFilteredLocation;
+    }
+
+    /**
+     * Returns the ephemerides and almanacs decoded from navigation messages
+     *
+     * @return the ephemerides and almanacs decoded from navigation messages
+     */
+    EphemerisStore getEphemerisStore() {
+        return mEphemerisStore;
+    }
+
+    /**
+     * Copies the latest fix computed from raw measurements to the provided solution
+     *
+     * @return true if there is a fix from raw measurements, false if they aren't being solved or
+     * no fix has been computed yet
+     */
+    boolean getRawFix(PvtSolution out) {
+        return mPvtEngine != null && mPvtEngine.getLatestSolution(out);
+    }
+
+    /**
+     * Returns the carrier phase continuity of each signal.  It must only be used on the main
+     * thread.
+     *
+     * @return the carrier phase continuity of each signal, or null if it isn't tracked
+     */
+    CycleSlipDetector getCycleSlipDetector() {
+        return mCycleSlipDetector;
+    }
+
+    /**
+     * Selects the provided satellite and shows its row in the status view
+     *
+     * @param key key of the satellite to select (see SatelliteGroups.createKey())
+     */
+    void showSatelliteStatus(int key) {
+        setSelectedSatellite(key);
+        mNavigationDrawerFragment.selectItem(NAVDRAWER_ITEM_STATUS);
+    }
+
     private synchronized void gpsStart() {
         if (mLocationManager == null || mProvider == null) {
             return;
@@ -760,6 +917,9 @@ public class GpsTestActivity extends AppCompatActivity
 
             @Override
             public void onStopped() {
+                if (mAnomalyDetector != null) {
+                    mAnomalyDetector.clear();
+                }
                 for (GpsTestListener listener : mGpsTestListeners) {
                     listener.onGnssStopped();
                 }
@@ -774,14 +934,14 @@ public class GpsTestActivity extends AppCompatActivity
 
             @Override
             public void onSatelliteStatusChanged(GnssStatus status) {
-                mGnssStatus = status;
-
                 // Stop progress bar after the first status information is obtained
                 setSupportProgressBarIndeterminateVisibility(Boolean.FALSE);
 
-                for (GpsTestListener listener : mGpsTestListeners) {
-                    listener.onSatelliteStatusChanged(mGnssStatus);
-                }
+                GnssEpoch epoch = mEpochPool.obtain();
+                GpsTestUtil.partitionGnssStatus(status, epoch.getGnss(), epoch.getSbas());
+                epoch.finish(false, SystemClock.elapsedRealtime(),
+                        PreferenceUtils.getSatSortOrderFromPreferences());
+                dispatchGnssEpoch(epoch);
             }
         };
         mLocationManager.registerGnssStatusCallback(mGnssStatusListener);
@@ -792,9 +952,18 @@ public class GpsTestActivity extends AppCompatActivity
         mGnssMeasurementsListener = new GnssMeasurementsEvent.Callback() {
             @Override
             public void onGnssMeasurementsReceived(GnssMeasurementsEvent event) {
+                if (mCycleSlipDetector != null) {
+                    updateCycleSlips(event);
+                }
+                if (mAnomalyDetector != null) {
+                    detectMeasurementAnomalies(event);
+                }
                 for (GpsTestListener listener : mGpsTestListeners) {
                     listener.onGnssMeasurementsReceived(event);
                 }
+                if (mPvtEngine != null) {
+                    mPvtEngine.onGnssMeasurements(event);
+                }
                 if (mWriteGnssMeasurementToLog) {
                     for (GnssMeasurement m : event.getMeasurements()) {
                         writeGnssMeasurementToLog(m);
@@ -842,12 +1011,26 @@ public class GpsTestActivity extends AppCompatActivity
             public void onGpsStatusChanged(int event) {
                 mLegacyStatus = mLocationManager.getGpsStatus(mLegacyStatus);
 
+                // Listeners get the same callbacks as with GnssStatus.Callback
                 switch (event) {
                     case GpsStatus.GPS_EVENT_STARTED:
+                        for (GpsTestListener listener : mGpsTestListeners) {
+                            listener.onGnssStarted();
+                        }
                         break;
                     case GpsStatus.GPS_EVENT_STOPPED:
+                        if (mAnomalyDetector != null) {
+                            mAnomalyDetector.clear();
+                        }
+                        for (GpsTestListener listener : mGpsTestListeners) {
+                            listener.onGnssStopped();
+                        }
                         break;
                     case GpsStatus.GPS_EVENT_FIRST_FIX:
+                        int ttffMillis = mLegacyStatus.getTimeToFirstFix();
+                        for (GpsTestListener listener : mGpsTestListeners) {
+                            listener.onGnssFirstFix(ttffMillis);
+                        }
                         break;
                     case GpsStatus.GPS_EVENT_SATELLITE_STATUS:
                         // Stop progress bar after the first status information is obtained
@@ -855,14 +1038,82 @@ public class GpsTestActivity extends AppCompatActivity
                         break;
                 }
 
-                for (GpsTestListener listener : mGpsTestListeners) {
-                    listener.onGpsStatusChanged(event, mLegacyStatus);
+                if (event == GpsStatus.GPS_EVENT_SATELLITE_STATUS) {
+                    GnssEpoch epoch = mEpochPool.obtain();
+                    GpsTestUtil.partitionGpsStatus(mLegacyStatus, epoch.getGnss(), epoch.getSbas());
+                    epoch.finish(true, SystemClock.elapsedRealtime(),
+                            PreferenceUtils.getSatSortOrderFromPreferences());
+                    dispatchGnssEpoch(epoch);
                 }
             }
         };
         mLocationManager.addGpsStatusListener(mLegacyStatusListener);
     }
 
+    /**
+     * Sends the epoch to all listeners and then releases our reference to it - listeners that
+     * keep the epoch after onGnssEpoch() returns must retain() it
+     *
+     * @param epoch a finished epoch with a reference owned by the caller
+     */
+    private void dispatchGnssEpoch(GnssEpoch epoch) {
+        if (mAnomalyDetector != null) {
+            detectStatusAnomalies(epoch);
+        }
+        for (GpsTestListener listener : mGpsTestListeners) {
+            listener.onGnssEpoch(epoch);
+        }
+        epoch.release();
+    }
+
+    private void detectStatusAnomalies(GnssEpoch epoch) {
+        SatelliteStatusPartition gnss = epoch.getGnss();
+        mAnomalyDetector.beginStatus();
+        for (int i = 0; i < gnss.size(); i++) {
+            mAnomalyDetector.addCn0(SatelliteGroups.createKey(gnss.getGnssType(i),
+                    gnss.getSvid(i)), gnss.getCn0DbHz(i));
+        }
+        dispatchGnssAnomalies(mAnomalyDetector.endStatus());
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private void detectMeasurementAnomalies(GnssMeasurementsEvent event) {
+        GnssClock clock = event.getClock();
+        int raised = mAnomalyDetector.beginMeasurements(clock.getTimeNanos(),
+                clock.getHardwareClockDiscontinuityCount(), clock.hasFullBiasNanos(),
+                clock.hasFullBiasNanos() ? clock.getFullBiasNanos() : 0,
+                clock.hasBiasNanos() ? clock.getBiasNanos() : 0,
+                clock.hasDriftNanosPerSecond(),
+                clock.hasDriftNanosPerSecond() ? clock.getDriftNanosPerSecond() : 0);
+        // AGC levels are only available on Android 8.0 and up
+        boolean agcSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+        for (GnssMeasurement m : event.getMeasurements()) {
+            boolean hasAgc = agcSupported && m.hasAutomaticGainControlLevelDb();
+            mAnomalyDetector.addMeasurement(m.getConstellationType(), m.getSvid(),
+                    m.hasCarrierFrequencyHz() ? m.getCarrierFrequencyHz() : 0,
+                    m.getPseudorangeRateMetersPerSecond(), hasAgc,
+                    hasAgc ? m.getAutomaticGainControlLevelDb() : 0);
+        }
+        dispatchGnssAnomalies(raised | mAnomalyDetector.endMeasurements());
+    }
+
+    /**
+     * Notifies listeners of each of the provided anomalies
+     *
+     * @param anomalies ANOMALY_* bits of the anomalies raised by mAnomalyDetector
+     */
+    private void dispatchGnssAnomalies(int anomalies) {
+        while (anomalies != AnomalyDetector.ANOMALY_NONE) {
+            int anomaly = Integer.lowestOneBit(anomalies);
+            anomalies &= ~anomaly;
+            double value = mAnomalyDetector.getValue(anomaly);
+            Log.w(TAG, "GNSS anomaly " + anomaly + " detected, value " + value);
+            for (GpsTestListener listener : mGpsTestListeners) {
+                listener.onGnssAnomaly(anomaly, value);
+            }
+        }
+    }
+
     private void removeStatusListener() {
         SharedPreferences settings = Application.getPrefs();
         boolean useGnssApis = settings.getBoolean(getString(R.string.pref_key_use_gnss_apis), true);
@@ -958,7 +1209,13 @@ public class GpsTestActivity extends AppCompatActivity
             mGnssNavMessageListener = new GnssNavigationMessage.Callback() {
                 @Override
                 public void onGnssNavigationMessageReceived(GnssNavigationMessage event) {
-                    writeNavMessageToLog(event);
+                    if (event.getStatus() != GnssNavigationMessage.STATUS_UNKNOWN) {
+                        mNavMessageDecoder.onNavigationMessage(event.getType(), event.getSvid(),
+                                event.getData());
+                    }
+                    if (mWriteNavMessageToLog) {
+                        writeNavMessageToLog(event);
+                    }
                 }
 
                 @Override
@@ -1082,11 +1339,64 @@ public class GpsTestActivity extends AppCompatActivity
         mWriteGnssMeasurementToLog = settings
                 .getBoolean(getString(R.string.pref_key_measurement_output), false);
 
-        if (mWriteGnssMeasurementToLog) {
+        boolean computeRawFix = settings.getBoolean(getString(R.string.pref_key_raw_fix), false);
+        if (computeRawFix) {
+            if (mPvtEngine == null) {
+                mPvtEngine = new PvtEngine(mEphemerisStore);
+            }
+            mPvtEngine.start();
+        } else {
+            mPvtEngine = null;
+        }
+
+        if (settings.getBoolean(getString(R.string.pref_key_adr_continuity), false)) {
+            if (mCycleSlipDetector == null) {
+                mCycleSlipDetector = new CycleSlipDetector();
+            }
+        } else {
+            mCycleSlipDetector = null;
+        }
+
+        if (mWriteGnssMeasurementToLog || mPvtEngine != null || mCycleSlipDetector != null
+                || mAnomalyDetector != null) {
             addGnssMeasurementsListener();
         }
     }
 
+    private void checkAnomalyDetection(SharedPreferences settings) {
+        if (settings.getBoolean(getString(R.string.pref_key_anomaly_detection), false)) {
+            if (mAnomalyDetector == null) {
+                mAnomalyDetector = new AnomalyDetector();
+            }
+        } else {
+            mAnomalyDetector = null;
+        }
+    }
+
+    private void checkLocationFilter(SharedPreferences settings) {
+        if (settings.getBoolean(getString(R.string.pref_key_location_filter), false)) {
+            if (mLocationFilter == null) {
+                mLocationFilter = new LocationFilter();
+            }
+        } else {
+            mLocationFilter = null;
+            mFilteredLocation = null;
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private void updateCycleSlips(GnssMeasurementsEvent event) {
+        long timeNanos = event.getClock().getTimeNanos();
+        for (GnssMeasurement m : event.getMeasurements()) {
+            mCycleSlipDetector.add(timeNanos, m.getConstellationType(), m.getSvid(),
+                    m.hasCarrierFrequencyHz() ? m.getCarrierFrequencyHz() : 0,
+                    m.getAccumulatedDeltaRangeState(), m.getAccumulatedDeltaRangeMeters(),
+                    m.getAccumulatedDeltaRangeUncertaintyMeters(),
+                    m.getPseudorangeRateMetersPerSecond(),
+                    m.getPseudorangeRateUncertaintyMetersPerSecond());
+        }
+    }
+
     private void checkNmeaLog(SharedPreferences settings) {
         mLogNmea = settings.getBoolean(getString(R.string.pref_key_nmea_output), true);
         mWriteNmeaTimestampToLog = settings
@@ -1095,10 +1405,12 @@ public class GpsTestActivity extends AppCompatActivity
 
     @RequiresApi(api = Build.VERSION_CODES.N)
     private void checkNavMessageOutput(SharedPreferences settings) {
-        boolean logNavMessage = settings
+        mWriteNavMessageToLog = settings
                 .getBoolean(getString(R.string.pref_key_navigation_message_output), false);
+        // Ephemerides for fixes from raw measurements are decoded from navigation messages
+        boolean computeRawFix = settings.getBoolean(getString(R.string.pref_key_raw_fix), false);
 
-        if (logNavMessage) {
+        if (mWriteNavMessageToLog || computeRawFix) {
             addNavMessageListener();
         } else {
             removeNavMessageListener();
@@ -1175,6 +1487,10 @@ public class GpsTestActivity extends AppCompatActivity
 
     public void onLocationChanged(Location location) {
         mLastLocation = location;
+        mTrack.add(location.getLatitude(), location.getLongitude());
+        if (mLocationFilter != null) {
+            location = filterLocation(location);
+        }
 
         updateGeomagneticField();
 
@@ -1186,6 +1502,64 @@ public class GpsTestActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * Returns a copy of the provided location with the position, altitude, speed and bearing
+     * smoothed by mLocationFilter, or the provided location if it can't be filtered
+     *
+     * @param location location from the location provider
+     * @return the filtered location
+     */
+    private Location filterLocation(Location location) {
+        if (!location.hasAccuracy() || location.getAccuracy() <= 0) {
+            mFilteredLocation = null;
+            return location;
+        }
+        long timeNanos;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            timeNanos = location.getElapsedRealtimeNanos();
+        } else {
+            timeNanos = location.getTime() * 1000000L;
+        }
+        double verticalAccuracy = location.getAccuracy() * VERTICAL_ACCURACY_FACTOR;
+        double speedAccuracy = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            if (location.hasVerticalAccuracy() && location.getVerticalAccuracyMeters() > 0) {
+                verticalAccuracy = location.getVerticalAccuracyMeters();
+            }
+            if (location.hasSpeedAccuracy()) {
+                speedAccuracy = location.getSpeedAccuracyMetersPerSecond();
+            }
+        }
+        boolean filtered = mLocationFilter.update(timeNanos, location.getLatitude(),
+                location.getLongitude(), location.getAccuracy(), location.hasAltitude(),
+                location.getAltitude(), verticalAccuracy,
+                location.hasSpeed() && location.hasBearing(), location.getSpeed(),
+                location.getBearing(), speedAccuracy);
+        if (!filtered) {
+            // The filter just started, so the location is passed on unchanged
+            mFilteredLocation = location;
+            return location;
+        }
+
+        Location result = new Location(location);
+        result.setLatitude(mLocationFilter.getLatitude());
+        result.setLongitude(mLocationFilter.getLongitude());
+        result.setAccuracy((float) mLocationFilter.getHorizontalAccuracy());
+        if (mLocationFilter.hasAltitude()) {
+            result.setAltitude(mLocationFilter.getAltitude());
+        }
+        result.setSpeed((float) mLocationFilter.getSpeed());
+        result.setBearing((float) mLocationFilter.getBearing());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            if (mLocationFilter.hasAltitude()) {
+                result.setVerticalAccuracyMeters((float) mLocationFilter.getVerticalAccuracy());
+            }
+            result.setSpeedAccuracyMetersPerSecond((float) mLocationFilter.getSpeedAccuracy());
+        }
+        mFilteredLocation = result;
+        return result;
+    }
+
     public void onStatusChanged(String provider, int status, Bundle extras) {
         for (GpsTestListener listener : mGpsTestListeners) {
             listener.onStatusChanged(provider, status, extras);
@@ -1276,8 +1650,8 @@ public class GpsTestActivity extends AppCompatActivity
         }
 
         // Correct for true north, if preference is set
-        if (mFaceTrueNorth && mGeomagneticField != null) {
-            orientation += mGeomagneticField.getDeclination();
+        if (mFaceTrueNorth && !Float.isNaN(mDeclination)) {
+            orientation += mDeclination;
             // Make sure value is between 0-360
             orientation = MathUtils.mod((float) orientation, 360.0f);
         }
@@ -1297,10 +1671,21 @@ public class GpsTestActivity extends AppCompatActivity
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
     }
 
+    /**
+     * Updates the magnetic declination for the last location, only evaluating the geomagnetic
+     * model when the location moves to a cell or month that isn't in mDeclinationCache
+     */
     private void updateGeomagneticField() {
-        mGeomagneticField = new GeomagneticField((float) mLastLocation.getLatitude(),
-                (float) mLastLocation.getLongitude(), (float) mLastLocation.getAltitude(),
-                mLastLocation.getTime());
+        int key = DeclinationCache.getKey(mLastLocation.getLatitude(),
+                mLastLocation.getLongitude(), mLastLocation.getTime());
+        float declination = mDeclinationCache.get(key);
+        if (Float.isNaN(declination)) {
+            declination = new GeomagneticField((float) mLastLocation.getLatitude(),
+                    (float) mLastLocation.getLongitude(), (float) mLastLocation.getAltitude(),
+                    mLastLocation.getTime()).getDeclination();
+            mDeclinationCache.put(key, declination);
+        }
+        mDeclination = declination;
     }
 
     private void sendLocation() {
@@ -1,10 +1,10 @@
 package com.android.gpstest;
 
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
-import android.location.GpsStatus;
 import android.location.LocationListener;
 
+import com.android.gpstest.model.GnssEpoch;
+
 /**
  * Interface used by GpsTestActivity to communicate with Gps*Fragments
  */
@@ -14,12 +14,14 @@ public interface GpsTestListener extends LocationListener {
 
     void gpsStop();
 
-    @Deprecated
-    void onGpsStatusChanged(int event, GpsStatus status);
-
     void onGnssFirstFix(int ttffMillis);
 
-    void onSatelliteStatusChanged(GnssStatus status);
+    /**
+     * Called with a snapshot of all signals for each GnssStatus or legacy GpsStatus update.  The
+     * epoch is shared with all listeners, so it must not be modified, and it must be retained
+     * if it's used after this method returns.
+     */
+    void onGnssEpoch(GnssEpoch epoch);
 
     void onGnssStarted();
 
@@ -30,4 +32,20 @@ public interface GpsTestListener extends LocationListener {
     void onOrientationChanged(double orientation, double tilt);
 
     void onNmeaMessage(String message, long timestamp);
+
+    /**
+     * Called when a satellite is selected, for example by tapping it in the sky view
+     *
+     * @param key key of the selected satellite (see SatelliteGroups.createKey()), or
+     *            SatelliteGroups.NO_KEY if no satellite is selected anymore
+     */
+    void onSatelliteSelected(int key);
+
+    /**
+     * Called when a sign of interference, jamming or spoofing is detected
+     *
+     * @param anomaly one of the AnomalyDetector.ANOMALY_* values
+     * @param value   the value that triggered the anomaly (see AnomalyDetector.getValue())
+     */
+    void onGnssAnomaly(int anomaly, double value);
 }
\ No newline at end of file
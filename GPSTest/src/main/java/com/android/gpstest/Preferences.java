@@ -19,6 +19,7 @@ package com.android.gpstest;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
 import android.preference.EditTextPreference;
@@ -175,6 +176,25 @@ public class Preferences extends PreferenceActivity implements
             mMapCategory.removePreference(checkBoxMapType);
         }
 
+        // Remove preference for drawing the sky view on a render thread if needed
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // Choreographer isn't available
+            PreferenceCategory skyCategory = (PreferenceCategory) findPreference(
+                    getString(R.string.pref_key_sky_category));
+            skyCategory.removePreference(findPreference(
+                    getString(R.string.pref_key_sky_render_thread)));
+        }
+
+        // Remove preferences that use raw measurements if needed
+        if (!GpsTestUtil.isGnssStatusListenerSupported()) {
+            // GNSS measurements aren't available
+            PreferenceCategory gpsCategory = (PreferenceCategory) findPreference(
+                    getString(R.string.pref_key_gps_category));
+            gpsCategory.removePreference(findPreference(getString(R.string.pref_key_raw_fix)));
+            gpsCategory.removePreference(
+                    findPreference(getString(R.string.pref_key_adr_continuity)));
+        }
+
         Application.getPrefs().registerOnSharedPreferenceChangeListener(this);
     }
 
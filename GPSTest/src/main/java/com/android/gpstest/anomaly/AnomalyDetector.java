@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.anomaly;
+
+import com.android.gpstest.util.IntIntHashMap;
+import com.android.gpstest.util.SlidingWindow;
+
+import java.util.Arrays;
+
+/**
+ * Detects signs of interference, jamming and spoofing in the GnssStatus and GnssMeasurement feeds:
+ * <ul>
+ * <li>ANOMALY_CN0_DROP - the average C/N0 drops well below its recent values, and most
+ * satellites drop at the same time (jamming)</li>
+ * <li>ANOMALY_UNIFORM_CN0 - many satellites have high C/N0 with almost no spread, which real
+ * signals at different elevations don't (spoofing)</li>
+ * <li>ANOMALY_AGC_CHANGE - the automatic gain control level of a band changes well beyond its
+ * recent values (jamming)</li>
+ * <li>ANOMALY_DOPPLER - the pseudorange rates of several satellites jump differently than the
+ * others, which the receiver clock or motion can't explain (spoofing)</li>
+ * <li>ANOMALY_CLOCK_JUMP - the receiver clock bias jumps without a reported discontinuity
+ * (spoofing)</li>
+ * </ul>
+ * Baselines are kept in sliding windows of recent epochs, which aren't updated while the
+ * anomaly they detect is active, and per signal state is kept in preallocated arrays, so the state
+ * is bounded.  Methods return the anomalies that were raised by the update - an anomaly is only
+ * raised again after it clears.  This class is not thread-safe.
+ */
+public class AnomalyDetector {
+
+    public static final int ANOMALY_NONE = 0;
+
+    public static final int ANOMALY_CN0_DROP = 1;
+
+    public static final int ANOMALY_UNIFORM_CN0 = 1 << 1;
+
+    public static final int ANOMALY_AGC_CHANGE = 1 << 2;
+
+    public static final int ANOMALY_DOPPLER = 1 << 3;
+
+    public static final int ANOMALY_CLOCK_JUMP = 1 << 4;
+
+    private static final int ANOMALY_COUNT = 5;
+
+    public static final int MAX_SIGNALS = 256;
+
+    // Number of epochs in the baselines, and how many are needed before detecting changes
+    private static final int WINDOW_EPOCHS = 30;
+
+    private static final int MIN_WINDOW_EPOCHS = 10;
+
+    // C/N0 drop - the average must drop by more than the larger of these, and most satellites
+    // must drop by at least SATELLITE_DROP_DB from their recent average
+    private static final int MIN_CN0_SATELLITES = 4;
+
+    private static final double CN0_DROP_DB = 6.0;
+
+    private static final double CN0_DROP_SIGMAS = 3.0;
+
+    private static final float SATELLITE_DROP_DB = 3.0f;
+
+    private static final double DROPPED_FRACTION = 0.75;
+
+    // Weight of each epoch in the recent average C/N0 of each satellite
+    private static final float SATELLITE_CN0_WEIGHT = 0.1f;
+
+    // Uniform C/N0
+    private static final int MIN_UNIFORM_SATELLITES = 6;
+
+    private static final double UNIFORM_MIN_CN0_DBHZ = 45.0;
+
+    private static final double UNIFORM_MAX_DEVIATION_DB = 2.0;
+
+    // AGC change, per band
+    private static final double AGC_CHANGE_DB = 4.0;
+
+    private static final double AGC_SIGMAS = 4.0;
+
+    private static final double L1_BAND_MIN_HZ = 1500.0E6;
+
+    // Doppler - jumps in the pseudorange rate of a signal relative to the median jump of all
+    // signals, in meters per second per second
+    private static final double DOPPLER_JUMP_MPS2 = 10.0;
+
+    private static final int MIN_DOPPLER_SIGNALS = 4;
+
+    private static final int MIN_INCONSISTENT_SIGNALS = 2;
+
+    private static final double MAX_GAP_SECONDS = 2.0;
+
+    // Clock bias that isn't explained by the clock drift
+    private static final double CLOCK_JUMP_NANOS = 1000.0;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private int mActive;
+
+    private final double[] mValues = new double[ANOMALY_COUNT];
+
+    // C/N0 state
+    private final SlidingWindow mCn0Window = new SlidingWindow(WINDOW_EPOCHS);
+
+    private final IntIntHashMap mSatelliteByKey = new IntIntHashMap(MAX_SIGNALS);
+
+    private final float[] mSatelliteCn0 = new float[MAX_SIGNALS];
+
+    private int mSatelliteCount;
+
+    private int mStatusCount;
+
+    private int mStatusDropped;
+
+    private double mStatusSum;
+
+    private double mStatusSumOfSquares;
+
+    // Measurement state
+    private final SlidingWindow mL1AgcWindow = new SlidingWindow(WINDOW_EPOCHS);
+
+    private final SlidingWindow mOtherAgcWindow = new SlidingWindow(WINDOW_EPOCHS);
+
+    private double mL1AgcSum;
+
+    private int mL1AgcCount;
+
+    private double mOtherAgcSum;
+
+    private int mOtherAgcCount;
+
+    private final IntIntHashMap mSignalByKey = new IntIntHashMap(MAX_SIGNALS);
+
+    private final long[] mSignalTimeNanos = new long[MAX_SIGNALS];
+
+    private final double[] mSignalRate = new double[MAX_SIGNALS];
+
+    private int mSignalCount;
+
+    private final double[] mRateChanges = new double[MAX_SIGNALS];
+
+    private final double[] mSortedRateChanges = new double[MAX_SIGNALS];
+
+    private int mRateChangeCount;
+
+    private long mTimeNanos = NO_TIME;
+
+    private int mDiscontinuityCount;
+
+    private boolean mHasClock;
+
+    private long mFullBiasNanos;
+
+    private double mBiasNanos;
+
+    private double mDriftNanosPerSecond;
+
+    /**
+     * Starts a GnssStatus epoch
+     */
+    public void beginStatus() {
+        mStatusCount = 0;
+        mStatusDropped = 0;
+        mStatusSum = 0;
+        mStatusSumOfSquares = 0;
+    }
+
+    /**
+     * Adds the C/N0 of a satellite to the current GnssStatus epoch
+     *
+     * @param key    identifies the satellite, e.g. SatelliteGroups.createKey()
+     * @param cn0DbHz C/N0 of the satellite, or 0 if it isn't in view
+     */
+    public void addCn0(int key, float cn0DbHz) {
+        if (cn0DbHz <= 0.0f) {
+            return;
+        }
+        mStatusCount++;
+        mStatusSum += cn0DbHz;
+        mStatusSumOfSquares += cn0DbHz * cn0DbHz;
+
+        int i = mSatelliteByKey.get(key);
+        if (i == IntIntHashMap.NOT_FOUND) {
+            if (mSatelliteCount == MAX_SIGNALS) {
+                // Forget satellites that set long ago, to keep the state bounded
+                mSatelliteByKey.clear();
+                mSatelliteCount = 0;
+            }
+            i = mSatelliteCount++;
+            mSatelliteByKey.put(key, i);
+            mSatelliteCn0[i] = cn0DbHz;
+            return;
+        }
+        if (cn0DbHz <= mSatelliteCn0[i] - SATELLITE_DROP_DB) {
+            mStatusDropped++;
+        }
+        if ((mActive & ANOMALY_CN0_DROP) == 0) {
+            mSatelliteCn0[i] += SATELLITE_CN0_WEIGHT * (cn0DbHz - mSatelliteCn0[i]);
+        }
+    }
+
+    /**
+     * Ends the current GnssStatus epoch and checks it for anomalies
+     *
+     * @return the ANOMALY_* bits of the anomalies that were raised, or ANOMALY_NONE
+     */
+    public int endStatus() {
+        if (mStatusCount < MIN_CN0_SATELLITES) {
+            // Not enough satellites to tell, e.g. all signals were lost to jamming
+            return ANOMALY_NONE;
+        }
+        double mean = mStatusSum / mStatusCount;
+        double deviation = Math.sqrt(Math.max(0.0,
+                mStatusSumOfSquares / mStatusCount - mean * mean));
+        int raised = ANOMALY_NONE;
+
+        boolean drop = false;
+        double dropDb = mCn0Window.getMean() - mean;
+        if (mCn0Window.size() >= MIN_WINDOW_EPOCHS) {
+            drop = dropDb > Math.max(CN0_DROP_DB,
+                    CN0_DROP_SIGMAS * mCn0Window.getStandardDeviation())
+                    && mStatusDropped >= DROPPED_FRACTION * mStatusCount;
+        }
+        raised |= update(ANOMALY_CN0_DROP, drop, dropDb);
+        if (!drop) {
+            mCn0Window.add(mean);
+        }
+
+        boolean uniform = mStatusCount >= MIN_UNIFORM_SATELLITES
+                && mean >= UNIFORM_MIN_CN0_DBHZ && deviation <= UNIFORM_MAX_DEVIATION_DB;
+        raised |= update(ANOMALY_UNIFORM_CN0, uniform, deviation);
+        return raised;
+    }
+
+    /**
+     * Starts a GnssMeasurementsEvent and checks its clock for jumps
+     *
+     * @param timeNanos           GnssClock.getTimeNanos()
+     * @param discontinuityCount  GnssClock.getHardwareClockDiscontinuityCount()
+     * @param hasBias             true if GnssClock.hasFullBiasNanos()
+     * @param fullBiasNanos       GnssClock.getFullBiasNanos()
+     * @param biasNanos           GnssClock.getBiasNanos(), or 0 if it isn't available
+     * @param hasDrift            true if GnssClock.hasDriftNanosPerSecond()
+     * @param driftNanosPerSecond GnssClock.getDriftNanosPerSecond()
+     * @return ANOMALY_CLOCK_JUMP if it was raised, or ANOMALY_NONE
+     */
+    public int beginMeasurements(long timeNanos, int discontinuityCount, boolean hasBias,
+            long fullBiasNanos, double biasNanos, boolean hasDrift, double driftNanosPerSecond) {
+        mL1AgcSum = 0;
+        mL1AgcCount = 0;
+        mOtherAgcSum = 0;
+        mOtherAgcCount = 0;
+        mRateChangeCount = 0;
+
+        int raised = ANOMALY_NONE;
+        boolean hasClock = hasBias && hasDrift;
+        if (hasClock && mHasClock && discontinuityCount == mDiscontinuityCount
+                && mTimeNanos != NO_TIME) {
+            double dt = (timeNanos - mTimeNanos) * 1.0E-9;
+            if (dt > 0 && dt <= MAX_GAP_SECONDS) {
+                // Full biases are subtracted as longs, since doubles can't hold them to 1 ns
+                double change = (fullBiasNanos - mFullBiasNanos) + (biasNanos - mBiasNanos);
+                double jump = change - 0.5 * (mDriftNanosPerSecond + driftNanosPerSecond) * dt;
+                raised |= update(ANOMALY_CLOCK_JUMP, Math.abs(jump) > CLOCK_JUMP_NANOS, jump);
+            }
+        }
+        mTimeNanos = timeNanos;
+        mDiscontinuityCount = discontinuityCount;
+        mHasClock = hasClock;
+        mFullBiasNanos = fullBiasNanos;
+        mBiasNanos = biasNanos;
+        mDriftNanosPerSecond = driftNanosPerSecond;
+        return raised;
+    }
+
+    /**
+     * Adds a measurement to the current GnssMeasurementsEvent
+     *
+     * @param constellationType  GnssMeasurement.getConstellationType()
+     * @param svid               GnssMeasurement.getSvid()
+     * @param carrierFrequencyHz GnssMeasurement.getCarrierFrequencyHz(), or 0 if it isn't
+     *                           available
+     * @param pseudorangeRateMps GnssMeasurement.getPseudorangeRateMetersPerSecond()
+     * @param hasAgc             true if GnssMeasurement.hasAutomaticGainControlLevelDb()
+     * @param agcDb              GnssMeasurement.getAutomaticGainControlLevelDb()
+     */
+    public void addMeasurement(int constellationType, int svid, double carrierFrequencyHz,
+            double pseudorangeRateMps, boolean hasAgc, double agcDb) {
+        boolean l1Band = carrierFrequencyHz <= 0 || carrierFrequencyHz >= L1_BAND_MIN_HZ;
+        if (hasAgc) {
+            if (l1Band) {
+                mL1AgcSum += agcDb;
+                mL1AgcCount++;
+            } else {
+                mOtherAgcSum += agcDb;
+                mOtherAgcCount++;
+            }
+        }
+
+        int megahertz = (int) Math.round(carrierFrequencyHz * 1.0E-6);
+        int key = (constellationType << 24) | ((svid & 0xFF) << 16) | (megahertz & 0xFFFF);
+        int i = mSignalByKey.get(key);
+        if (i == IntIntHashMap.NOT_FOUND) {
+            if (mSignalCount == MAX_SIGNALS) {
+                mSignalByKey.clear();
+                mSignalCount = 0;
+            }
+            i = mSignalCount++;
+            mSignalByKey.put(key, i);
+            mSignalTimeNanos[i] = NO_TIME;
+        }
+        long lastTimeNanos = mSignalTimeNanos[i];
+        if (lastTimeNanos != NO_TIME && lastTimeNanos != mTimeNanos) {
+            double dt = (mTimeNanos - lastTimeNanos) * 1.0E-9;
+            if (dt > 0 && dt <= MAX_GAP_SECONDS && mRateChangeCount < MAX_SIGNALS) {
+                mRateChanges[mRateChangeCount++] = (pseudorangeRateMps - mSignalRate[i]) / dt;
+            }
+        }
+        mSignalTimeNanos[i] = mTimeNanos;
+        mSignalRate[i] = pseudorangeRateMps;
+    }
+
+    /**
+     * Ends the current GnssMeasurementsEvent and checks it for anomalies
+     *
+     * @return the ANOMALY_* bits of the anomalies that were raised, or ANOMALY_NONE
+     */
+    public int endMeasurements() {
+        int raised = ANOMALY_NONE;
+        if (mL1AgcCount > 0 || mOtherAgcCount > 0) {
+            double l1Change = checkAgc(mL1AgcWindow, mL1AgcSum, mL1AgcCount);
+            double otherChange = checkAgc(mOtherAgcWindow, mOtherAgcSum, mOtherAgcCount);
+            double change = Math.abs(l1Change) >= Math.abs(otherChange) ? l1Change : otherChange;
+            raised |= update(ANOMALY_AGC_CHANGE, change != 0.0, change);
+        }
+
+        if (mRateChangeCount >= MIN_DOPPLER_SIGNALS) {
+            // The receiver clock drift changes the rate of all signals by the same amount
+            System.arraycopy(mRateChanges, 0, mSortedRateChanges, 0, mRateChangeCount);
+            Arrays.sort(mSortedRateChanges, 0, mRateChangeCount);
+            double median = mSortedRateChanges[mRateChangeCount / 2];
+            int inconsistent = 0;
+            for (int i = 0; i < mRateChangeCount; i++) {
+                if (Math.abs(mRateChanges[i] - median) > DOPPLER_JUMP_MPS2) {
+                    inconsistent++;
+                }
+            }
+            raised |= update(ANOMALY_DOPPLER, inconsistent >= MIN_INCONSISTENT_SIGNALS,
+                    inconsistent);
+        }
+        return raised;
+    }
+
+    /**
+     * Compares the average AGC level of a band in this epoch to its window
+     *
+     * @return the change in AGC level if it's anomalous, or 0 if it isn't or the band has no AGC
+     * level in this epoch
+     */
+    private double checkAgc(SlidingWindow window, double sum, int count) {
+        if (count == 0) {
+            return 0.0;
+        }
+        double agc = sum / count;
+        double change = agc - window.getMean();
+        if (window.size() >= MIN_WINDOW_EPOCHS && Math.abs(change)
+                > Math.max(AGC_CHANGE_DB, AGC_SIGMAS * window.getStandardDeviation())) {
+            return change;
+        }
+        if ((mActive & ANOMALY_AGC_CHANGE) == 0) {
+            window.add(agc);
+        }
+        return 0.0;
+    }
+
+    /**
+     * Updates the state of an anomaly
+     *
+     * @return the anomaly if it was raised by this update, or ANOMALY_NONE
+     */
+    private int update(int anomaly, boolean detected, double value) {
+        if (!detected) {
+            mActive &= ~anomaly;
+            return ANOMALY_NONE;
+        }
+        mValues[Integer.numberOfTrailingZeros(anomaly)] = value;
+        if ((mActive & anomaly) != 0) {
+            return ANOMALY_NONE;
+        }
+        mActive |= anomaly;
+        return anomaly;
+    }
+
+    /**
+     * Returns the ANOMALY_* bits of the anomalies that are currently active
+     *
+     * @return the ANOMALY_* bits of the anomalies that are currently active
+     */
+    public int getActive() {
+        return mActive;
+    }
+
+    /**
+     * Returns the value that last triggered the provided anomaly - the C/N0 drop in dB for
+     * ANOMALY_CN0_DROP, the C/N0 standard deviation in dB for ANOMALY_UNIFORM_CN0, the AGC change
+     * in dB for ANOMALY_AGC_CHANGE, the number of inconsistent signals for ANOMALY_DOPPLER, and
+     * the clock bias jump in nanoseconds for ANOMALY_CLOCK_JUMP
+     *
+     * @param anomaly one of the ANOMALY_* values
+     * @return the value that last triggered the provided anomaly
+     */
+    public double getValue(int anomaly) {
+        return mValues[Integer.numberOfTrailingZeros(anomaly)];
+    }
+
+    /**
+     * Removes all state, e.g. when GNSS is restarted
+     */
+    public void clear() {
+        mActive = ANOMALY_NONE;
+        mCn0Window.clear();
+        mSatelliteByKey.clear();
+        mSatelliteCount = 0;
+        mL1AgcWindow.clear();
+        mOtherAgcWindow.clear();
+        mSignalByKey.clear();
+        mSignalCount = 0;
+        mTimeNanos = NO_TIME;
+        mHasClock = false;
+    }
+}
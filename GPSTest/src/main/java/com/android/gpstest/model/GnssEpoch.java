@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.android.gpstest.model.ConstellationType.GNSS;
+import static com.android.gpstest.model.ConstellationType.SBAS;
+
+/**
+ * A snapshot of all signals from a single GnssStatus (or legacy GpsStatus) update, built once by
+ * GpsTestActivity and shared by reference with every GpsTestListener.
+ *
+ * Epochs are obtained from a GnssEpochPool and filled by the producer, which then calls finish().
+ * After finish() the epoch must be treated as immutable.  Epochs are reference counted - the
+ * producer holds the first reference, and any consumer that keeps the epoch after the listener
+ * callback returns must call retain() and later release() it.  When the last reference is
+ * released the epoch is recycled by the pool, so it must not be used after release().
+ */
+public class GnssEpoch {
+
+    private final GnssEpochPool mPool;
+
+    private final AtomicInteger mRefCount = new AtomicInteger();
+
+    private final SatelliteStatusPartition mGnss = new SatelliteStatusPartition(GNSS);
+
+    private final SatelliteStatusPartition mSbas = new SatelliteStatusPartition(SBAS);
+
+    private boolean mIsLegacy;
+
+    private long mElapsedRealtimeMillis;
+
+    private float mCn0InViewAvg;
+
+    private float mCn0UsedAvg;
+
+    GnssEpoch(GnssEpochPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Clears this epoch and sets the reference count to 1, so it can be filled by the producer
+     */
+    void reset() {
+        mGnss.clear();
+        mSbas.clear();
+        mIsLegacy = false;
+        mElapsedRealtimeMillis = 0;
+        mCn0InViewAvg = 0.0f;
+        mCn0UsedAvg = 0.0f;
+        mRefCount.set(1);
+    }
+
+    /**
+     * Called by the producer after it has added all signals to getGnss() and getSbas().  Sorts
+     * the signals and calculates the average signal strengths - after this call the epoch must
+     * not be modified.
+     *
+     * @param isLegacy              true if the signals came from the legacy GpsStatus API (and
+     *                              are therefore SNR instead of C/N0), false if they came from
+     *                              GnssStatus
+     * @param elapsedRealtimeMillis time the epoch was received, from SystemClock.elapsedRealtime()
+     * @param sortBy                one of the SatelliteStatusPartition.SORT_BY_* options
+     */
+    public void finish(boolean isLegacy, long elapsedRealtimeMillis, int sortBy) {
+        mIsLegacy = isLegacy;
+        mElapsedRealtimeMillis = elapsedRealtimeMillis;
+        mGnss.sort(sortBy);
+        mSbas.sort(sortBy);
+
+        int inViewCount = mGnss.getInViewCount() + mSbas.getInViewCount();
+        if (inViewCount > 0) {
+            mCn0InViewAvg = (mGnss.getCn0InViewSum() + mSbas.getCn0InViewSum()) / inViewCount;
+        }
+        int usedCount = getUsedInFixCount();
+        if (usedCount > 0) {
+            mCn0UsedAvg = (mGnss.getCn0UsedSum() + mSbas.getCn0UsedSum()) / usedCount;
+        }
+    }
+
+    /**
+     * Adds a reference to this epoch, which must later be removed with release()
+     */
+    public void retain() {
+        if (mRefCount.getAndIncrement() <= 0) {
+            throw new IllegalStateException("Epoch has already been recycled");
+        }
+    }
+
+    /**
+     * Removes a reference to this epoch, recycling it if this was the last reference
+     */
+    public void release() {
+        int count = mRefCount.decrementAndGet();
+        if (count == 0) {
+            mPool.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("Epoch released more times than it was retained");
+        }
+    }
+
+    /**
+     * Returns the GNSS signals of this epoch
+     *
+     * @return the GNSS signals of this epoch
+     */
+    public SatelliteStatusPartition getGnss() {
+        return mGnss;
+    }
+
+    /**
+     * Returns the SBAS signals of this epoch
+     *
+     * @return the SBAS signals of this epoch
+     */
+    public SatelliteStatusPartition getSbas() {
+        return mSbas;
+    }
+
+    /**
+     * Returns true if the signals came from the legacy GpsStatus API, so signal strength is SNR,
+     * or false if they came from GnssStatus, so signal strength is C/N0
+     *
+     * @return true if the signals came from the legacy GpsStatus API, false if they came from
+     * GnssStatus
+     */
+    public boolean isLegacy() {
+        return mIsLegacy;
+    }
+
+    /**
+     * Returns the time this epoch was received, from SystemClock.elapsedRealtime()
+     *
+     * @return the time this epoch was received, from SystemClock.elapsedRealtime()
+     */
+    public long getElapsedRealtimeMillis() {
+        return mElapsedRealtimeMillis;
+    }
+
+    /**
+     * Returns the total number of GNSS and SBAS signals
+     *
+     * @return the total number of GNSS and SBAS signals
+     */
+    public int getSvCount() {
+        return mGnss.size() + mSbas.size();
+    }
+
+    /**
+     * Returns the total number of GNSS and SBAS signals used in the fix
+     *
+     * @return the total number of GNSS and SBAS signals used in the fix
+     */
+    public int getUsedInFixCount() {
+        return mGnss.getUsedInFixCount() + mSbas.getUsedInFixCount();
+    }
+
+    /**
+     * Returns the average signal strength (SNR if isLegacy() is true, C/N0 otherwise) of signals
+     * that are in view (i.e., value is not 0), or 0 if there are none
+     *
+     * @return the average signal strength of signals that are in view, or 0 if there are none
+     */
+    public float getCn0InViewAvg() {
+        return mCn0InViewAvg;
+    }
+
+    /**
+     * Returns the average signal strength (SNR if isLegacy() is true, C/N0 otherwise) of signals
+     * used in the fix, or 0 if there are none
+     *
+     * @return the average signal strength of signals used in the fix, or 0 if there are none
+     */
+    public float getCn0UsedAvg() {
+        return mCn0UsedAvg;
+    }
+}
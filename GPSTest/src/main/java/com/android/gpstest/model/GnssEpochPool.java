@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of GnssEpoch instances, so the arrays backing each epoch are reused instead of being
+ * allocated for every GnssStatus update.  Usually only two epochs are alive at a time - the one
+ * currently displayed and the one being built.
+ */
+public class GnssEpochPool {
+
+    private static final int MAX_POOL_SIZE = 4;
+
+    private final ArrayList<GnssEpoch> mFree = new ArrayList<>(MAX_POOL_SIZE);
+
+    /**
+     * Returns an empty epoch with a reference count of 1, owned by the caller
+     *
+     * @return an empty epoch with a reference count of 1
+     */
+    public GnssEpoch obtain() {
+        GnssEpoch epoch = null;
+        synchronized (mFree) {
+            if (!mFree.isEmpty()) {
+                epoch = mFree.remove(mFree.size() - 1);
+            }
+        }
+        if (epoch == null) {
+            epoch = new GnssEpoch(this);
+        }
+        epoch.reset();
+        return epoch;
+    }
+
+    /**
+     * Returns an epoch whose last reference was released to the pool
+     */
+    void recycle(GnssEpoch epoch) {
+        synchronized (mFree) {
+            if (mFree.size() < MAX_POOL_SIZE) {
+                mFree.add(epoch);
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+
+/**
+ * All signals currently received from a single physical satellite, identified by constellation
+ * and svid.  For example, a dual-frequency GPS satellite transmitting L1 and L5 is one
+ * SatelliteGroup with two bands.  Instances are owned and reused by SatelliteGroups.
+ */
+public class SatelliteGroup {
+
+    /**
+     * Maximum number of signals (carrier frequencies) tracked for a single satellite
+     */
+    public static final int MAX_BANDS = 5;
+
+    int mKey;
+
+    GnssType mGnssType;
+
+    int mSvid;
+
+    int mBandCount;
+
+    final float[] mCn0DbHz = new float[MAX_BANDS];
+
+    final float[] mCarrierFrequencyHz = new float[MAX_BANDS];
+
+    final boolean[] mUsedInFix = new boolean[MAX_BANDS];
+
+    float mElevationDegrees;
+
+    float mAzimuthDegrees;
+
+    boolean mHasAlmanac;
+
+    boolean mHasEphemeris;
+
+    /**
+     * Epoch of SatelliteGroups in which this satellite was last seen
+     */
+    int mEpoch;
+
+    SatelliteGroup() {
+    }
+
+    /**
+     * Resets this group to hold a new satellite with no signals
+     */
+    void reset(int key, GnssType gnssType, int svid) {
+        mKey = key;
+        mGnssType = gnssType;
+        mSvid = svid;
+        clearSignals();
+    }
+
+    /**
+     * Removes all signals, keeping the satellite identity
+     */
+    void clearSignals() {
+        mBandCount = 0;
+        mElevationDegrees = NO_DATA;
+        mAzimuthDegrees = NO_DATA;
+        mHasAlmanac = false;
+        mHasEphemeris = false;
+    }
+
+    /**
+     * Adds a signal to this satellite.  Bands are kept ordered by descending carrier frequency
+     * (e.g., L1 before L5) so their order is stable between epochs.  If a signal with the same
+     * carrier frequency already exists it's replaced, and signals beyond MAX_BANDS are dropped.
+     */
+    void addSignal(float cn0DbHz, float carrierFrequencyHz, float elevationDegrees,
+            float azimuthDegrees, boolean hasAlmanac, boolean hasEphemeris, boolean usedInFix) {
+        // Position and orbit data are per satellite, so any signal with data can provide it
+        if (elevationDegrees != NO_DATA || azimuthDegrees != NO_DATA) {
+            mElevationDegrees = elevationDegrees;
+            mAzimuthDegrees = azimuthDegrees;
+        }
+        mHasAlmanac |= hasAlmanac;
+        mHasEphemeris |= hasEphemeris;
+
+        int i = 0;
+        while (i < mBandCount && mCarrierFrequencyHz[i] > carrierFrequencyHz) {
+            i++;
+        }
+        if (i < mBandCount && mCarrierFrequencyHz[i] == carrierFrequencyHz) {
+            // Same band reported twice - keep the strongest signal
+            if (cn0DbHz > mCn0DbHz[i]) {
+                mCn0DbHz[i] = cn0DbHz;
+            }
+            mUsedInFix[i] |= usedInFix;
+            return;
+        }
+        if (i >= MAX_BANDS) {
+            return;
+        }
+        int last = Math.min(mBandCount, MAX_BANDS - 1);
+        for (int j = last; j > i; j--) {
+            mCn0DbHz[j] = mCn0DbHz[j - 1];
+            mCarrierFrequencyHz[j] = mCarrierFrequencyHz[j - 1];
+            mUsedInFix[j] = mUsedInFix[j - 1];
+        }
+        mCn0DbHz[i] = cn0DbHz;
+        mCarrierFrequencyHz[i] = carrierFrequencyHz;
+        mUsedInFix[i] = usedInFix;
+        if (mBandCount < MAX_BANDS) {
+            mBandCount++;
+        }
+    }
+
+    /**
+     * Returns a key that uniquely identifies this satellite - see SatelliteGroups.createKey()
+     *
+     * @return a key that uniquely identifies this satellite
+     */
+    public int getKey() {
+        return mKey;
+    }
+
+    public GnssType getGnssType() {
+        return mGnssType;
+    }
+
+    public int getSvid() {
+        return mSvid;
+    }
+
+    /**
+     * Returns the number of signals (bands) currently received from this satellite
+     *
+     * @return the number of signals (bands) currently received from this satellite
+     */
+    public int getBandCount() {
+        return mBandCount;
+    }
+
+    /**
+     * Returns the C/N0 (or SNR, if using the legacy GpsStatus API) of the given band
+     *
+     * @param band index of the band, between 0 and getBandCount() - 1
+     * @return the C/N0 (or SNR, if using the legacy GpsStatus API) of the given band
+     */
+    public float getCn0DbHz(int band) {
+        return mCn0DbHz[band];
+    }
+
+    /**
+     * Returns the carrier frequency of the given band in Hz, or NO_DATA if it isn't known
+     *
+     * @param band index of the band, between 0 and getBandCount() - 1
+     * @return the carrier frequency of the given band in Hz, or NO_DATA if it isn't known
+     */
+    public float getCarrierFrequencyHz(int band) {
+        return mCarrierFrequencyHz[band];
+    }
+
+    /**
+     * Returns true if the signal in the given band was used in the last fix
+     *
+     * @param band index of the band, between 0 and getBandCount() - 1
+     * @return true if the signal in the given band was used in the last fix
+     */
+    public boolean getUsedInFix(int band) {
+        return mUsedInFix[band];
+    }
+
+    /**
+     * Returns true if any signal from this satellite was used in the last fix
+     *
+     * @return true if any signal from this satellite was used in the last fix
+     */
+    public boolean getUsedInFix() {
+        for (int i = 0; i < mBandCount; i++) {
+            if (mUsedInFix[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the strongest C/N0 (or SNR) of all bands, or NO_DATA if the satellite isn't in view
+     *
+     * @return the strongest C/N0 (or SNR) of all bands, or NO_DATA if the satellite isn't in view
+     */
+    public float getMaxCn0DbHz() {
+        float max = NO_DATA;
+        for (int i = 0; i < mBandCount; i++) {
+            if (mCn0DbHz[i] > max) {
+                max = mCn0DbHz[i];
+            }
+        }
+        return max;
+    }
+
+    public float getElevationDegrees() {
+        return mElevationDegrees;
+    }
+
+    public float getAzimuthDegrees() {
+        return mAzimuthDegrees;
+    }
+
+    public boolean getHasAlmanac() {
+        return mHasAlmanac;
+    }
+
+    public boolean getHasEphemeris() {
+        return mHasEphemeris;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import com.android.gpstest.util.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Groups the signals of each epoch (one GnssStatus or GpsStatus update) by physical satellite
+ * (constellation + svid), so multi-frequency satellites are handled once instead of once per
+ * signal.  Groups are updated incrementally - satellites that are still in view keep their
+ * SatelliteGroup instance between epochs, and instances for satellites that drop out are recycled.
+ *
+ * Usage for each epoch is beginEpoch(), addSignal() for each signal, then endEpoch().  This class
+ * is not thread-safe.
+ */
+public class SatelliteGroups {
+
+    /**
+     * Key that doesn't identify any satellite - keys from createKey() are never negative
+     */
+    public static final int NO_KEY = -1;
+
+    private final IntIntHashMap mIndexByKey = new IntIntHashMap();
+
+    private final ArrayList<SatelliteGroup> mGroups = new ArrayList<>();
+
+    private final ArrayList<SatelliteGroup> mRecycled = new ArrayList<>();
+
+    private int mEpoch;
+
+    // Indexes of the groups in the order set by sortLike(), and the signal each was placed by
+    private int[] mOrder = new int[0];
+
+    private int[] mOrderSignal = new int[0];
+
+    private boolean[] mOrdered = new boolean[0];
+
+    /**
+     * Creates a key that uniquely identifies a satellite given its constellation and svid
+     *
+     * @param gnssType constellation of the satellite
+     * @param svid     identification number of the satellite within the constellation
+     * @return a key that uniquely identifies a satellite
+     */
+    public static int createKey(GnssType gnssType, int svid) {
+        return (gnssType.ordinal() << 16) | (svid & 0xFFFF);
+    }
+
+    /**
+     * Starts a new epoch.  Satellites that don't receive a signal via addSignal() before
+     * endEpoch() is called are removed.
+     */
+    public void beginEpoch() {
+        mEpoch++;
+    }
+
+    /**
+     * Adds a signal to the group for its satellite, creating the group if this is the first
+     * signal seen from the satellite
+     *
+     * @return the group the signal was added to
+     */
+    public SatelliteGroup addSignal(GnssType gnssType, int svid, float cn0DbHz,
+            float carrierFrequencyHz, float elevationDegrees, float azimuthDegrees,
+            boolean hasAlmanac, boolean hasEphemeris, boolean usedInFix) {
+        int key = createKey(gnssType, svid);
+        int index = mIndexByKey.get(key);
+        SatelliteGroup group;
+        if (index == IntIntHashMap.NOT_FOUND) {
+            group = mRecycled.isEmpty() ? new SatelliteGroup()
+                    : mRecycled.remove(mRecycled.size() - 1);
+            group.reset(key, gnssType, svid);
+            mIndexByKey.put(key, mGroups.size());
+            mGroups.add(group);
+        } else {
+            group = mGroups.get(index);
+            if (group.mEpoch != mEpoch) {
+                // First signal for this satellite in this epoch - drop signals from the last epoch
+                group.clearSignals();
+            }
+        }
+        group.mEpoch = mEpoch;
+        group.addSignal(cn0DbHz, carrierFrequencyHz, elevationDegrees, azimuthDegrees,
+                hasAlmanac, hasEphemeris, usedInFix);
+        return group;
+    }
+
+    /**
+     * Adds all signals in the provided partition to the groups for their satellites
+     *
+     * @param partition signals to add
+     */
+    public void addSignals(SatelliteStatusPartition partition) {
+        final int size = partition.size();
+        for (int i = 0; i < size; i++) {
+            addSignal(partition.getGnssType(i), partition.getSvid(i), partition.getCn0DbHz(i),
+                    partition.getCarrierFrequencyHz(i), partition.getElevationDegrees(i),
+                    partition.getAzimuthDegrees(i), partition.getHasAlmanac(i),
+                    partition.getHasEphemeris(i), partition.getUsedInFix(i));
+        }
+    }
+
+    /**
+     * Ends the current epoch, removing satellites that weren't seen in it
+     */
+    public void endEpoch() {
+        int i = 0;
+        while (i < mGroups.size()) {
+            SatelliteGroup group = mGroups.get(i);
+            if (group.mEpoch == mEpoch) {
+                i++;
+                continue;
+            }
+            // Swap the last group into this position so removal is O(1)
+            mIndexByKey.remove(group.mKey);
+            int last = mGroups.size() - 1;
+            SatelliteGroup lastGroup = mGroups.remove(last);
+            if (i != last) {
+                mGroups.set(i, lastGroup);
+                mIndexByKey.put(lastGroup.mKey, i);
+            }
+            mRecycled.add(group);
+        }
+    }
+
+    /**
+     * Removes all satellites
+     */
+    public void clear() {
+        mRecycled.addAll(mGroups);
+        mGroups.clear();
+        mIndexByKey.clear();
+    }
+
+    /**
+     * Returns the number of physical satellites currently tracked
+     *
+     * @return the number of physical satellites currently tracked
+     */
+    public int size() {
+        return mGroups.size();
+    }
+
+    /**
+     * Returns the satellite at the given index.  Order isn't meaningful and may change after
+     * endEpoch().
+     *
+     * @param index index between 0 and size() - 1
+     * @return the satellite at the given index
+     */
+    public SatelliteGroup get(int index) {
+        return mGroups.get(index);
+    }
+
+    /**
+     * Returns the satellite for the given constellation and svid, or null if it's not tracked
+     *
+     * @param gnssType constellation of the satellite
+     * @param svid     identification number of the satellite within the constellation
+     * @return the satellite for the given constellation and svid, or null if it's not tracked
+     */
+    public SatelliteGroup find(GnssType gnssType, int svid) {
+        int index = mIndexByKey.get(createKey(gnssType, svid));
+        return index == IntIntHashMap.NOT_FOUND ? null : mGroups.get(index);
+    }
+
+    /**
+     * Orders the satellites like the signals of the provided sorted partition - each satellite
+     * takes the position of the first of its signals, so all sort options of the partition also
+     * apply to satellites.  Satellites without a signal in the partition go last.  Must be called
+     * again after endEpoch(), which may reorder and remove satellites.
+     *
+     * @param partition the signals that were added to this epoch, already sorted
+     */
+    public void sortLike(SatelliteStatusPartition partition) {
+        final int size = mGroups.size();
+        if (mOrder.length < size) {
+            mOrder = new int[size * 2];
+            mOrderSignal = new int[size * 2];
+            mOrdered = new boolean[size * 2];
+        }
+        Arrays.fill(mOrdered, 0, size, false);
+        int position = 0;
+        for (int p = 0; p < partition.size() && position < size; p++) {
+            int signal = partition.getSortedIndex(p);
+            int index = mIndexByKey.get(createKey(partition.getGnssType(signal),
+                    partition.getSvid(signal)));
+            if (index != IntIntHashMap.NOT_FOUND && !mOrdered[index]) {
+                mOrdered[index] = true;
+                mOrder[position] = index;
+                mOrderSignal[position] = signal;
+                position++;
+            }
+        }
+        for (int index = 0; index < size && position < size; index++) {
+            if (!mOrdered[index]) {
+                mOrder[position] = index;
+                mOrderSignal[position] = NO_KEY;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Returns the satellite at the given position of the order set by sortLike()
+     *
+     * @param position position between 0 and size() - 1
+     * @return the satellite at the given position of the order set by sortLike()
+     */
+    public SatelliteGroup getSorted(int position) {
+        return mGroups.get(mOrder[position]);
+    }
+
+    /**
+     * Returns the index in the partition passed to sortLike() of the first signal of the
+     * satellite at the given position, for data that's kept per signal such as the SBAS type
+     *
+     * @param position position between 0 and size() - 1
+     * @return the index of the first signal of the satellite at the given position, or NO_KEY if
+     * the satellite had no signal in the partition
+     */
+    public int getSortedSignal(int position) {
+        return mOrderSignal[position];
+    }
+}
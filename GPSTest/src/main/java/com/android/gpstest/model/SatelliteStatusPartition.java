@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+
+/**
+ * The signals of one constellation type (GNSS or SBAS) from a single GnssStatus or GpsStatus
+ * update, stored in growable parallel primitive arrays instead of one SatelliteStatus object per
+ * signal.  Arrays only grow, so once the partition has seen the largest epoch no more allocations
+ * happen.  Values are read by index, between 0 and size() - 1.
+ *
+ * This class is not thread-safe.
+ */
+public class SatelliteStatusPartition {
+
+    /**
+     * Sort options - order must match arrays.xml sort_sats order
+     */
+    public static final int SORT_BY_CONSTELLATION = 0;
+    public static final int SORT_BY_CARRIER_FREQUENCY = 1;
+    public static final int SORT_BY_SIGNAL_STRENGTH = 2;
+    public static final int SORT_BY_USED_IN_FIX = 3;
+    public static final int SORT_BY_CONSTELLATION_CARRIER_FREQUENCY = 4;
+    public static final int SORT_BY_CONSTELLATION_SIGNAL_STRENGTH = 5;
+    public static final int SORT_BY_CONSTELLATION_USED_IN_FIX = 6;
+
+    private static final int FLAG_HAS_ALMANAC = 1;
+    private static final int FLAG_HAS_EPHEMERIS = 1 << 1;
+    private static final int FLAG_USED_IN_FIX = 1 << 2;
+    private static final int FLAG_HAS_CARRIER_FREQUENCY = 1 << 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final GnssType[] GNSS_TYPES = GnssType.values();
+
+    private static final SbasType[] SBAS_TYPES = SbasType.values();
+
+    private final ConstellationType mConstellationType;
+
+    private int mSize;
+
+    private int[] mSvid;
+
+    private byte[] mGnssType;
+
+    private byte[] mSbasType;
+
+    private float[] mCn0DbHz;
+
+    private float[] mElevationDegrees;
+
+    private float[] mAzimuthDegrees;
+
+    private float[] mCarrierFrequencyHz;
+
+    private byte[] mFlags;
+
+    private int[] mOrder;
+
+    private int mUsedInFixCount;
+
+    private int mInViewCount;
+
+    private float mCn0InViewSum;
+
+    private float mCn0UsedSum;
+
+    /**
+     * @param constellationType GNSS if this partition holds GNSS signals, or SBAS if it holds SBAS
+     *                          signals.  Used to decide whether sorting by constellation uses the
+     *                          GnssType or the SbasType.
+     */
+    public SatelliteStatusPartition(ConstellationType constellationType) {
+        mConstellationType = constellationType;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mSvid = grow(mSvid, capacity);
+        mGnssType = grow(mGnssType, capacity);
+        mSbasType = grow(mSbasType, capacity);
+        mCn0DbHz = grow(mCn0DbHz, capacity);
+        mElevationDegrees = grow(mElevationDegrees, capacity);
+        mAzimuthDegrees = grow(mAzimuthDegrees, capacity);
+        mCarrierFrequencyHz = grow(mCarrierFrequencyHz, capacity);
+        mFlags = grow(mFlags, capacity);
+        mOrder = grow(mOrder, capacity);
+    }
+
+    public ConstellationType getConstellationType() {
+        return mConstellationType;
+    }
+
+    /**
+     * Removes all signals, keeping the allocated capacity
+     */
+    public void clear() {
+        mSize = 0;
+        mUsedInFixCount = 0;
+        mInViewCount = 0;
+        mCn0InViewSum = 0.0f;
+        mCn0UsedSum = 0.0f;
+    }
+
+    /**
+     * Adds a signal to this partition
+     *
+     * @param carrierFrequencyHz carrier frequency of the signal, or NO_DATA if it isn't known
+     * @return the index of the added signal
+     */
+    public int add(int svid, GnssType gnssType, SbasType sbasType, float cn0DbHz,
+            boolean hasAlmanac, boolean hasEphemeris, boolean usedInFix, float elevationDegrees,
+            float azimuthDegrees, float carrierFrequencyHz) {
+        if (mSize == mSvid.length) {
+            allocate(mSize * 2);
+        }
+        int i = mSize;
+        mSvid[i] = svid;
+        mGnssType[i] = (byte) gnssType.ordinal();
+        mSbasType[i] = (byte) sbasType.ordinal();
+        mCn0DbHz[i] = cn0DbHz;
+        mElevationDegrees[i] = elevationDegrees;
+        mAzimuthDegrees[i] = azimuthDegrees;
+        mCarrierFrequencyHz[i] = carrierFrequencyHz;
+        int flags = 0;
+        if (hasAlmanac) {
+            flags |= FLAG_HAS_ALMANAC;
+        }
+        if (hasEphemeris) {
+            flags |= FLAG_HAS_EPHEMERIS;
+        }
+        if (usedInFix) {
+            flags |= FLAG_USED_IN_FIX;
+            mUsedInFixCount++;
+            mCn0UsedSum += cn0DbHz;
+        }
+        if (carrierFrequencyHz != NO_DATA) {
+            flags |= FLAG_HAS_CARRIER_FREQUENCY;
+        }
+        mFlags[i] = (byte) flags;
+        // If satellite is in view, add signal to calculate avg
+        if (cn0DbHz != 0.0f) {
+            mInViewCount++;
+            mCn0InViewSum += cn0DbHz;
+        }
+        mOrder[i] = i;
+        mSize++;
+        return i;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int getSvid(int i) {
+        return mSvid[i];
+    }
+
+    public GnssType getGnssType(int i) {
+        return GNSS_TYPES[mGnssType[i]];
+    }
+
+    public SbasType getSbasType(int i) {
+        return SBAS_TYPES[mSbasType[i]];
+    }
+
+    public float getCn0DbHz(int i) {
+        return mCn0DbHz[i];
+    }
+
+    public float getElevationDegrees(int i) {
+        return mElevationDegrees[i];
+    }
+
+    public float getAzimuthDegrees(int i) {
+        return mAzimuthDegrees[i];
+    }
+
+    public boolean getHasCarrierFrequency(int i) {
+        return (mFlags[i] & FLAG_HAS_CARRIER_FREQUENCY) != 0;
+    }
+
+    public float getCarrierFrequencyHz(int i) {
+        return mCarrierFrequencyHz[i];
+    }
+
+    public boolean getHasAlmanac(int i) {
+        return (mFlags[i] & FLAG_HAS_ALMANAC) != 0;
+    }
+
+    public boolean getHasEphemeris(int i) {
+        return (mFlags[i] & FLAG_HAS_EPHEMERIS) != 0;
+    }
+
+    public boolean getUsedInFix(int i) {
+        return (mFlags[i] & FLAG_USED_IN_FIX) != 0;
+    }
+
+    /**
+     * Returns the number of signals that were used in the fix
+     *
+     * @return the number of signals that were used in the fix
+     */
+    public int getUsedInFixCount() {
+        return mUsedInFixCount;
+    }
+
+    /**
+     * Returns the number of signals that are in view (i.e., C/N0 or SNR is not 0)
+     *
+     * @return the number of signals that are in view (i.e., C/N0 or SNR is not 0)
+     */
+    public int getInViewCount() {
+        return mInViewCount;
+    }
+
+    /**
+     * Returns the sum of the C/N0 (or SNR) of all signals that are in view
+     *
+     * @return the sum of the C/N0 (or SNR) of all signals that are in view
+     */
+    public float getCn0InViewSum() {
+        return mCn0InViewSum;
+    }
+
+    /**
+     * Returns the sum of the C/N0 (or SNR) of all signals used in the fix
+     *
+     * @return the sum of the C/N0 (or SNR) of all signals used in the fix
+     */
+    public float getCn0UsedSum() {
+        return mCn0UsedSum;
+    }
+
+    /**
+     * Returns the index of the signal at the given position in the order defined by the last call
+     * to sort(), or in the order signals were added if sort() hasn't been called since
+     *
+     * @param position position between 0 and size() - 1
+     * @return the index of the signal at the given position
+     */
+    public int getSortedIndex(int position) {
+        return mOrder[position];
+    }
+
+    /**
+     * Sorts the signals without moving the data, so positions can be translated to indexes with
+     * getSortedIndex().  Signals that are equal for the given option stay in the order they were
+     * added.
+     *
+     * @param sortBy one of the SORT_BY_* options
+     */
+    public void sort(int sortBy) {
+        for (int i = 0; i < mSize; i++) {
+            mOrder[i] = i;
+        }
+        // Lists are small (usually less than 100 signals), so insertion sort is fast and doesn't
+        // allocate like Collections.sort()
+        for (int i = 1; i < mSize; i++) {
+            int index = mOrder[i];
+            int j = i - 1;
+            while (j >= 0 && compare(sortBy, mOrder[j], index) > 0) {
+                mOrder[j + 1] = mOrder[j];
+                j--;
+            }
+            mOrder[j + 1] = index;
+        }
+    }
+
+    private int compare(int sortBy, int a, int b) {
+        int result;
+        switch (sortBy) {
+            case SORT_BY_CONSTELLATION:
+                result = compareType(a, b);
+                return result != 0 ? result : compareSvid(a, b);
+            case SORT_BY_CARRIER_FREQUENCY:
+                result = Float.compare(mCarrierFrequencyHz[a], mCarrierFrequencyHz[b]);
+                return result != 0 ? result : compareSvid(a, b);
+            case SORT_BY_SIGNAL_STRENGTH:
+                return Float.compare(mCn0DbHz[b], mCn0DbHz[a]);
+            case SORT_BY_USED_IN_FIX:
+                result = compareUsed(a, b);
+                return result != 0 ? result : compareSvid(a, b);
+            case SORT_BY_CONSTELLATION_CARRIER_FREQUENCY:
+                result = compareType(a, b);
+                if (result != 0) {
+                    return result;
+                }
+                result = Float.compare(mCarrierFrequencyHz[a], mCarrierFrequencyHz[b]);
+                return result != 0 ? result : compareSvid(a, b);
+            case SORT_BY_CONSTELLATION_SIGNAL_STRENGTH:
+                result = compareType(a, b);
+                return result != 0 ? result : Float.compare(mCn0DbHz[b], mCn0DbHz[a]);
+            case SORT_BY_CONSTELLATION_USED_IN_FIX:
+                result = compareType(a, b);
+                if (result != 0) {
+                    return result;
+                }
+                result = compareUsed(a, b);
+                return result != 0 ? result : compareSvid(a, b);
+            default:
+                return 0;
+        }
+    }
+
+    private int compareType(int a, int b) {
+        if (mConstellationType == ConstellationType.SBAS) {
+            return mSbasType[a] - mSbasType[b];
+        }
+        return mGnssType[a] - mGnssType[b];
+    }
+
+    private int compareSvid(int a, int b) {
+        return mSvid[a] < mSvid[b] ? -1 : (mSvid[a] == mSvid[b] ? 0 : 1);
+    }
+
+    /**
+     * Signals used in the fix are sorted first
+     */
+    private int compareUsed(int a, int b) {
+        return (mFlags[b] & FLAG_USED_IN_FIX) - (mFlags[a] & FLAG_USED_IN_FIX);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] newArray = new int[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, array.length);
+        }
+        return newArray;
+    }
+
+    private static byte[] grow(byte[] array, int capacity) {
+        byte[] newArray = new byte[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, array.length);
+        }
+        return newArray;
+    }
+
+    private static float[] grow(float[] array, int capacity) {
+        float[] newArray = new float[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, array.length);
+        }
+        return newArray;
+    }
+}
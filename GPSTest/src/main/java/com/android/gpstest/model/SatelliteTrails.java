@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import com.android.gpstest.util.IntIntHashMap;
+import com.android.gpstest.util.TrigTable;
+
+import java.util.Arrays;
+
+/**
+ * The recent path of each satellite across the sky, for drawing trails on the sky plot.
+ *
+ * Each satellite has a slot with a fixed-size ring buffer of points, so memory is bounded no
+ * matter how long the session is.  A point is only stored once the satellite has moved at least
+ * MIN_DISTANCE from the last stored point, and points older than the trail duration are removed
+ * in batches.  Points are stored already projected onto the sky plot, as x and y between -1 and 1
+ * with north up, so drawing only needs to scale them.
+ *
+ * Renderers can cache a path per slot and only append new points - getAddedCount() increases when
+ * points are appended, and getVersion() changes when points are removed or the slot is reused.
+ *
+ * This class is not thread-safe.
+ */
+public class SatelliteTrails {
+
+    /**
+     * Maximum number of points stored for each satellite
+     */
+    public static final int MAX_POINTS = 128;
+
+    /**
+     * Minimum distance between stored points, as a fraction of the sky plot radius (about one
+     * degree of elevation)
+     */
+    static final float MIN_DISTANCE = 0.01f;
+
+    // Expired points are removed once there are this many, so cached paths aren't rebuilt often
+    static final int REMOVE_BATCH = 8;
+
+    private static final int INITIAL_SLOTS = 32;
+
+    private long mDurationMillis;
+
+    private final IntIntHashMap mSlotByKey = new IntIntHashMap();
+
+    private int mSlotCount;
+
+    private int[] mFreeSlots = new int[INITIAL_SLOTS];
+
+    private int mFreeSlotCount;
+
+    private int[] mKey = new int[INITIAL_SLOTS];
+
+    private boolean[] mInUse = new boolean[INITIAL_SLOTS];
+
+    private int[] mHead = new int[INITIAL_SLOTS];
+
+    private int[] mCount = new int[INITIAL_SLOTS];
+
+    private int[] mVersion = new int[INITIAL_SLOTS];
+
+    private long[] mAddedCount = new long[INITIAL_SLOTS];
+
+    // Ring buffers of MAX_POINTS entries per slot
+    private float[] mX = new float[INITIAL_SLOTS * MAX_POINTS];
+
+    private float[] mY = new float[INITIAL_SLOTS * MAX_POINTS];
+
+    private long[] mTimeMillis = new long[INITIAL_SLOTS * MAX_POINTS];
+
+    /**
+     * @param durationMillis how long points are kept for, in milliseconds
+     */
+    public SatelliteTrails(long durationMillis) {
+        mDurationMillis = durationMillis;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        mDurationMillis = durationMillis;
+    }
+
+    /**
+     * Adds the current positions of the provided satellites, and removes expired points
+     *
+     * @param satellites satellites of the latest epoch
+     * @param timeMillis time of the epoch, in milliseconds
+     */
+    public void add(SatelliteGroups satellites, long timeMillis) {
+        int numSats = satellites.size();
+        for (int i = 0; i < numSats; i++) {
+            SatelliteGroup satellite = satellites.get(i);
+            float elevation = satellite.getElevationDegrees();
+            float azimuth = satellite.getAzimuthDegrees();
+            if (elevation == 0.0f && azimuth == 0.0f) {
+                // Position isn't known
+                continue;
+            }
+            float distance = 1.0f - elevation / 90.0f;
+            float x = distance * TrigTable.sin(azimuth);
+            float y = -distance * TrigTable.cos(azimuth);
+
+            int slot = mSlotByKey.get(satellite.getKey());
+            if (slot == IntIntHashMap.NOT_FOUND) {
+                slot = obtainSlot(satellite.getKey());
+            } else if (mCount[slot] > 0) {
+                int last = index(slot, mCount[slot] - 1);
+                float dx = x - mX[last];
+                float dy = y - mY[last];
+                if (dx * dx + dy * dy < MIN_DISTANCE * MIN_DISTANCE) {
+                    continue;
+                }
+            }
+            if (mCount[slot] == MAX_POINTS) {
+                removeOldest(slot, REMOVE_BATCH);
+            }
+            int index = index(slot, mCount[slot]);
+            mX[index] = x;
+            mY[index] = y;
+            mTimeMillis[index] = timeMillis;
+            mCount[slot]++;
+            mAddedCount[slot]++;
+        }
+
+        removeExpired(timeMillis - mDurationMillis);
+    }
+
+    /**
+     * Removes all trails
+     */
+    public void clear() {
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (mInUse[slot]) {
+                freeSlot(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of slots - trails are read for slots between 0 and getSlotCount() - 1,
+     * and unused slots have no points
+     *
+     * @return the number of slots
+     */
+    public int getSlotCount() {
+        return mSlotCount;
+    }
+
+    /**
+     * Returns the key (see SatelliteGroups.createKey()) of the satellite in the provided slot
+     *
+     * @return the key of the satellite in the provided slot
+     */
+    public int getKey(int slot) {
+        return mKey[slot];
+    }
+
+    /**
+     * Returns the number of points in the trail of the provided slot
+     *
+     * @return the number of points in the trail of the provided slot
+     */
+    public int getPointCount(int slot) {
+        return mCount[slot];
+    }
+
+    /**
+     * Returns the x coordinate of a point, between -1 (west) and 1 (east)
+     *
+     * @param slot  slot of the satellite
+     * @param point point index, from 0 (oldest) to getPointCount() - 1 (newest)
+     * @return the x coordinate of the point, between -1 and 1
+     */
+    public float getX(int slot, int point) {
+        return mX[index(slot, point)];
+    }
+
+    /**
+     * Returns the y coordinate of a point, between -1 (north) and 1 (south)
+     *
+     * @param slot  slot of the satellite
+     * @param point point index, from 0 (oldest) to getPointCount() - 1 (newest)
+     * @return the y coordinate of the point, between -1 and 1
+     */
+    public float getY(int slot, int point) {
+        return mY[index(slot, point)];
+    }
+
+    /**
+     * Returns the number of points ever appended to the provided slot - if the version hasn't
+     * changed, the newest (getAddedCount() - cached count) points are new since a cache was built
+     *
+     * @return the number of points appended to the provided slot
+     */
+    public long getAddedCount(int slot) {
+        return mAddedCount[slot];
+    }
+
+    /**
+     * Returns a number that changes whenever points are removed from the provided slot or the slot
+     * is reused for another satellite, meaning any cached path for the slot must be rebuilt
+     *
+     * @return the version of the provided slot
+     */
+    public int getVersion(int slot) {
+        return mVersion[slot];
+    }
+
+    private int index(int slot, int point) {
+        return slot * MAX_POINTS + (mHead[slot] + point) % MAX_POINTS;
+    }
+
+    private void removeExpired(long oldestTimeMillis) {
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (!mInUse[slot]) {
+                continue;
+            }
+            int expired = 0;
+            while (expired < mCount[slot]
+                    && mTimeMillis[index(slot, expired)] < oldestTimeMillis) {
+                expired++;
+            }
+            if (expired == mCount[slot]) {
+                // Satellite hasn't been seen for the whole duration
+                freeSlot(slot);
+            } else if (expired >= REMOVE_BATCH) {
+                removeOldest(slot, expired);
+            }
+        }
+    }
+
+    private void removeOldest(int slot, int count) {
+        mHead[slot] = (mHead[slot] + count) % MAX_POINTS;
+        mCount[slot] -= count;
+        mVersion[slot]++;
+    }
+
+    private int obtainSlot(int key) {
+        int slot;
+        if (mFreeSlotCount > 0) {
+            slot = mFreeSlots[--mFreeSlotCount];
+        } else {
+            if (mSlotCount == mKey.length) {
+                grow(mSlotCount * 2);
+            }
+            slot = mSlotCount++;
+        }
+        mKey[slot] = key;
+        mInUse[slot] = true;
+        mHead[slot] = 0;
+        mCount[slot] = 0;
+        mAddedCount[slot] = 0;
+        mVersion[slot]++;
+        mSlotByKey.put(key, slot);
+        return slot;
+    }
+
+    private void freeSlot(int slot) {
+        mSlotByKey.remove(mKey[slot]);
+        mInUse[slot] = false;
+        mCount[slot] = 0;
+        mVersion[slot]++;
+        mFreeSlots[mFreeSlotCount++] = slot;
+    }
+
+    private void grow(int slots) {
+        mFreeSlots = Arrays.copyOf(mFreeSlots, slots);
+        mKey = Arrays.copyOf(mKey, slots);
+        mInUse = Arrays.copyOf(mInUse, slots);
+        mHead = Arrays.copyOf(mHead, slots);
+        mCount = Arrays.copyOf(mCount, slots);
+        mVersion = Arrays.copyOf(mVersion, slots);
+        mAddedCount = Arrays.copyOf(mAddedCount, slots);
+        mX = Arrays.copyOf(mX, slots * MAX_POINTS);
+        mY = Arrays.copyOf(mY, slots * MAX_POINTS);
+        mTimeMillis = Arrays.copyOf(mTimeMillis, slots * MAX_POINTS);
+    }
+}
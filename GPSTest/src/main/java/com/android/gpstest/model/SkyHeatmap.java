@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import com.android.gpstest.util.IntIntHashMap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+
+/**
+ * Signal strength (C/N0 or SNR) accumulated over a session on a fixed azimuth/elevation grid, for
+ * finding obstructions around an antenna.  Each cell keeps the mean signal strength and the
+ * number of samples, in a layer per constellation and band, plus a combined layer of all signals
+ * that's shown on the sky plot.  Layers are allocated the first time a signal of their
+ * constellation and band is seen, and adding an epoch costs O(signals).
+ *
+ * Cells of the combined layer that changed since the last call to drainChangedCells() are
+ * tracked, so a rendered image can be updated incrementally.
+ *
+ * Methods are synchronized, so signals can be added on the thread that draws the sky plot while
+ * the heatmap is exported from the UI thread.
+ */
+public class SkyHeatmap {
+
+    /**
+     * Size of a cell, in degrees of azimuth and elevation
+     */
+    public static final int CELL_DEGREES = 2;
+
+    public static final int AZIMUTH_CELLS = 360 / CELL_DEGREES;
+
+    public static final int ELEVATION_CELLS = 90 / CELL_DEGREES;
+
+    public static final int CELL_COUNT = AZIMUTH_CELLS * ELEVATION_CELLS;
+
+    /**
+     * Band of signals without a carrier frequency (e.g., from the legacy GpsStatus API)
+     */
+    public static final int UNKNOWN_BAND = 0;
+
+    // Identifies the binary format written by writeBinary()
+    static final int BINARY_MAGIC = 0x47534B48;  // "GSKH"
+
+    static final int BINARY_VERSION = 1;
+
+    private static final int INITIAL_LAYERS = 4;
+
+    private final IntIntHashMap mLayerByKey = new IntIntHashMap();
+
+    private int mNumLayers;
+
+    private GnssType[] mLayerGnssType = new GnssType[INITIAL_LAYERS];
+
+    private int[] mLayerBand = new int[INITIAL_LAYERS];
+
+    private float[][] mLayerMeans = new float[INITIAL_LAYERS][];
+
+    private int[][] mLayerCounts = new int[INITIAL_LAYERS][];
+
+    // Combined layer of all signals
+    private final float[] mMean = new float[CELL_COUNT];
+
+    private final int[] mCount = new int[CELL_COUNT];
+
+    // Combined cells changed since the last drainChangedCells()
+    private final boolean[] mChanged = new boolean[CELL_COUNT];
+
+    private final int[] mChangedCells = new int[CELL_COUNT];
+
+    private int mChangedCount;
+
+    // Incremented when all cells are cleared
+    private int mGeneration;
+
+    /**
+     * Adds the signal strength of each band of the provided satellites to the cell at the
+     * satellite's position.  Satellites without a position and bands that aren't in view are
+     * ignored.
+     *
+     * @param satellites satellites of the latest epoch
+     */
+    public synchronized void add(SatelliteGroups satellites) {
+        int numSats = satellites.size();
+        for (int i = 0; i < numSats; i++) {
+            SatelliteGroup satellite = satellites.get(i);
+            float elevation = satellite.getElevationDegrees();
+            float azimuth = satellite.getAzimuthDegrees();
+            if ((elevation == 0.0f && azimuth == 0.0f) || elevation < 0.0f) {
+                // Position isn't known, or the satellite is below the horizon
+                continue;
+            }
+            int cell = getCell(elevation, azimuth);
+            int numBands = satellite.getBandCount();
+            for (int band = 0; band < numBands; band++) {
+                float cn0 = satellite.getCn0DbHz(band);
+                if (cn0 <= NO_DATA) {
+                    continue;
+                }
+                int layer = obtainLayer(satellite.getGnssType(),
+                        getBand(satellite.getGnssType(), satellite.getCarrierFrequencyHz(band)));
+                addSample(mLayerMeans[layer], mLayerCounts[layer], cell, cn0);
+                addSample(mMean, mCount, cell, cn0);
+                if (!mChanged[cell]) {
+                    mChanged[cell] = true;
+                    mChangedCells[mChangedCount++] = cell;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all samples
+     */
+    public synchronized void clear() {
+        mLayerByKey.clear();
+        Arrays.fill(mLayerGnssType, null);
+        Arrays.fill(mLayerMeans, null);
+        Arrays.fill(mLayerCounts, null);
+        mNumLayers = 0;
+        Arrays.fill(mMean, 0.0f);
+        Arrays.fill(mCount, 0);
+        Arrays.fill(mChanged, false);
+        mChangedCount = 0;
+        mGeneration++;
+    }
+
+    /**
+     * Returns a number that changes whenever all cells are cleared, meaning a rendered image of
+     * the heatmap must be rebuilt with getMeans()
+     *
+     * @return a number that changes whenever all cells are cleared
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Copies the mean signal strength of every cell of the combined layer, and forgets changed
+     * cells
+     *
+     * @param means array of at least CELL_COUNT values, set to the mean of each cell or 0 if the
+     *              cell has no samples
+     */
+    public synchronized void getMeans(float[] means) {
+        System.arraycopy(mMean, 0, means, 0, CELL_COUNT);
+        forgetChangedCells();
+    }
+
+    /**
+     * Copies the cells of the combined layer that changed since the last call, and their new
+     * means
+     *
+     * @param cells array of at least CELL_COUNT values, set to the indexes of changed cells
+     * @param means array of at least CELL_COUNT values, set to the means of changed cells
+     * @return the number of changed cells
+     */
+    public synchronized int drainChangedCells(int[] cells, float[] means) {
+        int count = mChangedCount;
+        for (int i = 0; i < count; i++) {
+            int cell = mChangedCells[i];
+            cells[i] = cell;
+            means[i] = mMean[cell];
+        }
+        forgetChangedCells();
+        return count;
+    }
+
+    /**
+     * Returns the number of constellation and band layers
+     *
+     * @return the number of constellation and band layers
+     */
+    public synchronized int getLayerCount() {
+        return mNumLayers;
+    }
+
+    /**
+     * Returns the constellation of the provided layer
+     *
+     * @return the constellation of the provided layer
+     */
+    public synchronized GnssType getLayerGnssType(int layer) {
+        return mLayerGnssType[layer];
+    }
+
+    /**
+     * Returns the band of the provided layer, see getBand()
+     *
+     * @return the band of the provided layer
+     */
+    public synchronized int getLayerBand(int layer) {
+        return mLayerBand[layer];
+    }
+
+    /**
+     * Returns the mean signal strength of a cell in the provided layer
+     *
+     * @return the mean signal strength of the cell, or 0 if the cell has no samples
+     */
+    public synchronized float getMean(int layer, int cell) {
+        return mLayerMeans[layer][cell];
+    }
+
+    /**
+     * Returns the number of samples in a cell of the provided layer
+     *
+     * @return the number of samples in the cell
+     */
+    public synchronized int getCount(int layer, int cell) {
+        return mLayerCounts[layer][cell];
+    }
+
+    /**
+     * Writes the cells that have samples as CSV, with one line per constellation, band and cell
+     *
+     * @param writer writer to write to, which isn't closed
+     */
+    public synchronized void writeCsv(Writer writer) throws IOException {
+        writer.write("constellation,band_mhz,azimuth_deg,elevation_deg,mean_cn0_dbhz,count\n");
+        for (int layer = 0; layer < mNumLayers; layer++) {
+            float[] mean = mLayerMeans[layer];
+            int[] count = mLayerCounts[layer];
+            for (int cell = 0; cell < CELL_COUNT; cell++) {
+                if (count[cell] == 0) {
+                    continue;
+                }
+                writer.write(String.format(Locale.US, "%s,%d,%d,%d,%.2f,%d\n",
+                        mLayerGnssType[layer].name(), mLayerBand[layer],
+                        getCellAzimuth(cell), getCellElevation(cell), mean[cell], count[cell]));
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the cells that have samples in a compact big-endian binary format:
+     *
+     * int magic, int version, int cell size in degrees, int layer count, and for each layer:
+     * UTF constellation name, int band in MHz, int cell count, and for each cell with samples:
+     * short cell index (elevation row * AZIMUTH_CELLS + azimuth column), float mean, int count.
+     *
+     * @param out stream to write to, which isn't closed
+     */
+    public synchronized void writeBinary(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(BINARY_MAGIC);
+        data.writeInt(BINARY_VERSION);
+        data.writeInt(CELL_DEGREES);
+        data.writeInt(mNumLayers);
+        for (int layer = 0; layer < mNumLayers; layer++) {
+            float[] mean = mLayerMeans[layer];
+            int[] count = mLayerCounts[layer];
+            int cells = 0;
+            for (int cell = 0; cell < CELL_COUNT; cell++) {
+                if (count[cell] != 0) {
+                    cells++;
+                }
+            }
+            data.writeUTF(mLayerGnssType[layer].name());
+            data.writeInt(mLayerBand[layer]);
+            data.writeInt(cells);
+            for (int cell = 0; cell < CELL_COUNT; cell++) {
+                if (count[cell] != 0) {
+                    data.writeShort(cell);
+                    data.writeFloat(mean[cell]);
+                    data.writeInt(count[cell]);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Returns the cell that contains the provided position
+     *
+     * @param elevation elevation in degrees, between 0 and 90
+     * @param azimuth   azimuth in degrees, of any magnitude
+     * @return the index of the cell that contains the position
+     */
+    public static int getCell(float elevation, float azimuth) {
+        int row = Math.max(0, Math.min(ELEVATION_CELLS - 1, (int) (elevation / CELL_DEGREES)));
+        int column = (int) Math.floor(azimuth / CELL_DEGREES) % AZIMUTH_CELLS;
+        if (column < 0) {
+            column += AZIMUTH_CELLS;
+        }
+        return row * AZIMUTH_CELLS + column;
+    }
+
+    /**
+     * Returns the azimuth at the start of the provided cell, in degrees
+     *
+     * @return the azimuth at the start of the provided cell, in degrees
+     */
+    public static int getCellAzimuth(int cell) {
+        return (cell % AZIMUTH_CELLS) * CELL_DEGREES;
+    }
+
+    /**
+     * Returns the elevation at the bottom of the provided cell, in degrees
+     *
+     * @return the elevation at the bottom of the provided cell, in degrees
+     */
+    public static int getCellElevation(int cell) {
+        return (cell / AZIMUTH_CELLS) * CELL_DEGREES;
+    }
+
+    /**
+     * Returns the band that signals at the provided carrier frequency are grouped into - the
+     * carrier frequency rounded to MHz, with all GLONASS FDMA channels of a band grouped together
+     *
+     * @return the band for the provided carrier frequency in MHz, or UNKNOWN_BAND if the carrier
+     * frequency isn't known
+     */
+    public static int getBand(GnssType gnssType, float carrierFrequencyHz) {
+        if (carrierFrequencyHz == NO_DATA) {
+            return UNKNOWN_BAND;
+        }
+        float mhz = carrierFrequencyHz / 1.0E6f;
+        if (gnssType == GnssType.GLONASS) {
+            // Same ranges as GpsTestUtil.getCarrierFrequencyLabel()
+            if (mhz >= 1598.0f && mhz <= 1610.0f) {
+                return 1602;
+            } else if (mhz >= 1242.0f && mhz <= 1252.0f) {
+                return 1246;
+            }
+        }
+        return Math.round(mhz);
+    }
+
+    private static void addSample(float[] mean, int[] count, int cell, float value) {
+        int n = ++count[cell];
+        // Running mean, so sums don't lose precision over long sessions
+        mean[cell] += (value - mean[cell]) / n;
+    }
+
+    private void forgetChangedCells() {
+        for (int i = 0; i < mChangedCount; i++) {
+            mChanged[mChangedCells[i]] = false;
+        }
+        mChangedCount = 0;
+    }
+
+    private int obtainLayer(GnssType gnssType, int band) {
+        int key = (gnssType.ordinal() << 16) | band;
+        int layer = mLayerByKey.get(key);
+        if (layer != IntIntHashMap.NOT_FOUND) {
+            return layer;
+        }
+        if (mNumLayers == mLayerBand.length) {
+            int capacity = mNumLayers * 2;
+            mLayerGnssType = Arrays.copyOf(mLayerGnssType, capacity);
+            mLayerBand = Arrays.copyOf(mLayerBand, capacity);
+            mLayerMeans = Arrays.copyOf(mLayerMeans, capacity);
+            mLayerCounts = Arrays.copyOf(mLayerCounts, capacity);
+        }
+        layer = mNumLayers++;
+        mLayerGnssType[layer] = gnssType;
+        mLayerBand[layer] = band;
+        mLayerMeans[layer] = new float[CELL_COUNT];
+        mLayerCounts[layer] = new int[CELL_COUNT];
+        mLayerByKey.put(key, layer);
+        return layer;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.model;
+
+import java.util.Arrays;
+
+/**
+ * The track of the device during a session, simplified as fixes arrive so long sessions at high
+ * fix rates stay small enough to draw.
+ *
+ * Fixes closer than the minimum distance to the last fix are dropped (radial distance).  The
+ * remaining fixes go into a bounded window that starts at the last vertex of the track - while
+ * every fix in the window is within the tolerance of the line from that vertex to the newest fix,
+ * the fixes in between aren't needed.  When a fix breaks the tolerance, or the window is full,
+ * the previous fix becomes a new vertex.  If the track reaches the maximum number of vertices, it
+ * is simplified again with Douglas-Peucker and twice the tolerance, so memory stays bounded no
+ * matter how long the session is.
+ *
+ * Vertices are stored in primitive arrays.  Renderers can mirror the track by appending new
+ * vertices, and rebuild it when getVersion() changes.  The newest fix is always available via
+ * getLastLatitude() and getLastLongitude(), so the drawn track can end at the current position.
+ *
+ * This class is not thread-safe.
+ */
+public class TrackRecorder {
+
+    public static final double DEFAULT_TOLERANCE_METERS = 2.0;
+
+    public static final double DEFAULT_MIN_DISTANCE_METERS = 1.0;
+
+    public static final int DEFAULT_MAX_VERTICES = 10000;
+
+    // Maximum number of fixes checked against the tolerance for each new fix
+    static final int MAX_WINDOW = 64;
+
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final double mMinDistanceMeters;
+
+    private final int mMaxVertices;
+
+    private double mToleranceMeters;
+
+    private int mVertexCount;
+
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+
+    // Fixes since the last vertex, in meters from the last vertex
+    private final double[] mWindowX = new double[MAX_WINDOW];
+
+    private final double[] mWindowY = new double[MAX_WINDOW];
+
+    private final double[] mWindowLatitudes = new double[MAX_WINDOW];
+
+    private final double[] mWindowLongitudes = new double[MAX_WINDOW];
+
+    private int mWindowCount;
+
+    // Meters per degree of longitude near the track, for the local flat projection
+    private double mMetersPerDegreeLongitude;
+
+    private boolean mHasLast;
+
+    private double mLastLatitude, mLastLongitude;
+
+    private int mVersion;
+
+    // Reused by simplify()
+    private boolean[] mKeep = new boolean[0];
+
+    private int[] mStack = new int[0];
+
+    public TrackRecorder() {
+        this(DEFAULT_TOLERANCE_METERS, DEFAULT_MIN_DISTANCE_METERS, DEFAULT_MAX_VERTICES);
+    }
+
+    /**
+     * @param toleranceMeters   maximum distance between a dropped fix and the simplified track
+     * @param minDistanceMeters fixes closer than this to the previous fix are dropped
+     * @param maxVertices       maximum number of vertices before the track is simplified again
+     */
+    public TrackRecorder(double toleranceMeters, double minDistanceMeters, int maxVertices) {
+        if (maxVertices < 4) {
+            throw new IllegalArgumentException("maxVertices must be at least 4");
+        }
+        mToleranceMeters = toleranceMeters;
+        mMinDistanceMeters = minDistanceMeters;
+        mMaxVertices = maxVertices;
+    }
+
+    /**
+     * Adds a fix to the track
+     *
+     * @param latitude  latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     */
+    public void add(double latitude, double longitude) {
+        if (mVertexCount == 0) {
+            mMetersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+            addVertex(latitude, longitude);
+            setLast(latitude, longitude);
+            return;
+        }
+        if (distance(mLastLatitude, mLastLongitude, latitude, longitude) < mMinDistanceMeters) {
+            return;
+        }
+        setLast(latitude, longitude);
+
+        int vertex = mVertexCount - 1;
+        double x = (longitude - mLongitudes[vertex]) * mMetersPerDegreeLongitude;
+        double y = (latitude - mLatitudes[vertex]) * METERS_PER_DEGREE;
+        if (mWindowCount == MAX_WINDOW || !windowFits(x, y)) {
+            // The previous fix is needed to stay within the tolerance
+            int previous = mWindowCount - 1;
+            addVertex(mWindowLatitudes[previous], mWindowLongitudes[previous]);
+            mWindowCount = 0;
+            vertex = mVertexCount - 1;
+            x = (longitude - mLongitudes[vertex]) * mMetersPerDegreeLongitude;
+            y = (latitude - mLatitudes[vertex]) * METERS_PER_DEGREE;
+        }
+        mWindowX[mWindowCount] = x;
+        mWindowY[mWindowCount] = y;
+        mWindowLatitudes[mWindowCount] = latitude;
+        mWindowLongitudes[mWindowCount] = longitude;
+        mWindowCount++;
+    }
+
+    /**
+     * Removes all fixes
+     */
+    public void clear() {
+        mVertexCount = 0;
+        mWindowCount = 0;
+        mHasLast = false;
+        mVersion++;
+    }
+
+    /**
+     * Returns the number of vertices of the simplified track, not including the newest fix
+     *
+     * @return the number of vertices of the simplified track
+     */
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public double getLatitude(int vertex) {
+        return mLatitudes[vertex];
+    }
+
+    public double getLongitude(int vertex) {
+        return mLongitudes[vertex];
+    }
+
+    /**
+     * Returns true if a fix has been added since the track was cleared
+     *
+     * @return true if a fix has been added since the track was cleared
+     */
+    public boolean hasLast() {
+        return mHasLast;
+    }
+
+    public double getLastLatitude() {
+        return mLastLatitude;
+    }
+
+    public double getLastLongitude() {
+        return mLastLongitude;
+    }
+
+    /**
+     * Returns a number that changes whenever vertices are removed, meaning a mirrored copy of the
+     * track must be rebuilt instead of appended to
+     *
+     * @return a number that changes whenever vertices are removed
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns the current tolerance, which doubles each time the track is simplified again
+     *
+     * @return the current tolerance, in meters
+     */
+    public double getToleranceMeters() {
+        return mToleranceMeters;
+    }
+
+    private void setLast(double latitude, double longitude) {
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+        mHasLast = true;
+    }
+
+    /**
+     * Returns true if all fixes in the window are within the tolerance of the segment from the
+     * last vertex (the origin) to the provided point.  Fixes behind the origin or past the point
+     * are measured to the nearest end, so turning back along the same line doesn't fit.
+     */
+    private boolean windowFits(double x, double y) {
+        double lengthSquared = x * x + y * y;
+        for (int i = 0; i < mWindowCount; i++) {
+            double wx = mWindowX[i];
+            double wy = mWindowY[i];
+            double t = lengthSquared == 0.0 ? 0.0
+                    : Math.max(0.0, Math.min(1.0, (wx * x + wy * y) / lengthSquared));
+            double dx = wx - t * x;
+            double dy = wy - t * y;
+            if (dx * dx + dy * dy > mToleranceMeters * mToleranceMeters) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addVertex(double latitude, double longitude) {
+        if (mVertexCount == mMaxVertices) {
+            mToleranceMeters *= 2;
+            simplify();
+        }
+        if (mVertexCount == mLatitudes.length) {
+            int capacity = Math.min(mMaxVertices, mVertexCount * 2);
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        }
+        mLatitudes[mVertexCount] = latitude;
+        mLongitudes[mVertexCount] = longitude;
+        mVertexCount++;
+    }
+
+    /**
+     * Simplifies the vertices in place with Douglas-Peucker and the current tolerance, using an
+     * explicit stack instead of recursion
+     */
+    private void simplify() {
+        int n = mVertexCount;
+        if (mKeep.length < n) {
+            mKeep = new boolean[n];
+            mStack = new int[2 * n];
+        }
+        Arrays.fill(mKeep, 0, n, false);
+        mKeep[0] = true;
+        mKeep[n - 1] = true;
+        int top = 0;
+        mStack[top++] = 0;
+        mStack[top++] = n - 1;
+        while (top > 0) {
+            int end = mStack[--top];
+            int start = mStack[--top];
+            double maxDistance = 0.0;
+            int farthest = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistance(i, start, end);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+            if (farthest != -1 && maxDistance > mToleranceMeters) {
+                mKeep[farthest] = true;
+                mStack[top++] = start;
+                mStack[top++] = farthest;
+                mStack[top++] = farthest;
+                mStack[top++] = end;
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (mKeep[i]) {
+                mLatitudes[count] = mLatitudes[i];
+                mLongitudes[count] = mLongitudes[i];
+                count++;
+            }
+        }
+        if (count == n) {
+            // Nothing could be removed, so drop every other vertex to stay bounded
+            count = 0;
+            for (int i = 0; i < n; i++) {
+                if (i % 2 == 0 || i == n - 1) {
+                    mLatitudes[count] = mLatitudes[i];
+                    mLongitudes[count] = mLongitudes[i];
+                    count++;
+                }
+            }
+        }
+        mVertexCount = count;
+        mVersion++;
+    }
+
+    /**
+     * Returns the distance from vertex i to the segment between vertices start and end, in meters
+     */
+    private double segmentDistance(int i, int start, int end) {
+        double x = (mLongitudes[i] - mLongitudes[start]) * mMetersPerDegreeLongitude;
+        double y = (mLatitudes[i] - mLatitudes[start]) * METERS_PER_DEGREE;
+        double ex = (mLongitudes[end] - mLongitudes[start]) * mMetersPerDegreeLongitude;
+        double ey = (mLatitudes[end] - mLatitudes[start]) * METERS_PER_DEGREE;
+        double lengthSquared = ex * ex + ey * ey;
+        double t = lengthSquared == 0.0 ? 0.0
+                : Math.max(0.0, Math.min(1.0, (x * ex + y * ey) / lengthSquared));
+        double dx = x - t * ex;
+        double dy = y - t * ey;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private double distance(double latitude1, double longitude1, double latitude2,
+            double longitude2) {
+        double x = (longitude2 - longitude1) * mMetersPerDegreeLongitude;
+        double y = (latitude2 - latitude1) * METERS_PER_DEGREE;
+        return Math.sqrt(x * x + y * y);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+/**
+ * Bit field helpers for navigation messages, which are transmitted MSB first
+ */
+class Bits {
+
+    private Bits() {
+    }
+
+    /**
+     * Returns an unsigned field from a byte array
+     *
+     * @param data   bytes of the message, MSB first
+     * @param start  index of the first bit of the field, where 0 is the MSB of the first byte
+     * @param length number of bits in the field, up to 63
+     * @return the unsigned value of the field
+     */
+    static long get(byte[] data, int start, int length) {
+        long value = 0;
+        for (int i = start; i < start + length; i++) {
+            value = (value << 1) | ((data[i >> 3] >> (7 - (i & 7))) & 1);
+        }
+        return value;
+    }
+
+    /**
+     * Sets a field in a byte array, the inverse of get()
+     */
+    static void set(byte[] data, int start, int length, long value) {
+        for (int i = start + length - 1; i >= start; i--) {
+            int mask = 1 << (7 - (i & 7));
+            if ((value & 1) != 0) {
+                data[i >> 3] |= mask;
+            } else {
+                data[i >> 3] &= ~mask;
+            }
+            value >>>= 1;
+        }
+    }
+
+    /**
+     * Returns the provided two's complement field as a signed value
+     *
+     * @param value  unsigned value of the field
+     * @param length number of bits in the field
+     * @return the signed value of the field
+     */
+    static long signed(long value, int length) {
+        return (value << (64 - length)) >> (64 - length);
+    }
+}
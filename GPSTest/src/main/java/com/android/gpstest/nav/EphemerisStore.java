@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+import com.android.gpstest.pvt.Pseudoranges;
+import com.android.gpstest.pvt.SatellitePositionProvider;
+
+/**
+ * Ephemerides and almanacs decoded from broadcast navigation messages, for computing satellite
+ * positions without network assistance data.
+ *
+ * Each satellite has a slot, and the parameters of all slots are kept in one flat array in the
+ * KeplerOrbit layout.  Each ephemeris is tagged with its issue of data (IODE for GPS, IODnav for
+ * Galileo), so receiving the same ephemeris again doesn't change the store, and every change
+ * increments a version number so users can tell when cached results are stale.  This class is
+ * thread-safe.
+ */
+public class EphemerisStore implements SatellitePositionProvider {
+
+    public static final int NO_ISSUE = -1;
+
+    public static final int MAX_GPS_SVID = 32;
+
+    public static final int MAX_GALILEO_SVID = 36;
+
+    // Slots of GPS satellites are first, then Galileo
+    private static final int GALILEO_FIRST_SLOT = MAX_GPS_SVID;
+
+    static final int SLOT_COUNT = MAX_GPS_SVID + MAX_GALILEO_SVID;
+
+    // Broadcast ephemerides aren't used more than this long from their reference time
+    private static final double MAX_EPHEMERIS_AGE_SECONDS = 4 * 3600.0;
+
+    private final double[] mEphemeris = new double[SLOT_COUNT * KeplerOrbit.SIZE];
+
+    private final int[] mEphemerisIssue = new int[SLOT_COUNT];
+
+    private final double[] mAlmanac = new double[SLOT_COUNT * KeplerOrbit.SIZE];
+
+    private final int[] mAlmanacIssue = new int[SLOT_COUNT];
+
+    private final double[] mParams = new double[KeplerOrbit.SIZE];
+
+    private int mVersion;
+
+    public EphemerisStore() {
+        clear();
+    }
+
+    /**
+     * Creates a snapshot of the provided store, which doesn't change when the provided store does
+     */
+    public EphemerisStore(EphemerisStore other) {
+        synchronized (other) {
+            System.arraycopy(other.mEphemeris, 0, mEphemeris, 0, mEphemeris.length);
+            System.arraycopy(other.mEphemerisIssue, 0, mEphemerisIssue, 0, SLOT_COUNT);
+            System.arraycopy(other.mAlmanac, 0, mAlmanac, 0, mAlmanac.length);
+            System.arraycopy(other.mAlmanacIssue, 0, mAlmanacIssue, 0, SLOT_COUNT);
+            mVersion = other.mVersion;
+        }
+    }
+
+    /**
+     * Returns the slot of the provided satellite
+     *
+     * @return the slot of the provided satellite, or -1 if it isn't supported
+     */
+    static int getSlot(int constellationType, int svid) {
+        if (constellationType == Pseudoranges.CONSTELLATION_GPS) {
+            return svid >= 1 && svid <= MAX_GPS_SVID ? svid - 1 : -1;
+        } else if (constellationType == Pseudoranges.CONSTELLATION_GALILEO) {
+            return svid >= 1 && svid <= MAX_GALILEO_SVID ? GALILEO_FIRST_SLOT + svid - 1 : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the constellation of the satellite in the provided slot, the inverse of getSlot()
+     */
+    static int getConstellationType(int slot) {
+        return slot < GALILEO_FIRST_SLOT ? Pseudoranges.CONSTELLATION_GPS
+                : Pseudoranges.CONSTELLATION_GALILEO;
+    }
+
+    /**
+     * Returns the svid of the satellite in the provided slot, the inverse of getSlot()
+     */
+    static int getSvid(int slot) {
+        return slot < GALILEO_FIRST_SLOT ? slot + 1 : slot - GALILEO_FIRST_SLOT + 1;
+    }
+
+    /**
+     * Removes all ephemerides and almanacs
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            mEphemerisIssue[i] = NO_ISSUE;
+            mAlmanacIssue[i] = NO_ISSUE;
+        }
+        mVersion++;
+    }
+
+    /**
+     * Stores the ephemeris of a satellite, replacing its previous ephemeris if the issue, health
+     * or group delay differs (health and group delay may be sent separately from the orbit, and
+     * change without a new issue)
+     *
+     * @param issue  issue of data of the ephemeris
+     * @param params orbit parameters in the KeplerOrbit layout
+     * @return true if the store changed, false if the satellite isn't supported or the ephemeris
+     * was already stored
+     */
+    public synchronized boolean putEphemeris(int constellationType, int svid, int issue,
+            double[] params) {
+        return put(mEphemeris, mEphemerisIssue, constellationType, svid, issue, params);
+    }
+
+    /**
+     * Stores the almanac of a satellite, replacing its previous almanac if the issue, health or
+     * group delay differs
+     *
+     * @param issue  identifies the almanac, e.g. its reference time
+     * @param params orbit parameters in the KeplerOrbit layout
+     * @return true if the store changed, false if the satellite isn't supported or the almanac
+     * was already stored
+     */
+    public synchronized boolean putAlmanac(int constellationType, int svid, int issue,
+            double[] params) {
+        return put(mAlmanac, mAlmanacIssue, constellationType, svid, issue, params);
+    }
+
+    /**
+     * Copies the ephemeris of a satellite to the provided array
+     *
+     * @return the issue of the ephemeris, or NO_ISSUE if there isn't one
+     */
+    public synchronized int getEphemeris(int constellationType, int svid, double[] out) {
+        return get(mEphemeris, mEphemerisIssue, constellationType, svid, out);
+    }
+
+    /**
+     * Copies the almanac of a satellite to the provided array
+     *
+     * @return the issue of the almanac, or NO_ISSUE if there isn't one
+     */
+    public synchronized int getAlmanac(int constellationType, int svid, double[] out) {
+        return get(mAlmanac, mAlmanacIssue, constellationType, svid, out);
+    }
+
+    /**
+     * Returns a number that changes whenever an ephemeris or almanac is added or replaced
+     *
+     * @return a number that changes whenever an ephemeris or almanac is added or replaced
+     */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public synchronized boolean getSatelliteState(int constellationType, int svid,
+            double gpsTimeSeconds, double[] out) {
+        if (get(mEphemeris, mEphemerisIssue, constellationType, svid, mParams) == NO_ISSUE
+                || mParams[KeplerOrbit.HEALTH] != 0.0) {
+            return false;
+        }
+        double weekSeconds = KeplerOrbit.getWeekSeconds(gpsTimeSeconds);
+        if (Math.abs(KeplerOrbit.wrapWeekSeconds(weekSeconds - mParams[KeplerOrbit.TOE]))
+                > MAX_EPHEMERIS_AGE_SECONDS) {
+            return false;
+        }
+        KeplerOrbit.computeState(mParams, KeplerOrbit.getGm(constellationType), weekSeconds, out);
+        return true;
+    }
+
+    private boolean put(double[] store, int[] issues, int constellationType, int svid,
+            int issue, double[] params) {
+        int slot = getSlot(constellationType, svid);
+        if (slot < 0) {
+            return false;
+        }
+        int offset = slot * KeplerOrbit.SIZE;
+        if (issues[slot] == issue
+                && store[offset + KeplerOrbit.HEALTH] == params[KeplerOrbit.HEALTH]
+                && store[offset + KeplerOrbit.GROUP_DELAY] == params[KeplerOrbit.GROUP_DELAY]) {
+            return false;
+        }
+        System.arraycopy(params, 0, store, offset, KeplerOrbit.SIZE);
+        issues[slot] = issue;
+        mVersion++;
+        return true;
+    }
+
+    private static int get(double[] store, int[] issues, int constellationType, int svid,
+            double[] out) {
+        int slot = getSlot(constellationType, svid);
+        if (slot < 0 || issues[slot] == NO_ISSUE) {
+            return NO_ISSUE;
+        }
+        System.arraycopy(store, slot * KeplerOrbit.SIZE, out, 0, KeplerOrbit.SIZE);
+        return issues[slot];
+    }
+}
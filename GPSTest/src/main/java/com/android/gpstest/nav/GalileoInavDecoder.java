@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+import com.android.gpstest.pvt.Pseudoranges;
+
+/**
+ * Decodes Galileo E1-B I/NAV pages (Galileo OS SIS ICD section 4.3).
+ *
+ * Each nominal page carries one 128 bit word and a CRC.  Ephemeris words 1 to 4 of each satellite
+ * are collected until all four carry the same issue of data and a word 5 has been received, and
+ * are then decoded into an ephemeris, along with the group delay and health from the latest word
+ * 5.  Words are sent in the order 1, 3, 5 and the rest, so waiting for word 5 avoids storing an
+ * ephemeris without its health.  This class is not thread-safe.
+ */
+public class GalileoInavDecoder {
+
+    // The even and odd page parts, 114 bits each without the tail bits
+    public static final int PAGE_BYTES = 29;
+
+    // Bits of the page covered by the CRC, and the start of the CRC
+    private static final int CRC_BITS = 196;
+
+    private static final int CRC_LENGTH = 24;
+
+    private static final int CRC_POLYNOMIAL = 0x864CFB;
+
+    private static final int WORD_BYTES = 16;
+
+    // Words 1 to 5 are kept per satellite
+    private static final int WORD_COUNT = 5;
+
+    private static final double TWO_M5 = Math.pow(2, -5);
+
+    private static final double TWO_M19 = Math.pow(2, -19);
+
+    private static final double TWO_M29 = Math.pow(2, -29);
+
+    private static final double TWO_M31 = Math.pow(2, -31);
+
+    private static final double TWO_M32 = Math.pow(2, -32);
+
+    private static final double TWO_M33 = Math.pow(2, -33);
+
+    private static final double TWO_M34 = Math.pow(2, -34);
+
+    private static final double TWO_M43 = Math.pow(2, -43);
+
+    private static final double TWO_M46 = Math.pow(2, -46);
+
+    private static final double TWO_M59 = Math.pow(2, -59);
+
+    private final EphemerisStore mStore;
+
+    // Words 1 to 5 of each satellite
+    private final byte[] mWords = new byte[EphemerisStore.MAX_GALILEO_SVID * WORD_COUNT
+            * WORD_BYTES];
+
+    // Bit for each of words 1 to 5 that has been received, per satellite
+    private final int[] mReceived = new int[EphemerisStore.MAX_GALILEO_SVID];
+
+    private final byte[] mWord = new byte[WORD_BYTES];
+
+    private final double[] mParams = new double[KeplerOrbit.SIZE];
+
+    public GalileoInavDecoder(EphemerisStore store) {
+        mStore = store;
+    }
+
+    /**
+     * Returns the CRC-24Q of the provided bits
+     *
+     * @param data   the bits, MSB first
+     * @param length number of bits, starting at the MSB of the first byte
+     * @return the CRC-24Q of the provided bits
+     */
+    public static int crc24q(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            int bit = (data[i >> 3] >> (7 - (i & 7))) & 1;
+            boolean xor = ((crc >> 23) & 1) != bit;
+            crc = (crc << 1) & 0xFFFFFF;
+            if (xor) {
+                crc ^= CRC_POLYNOMIAL;
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * Decodes a page, as provided by GnssNavigationMessage
+     *
+     * @param svid the satellite that transmitted the page
+     * @param data the even and odd page parts
+     * @return true if the page completed an ephemeris that changed the store
+     */
+    public boolean onPage(int svid, byte[] data) {
+        if (svid < 1 || svid > EphemerisStore.MAX_GALILEO_SVID || data.length < PAGE_BYTES) {
+            return false;
+        }
+        // Even part first, then the odd part, and both must be nominal (not alert) pages
+        if (Bits.get(data, 0, 2) != 0 || Bits.get(data, 114, 2) != 2) {
+            return false;
+        }
+        if (crc24q(data, CRC_BITS) != Bits.get(data, CRC_BITS, CRC_LENGTH)) {
+            return false;
+        }
+        // The word is the 112 data bits of the even part and the first 16 of the odd part
+        for (int i = 0; i < 14; i++) {
+            mWord[i] = (byte) Bits.get(data, 2 + i * 8, 8);
+        }
+        mWord[14] = (byte) Bits.get(data, 116, 8);
+        mWord[15] = (byte) Bits.get(data, 124, 8);
+
+        int type = (int) Bits.get(mWord, 0, 6);
+        if (type < 1 || type > WORD_COUNT) {
+            return false;
+        }
+        int slot = svid - 1;
+        System.arraycopy(mWord, 0, mWords, (slot * WORD_COUNT + type - 1) * WORD_BYTES,
+                WORD_BYTES);
+        mReceived[slot] |= 1 << type;
+        // Words 1 to 5 are all needed - a later word 5 may change the health or group delay
+        return (mReceived[slot] & 0x3E) == 0x3E && decodeEphemeris(svid);
+    }
+
+    /**
+     * Returns an unsigned field of a word of the provided satellite
+     *
+     * @param slot  the satellite slot
+     * @param type  the word type, from 1 to 5
+     * @param start the first bit of the field in the word, where 0 is the MSB
+     */
+    private long field(int slot, int type, int start, int length) {
+        return Bits.get(mWords, (slot * WORD_COUNT + type - 1) * WORD_BYTES * 8 + start, length);
+    }
+
+    private long signedField(int slot, int type, int start, int length) {
+        return Bits.signed(field(slot, type, start, length), length);
+    }
+
+    private boolean decodeEphemeris(int svid) {
+        int slot = svid - 1;
+        int iod = (int) field(slot, 1, 6, 10);
+        for (int type = 2; type <= 4; type++) {
+            if (field(slot, type, 6, 10) != iod) {
+                // Words are from different batches - wait for a matching set
+                return false;
+            }
+        }
+        double[] p = mParams;
+        p[KeplerOrbit.TOE] = field(slot, 1, 16, 14) * 60.0;
+        p[KeplerOrbit.M0] = signedField(slot, 1, 30, 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.ECCENTRICITY] = field(slot, 1, 62, 32) * TWO_M33;
+        p[KeplerOrbit.SQRT_A] = field(slot, 1, 94, 32) * TWO_M19;
+
+        p[KeplerOrbit.OMEGA0] = signedField(slot, 2, 16, 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.I0] = signedField(slot, 2, 48, 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.OMEGA] = signedField(slot, 2, 80, 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.IDOT] = signedField(slot, 2, 112, 14) * TWO_M43 * KeplerOrbit.PI;
+
+        p[KeplerOrbit.OMEGA_DOT] = signedField(slot, 3, 16, 24) * TWO_M43 * KeplerOrbit.PI;
+        p[KeplerOrbit.DELTA_N] = signedField(slot, 3, 40, 16) * TWO_M43 * KeplerOrbit.PI;
+        p[KeplerOrbit.CUC] = signedField(slot, 3, 56, 16) * TWO_M29;
+        p[KeplerOrbit.CUS] = signedField(slot, 3, 72, 16) * TWO_M29;
+        p[KeplerOrbit.CRC] = signedField(slot, 3, 88, 16) * TWO_M5;
+        p[KeplerOrbit.CRS] = signedField(slot, 3, 104, 16) * TWO_M5;
+
+        p[KeplerOrbit.CIC] = signedField(slot, 4, 22, 16) * TWO_M29;
+        p[KeplerOrbit.CIS] = signedField(slot, 4, 38, 16) * TWO_M29;
+        p[KeplerOrbit.TOC] = field(slot, 4, 54, 14) * 60.0;
+        p[KeplerOrbit.AF0] = signedField(slot, 4, 68, 31) * TWO_M34;
+        p[KeplerOrbit.AF1] = signedField(slot, 4, 99, 21) * TWO_M46;
+        p[KeplerOrbit.AF2] = signedField(slot, 4, 120, 6) * TWO_M59;
+
+        // E1/E5b group delay, and the E1-B signal health and data validity
+        p[KeplerOrbit.GROUP_DELAY] = signedField(slot, 5, 57, 10) * TWO_M32;
+        p[KeplerOrbit.HEALTH] = field(slot, 5, 69, 2) | field(slot, 5, 72, 1);
+        return mStore.putEphemeris(Pseudoranges.CONSTELLATION_GALILEO, svid, iod, p);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+import com.android.gpstest.pvt.Pseudoranges;
+
+/**
+ * Decodes GPS L1 C/A legacy navigation (LNAV) subframes (IS-GPS-200 section 20.3).
+ *
+ * Subframes 1 to 3 of each satellite are collected until all three carry the same issue of data,
+ * and are then decoded into an ephemeris.  Almanac pages in subframes 4 and 5 are decoded as they
+ * arrive.  Every word must pass its parity check.  This class is not thread-safe.
+ */
+public class GpsLnavDecoder {
+
+    // Subframes are 10 words, each in the low 30 bits of 4 bytes
+    public static final int SUBFRAME_BYTES = 40;
+
+    public static final int WORDS_PER_SUBFRAME = 10;
+
+    private static final int PREAMBLE = 0x8B;
+
+    private static final int DATA_MASK = 0xFFFFFF;
+
+    // Data bits that are included in each of the six parity bits (IS-GPS-200 table 20-XIV)
+    private static final int[] PARITY_MASKS = {
+            mask(1, 2, 3, 5, 6, 10, 11, 12, 13, 14, 17, 18, 20, 23),
+            mask(2, 3, 4, 6, 7, 11, 12, 13, 14, 15, 18, 19, 21, 24),
+            mask(1, 3, 4, 5, 7, 8, 12, 13, 14, 15, 16, 19, 20, 22),
+            mask(2, 4, 5, 6, 8, 9, 13, 14, 15, 16, 17, 20, 21, 23),
+            mask(1, 3, 5, 6, 7, 9, 10, 14, 15, 16, 17, 18, 21, 22, 24),
+            mask(3, 5, 6, 8, 9, 10, 11, 13, 15, 19, 22, 23, 24)
+    };
+
+    // Whether each parity bit also includes D29 (true) or D30 (false) of the previous word
+    private static final boolean[] PARITY_USES_D29 = {true, false, true, false, false, true};
+
+    private static final double TWO_M5 = Math.pow(2, -5);
+
+    private static final double TWO_M11 = Math.pow(2, -11);
+
+    private static final double TWO_M19 = Math.pow(2, -19);
+
+    private static final double TWO_M20 = Math.pow(2, -20);
+
+    private static final double TWO_M21 = Math.pow(2, -21);
+
+    private static final double TWO_M23 = Math.pow(2, -23);
+
+    private static final double TWO_M29 = Math.pow(2, -29);
+
+    private static final double TWO_M31 = Math.pow(2, -31);
+
+    private static final double TWO_M33 = Math.pow(2, -33);
+
+    private static final double TWO_M38 = Math.pow(2, -38);
+
+    private static final double TWO_M43 = Math.pow(2, -43);
+
+    private static final double TWO_M55 = Math.pow(2, -55);
+
+    private final EphemerisStore mStore;
+
+    // Data bits of subframes 1 to 3 of each satellite, 30 words per satellite
+    private final int[] mEphemerisWords = new int[EphemerisStore.MAX_GPS_SVID * 3
+            * WORDS_PER_SUBFRAME];
+
+    // Bit for each of subframes 1 to 3 that has been received, per satellite
+    private final int[] mReceived = new int[EphemerisStore.MAX_GPS_SVID];
+
+    private final int[] mWords = new int[WORDS_PER_SUBFRAME];
+
+    private final double[] mParams = new double[KeplerOrbit.SIZE];
+
+    public GpsLnavDecoder(EphemerisStore store) {
+        mStore = store;
+    }
+
+    private static int mask(int... bits) {
+        int mask = 0;
+        for (int bit : bits) {
+            mask |= 1 << (24 - bit);
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the six parity bits of a word
+     *
+     * @param data         the 24 data bits of the word, before they are complemented by D30 of
+     *                     the previous word
+     * @param previousWord the previous 30 bit word, of which only D29 and D30 are used
+     * @return the six parity bits of the word
+     */
+    public static int getParity(int data, int previousWord) {
+        int d29 = (previousWord >> 1) & 1;
+        int d30 = previousWord & 1;
+        int parity = 0;
+        for (int i = 0; i < PARITY_MASKS.length; i++) {
+            int bit = Integer.bitCount(data & PARITY_MASKS[i]) & 1;
+            bit ^= PARITY_USES_D29[i] ? d29 : d30;
+            parity = (parity << 1) | bit;
+        }
+        return parity;
+    }
+
+    /**
+     * Decodes a received 30 bit word
+     *
+     * @param word         the received word, D1 to D30
+     * @param previousWord the previous received word
+     * @return the 24 data bits of the word, or -1 if the word fails its parity check
+     */
+    public static int decodeWord(int word, int previousWord) {
+        int data = (word >> 6) & DATA_MASK;
+        if ((previousWord & 1) != 0) {
+            // The data bits are transmitted complemented when D30 of the previous word is set
+            data ^= DATA_MASK;
+        }
+        return getParity(data, previousWord) == (word & 0x3F) ? data : -1;
+    }
+
+    /**
+     * Decodes a subframe, as provided by GnssNavigationMessage
+     *
+     * @param svid the satellite that transmitted the subframe
+     * @param data the subframe
+     * @return true if the subframe completed an ephemeris or almanac that changed the store
+     */
+    public boolean onSubframe(int svid, byte[] data) {
+        if (svid < 1 || svid > EphemerisStore.MAX_GPS_SVID || data.length < SUBFRAME_BYTES) {
+            return false;
+        }
+        // D29 and D30 of word 10 of the previous subframe are always zero
+        int previous = 0;
+        for (int i = 0; i < WORDS_PER_SUBFRAME; i++) {
+            int word = (int) Bits.get(data, i * 32 + 2, 30);
+            int decoded = decodeWord(word, previous);
+            if (decoded < 0) {
+                return false;
+            }
+            mWords[i] = decoded;
+            previous = word;
+        }
+        if ((mWords[0] >> 16) != PREAMBLE) {
+            return false;
+        }
+        int subframeId = (mWords[1] >> 2) & 7;
+        if (subframeId >= 1 && subframeId <= 3) {
+            int offset = ((svid - 1) * 3 + subframeId - 1) * WORDS_PER_SUBFRAME;
+            System.arraycopy(mWords, 0, mEphemerisWords, offset, WORDS_PER_SUBFRAME);
+            mReceived[svid - 1] |= 1 << subframeId;
+            return mReceived[svid - 1] == 0xE && decodeEphemeris(svid);
+        } else if (subframeId == 4 || subframeId == 5) {
+            return decodeAlmanac();
+        }
+        return false;
+    }
+
+    /**
+     * Returns an unsigned field of a subframe
+     *
+     * @param words  decoded words
+     * @param offset index of word 1 of the subframe in words
+     * @param word   the word of the field, from 1 to 10
+     * @param first  the first bit of the field in the word, from 1 to 24
+     * @param length number of bits in the field
+     */
+    private static long field(int[] words, int offset, int word, int first, int length) {
+        return (words[offset + word - 1] >> (25 - first - length)) & ((1L << length) - 1);
+    }
+
+    /**
+     * Returns a signed field of a subframe
+     */
+    private static long signedField(int[] words, int offset, int word, int first, int length) {
+        return Bits.signed(field(words, offset, word, first, length), length);
+    }
+
+    /**
+     * Returns a 32 bit field whose 8 MSBs end the provided word and whose 24 LSBs fill the next
+     */
+    private static long field32(int[] words, int offset, int word) {
+        return (field(words, offset, word, 17, 8) << 24) | field(words, offset, word + 1, 1, 24);
+    }
+
+    private boolean decodeEphemeris(int svid) {
+        int[] w = mEphemerisWords;
+        int sf1 = (svid - 1) * 3 * WORDS_PER_SUBFRAME;
+        int sf2 = sf1 + WORDS_PER_SUBFRAME;
+        int sf3 = sf2 + WORDS_PER_SUBFRAME;
+
+        int iodc = (int) ((field(w, sf1, 3, 23, 2) << 8) | field(w, sf1, 8, 1, 8));
+        int iode = (int) field(w, sf2, 3, 1, 8);
+        if (iode != field(w, sf3, 10, 1, 8) || iode != (iodc & 0xFF)) {
+            // Subframes are from different uploads - wait for a matching set
+            return false;
+        }
+        double[] p = mParams;
+        p[KeplerOrbit.HEALTH] = field(w, sf1, 3, 17, 6);
+        p[KeplerOrbit.GROUP_DELAY] = signedField(w, sf1, 7, 17, 8) * TWO_M31;
+        p[KeplerOrbit.TOC] = field(w, sf1, 8, 9, 16) * 16.0;
+        p[KeplerOrbit.AF2] = signedField(w, sf1, 9, 1, 8) * TWO_M55;
+        p[KeplerOrbit.AF1] = signedField(w, sf1, 9, 9, 16) * TWO_M43;
+        p[KeplerOrbit.AF0] = signedField(w, sf1, 10, 1, 22) * TWO_M31;
+
+        p[KeplerOrbit.CRS] = signedField(w, sf2, 3, 9, 16) * TWO_M5;
+        p[KeplerOrbit.DELTA_N] = signedField(w, sf2, 4, 1, 16) * TWO_M43 * KeplerOrbit.PI;
+        p[KeplerOrbit.M0] = Bits.signed(field32(w, sf2, 4), 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.CUC] = signedField(w, sf2, 6, 1, 16) * TWO_M29;
+        p[KeplerOrbit.ECCENTRICITY] = field32(w, sf2, 6) * TWO_M33;
+        p[KeplerOrbit.CUS] = signedField(w, sf2, 8, 1, 16) * TWO_M29;
+        p[KeplerOrbit.SQRT_A] = field32(w, sf2, 8) * TWO_M19;
+        p[KeplerOrbit.TOE] = field(w, sf2, 10, 1, 16) * 16.0;
+
+        p[KeplerOrbit.CIC] = signedField(w, sf3, 3, 1, 16) * TWO_M29;
+        p[KeplerOrbit.OMEGA0] = Bits.signed(field32(w, sf3, 3), 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.CIS] = signedField(w, sf3, 5, 1, 16) * TWO_M29;
+        p[KeplerOrbit.I0] = Bits.signed(field32(w, sf3, 5), 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.CRC] = signedField(w, sf3, 7, 1, 16) * TWO_M5;
+        p[KeplerOrbit.OMEGA] = Bits.signed(field32(w, sf3, 7), 32) * TWO_M31 * KeplerOrbit.PI;
+        p[KeplerOrbit.OMEGA_DOT] = signedField(w, sf3, 9, 1, 24) * TWO_M43 * KeplerOrbit.PI;
+        p[KeplerOrbit.IDOT] = signedField(w, sf3, 10, 9, 14) * TWO_M43 * KeplerOrbit.PI;
+
+        return mStore.putEphemeris(Pseudoranges.CONSTELLATION_GPS, svid, iode, p);
+    }
+
+    private boolean decodeAlmanac() {
+        int[] w = mWords;
+        int dataId = (int) field(w, 0, 3, 1, 2);
+        int svid = (int) field(w, 0, 3, 3, 6);
+        if (dataId != 1 || svid < 1 || svid > EphemerisStore.MAX_GPS_SVID) {
+            // Not an almanac page
+            return false;
+        }
+        double[] p = mParams;
+        for (int i = 0; i < KeplerOrbit.SIZE; i++) {
+            p[i] = 0.0;
+        }
+        int toa = (int) field(w, 0, 4, 1, 8) << 12;
+        p[KeplerOrbit.ECCENTRICITY] = field(w, 0, 3, 9, 16) * TWO_M21;
+        p[KeplerOrbit.TOE] = toa;
+        p[KeplerOrbit.TOC] = toa;
+        // The inclination is relative to 0.3 semicircles
+        p[KeplerOrbit.I0] = (0.3 + signedField(w, 0, 4, 9, 16) * TWO_M19) * KeplerOrbit.PI;
+        p[KeplerOrbit.OMEGA_DOT] = signedField(w, 0, 5, 1, 16) * TWO_M38 * KeplerOrbit.PI;
+        p[KeplerOrbit.HEALTH] = field(w, 0, 5, 17, 8);
+        p[KeplerOrbit.SQRT_A] = field(w, 0, 6, 1, 24) * TWO_M11;
+        p[KeplerOrbit.OMEGA0] = signedField(w, 0, 7, 1, 24) * TWO_M23 * KeplerOrbit.PI;
+        p[KeplerOrbit.OMEGA] = signedField(w, 0, 8, 1, 24) * TWO_M23 * KeplerOrbit.PI;
+        p[KeplerOrbit.M0] = signedField(w, 0, 9, 1, 24) * TWO_M23 * KeplerOrbit.PI;
+        p[KeplerOrbit.AF0] = Bits.signed((field(w, 0, 10, 1, 8) << 3)
+                | field(w, 0, 10, 20, 3), 11) * TWO_M20;
+        p[KeplerOrbit.AF1] = signedField(w, 0, 10, 9, 11) * TWO_M38;
+
+        return mStore.putAlmanac(Pseudoranges.CONSTELLATION_GPS, svid, toa, p);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+import com.android.gpstest.pvt.Pseudoranges;
+import com.android.gpstest.pvt.SatellitePositionProvider;
+import com.android.gpstest.pvt.Wgs84;
+
+/**
+ * Broadcast orbit parameters and the user algorithm for satellite position, velocity and clock
+ * (IS-GPS-200 table 20-IV, which Galileo also uses).
+ *
+ * Parameters are stored in a double array indexed by the constants below, with angles in radians,
+ * so ephemerides and almanacs can be kept in flat arrays without an object per satellite.  An
+ * almanac uses the same layout, with the harmonic corrections left at zero.
+ */
+public class KeplerOrbit {
+
+    // Time of ephemeris and time of clock, in seconds of the week
+    public static final int TOE = 0;
+
+    public static final int TOC = 1;
+
+    public static final int SQRT_A = 2;
+
+    public static final int ECCENTRICITY = 3;
+
+    public static final int M0 = 4;
+
+    public static final int DELTA_N = 5;
+
+    public static final int OMEGA0 = 6;
+
+    public static final int I0 = 7;
+
+    // Argument of perigee
+    public static final int OMEGA = 8;
+
+    public static final int OMEGA_DOT = 9;
+
+    public static final int IDOT = 10;
+
+    public static final int CUC = 11;
+
+    public static final int CUS = 12;
+
+    public static final int CRC = 13;
+
+    public static final int CRS = 14;
+
+    public static final int CIC = 15;
+
+    public static final int CIS = 16;
+
+    public static final int AF0 = 17;
+
+    public static final int AF1 = 18;
+
+    public static final int AF2 = 19;
+
+    // Group delay of the L1 (GPS) or E1 (Galileo) signal, in seconds
+    public static final int GROUP_DELAY = 20;
+
+    // Non-zero if the satellite is unhealthy
+    public static final int HEALTH = 21;
+
+    public static final int SIZE = 22;
+
+    public static final double SECONDS_PER_WEEK = 604800.0;
+
+    // Value of pi used to convert semicircles to radians (IS-GPS-200)
+    public static final double PI = 3.1415926535898;
+
+    private static final double GM_GPS = 3.986005E14;
+
+    private static final double GM_GALILEO = 3.986004418E14;
+
+    // Relativistic clock correction constant, in seconds per square root meter
+    static final double F = -4.442807633E-10;
+
+    // Newton iterations for Kepler's equation, which converge to double precision for the
+    // eccentricities of navigation satellites
+    private static final int KEPLER_ITERATIONS = 4;
+
+    private KeplerOrbit() {
+    }
+
+    /**
+     * Returns the gravitational constant used by the provided constellation
+     *
+     * @param constellationType a GnssStatus constellation type
+     * @return the gravitational constant used by the provided constellation, in m^3/s^2
+     */
+    public static double getGm(int constellationType) {
+        return constellationType == Pseudoranges.CONSTELLATION_GALILEO ? GM_GALILEO : GM_GPS;
+    }
+
+    /**
+     * Returns the provided difference in seconds of the week, wrapped to +/- half a week, so
+     * times in adjacent weeks can be compared without the week number
+     */
+    public static double wrapWeekSeconds(double seconds) {
+        if (seconds > SECONDS_PER_WEEK / 2) {
+            return seconds - SECONDS_PER_WEEK;
+        } else if (seconds < -SECONDS_PER_WEEK / 2) {
+            return seconds + SECONDS_PER_WEEK;
+        }
+        return seconds;
+    }
+
+    /**
+     * Returns the seconds of the week of the provided GPS time
+     */
+    public static double getWeekSeconds(double gpsTimeSeconds) {
+        double seconds = gpsTimeSeconds % SECONDS_PER_WEEK;
+        return seconds < 0 ? seconds + SECONDS_PER_WEEK : seconds;
+    }
+
+    /**
+     * Solves Kepler's equation with a fixed number of Newton iterations, so the cost doesn't depend
+     * on the input
+     *
+     * @param meanAnomaly  mean anomaly, in radians
+     * @param eccentricity eccentricity of the orbit, well below 1
+     * @return the eccentric anomaly, in radians
+     */
+    public static double solveKepler(double meanAnomaly, double eccentricity) {
+        double e = meanAnomaly;
+        for (int i = 0; i < KEPLER_ITERATIONS; i++) {
+            e -= (e - eccentricity * Math.sin(e) - meanAnomaly)
+                    / (1.0 - eccentricity * Math.cos(e));
+        }
+        return e;
+    }
+
+    /**
+     * Computes the position, velocity and clock of a satellite from its orbit parameters
+     *
+     * @param params      orbit parameters, indexed by the constants of this class
+     * @param gm          gravitational constant of the constellation, from getGm()
+     * @param weekSeconds transmit time of the signal, in seconds of the week
+     * @param out         the state of the satellite, indexed by the SatellitePositionProvider
+     *                    constants.  The position and velocity are in the ECEF frame at transmit
+     *                    time.
+     */
+    public static void computeState(double[] params, double gm, double weekSeconds,
+            double[] out) {
+        double sqrtA = params[SQRT_A];
+        double a = sqrtA * sqrtA;
+        computeState(params[TOE], params[TOC], sqrtA,
+                Math.sqrt(gm / (a * a * a)) + params[DELTA_N], params[ECCENTRICITY], params[M0],
+                params[OMEGA0], params[I0], params[OMEGA], params[OMEGA_DOT], params[IDOT],
+                params[CUC], params[CUS], params[CRC], params[CRS], params[CIC], params[CIS],
+                params[AF0], params[AF1], params[AF2], params[GROUP_DELAY], weekSeconds, out, 0);
+    }
+
+    /**
+     * Computes the position, velocity and clock of a satellite from scalar orbit parameters, so
+     * callers that keep the parameters in their own arrays (such as OrbitBatch) share this code
+     * without copying them into a parameter array
+     *
+     * @param meanMotion  corrected mean motion (the square root of GM / A^3, plus DELTA_N), in
+     *                    radians per second
+     * @param weekSeconds transmit time of the signal, in seconds of the week
+     * @param out         array the state of the satellite is written to, indexed by the
+     *                    SatellitePositionProvider constants plus offset
+     * @param offset      index in out of the first element of the state
+     */
+    static void computeState(double toe, double toc, double sqrtA, double meanMotion, double e,
+            double m0, double omega0, double i0, double omega, double omegaDot, double idot,
+            double cuc, double cus, double crc, double crs, double cic, double cis, double af0,
+            double af1, double af2, double groupDelay, double weekSeconds, double[] out,
+            int offset) {
+        double a = sqrtA * sqrtA;
+
+        // Satellite clock, which corrects the transmit time used for the orbit
+        double tc = wrapWeekSeconds(weekSeconds - toc);
+        double clock = af0 + (af1 + af2 * tc) * tc;
+        double tk = wrapWeekSeconds(weekSeconds - clock - toe);
+
+        double n = meanMotion;
+        double eccentricAnomaly = solveKepler(m0 + n * tk, e);
+        double sinE = Math.sin(eccentricAnomaly);
+        double cosE = Math.cos(eccentricAnomaly);
+        double oneMinusECosE = 1.0 - e * cosE;
+        double sqrtOneMinusE2 = Math.sqrt(1.0 - e * e);
+        double trueAnomaly = Math.atan2(sqrtOneMinusE2 * sinE, cosE - e);
+
+        double phi = trueAnomaly + omega;
+        double sin2Phi = Math.sin(2.0 * phi);
+        double cos2Phi = Math.cos(2.0 * phi);
+        double u = phi + cus * sin2Phi + cuc * cos2Phi;
+        double r = a * oneMinusECosE + crs * sin2Phi + crc * cos2Phi;
+        double inclination = i0 + cis * sin2Phi + cic * cos2Phi + idot * tk;
+
+        double eDot = n / oneMinusECosE;
+        double phiDot = eDot * sqrtOneMinusE2 / oneMinusECosE;
+        double uDot = phiDot * (1.0 + 2.0 * (cus * cos2Phi - cuc * sin2Phi));
+        double rDot = a * e * sinE * eDot + 2.0 * phiDot * (crs * cos2Phi - crc * sin2Phi);
+        double inclinationDot = idot + 2.0 * phiDot * (cis * cos2Phi - cic * sin2Phi);
+
+        double sinU = Math.sin(u);
+        double cosU = Math.cos(u);
+        double xOrbit = r * cosU;
+        double yOrbit = r * sinU;
+        double xOrbitDot = rDot * cosU - r * uDot * sinU;
+        double yOrbitDot = rDot * sinU + r * uDot * cosU;
+
+        double nodeRate = omegaDot - Wgs84.EARTH_ROTATION_RATE;
+        double node = omega0 + nodeRate * tk - Wgs84.EARTH_ROTATION_RATE * toe;
+        double sinNode = Math.sin(node);
+        double cosNode = Math.cos(node);
+        double sinI = Math.sin(inclination);
+        double cosI = Math.cos(inclination);
+
+        double x = xOrbit * cosNode - yOrbit * cosI * sinNode;
+        double y = xOrbit * sinNode + yOrbit * cosI * cosNode;
+        out[offset + SatellitePositionProvider.X] = x;
+        out[offset + SatellitePositionProvider.Y] = y;
+        out[offset + SatellitePositionProvider.Z] = yOrbit * sinI;
+        out[offset + SatellitePositionProvider.VX] = xOrbitDot * cosNode
+                - yOrbitDot * cosI * sinNode + yOrbit * sinI * sinNode * inclinationDot
+                - y * nodeRate;
+        out[offset + SatellitePositionProvider.VY] = xOrbitDot * sinNode
+                + yOrbitDot * cosI * cosNode - yOrbit * sinI * cosNode * inclinationDot
+                + x * nodeRate;
+        out[offset + SatellitePositionProvider.VZ] = yOrbitDot * sinI
+                + yOrbit * cosI * inclinationDot;
+
+        double relativistic = F * e * sqrtA;
+        out[offset + SatellitePositionProvider.CLOCK_BIAS] = clock + relativistic * sinE
+                - groupDelay;
+        out[offset + SatellitePositionProvider.CLOCK_DRIFT] = af1 + 2.0 * af2 * tc
+                + relativistic * cosE * eDot;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+/**
+ * Routes GnssNavigationMessage data to the decoder for its signal, which stores the decoded
+ * ephemerides and almanacs in an EphemerisStore.  Only GPS L1 C/A and Galileo E1-B I/NAV messages
+ * are decoded.  This class is not thread-safe - messages should be provided from one thread.
+ */
+public class NavigationMessageDecoder {
+
+    // Same values as the GnssNavigationMessage.TYPE_* constants
+    public static final int TYPE_GPS_L1CA = 0x0101;
+
+    public static final int TYPE_GAL_I = 0x0601;
+
+    private final GpsLnavDecoder mGpsDecoder;
+
+    private final GalileoInavDecoder mGalileoDecoder;
+
+    public NavigationMessageDecoder(EphemerisStore store) {
+        mGpsDecoder = new GpsLnavDecoder(store);
+        mGalileoDecoder = new GalileoInavDecoder(store);
+    }
+
+    /**
+     * Decodes a navigation message
+     *
+     * @param type one of the GnssNavigationMessage.TYPE_* values
+     * @param svid the satellite that transmitted the message
+     * @param data the message data, as provided by GnssNavigationMessage.getData()
+     * @return true if the message changed the store
+     */
+    public boolean onNavigationMessage(int type, int svid, byte[] data) {
+        if (data == null) {
+            return false;
+        }
+        switch (type) {
+            case TYPE_GPS_L1CA:
+                return mGpsDecoder.onSubframe(svid, data);
+            case TYPE_GAL_I:
+                return mGalileoDecoder.onPage(svid, data);
+            default:
+                return false;
+        }
+    }
+}
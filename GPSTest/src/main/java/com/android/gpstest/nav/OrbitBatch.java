@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+import com.android.gpstest.pvt.SatellitePositionProvider;
+import com.android.gpstest.pvt.Wgs84;
+
+/**
+ * Computes the positions and velocities of all satellites in an EphemerisStore at once, for sky
+ * prediction, DOP planning and fixes.
+ *
+ * Orbit parameters are copied from the store into one array per parameter (structure of arrays),
+ * indexed by the slot of each satellite, so compute() is a single loop over primitive arrays with
+ * a fixed number of Kepler iterations.  Each satellite keeps the time bucket its results were
+ * computed for, so computing again in the same bucket only updates satellites whose parameters
+ * changed.  Results are for the start of the bucket - use a bucket of 0 to compute at exact times.
+ *
+ * Each slot uses the broadcast ephemeris of the satellite if there is one, or its almanac
+ * otherwise.  This class is not thread-safe.
+ */
+public class OrbitBatch {
+
+    // Never computed, or parameters changed since
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    private final double mBucketSeconds;
+
+    private final int mSize = EphemerisStore.SLOT_COUNT;
+
+    private int mStoreVersion = -1;
+
+    private double mTime;
+
+    private final double[] mParams = new double[KeplerOrbit.SIZE];
+
+    // Which slots have parameters, and the issue of the parameters they have
+    private final boolean[] mValid = new boolean[mSize];
+
+    private final boolean[] mFromAlmanac = new boolean[mSize];
+
+    private final int[] mIssue = new int[mSize];
+
+    private final long[] mBucket = new long[mSize];
+
+    // Orbit parameters, with the mean motion precomputed
+    private final double[] mToe = new double[mSize];
+
+    private final double[] mToc = new double[mSize];
+
+    private final double[] mSqrtA = new double[mSize];
+
+    private final double[] mMeanMotion = new double[mSize];
+
+    private final double[] mE = new double[mSize];
+
+    private final double[] mM0 = new double[mSize];
+
+    private final double[] mOmega0 = new double[mSize];
+
+    private final double[] mI0 = new double[mSize];
+
+    private final double[] mOmega = new double[mSize];
+
+    private final double[] mOmegaDot = new double[mSize];
+
+    private final double[] mIdot = new double[mSize];
+
+    private final double[] mCuc = new double[mSize];
+
+    private final double[] mCus = new double[mSize];
+
+    private final double[] mCrc = new double[mSize];
+
+    private final double[] mCrs = new double[mSize];
+
+    private final double[] mCic = new double[mSize];
+
+    private final double[] mCis = new double[mSize];
+
+    private final double[] mAf0 = new double[mSize];
+
+    private final double[] mAf1 = new double[mSize];
+
+    private final double[] mAf2 = new double[mSize];
+
+    private final double[] mGroupDelay = new double[mSize];
+
+    // Results, SatellitePositionProvider.STATE_SIZE values per slot
+    private final double[] mState = new double[mSize * SatellitePositionProvider.STATE_SIZE];
+
+    private final double[] mReceiver = new double[3];
+
+    /**
+     * @param bucketSeconds length of the time buckets results are cached for, or 0 to compute
+     *                      at exact times
+     */
+    public OrbitBatch(double bucketSeconds) {
+        if (bucketSeconds < 0) {
+            throw new IllegalArgumentException("Bucket length can't be negative - "
+                    + bucketSeconds);
+        }
+        mBucketSeconds = bucketSeconds;
+    }
+
+    /**
+     * Copies the orbit parameters of all satellites from the provided store, if it changed since
+     * the last load
+     *
+     * @return true if the parameters of any satellite changed
+     */
+    public boolean load(EphemerisStore store) {
+        int version = store.getVersion();
+        if (version == mStoreVersion) {
+            return false;
+        }
+        mStoreVersion = version;
+        boolean changed = false;
+        for (int i = 0; i < mSize; i++) {
+            int constellationType = EphemerisStore.getConstellationType(i);
+            int svid = EphemerisStore.getSvid(i);
+            boolean fromAlmanac = false;
+            int issue = store.getEphemeris(constellationType, svid, mParams);
+            if (issue == EphemerisStore.NO_ISSUE) {
+                fromAlmanac = true;
+                issue = store.getAlmanac(constellationType, svid, mParams);
+            }
+            boolean valid = issue != EphemerisStore.NO_ISSUE
+                    && mParams[KeplerOrbit.HEALTH] == 0.0;
+            // The store replaces health and group delay without a new issue of data
+            if (valid == mValid[i] && (!valid
+                    || (issue == mIssue[i] && fromAlmanac == mFromAlmanac[i]
+                    && mParams[KeplerOrbit.GROUP_DELAY] == mGroupDelay[i]))) {
+                continue;
+            }
+            changed = true;
+            mValid[i] = valid;
+            mFromAlmanac[i] = fromAlmanac;
+            mIssue[i] = issue;
+            mBucket[i] = NO_BUCKET;
+            if (valid) {
+                set(i, KeplerOrbit.getGm(constellationType));
+            }
+        }
+        return changed;
+    }
+
+    private void set(int i, double gm) {
+        double[] p = mParams;
+        double sqrtA = p[KeplerOrbit.SQRT_A];
+        double a = sqrtA * sqrtA;
+        mToe[i] = p[KeplerOrbit.TOE];
+        mToc[i] = p[KeplerOrbit.TOC];
+        mSqrtA[i] = sqrtA;
+        mMeanMotion[i] = Math.sqrt(gm / (a * a * a)) + p[KeplerOrbit.DELTA_N];
+        mE[i] = p[KeplerOrbit.ECCENTRICITY];
+        mM0[i] = p[KeplerOrbit.M0];
+        mOmega0[i] = p[KeplerOrbit.OMEGA0];
+        mI0[i] = p[KeplerOrbit.I0];
+        mOmega[i] = p[KeplerOrbit.OMEGA];
+        mOmegaDot[i] = p[KeplerOrbit.OMEGA_DOT];
+        mIdot[i] = p[KeplerOrbit.IDOT];
+        mCuc[i] = p[KeplerOrbit.CUC];
+        mCus[i] = p[KeplerOrbit.CUS];
+        mCrc[i] = p[KeplerOrbit.CRC];
+        mCrs[i] = p[KeplerOrbit.CRS];
+        mCic[i] = p[KeplerOrbit.CIC];
+        mCis[i] = p[KeplerOrbit.CIS];
+        mAf0[i] = p[KeplerOrbit.AF0];
+        mAf1[i] = p[KeplerOrbit.AF1];
+        mAf2[i] = p[KeplerOrbit.AF2];
+        mGroupDelay[i] = p[KeplerOrbit.GROUP_DELAY];
+    }
+
+    /**
+     * Computes the state of all satellites in the bucket of the provided time.  Satellites that
+     * were already computed for the bucket with the same parameters are skipped.
+     *
+     * @param gpsTimeSeconds GPS time, in seconds since 6 January 1980
+     */
+    public void compute(double gpsTimeSeconds) {
+        long bucket;
+        double time;
+        if (mBucketSeconds > 0) {
+            bucket = (long) Math.floor(gpsTimeSeconds / mBucketSeconds);
+            time = bucket * mBucketSeconds;
+        } else {
+            bucket = Double.doubleToLongBits(gpsTimeSeconds);
+            time = gpsTimeSeconds;
+        }
+        mTime = time;
+        double weekSeconds = KeplerOrbit.getWeekSeconds(time);
+        for (int i = 0; i < mSize; i++) {
+            if (!mValid[i] || mBucket[i] == bucket) {
+                continue;
+            }
+            mBucket[i] = bucket;
+            computeSlot(i, weekSeconds);
+        }
+    }
+
+    private void computeSlot(int i, double weekSeconds) {
+        KeplerOrbit.computeState(mToe[i], mToc[i], mSqrtA[i], mMeanMotion[i], mE[i], mM0[i],
+                mOmega0[i], mI0[i], mOmega[i], mOmegaDot[i], mIdot[i], mCuc[i], mCus[i], mCrc[i],
+                mCrs[i], mCic[i], mCis[i], mAf0[i], mAf1[i], mAf2[i], mGroupDelay[i],
+                weekSeconds, mState, i * SatellitePositionProvider.STATE_SIZE);
+    }
+
+    /**
+     * Computes the azimuth and elevation of all satellites from the provided receiver location,
+     * from the results of the last compute()
+     *
+     * @param azimuthDegrees   azimuth of each slot, or NaN if the slot isn't valid
+     * @param elevationDegrees elevation of each slot, or NaN if the slot isn't valid
+     */
+    public void computeAzimuthElevation(double latitude, double longitude, double altitude,
+            float[] azimuthDegrees, float[] elevationDegrees) {
+        Wgs84.geodeticToEcef(latitude, longitude, altitude, mReceiver);
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        double sinPhi = Math.sin(phi);
+        double cosPhi = Math.cos(phi);
+        double sinLambda = Math.sin(lambda);
+        double cosLambda = Math.cos(lambda);
+        for (int i = 0; i < mSize; i++) {
+            if (!mValid[i] || mBucket[i] == NO_BUCKET) {
+                azimuthDegrees[i] = Float.NaN;
+                elevationDegrees[i] = Float.NaN;
+                continue;
+            }
+            int offset = i * SatellitePositionProvider.STATE_SIZE;
+            double dx = mState[offset + SatellitePositionProvider.X] - mReceiver[0];
+            double dy = mState[offset + SatellitePositionProvider.Y] - mReceiver[1];
+            double dz = mState[offset + SatellitePositionProvider.Z] - mReceiver[2];
+            double east = -sinLambda * dx + cosLambda * dy;
+            double north = -sinPhi * cosLambda * dx - sinPhi * sinLambda * dy + cosPhi * dz;
+            double up = cosPhi * cosLambda * dx + cosPhi * sinLambda * dy + sinPhi * dz;
+            double azimuth = Math.toDegrees(Math.atan2(east, north));
+            azimuthDegrees[i] = (float) (azimuth < 0 ? azimuth + 360.0 : azimuth);
+            elevationDegrees[i] = (float) Math.toDegrees(Math.atan2(up,
+                    Math.sqrt(east * east + north * north)));
+        }
+    }
+
+    /**
+     * Returns the number of slots, which is the length of the arrays used by this class
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns true if the provided slot has orbit parameters of a healthy satellite
+     *
+     * @return true if the provided slot has orbit parameters of a healthy satellite
+     */
+    public boolean isValid(int slot) {
+        return mValid[slot];
+    }
+
+    /**
+     * Returns true if the orbit of the provided slot is from an almanac rather than an ephemeris
+     *
+     * @return true if the orbit of the provided slot is from an almanac
+     */
+    public boolean isFromAlmanac(int slot) {
+        return mFromAlmanac[slot];
+    }
+
+    public int getConstellationType(int slot) {
+        return EphemerisStore.getConstellationType(slot);
+    }
+
+    public int getSvid(int slot) {
+        return EphemerisStore.getSvid(slot);
+    }
+
+    /**
+     * Returns the GPS time the results are for, which is the start of the time bucket
+     *
+     * @return the GPS time the results are for, in seconds since 6 January 1980
+     */
+    public double getTime() {
+        return mTime;
+    }
+
+    public double getX(int slot) {
+        return getState(slot, SatellitePositionProvider.X);
+    }
+
+    public double getY(int slot) {
+        return getState(slot, SatellitePositionProvider.Y);
+    }
+
+    public double getZ(int slot) {
+        return getState(slot, SatellitePositionProvider.Z);
+    }
+
+    public double getVelocityX(int slot) {
+        return getState(slot, SatellitePositionProvider.VX);
+    }
+
+    public double getVelocityY(int slot) {
+        return getState(slot, SatellitePositionProvider.VY);
+    }
+
+    public double getVelocityZ(int slot) {
+        return getState(slot, SatellitePositionProvider.VZ);
+    }
+
+    /**
+     * Returns the clock bias of the satellite, in seconds, including the relativistic correction
+     *
+     * @return the clock bias of the satellite, in seconds
+     */
+    public double getClockBias(int slot) {
+        return getState(slot, SatellitePositionProvider.CLOCK_BIAS);
+    }
+
+    public double getClockDrift(int slot) {
+        return getState(slot, SatellitePositionProvider.CLOCK_DRIFT);
+    }
+
+    private double getState(int slot, int index) {
+        return mState[slot * SatellitePositionProvider.STATE_SIZE + index];
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.nav;
+
+import android.os.Build;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * The predicted azimuth and elevation of every satellite in an EphemerisStore over a window of
+ * time, seen from a fixed location, for planning when the sky will have good geometry.
+ *
+ * The whole window is computed up front into one table indexed by time step and then by the slot
+ * of each satellite, so showing any time in the window is a lookup.  Steps are computed in
+ * parallel on a fork/join pool if one is provided - each task computes a range of steps with its
+ * own OrbitBatch, from a snapshot of the store taken when the prediction starts.  Predictions far
+ * from the reference time of an ephemeris, or from an almanac, are approximate, but are much
+ * better than a degree for several hours.  Instances are immutable once computed.
+ */
+public class SkyPrediction {
+
+    // Difference between the Unix epoch and the start of GPS time, 6 January 1980
+    private static final long GPS_EPOCH_UNIX_MILLIS = 315964800000L;
+
+    // GPS time isn't adjusted for leap seconds, so it's ahead of UTC by all leap seconds since 1980
+    public static final int GPS_LEAP_SECONDS = 18;
+
+    // Tasks with this many steps or less are computed on one thread
+    private static final int STEPS_PER_TASK = 16;
+
+    private final double mStartTime;
+
+    private final double mStepSeconds;
+
+    private final int mStepCount;
+
+    private final int mSize;
+
+    private final boolean[] mValid;
+
+    private final boolean[] mFromAlmanac;
+
+    // Indexed by step * size() + slot
+    private final float[] mAzimuth;
+
+    private final float[] mElevation;
+
+    private SkyPrediction(double startTime, double stepSeconds, int stepCount, OrbitBatch batch) {
+        mStartTime = startTime;
+        mStepSeconds = stepSeconds;
+        mStepCount = stepCount;
+        mSize = batch.size();
+        mValid = new boolean[mSize];
+        mFromAlmanac = new boolean[mSize];
+        for (int i = 0; i < mSize; i++) {
+            mValid[i] = batch.isValid(i);
+            mFromAlmanac[i] = batch.isFromAlmanac(i);
+        }
+        mAzimuth = new float[stepCount * mSize];
+        mElevation = new float[stepCount * mSize];
+    }
+
+    /**
+     * Returns the GPS time of the provided UTC time
+     *
+     * @param unixMillis UTC time in milliseconds since 1 January 1970, e.g. from
+     *                   System.currentTimeMillis()
+     * @return GPS time, in seconds since 6 January 1980
+     */
+    public static double getGpsTimeSeconds(long unixMillis) {
+        return (unixMillis - GPS_EPOCH_UNIX_MILLIS) / 1000.0 + GPS_LEAP_SECONDS;
+    }
+
+    /**
+     * Predicts the sky over a window of time from the orbits in the provided store, computing all
+     * steps on the calling thread
+     *
+     * @param store          orbits to predict from, which may change while predicting
+     * @param latitude       latitude of the receiver, in degrees
+     * @param longitude      longitude of the receiver, in degrees
+     * @param altitude       height of the receiver above the WGS84 ellipsoid, in meters
+     * @param startGpsTime   GPS time of the first step, in seconds since 6 January 1980
+     * @param stepSeconds    time between steps, in seconds
+     * @param stepCount      number of steps to predict
+     * @return the prediction
+     */
+    public static SkyPrediction compute(EphemerisStore store, double latitude, double longitude,
+            double altitude, double startGpsTime, double stepSeconds, int stepCount) {
+        EphemerisStore snapshot = new EphemerisStore(store);
+        OrbitBatch batch = new OrbitBatch(0);
+        batch.load(snapshot);
+        SkyPrediction prediction = create(batch, startGpsTime, stepSeconds, stepCount);
+        prediction.computeSteps(batch, snapshot, latitude, longitude, altitude, 0, stepCount);
+        return prediction;
+    }
+
+    /**
+     * Predicts the sky over a window of time from the orbits in the provided store, computing
+     * steps in parallel on the provided pool
+     *
+     * @param store          orbits to predict from, which may change while predicting
+     * @param latitude       latitude of the receiver, in degrees
+     * @param longitude      longitude of the receiver, in degrees
+     * @param altitude       height of the receiver above the WGS84 ellipsoid, in meters
+     * @param startGpsTime   GPS time of the first step, in seconds since 6 January 1980
+     * @param stepSeconds    time between steps, in seconds
+     * @param stepCount      number of steps to predict
+     * @param pool           pool to compute steps on
+     * @return the prediction
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public static SkyPrediction compute(EphemerisStore store, double latitude, double longitude,
+            double altitude, double startGpsTime, double stepSeconds, int stepCount,
+            ForkJoinPool pool) {
+        EphemerisStore snapshot = new EphemerisStore(store);
+        OrbitBatch batch = new OrbitBatch(0);
+        batch.load(snapshot);
+        SkyPrediction prediction = create(batch, startGpsTime, stepSeconds, stepCount);
+        pool.invoke(new StepTask(prediction, snapshot, latitude, longitude, altitude, 0,
+                stepCount));
+        return prediction;
+    }
+
+    private static SkyPrediction create(OrbitBatch batch, double startGpsTime, double stepSeconds,
+            int stepCount) {
+        if (stepSeconds <= 0 || stepCount <= 0) {
+            throw new IllegalArgumentException("Step length and count must be positive - "
+                    + stepSeconds + ", " + stepCount);
+        }
+        return new SkyPrediction(startGpsTime, stepSeconds, stepCount, batch);
+    }
+
+    /**
+     * Computes steps from (inclusive) to to (exclusive) into the table
+     *
+     * @param batch a batch loaded from the snapshot, or null to create one
+     */
+    private void computeSteps(OrbitBatch batch, EphemerisStore snapshot, double latitude,
+            double longitude, double altitude, int from, int to) {
+        if (batch == null) {
+            batch = new OrbitBatch(0);
+            batch.load(snapshot);
+        }
+        float[] azimuth = new float[mSize];
+        float[] elevation = new float[mSize];
+        for (int step = from; step < to; step++) {
+            batch.compute(mStartTime + step * mStepSeconds);
+            batch.computeAzimuthElevation(latitude, longitude, altitude, azimuth, elevation);
+            System.arraycopy(azimuth, 0, mAzimuth, step * mSize, mSize);
+            System.arraycopy(elevation, 0, mElevation, step * mSize, mSize);
+        }
+    }
+
+    /**
+     * Computes a range of steps, splitting it in half until the ranges are small
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private static class StepTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SkyPrediction mPrediction;
+
+        private final EphemerisStore mSnapshot;
+
+        private final double mLatitude;
+
+        private final double mLongitude;
+
+        private final double mAltitude;
+
+        private final int mFrom;
+
+        private final int mTo;
+
+        StepTask(SkyPrediction prediction, EphemerisStore snapshot, double latitude,
+                double longitude, double altitude, int from, int to) {
+            mPrediction = prediction;
+            mSnapshot = snapshot;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mAltitude = altitude;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= STEPS_PER_TASK) {
+                mPrediction.computeSteps(null, mSnapshot, mLatitude, mLongitude, mAltitude,
+                        mFrom, mTo);
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new StepTask(mPrediction, mSnapshot, mLatitude, mLongitude, mAltitude,
+                            mFrom, middle),
+                    new StepTask(mPrediction, mSnapshot, mLatitude, mLongitude, mAltitude,
+                            middle, mTo));
+        }
+    }
+
+    /**
+     * Returns the step closest to the provided time, clamped to the window
+     *
+     * @param gpsTimeSeconds GPS time, in seconds since 6 January 1980
+     * @return the step closest to the provided time
+     */
+    public int getStep(double gpsTimeSeconds) {
+        long step = Math.round((gpsTimeSeconds - mStartTime) / mStepSeconds);
+        return (int) Math.max(0, Math.min(mStepCount - 1, step));
+    }
+
+    /**
+     * Returns the GPS time of the provided step
+     *
+     * @return the GPS time of the provided step, in seconds since 6 January 1980
+     */
+    public double getTime(int step) {
+        return mStartTime + step * mStepSeconds;
+    }
+
+    public int getStepCount() {
+        return mStepCount;
+    }
+
+    public double getStepSeconds() {
+        return mStepSeconds;
+    }
+
+    /**
+     * Returns the number of slots in each step
+     *
+     * @return the number of slots in each step
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns true if the provided slot had orbit parameters of a healthy satellite
+     *
+     * @return true if the provided slot had orbit parameters of a healthy satellite
+     */
+    public boolean isValid(int slot) {
+        return mValid[slot];
+    }
+
+    /**
+     * Returns true if the prediction of the provided slot is from an almanac rather than an
+     * ephemeris
+     *
+     * @return true if the prediction of the provided slot is from an almanac
+     */
+    public boolean isFromAlmanac(int slot) {
+        return mFromAlmanac[slot];
+    }
+
+    public int getConstellationType(int slot) {
+        return EphemerisStore.getConstellationType(slot);
+    }
+
+    public int getSvid(int slot) {
+        return EphemerisStore.getSvid(slot);
+    }
+
+    /**
+     * Returns the azimuth of a satellite at the provided step
+     *
+     * @return the azimuth in degrees, or NaN if the slot isn't valid
+     */
+    public float getAzimuthDegrees(int step, int slot) {
+        return mAzimuth[step * mSize + slot];
+    }
+
+    /**
+     * Returns the elevation of a satellite at the provided step
+     *
+     * @return the elevation in degrees, which is negative below the horizon, or NaN if the slot
+     * isn't valid
+     */
+    public float getElevationDegrees(int step, int slot) {
+        return mElevation[step * mSize + slot];
+    }
+}
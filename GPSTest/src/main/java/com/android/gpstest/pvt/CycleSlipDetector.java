@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+import com.android.gpstest.util.IntIntHashMap;
+
+/**
+ * Detects cycle slips in the accumulated delta range (ADR, i.e. carrier phase) of each signal,
+ * and keeps statistics about how continuously each signal is tracked, to qualify devices for
+ * carrier phase positioning.
+ *
+ * A slip is counted when the device reports a reset or cycle slip in the ADR state, when the
+ * change in ADR doesn't match the change predicted from the pseudorange rate (Doppler test), or
+ * when the difference between the ADR of two signals from the same satellite jumps (geometry-free
+ * test - the geometry and clocks cancel out, leaving only the slowly changing ionosphere).  The
+ * geometry-free test is done for the first two frequencies seen from each satellite.  A slip, an
+ * invalid ADR or a gap in tracking ends the continuous arc of a signal.
+ *
+ * State is kept per signal in preallocated arrays, found through an IntIntHashMap, so each
+ * measurement is O(1) and doesn't allocate.  This class is not thread-safe.
+ */
+public class CycleSlipDetector {
+
+    public static final int MAX_SIGNALS = 256;
+
+    // Same values as the GnssMeasurement.ADR_STATE_* constants
+    public static final int ADR_STATE_VALID = 1;
+
+    public static final int ADR_STATE_RESET = 2;
+
+    public static final int ADR_STATE_CYCLE_SLIP = 4;
+
+    // Results of add(), combined as bits
+    public static final int SLIP_NONE = 0;
+
+    public static final int SLIP_REPORTED = 1;
+
+    public static final int SLIP_DOPPLER = 2;
+
+    public static final int SLIP_GEOMETRY_FREE = 4;
+
+    // Signals not measured for this long have lost lock, even if the ADR state says otherwise
+    private static final double MAX_GAP_SECONDS = 3.0;
+
+    // Thresholds of the Doppler test, in standard deviations and in carrier cycles
+    private static final double DOPPLER_SIGMAS = 4.0;
+
+    private static final double MIN_DOPPLER_CYCLES = 0.5;
+
+    // Change in the geometry-free combination between epochs that indicates a slip
+    private static final double GEOMETRY_FREE_THRESHOLD_METERS = 0.05;
+
+    // Used when a device doesn't report the carrier frequency
+    private static final double GPS_L1_FREQUENCY_HZ = 1575.42E6;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final IntIntHashMap mSignalByKey = new IntIntHashMap(MAX_SIGNALS);
+
+    private final IntIntHashMap mSatelliteByKey = new IntIntHashMap(MAX_SIGNALS);
+
+    private int mSignalCount;
+
+    private int mSatelliteCount;
+
+    // Per signal state
+    private final int[] mConstellationType = new int[MAX_SIGNALS];
+
+    private final int[] mSvid = new int[MAX_SIGNALS];
+
+    private final double[] mCarrierFrequencyHz = new double[MAX_SIGNALS];
+
+    private final int[] mSatellite = new int[MAX_SIGNALS];
+
+    private final long[] mTimeNanos = new long[MAX_SIGNALS];
+
+    private final double[] mAdr = new double[MAX_SIGNALS];
+
+    private final double[] mAdrUncertainty = new double[MAX_SIGNALS];
+
+    private final double[] mRate = new double[MAX_SIGNALS];
+
+    private final double[] mRateUncertainty = new double[MAX_SIGNALS];
+
+    // Start of the continuous arc, or NO_TIME if the ADR isn't valid
+    private final long[] mArcStartNanos = new long[MAX_SIGNALS];
+
+    // Per signal statistics
+    private final int[] mEpochs = new int[MAX_SIGNALS];
+
+    private final int[] mValidEpochs = new int[MAX_SIGNALS];
+
+    private final int[] mReportedSlips = new int[MAX_SIGNALS];
+
+    private final int[] mDopplerSlips = new int[MAX_SIGNALS];
+
+    private final int[] mGeometryFreeSlips = new int[MAX_SIGNALS];
+
+    private final long[] mLongestArcNanos = new long[MAX_SIGNALS];
+
+    // Per satellite state of the geometry-free test, between the first two signals seen
+    private final int[] mFirstSignal = new int[MAX_SIGNALS];
+
+    private final int[] mSecondSignal = new int[MAX_SIGNALS];
+
+    private final long[] mGeometryFreeTimeNanos = new long[MAX_SIGNALS];
+
+    private final double[] mGeometryFree = new double[MAX_SIGNALS];
+
+    /**
+     * Returns the key of a signal in the map of signals
+     */
+    private static int getSignalKey(int constellationType, int svid, double carrierFrequencyHz) {
+        // Bands are far more than 1 MHz apart, and GLONASS channels of one satellite don't change
+        int megahertz = (int) Math.round(carrierFrequencyHz * 1.0E-6);
+        return (constellationType << 24) | ((svid & 0xFF) << 16) | (megahertz & 0xFFFF);
+    }
+
+    /**
+     * Adds the measurement of a signal
+     *
+     * @param timeNanos                    GnssClock.getTimeNanos() of the measurement
+     * @param constellationType            GnssMeasurement.getConstellationType()
+     * @param svid                         GnssMeasurement.getSvid()
+     * @param carrierFrequencyHz           GnssMeasurement.getCarrierFrequencyHz(), or 0 if it
+     *                                     isn't available
+     * @param adrState                     GnssMeasurement.getAccumulatedDeltaRangeState()
+     * @param adrMeters                    GnssMeasurement.getAccumulatedDeltaRangeMeters()
+     * @param adrUncertaintyMeters         GnssMeasurement
+     *                                     .getAccumulatedDeltaRangeUncertaintyMeters()
+     * @param pseudorangeRateMps           GnssMeasurement.getPseudorangeRateMetersPerSecond()
+     * @param pseudorangeRateUncertaintyMps GnssMeasurement
+     *                                     .getPseudorangeRateUncertaintyMetersPerSecond()
+     * @return the SLIP_* bits of the slips detected in this signal, or SLIP_NONE
+     */
+    public int add(long timeNanos, int constellationType, int svid, double carrierFrequencyHz,
+            int adrState, double adrMeters, double adrUncertaintyMeters,
+            double pseudorangeRateMps, double pseudorangeRateUncertaintyMps) {
+        int i = getSignal(constellationType, svid, carrierFrequencyHz);
+        if (i < 0) {
+            return SLIP_NONE;
+        }
+        long lastTimeNanos = mTimeNanos[i];
+        if (lastTimeNanos == timeNanos) {
+            // Duplicate measurement
+            return SLIP_NONE;
+        }
+        mEpochs[i]++;
+        double dt = (timeNanos - lastTimeNanos) * 1.0E-9;
+        boolean wasValid = mArcStartNanos[i] != NO_TIME && lastTimeNanos != NO_TIME
+                && dt > 0 && dt <= MAX_GAP_SECONDS;
+        mTimeNanos[i] = timeNanos;
+        if ((adrState & ADR_STATE_VALID) == 0) {
+            endArc(i);
+            return SLIP_NONE;
+        }
+        mValidEpochs[i]++;
+
+        int slips = SLIP_NONE;
+        if ((adrState & (ADR_STATE_RESET | ADR_STATE_CYCLE_SLIP)) != 0) {
+            // Devices often report a reset when tracking starts, which doesn't break an arc
+            if (wasValid) {
+                slips |= SLIP_REPORTED;
+                mReportedSlips[i]++;
+            }
+            wasValid = false;
+        } else if (wasValid) {
+            // The ADR should change by the average pseudorange rate over the interval
+            double predicted = 0.5 * (mRate[i] + pseudorangeRateMps) * dt;
+            double residual = adrMeters - mAdr[i] - predicted;
+            double rateVariance = 0.25 * (mRateUncertainty[i] * mRateUncertainty[i]
+                    + pseudorangeRateUncertaintyMps * pseudorangeRateUncertaintyMps);
+            double sigma = Math.sqrt(rateVariance * dt * dt
+                    + mAdrUncertainty[i] * mAdrUncertainty[i]
+                    + adrUncertaintyMeters * adrUncertaintyMeters);
+            double threshold = Math.max(DOPPLER_SIGMAS * sigma,
+                    MIN_DOPPLER_CYCLES * Wgs84.SPEED_OF_LIGHT / mCarrierFrequencyHz[i]);
+            if (Math.abs(residual) > threshold) {
+                slips |= SLIP_DOPPLER;
+                mDopplerSlips[i]++;
+            }
+        }
+        mAdr[i] = adrMeters;
+        mAdrUncertainty[i] = adrUncertaintyMeters;
+        mRate[i] = pseudorangeRateMps;
+        mRateUncertainty[i] = pseudorangeRateUncertaintyMps;
+        if (slips != SLIP_NONE || !wasValid) {
+            startArc(i, timeNanos);
+        } else {
+            updateLongestArc(i);
+        }
+
+        if (checkGeometryFree(mSatellite[i], timeNanos)) {
+            slips |= SLIP_GEOMETRY_FREE;
+        }
+        return slips;
+    }
+
+    /**
+     * Returns the index of the provided signal, adding it if it's new
+     *
+     * @return the index of the signal, or -1 if there are already MAX_SIGNALS signals
+     */
+    private int getSignal(int constellationType, int svid, double carrierFrequencyHz) {
+        int key = getSignalKey(constellationType, svid, carrierFrequencyHz);
+        int i = mSignalByKey.get(key);
+        if (i != IntIntHashMap.NOT_FOUND) {
+            return i;
+        }
+        if (mSignalCount == MAX_SIGNALS) {
+            return -1;
+        }
+        int satelliteKey = (constellationType << 16) | (svid & 0xFFFF);
+        int satellite = mSatelliteByKey.get(satelliteKey);
+        if (satellite == IntIntHashMap.NOT_FOUND) {
+            satellite = mSatelliteCount++;
+            mSatelliteByKey.put(satelliteKey, satellite);
+            mFirstSignal[satellite] = -1;
+            mSecondSignal[satellite] = -1;
+            mGeometryFreeTimeNanos[satellite] = NO_TIME;
+        }
+        i = mSignalCount++;
+        mSignalByKey.put(key, i);
+        mConstellationType[i] = constellationType;
+        mSvid[i] = svid;
+        mCarrierFrequencyHz[i] = carrierFrequencyHz > 0 ? carrierFrequencyHz
+                : GPS_L1_FREQUENCY_HZ;
+        mSatellite[i] = satellite;
+        mTimeNanos[i] = NO_TIME;
+        mArcStartNanos[i] = NO_TIME;
+        mEpochs[i] = 0;
+        mValidEpochs[i] = 0;
+        mReportedSlips[i] = 0;
+        mDopplerSlips[i] = 0;
+        mGeometryFreeSlips[i] = 0;
+        mLongestArcNanos[i] = 0;
+        if (mFirstSignal[satellite] < 0) {
+            mFirstSignal[satellite] = i;
+        } else if (mSecondSignal[satellite] < 0) {
+            mSecondSignal[satellite] = i;
+        }
+        return i;
+    }
+
+    /**
+     * Updates the geometry-free combination of a satellite once both of its signals have been
+     * measured at the provided time, and counts a slip on both signals if it jumped
+     *
+     * @return true if a slip was detected
+     */
+    private boolean checkGeometryFree(int satellite, long timeNanos) {
+        int first = mFirstSignal[satellite];
+        int second = mSecondSignal[satellite];
+        if (second < 0 || mTimeNanos[first] != timeNanos || mTimeNanos[second] != timeNanos
+                || mArcStartNanos[first] == NO_TIME || mArcStartNanos[second] == NO_TIME) {
+            return false;
+        }
+        double geometryFree = mAdr[first] - mAdr[second];
+        double lastGeometryFree = mGeometryFree[satellite];
+        long lastTimeNanos = mGeometryFreeTimeNanos[satellite];
+        mGeometryFreeTimeNanos[satellite] = timeNanos;
+        mGeometryFree[satellite] = geometryFree;
+        // Only compare if both signals were continuous since the last combination
+        if (lastTimeNanos == NO_TIME || mArcStartNanos[first] > lastTimeNanos
+                || mArcStartNanos[second] > lastTimeNanos) {
+            return false;
+        }
+        if (Math.abs(geometryFree - lastGeometryFree) <= GEOMETRY_FREE_THRESHOLD_METERS) {
+            return false;
+        }
+        mGeometryFreeSlips[first]++;
+        mGeometryFreeSlips[second]++;
+        startArc(first, timeNanos);
+        startArc(second, timeNanos);
+        return true;
+    }
+
+    private void startArc(int i, long timeNanos) {
+        mArcStartNanos[i] = timeNanos;
+    }
+
+    private void endArc(int i) {
+        mArcStartNanos[i] = NO_TIME;
+    }
+
+    private void updateLongestArc(int i) {
+        long arc = mTimeNanos[i] - mArcStartNanos[i];
+        if (arc > mLongestArcNanos[i]) {
+            mLongestArcNanos[i] = arc;
+        }
+    }
+
+    /**
+     * Removes all signals and statistics
+     */
+    public void clear() {
+        mSignalByKey.clear();
+        mSatelliteByKey.clear();
+        mSignalCount = 0;
+        mSatelliteCount = 0;
+    }
+
+    /**
+     * Returns the number of signals with statistics, which are indexed from 0
+     *
+     * @return the number of signals with statistics
+     */
+    public int getSignalCount() {
+        return mSignalCount;
+    }
+
+    public int getConstellationType(int signal) {
+        return mConstellationType[signal];
+    }
+
+    public int getSvid(int signal) {
+        return mSvid[signal];
+    }
+
+    public double getCarrierFrequencyHz(int signal) {
+        return mCarrierFrequencyHz[signal];
+    }
+
+    /**
+     * Returns the number of epochs the provided signal was measured in
+     *
+     * @return the number of epochs the provided signal was measured in
+     */
+    public int getEpochCount(int signal) {
+        return mEpochs[signal];
+    }
+
+    /**
+     * Returns the number of epochs the provided signal had a valid ADR in
+     *
+     * @return the number of epochs the provided signal had a valid ADR in
+     */
+    public int getValidEpochCount(int signal) {
+        return mValidEpochs[signal];
+    }
+
+    public int getReportedSlipCount(int signal) {
+        return mReportedSlips[signal];
+    }
+
+    public int getDopplerSlipCount(int signal) {
+        return mDopplerSlips[signal];
+    }
+
+    public int getGeometryFreeSlipCount(int signal) {
+        return mGeometryFreeSlips[signal];
+    }
+
+    /**
+     * Returns the number of slips of the provided signal found by any test
+     *
+     * @return the number of slips of the provided signal found by any test
+     */
+    public int getSlipCount(int signal) {
+        return mReportedSlips[signal] + mDopplerSlips[signal] + mGeometryFreeSlips[signal];
+    }
+
+    /**
+     * Returns true if the provided signal was measured at the provided time with a valid ADR that
+     * continues its arc, i.e. without a slip
+     *
+     * @param timeNanos GnssClock.getTimeNanos() of the current epoch
+     * @return true if the provided signal was continuous in the current epoch
+     */
+    public boolean isContinuous(int signal, long timeNanos) {
+        return mArcStartNanos[signal] != NO_TIME && mTimeNanos[signal] == timeNanos;
+    }
+
+    /**
+     * Returns the length of the current continuous arc of the provided signal
+     *
+     * @return the length of the current continuous arc, in seconds, or 0 if there isn't one
+     */
+    public double getArcSeconds(int signal) {
+        if (mArcStartNanos[signal] == NO_TIME) {
+            return 0;
+        }
+        return (mTimeNanos[signal] - mArcStartNanos[signal]) * 1.0E-9;
+    }
+
+    /**
+     * Returns the length of the longest continuous arc of the provided signal
+     *
+     * @return the length of the longest continuous arc, in seconds
+     */
+    public double getLongestArcSeconds(int signal) {
+        return mLongestArcNanos[signal] * 1.0E-9;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+import com.android.gpstest.DilutionOfPrecision;
+
+/**
+ * Computes dilution of precision from the elevation and azimuth of satellites, so DOP is
+ * available on devices that don't output NMEA GSA sentences.
+ *
+ * Each satellite is added with a group (e.g., its constellation), and DOP can be computed for any
+ * combination of groups - all of them, a single constellation, or all but one constellation to
+ * see how much that constellation helps.  All groups share one receiver clock term.  Satellites
+ * are kept in preallocated arrays and the geometry matrix is inverted with Matrix4, so computing
+ * DOP doesn't allocate.  This class is not thread-safe.
+ */
+public class DopCalculator {
+
+    public static final int MAX_SATELLITES = 128;
+
+    // Includes every group in compute()
+    public static final int ALL_GROUPS = -1;
+
+    // Unit vectors from the receiver to each satellite, in east, north and up
+    private final double[] mEast = new double[MAX_SATELLITES];
+
+    private final double[] mNorth = new double[MAX_SATELLITES];
+
+    private final double[] mUp = new double[MAX_SATELLITES];
+
+    private final int[] mGroup = new int[MAX_SATELLITES];
+
+    private final int[] mSvid = new int[MAX_SATELLITES];
+
+    private int mCount;
+
+    private final double[] mMatrix = new double[Matrix4.SIZE];
+
+    private final double[] mH = new double[4];
+
+    /**
+     * Returns the bit for the provided group, for building the mask passed to compute()
+     *
+     * @param group a group between 0 and 31
+     * @return the bit for the provided group
+     */
+    public static int getGroupMask(int group) {
+        return 1 << group;
+    }
+
+    /**
+     * Removes all satellites, to start a new epoch
+     */
+    public void begin() {
+        mCount = 0;
+    }
+
+    /**
+     * Adds a satellite to the current epoch.  A satellite that was already added with the same
+     * group and svid (e.g., a second signal from the same satellite) is ignored.
+     *
+     * @param group            group of the satellite, between 0 and 31
+     * @param svid             identification number of the satellite within its group
+     * @param elevationDegrees elevation of the satellite
+     * @param azimuthDegrees   azimuth of the satellite
+     * @return true if the satellite was added, false if it was a duplicate or the epoch is full
+     */
+    public boolean add(int group, int svid, float elevationDegrees, float azimuthDegrees) {
+        if (group < 0 || group > 31) {
+            throw new IllegalArgumentException("Group must be between 0 and 31 - " + group);
+        }
+        if (mCount == MAX_SATELLITES) {
+            return false;
+        }
+        for (int i = 0; i < mCount; i++) {
+            if (mSvid[i] == svid && mGroup[i] == group) {
+                return false;
+            }
+        }
+        double elevation = Math.toRadians(elevationDegrees);
+        double azimuth = Math.toRadians(azimuthDegrees);
+        double cosElevation = Math.cos(elevation);
+        int i = mCount++;
+        mEast[i] = cosElevation * Math.sin(azimuth);
+        mNorth[i] = cosElevation * Math.cos(azimuth);
+        mUp[i] = Math.sin(elevation);
+        mGroup[i] = group;
+        mSvid[i] = svid;
+        return true;
+    }
+
+    /**
+     * Returns the number of satellites in the current epoch
+     *
+     * @return the number of satellites in the current epoch
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Computes the DOP of the satellites in the provided groups
+     *
+     * @param groupMask the groups to include, from getGroupMask(), or ALL_GROUPS
+     * @param out       the DOP, if the geometry can be solved
+     * @return true if the DOP was computed, false if there are fewer than four satellites in the
+     * groups or their geometry can't be solved
+     */
+    public boolean compute(int groupMask, DilutionOfPrecision out) {
+        Matrix4.clear(mMatrix);
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            if ((groupMask & getGroupMask(mGroup[i])) == 0) {
+                continue;
+            }
+            mH[0] = -mEast[i];
+            mH[1] = -mNorth[i];
+            mH[2] = -mUp[i];
+            mH[3] = 1.0;
+            Matrix4.addOuterProduct(mMatrix, mH, 1.0);
+            count++;
+        }
+        if (count < 4 || !Matrix4.invertSymmetric(mMatrix, mMatrix)) {
+            return false;
+        }
+        double east = mMatrix[0];
+        double north = mMatrix[5];
+        double up = mMatrix[10];
+        out.set(Math.sqrt(east + north + up), Math.sqrt(east + north), Math.sqrt(up),
+                Math.sqrt(mMatrix[15]));
+        return true;
+    }
+}
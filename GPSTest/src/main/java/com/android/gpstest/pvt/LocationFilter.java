@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * Smooths a stream of position fixes with a constant velocity Kalman filter.
+ *
+ * Positions are converted to east, north and up meters in a local frame centered near the fixes,
+ * and each axis is filtered separately with a position and velocity state, so the covariance of
+ * each axis is three doubles and every update is a few scalar operations.  The measurement noise
+ * comes from the accuracy reported with each fix.  The process noise (how much the velocity may
+ * change) adapts to the innovations normalized by that accuracy - it grows when the fixes move
+ * more than the filter predicts, e.g. when the user starts moving or turns, and decays when they
+ * don't, e.g. when standing still.  The filter restarts after a gap in fixes or a fix that is far
+ * outside of its prediction.
+ *
+ * All state is kept in primitive fields, so updates don't allocate.  This class is not
+ * thread-safe.
+ */
+public class LocationFilter {
+
+    public static final int EAST = 0;
+
+    public static final int NORTH = 1;
+
+    public static final int UP = 2;
+
+    // The filter restarts if there are no fixes for this long
+    private static final double MAX_GAP_SECONDS = 10.0;
+
+    // The frame is moved to the current position when it's this far from the center
+    private static final double RECENTER_METERS = 10000.0;
+
+    // Limits and initial value of the process noise, in m^2/s^3
+    private static final double MIN_PROCESS_NOISE = 0.01;
+
+    private static final double MAX_PROCESS_NOISE = 100.0;
+
+    private static final double INITIAL_PROCESS_NOISE = 1.0;
+
+    // Normalized innovations squared above and below which the process noise grows and decays
+    private static final double HIGH_INNOVATION = 4.0;
+
+    private static final double LOW_INNOVATION = 0.5;
+
+    private static final double PROCESS_NOISE_GROWTH = 2.0;
+
+    private static final double PROCESS_NOISE_DECAY = 0.9;
+
+    // The filter restarts for a fix with a normalized innovation squared above this (100 sigma)
+    private static final double RESET_INNOVATION = 10000.0;
+
+    // Variance of the velocity when the filter starts without a measured velocity, in m^2/s^2
+    private static final double INITIAL_VELOCITY_VARIANCE = 100.0;
+
+    // Used when a velocity is measured without an accuracy, in meters per second
+    private static final double DEFAULT_SPEED_ACCURACY = 1.0;
+
+    private boolean mInitialized;
+
+    private boolean mHasAltitude;
+
+    private long mTimeNanos;
+
+    // Center of the local frame, in radians, and its radii of curvature in meters
+    private double mLatitude0;
+
+    private double mLongitude0;
+
+    private double mMeridianRadius;
+
+    private double mParallelRadius;
+
+    // State and covariance of each axis
+    private final double[] mPosition = new double[3];
+
+    private final double[] mVelocity = new double[3];
+
+    private final double[] mPositionVariance = new double[3];
+
+    private final double[] mCovariance = new double[3];
+
+    private final double[] mVelocityVariance = new double[3];
+
+    private double mHorizontalProcessNoise;
+
+    private double mVerticalProcessNoise;
+
+    private int mUpdateCount;
+
+    private int mResetCount;
+
+    /**
+     * Adds a fix and updates the filtered position
+     *
+     * @param timeNanos          time of the fix, in nanoseconds from any fixed point
+     * @param latitude           latitude of the fix, in degrees
+     * @param longitude          longitude of the fix, in degrees
+     * @param horizontalAccuracy horizontal accuracy of the fix (1 sigma), in meters
+     * @param hasAltitude        true if the fix has an altitude
+     * @param altitude           altitude of the fix, in meters
+     * @param verticalAccuracy   vertical accuracy of the fix (1 sigma), in meters
+     * @param hasVelocity        true if the fix has a speed and bearing
+     * @param speed              speed of the fix, in meters per second
+     * @param bearing            bearing of the fix, in degrees clockwise from north
+     * @param speedAccuracy      accuracy of the speed (1 sigma) in meters per second, or 0 if
+     *                           it's unknown
+     * @return true if the fix was filtered, or false if it started (or restarted) the filter
+     */
+    public boolean update(long timeNanos, double latitude, double longitude,
+            double horizontalAccuracy, boolean hasAltitude, double altitude,
+            double verticalAccuracy, boolean hasVelocity, double speed, double bearing,
+            double speedAccuracy) {
+        if (!(horizontalAccuracy > 0) || (hasAltitude && !(verticalAccuracy > 0))) {
+            throw new IllegalArgumentException("Accuracy must be positive - "
+                    + horizontalAccuracy + ", " + verticalAccuracy);
+        }
+        double horizontalVariance = horizontalAccuracy * horizontalAccuracy;
+        double verticalVariance = verticalAccuracy * verticalAccuracy;
+        double velocityEast = 0;
+        double velocityNorth = 0;
+        double velocityVariance = INITIAL_VELOCITY_VARIANCE;
+        if (hasVelocity) {
+            double b = Math.toRadians(bearing);
+            velocityEast = speed * Math.sin(b);
+            velocityNorth = speed * Math.cos(b);
+            double accuracy = speedAccuracy > 0 ? speedAccuracy : DEFAULT_SPEED_ACCURACY;
+            velocityVariance = accuracy * accuracy;
+        }
+
+        double dt = (timeNanos - mTimeNanos) * 1.0E-9;
+        if (mInitialized && (dt < 0 || dt > MAX_GAP_SECONDS)) {
+            reset();
+        }
+        mTimeNanos = timeNanos;
+        if (!mInitialized) {
+            setFrame(Math.toRadians(latitude), Math.toRadians(longitude));
+            start(EAST, 0, horizontalVariance, velocityEast, velocityVariance);
+            start(NORTH, 0, horizontalVariance, velocityNorth, velocityVariance);
+            mHasAltitude = hasAltitude;
+            if (hasAltitude) {
+                start(UP, altitude, verticalVariance, 0, INITIAL_VELOCITY_VARIANCE);
+            }
+            mHorizontalProcessNoise = INITIAL_PROCESS_NOISE;
+            mVerticalProcessNoise = INITIAL_PROCESS_NOISE;
+            mInitialized = true;
+            return false;
+        }
+
+        predict(EAST, dt, mHorizontalProcessNoise);
+        predict(NORTH, dt, mHorizontalProcessNoise);
+        if (mHasAltitude) {
+            predict(UP, dt, mVerticalProcessNoise);
+        }
+
+        double east = getDeltaLongitude(Math.toRadians(longitude)) * mParallelRadius;
+        double north = (Math.toRadians(latitude) - mLatitude0) * mMeridianRadius;
+        double innovation = updatePosition(EAST, east, horizontalVariance)
+                + updatePosition(NORTH, north, horizontalVariance);
+        if (innovation > 2 * RESET_INNOVATION) {
+            reset();
+            return update(timeNanos, latitude, longitude, horizontalAccuracy, hasAltitude,
+                    altitude, verticalAccuracy, hasVelocity, speed, bearing, speedAccuracy);
+        }
+        mHorizontalProcessNoise = adapt(mHorizontalProcessNoise, innovation / 2);
+        if (hasVelocity) {
+            updateVelocity(EAST, velocityEast, velocityVariance);
+            updateVelocity(NORTH, velocityNorth, velocityVariance);
+        }
+
+        if (hasAltitude) {
+            if (mHasAltitude) {
+                innovation = updatePosition(UP, altitude, verticalVariance);
+                mVerticalProcessNoise = adapt(mVerticalProcessNoise, innovation);
+            } else {
+                start(UP, altitude, verticalVariance, 0, INITIAL_VELOCITY_VARIANCE);
+                mHasAltitude = true;
+            }
+        }
+
+        if (Math.abs(mPosition[EAST]) > RECENTER_METERS
+                || Math.abs(mPosition[NORTH]) > RECENTER_METERS) {
+            double latitude0 = mLatitude0 + mPosition[NORTH] / mMeridianRadius;
+            double longitude0 = mLongitude0 + mPosition[EAST] / mParallelRadius;
+            setFrame(latitude0, longitude0);
+            mPosition[EAST] = 0;
+            mPosition[NORTH] = 0;
+        }
+        mUpdateCount++;
+        return true;
+    }
+
+    private void setFrame(double latitude, double longitude) {
+        double sinLatitude = Math.sin(latitude);
+        double w = 1.0 - Wgs84.ECCENTRICITY_SQUARED * sinLatitude * sinLatitude;
+        mLatitude0 = latitude;
+        mLongitude0 = longitude;
+        mMeridianRadius = Wgs84.SEMI_MAJOR_AXIS * (1.0 - Wgs84.ECCENTRICITY_SQUARED)
+                / (w * Math.sqrt(w));
+        // Keep a usable scale near the poles
+        mParallelRadius = Math.max(Wgs84.SEMI_MAJOR_AXIS / Math.sqrt(w) * Math.cos(latitude),
+                1.0);
+    }
+
+    private double getDeltaLongitude(double longitude) {
+        double delta = longitude - mLongitude0;
+        if (delta > Math.PI) {
+            delta -= 2 * Math.PI;
+        } else if (delta < -Math.PI) {
+            delta += 2 * Math.PI;
+        }
+        return delta;
+    }
+
+    private void start(int axis, double position, double positionVariance, double velocity,
+            double velocityVariance) {
+        mPosition[axis] = position;
+        mVelocity[axis] = velocity;
+        mPositionVariance[axis] = positionVariance;
+        mCovariance[axis] = 0;
+        mVelocityVariance[axis] = velocityVariance;
+    }
+
+    private void predict(int axis, double dt, double processNoise) {
+        double dt2 = dt * dt;
+        mPosition[axis] += mVelocity[axis] * dt;
+        mPositionVariance[axis] += 2 * dt * mCovariance[axis] + dt2 * mVelocityVariance[axis]
+                + processNoise * dt2 * dt / 3;
+        mCovariance[axis] += dt * mVelocityVariance[axis] + processNoise * dt2 / 2;
+        mVelocityVariance[axis] += processNoise * dt;
+    }
+
+    /**
+     * Updates an axis with a measured position, and returns the normalized innovation squared
+     */
+    private double updatePosition(int axis, double position, double variance) {
+        double s = mPositionVariance[axis] + variance;
+        double k0 = mPositionVariance[axis] / s;
+        double k1 = mCovariance[axis] / s;
+        double innovation = position - mPosition[axis];
+        mPosition[axis] += k0 * innovation;
+        mVelocity[axis] += k1 * innovation;
+        mVelocityVariance[axis] -= k1 * mCovariance[axis];
+        mPositionVariance[axis] *= 1 - k0;
+        mCovariance[axis] *= 1 - k0;
+        return innovation * innovation / s;
+    }
+
+    private void updateVelocity(int axis, double velocity, double variance) {
+        double s = mVelocityVariance[axis] + variance;
+        double k0 = mCovariance[axis] / s;
+        double k1 = mVelocityVariance[axis] / s;
+        double innovation = velocity - mVelocity[axis];
+        mPosition[axis] += k0 * innovation;
+        mVelocity[axis] += k1 * innovation;
+        mPositionVariance[axis] -= k0 * mCovariance[axis];
+        mCovariance[axis] *= 1 - k1;
+        mVelocityVariance[axis] *= 1 - k1;
+    }
+
+    private static double adapt(double processNoise, double innovation) {
+        if (innovation > HIGH_INNOVATION) {
+            processNoise *= PROCESS_NOISE_GROWTH;
+        } else if (innovation < LOW_INNOVATION) {
+            processNoise *= PROCESS_NOISE_DECAY;
+        }
+        return Math.min(Math.max(processNoise, MIN_PROCESS_NOISE), MAX_PROCESS_NOISE);
+    }
+
+    /**
+     * Restarts the filter with the next fix
+     */
+    public void reset() {
+        if (mInitialized) {
+            mResetCount++;
+        }
+        mInitialized = false;
+        mHasAltitude = false;
+    }
+
+    /**
+     * Returns true if the filter has a position
+     *
+     * @return true if the filter has a position, or false if it hasn't been given a fix since it
+     * was created or reset
+     */
+    public boolean isInitialized() {
+        return mInitialized;
+    }
+
+    /**
+     * Returns true if the filter has an altitude
+     *
+     * @return true if the filter has an altitude
+     */
+    public boolean hasAltitude() {
+        return mHasAltitude;
+    }
+
+    /**
+     * Returns the filtered latitude
+     *
+     * @return the filtered latitude, in degrees
+     */
+    public double getLatitude() {
+        return Math.toDegrees(mLatitude0 + mPosition[NORTH] / mMeridianRadius);
+    }
+
+    /**
+     * Returns the filtered longitude
+     *
+     * @return the filtered longitude, in degrees from -180 to 180
+     */
+    public double getLongitude() {
+        double longitude = Math.toDegrees(mLongitude0 + mPosition[EAST] / mParallelRadius);
+        if (longitude > 180) {
+            longitude -= 360;
+        } else if (longitude < -180) {
+            longitude += 360;
+        }
+        return longitude;
+    }
+
+    /**
+     * Returns the filtered altitude
+     *
+     * @return the filtered altitude, in meters
+     */
+    public double getAltitude() {
+        return mPosition[UP];
+    }
+
+    /**
+     * Returns the filtered horizontal speed
+     *
+     * @return the filtered horizontal speed, in meters per second
+     */
+    public double getSpeed() {
+        return Math.hypot(mVelocity[EAST], mVelocity[NORTH]);
+    }
+
+    /**
+     * Returns the filtered bearing
+     *
+     * @return the filtered bearing, in degrees clockwise from north from 0 to 360
+     */
+    public double getBearing() {
+        double bearing = Math.toDegrees(Math.atan2(mVelocity[EAST], mVelocity[NORTH]));
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    /**
+     * Returns the filtered velocity along an axis
+     *
+     * @param axis EAST, NORTH or UP
+     * @return the filtered velocity along the axis, in meters per second
+     */
+    public double getVelocity(int axis) {
+        return mVelocity[axis];
+    }
+
+    /**
+     * Returns the horizontal accuracy of the filtered position
+     *
+     * @return the horizontal accuracy (1 sigma) of the filtered position, in meters
+     */
+    public double getHorizontalAccuracy() {
+        return Math.sqrt((mPositionVariance[EAST] + mPositionVariance[NORTH]) / 2);
+    }
+
+    /**
+     * Returns the vertical accuracy of the filtered altitude
+     *
+     * @return the vertical accuracy (1 sigma) of the filtered altitude, in meters
+     */
+    public double getVerticalAccuracy() {
+        return Math.sqrt(mPositionVariance[UP]);
+    }
+
+    /**
+     * Returns the accuracy of the filtered speed
+     *
+     * @return the accuracy (1 sigma) of the filtered speed, in meters per second
+     */
+    public double getSpeedAccuracy() {
+        return Math.sqrt((mVelocityVariance[EAST] + mVelocityVariance[NORTH]) / 2);
+    }
+
+    /**
+     * Returns the current horizontal process noise
+     *
+     * @return the current horizontal process noise, in m^2/s^3
+     */
+    public double getHorizontalProcessNoise() {
+        return mHorizontalProcessNoise;
+    }
+
+    /**
+     * Returns the number of fixes filtered since the filter was created
+     *
+     * @return the number of fixes filtered, not counting those that started the filter
+     */
+    public int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /**
+     * Returns the number of times the filter restarted
+     *
+     * @return the number of times the filter restarted after a gap or an outlier
+     */
+    public int getResetCount() {
+        return mResetCount;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * Fixed-size 4x4 matrix routines for least squares with four unknowns (three coordinates and a
+ * clock term).  Matrices are row-major arrays of 16 doubles and vectors are arrays of 4 doubles,
+ * owned by the caller, so none of the routines allocate.
+ */
+public class Matrix4 {
+
+    public static final int SIZE = 16;
+
+    // Matrices with a smaller determinant, relative to their scale, are treated as singular
+    private static final double SINGULAR_THRESHOLD = 1.0E-12;
+
+    private Matrix4() {
+    }
+
+    /**
+     * Sets the provided matrix to zero
+     */
+    public static void clear(double[] m) {
+        for (int i = 0; i < SIZE; i++) {
+            m[i] = 0.0;
+        }
+    }
+
+    /**
+     * Adds weight * h * h^T to the upper triangle of the provided symmetric matrix, for
+     * accumulating normal equations one observation at a time.  invertSymmetric() only needs the
+     * upper triangle - call mirror() before using the full matrix otherwise.
+     *
+     * @param m      the symmetric matrix to add to
+     * @param h      the observation row, 4 values
+     * @param weight weight of the observation
+     */
+    public static void addOuterProduct(double[] m, double[] h, double weight) {
+        for (int row = 0; row < 4; row++) {
+            double wh = weight * h[row];
+            for (int column = row; column < 4; column++) {
+                m[row * 4 + column] += wh * h[column];
+            }
+        }
+    }
+
+    /**
+     * Copies the upper triangle of the provided matrix to the lower triangle
+     */
+    public static void mirror(double[] m) {
+        for (int row = 1; row < 4; row++) {
+            for (int column = 0; column < row; column++) {
+                m[row * 4 + column] = m[column * 4 + row];
+            }
+        }
+    }
+
+    /**
+     * Inverts a symmetric matrix in closed form, from the 2x2 sub-determinants of its rows.  Only
+     * the upper triangle of the input is read, and the full inverse is written.
+     *
+     * @param m   the symmetric matrix to invert
+     * @param out the inverse, which may be the same array as m
+     * @return true if the matrix was inverted, false if it is singular or nearly singular
+     */
+    public static boolean invertSymmetric(double[] m, double[] out) {
+        double a00 = m[0], a01 = m[1], a02 = m[2], a03 = m[3];
+        double a11 = m[5], a12 = m[6], a13 = m[7];
+        double a22 = m[10], a23 = m[11];
+        double a33 = m[15];
+
+        double s0 = a00 * a11 - a01 * a01;
+        double s1 = a00 * a12 - a01 * a02;
+        double s2 = a00 * a13 - a01 * a03;
+        double s3 = a01 * a12 - a11 * a02;
+        double s4 = a01 * a13 - a11 * a03;
+        double s5 = a02 * a13 - a12 * a03;
+
+        double c5 = a22 * a33 - a23 * a23;
+        double c4 = a12 * a33 - a13 * a23;
+        double c3 = a12 * a23 - a13 * a22;
+        double c2 = a02 * a33 - a03 * a23;
+        double c1 = a02 * a23 - a03 * a22;
+        double c0 = a02 * a13 - a03 * a12;
+
+        double det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+        // Compare to the scale of the matrix, so rounding errors don't hide a singular matrix
+        double scale = Math.max(Math.max(Math.abs(a00), Math.abs(a11)),
+                Math.max(Math.abs(a22), Math.abs(a33)));
+        if (!(Math.abs(det) > SINGULAR_THRESHOLD * scale * scale * scale * scale)
+                || Double.isInfinite(det)) {
+            return false;
+        }
+        double invDet = 1.0 / det;
+
+        double b00 = (a11 * c5 - a12 * c4 + a13 * c3) * invDet;
+        double b01 = (-a01 * c5 + a02 * c4 - a03 * c3) * invDet;
+        double b02 = (a13 * s5 - a23 * s4 + a33 * s3) * invDet;
+        double b03 = (-a12 * s5 + a22 * s4 - a23 * s3) * invDet;
+        double b11 = (a00 * c5 - a02 * c2 + a03 * c1) * invDet;
+        double b12 = (-a03 * s5 + a23 * s2 - a33 * s1) * invDet;
+        double b13 = (a02 * s5 - a22 * s2 + a23 * s1) * invDet;
+        double b22 = (a03 * s4 - a13 * s2 + a33 * s0) * invDet;
+        double b23 = (-a02 * s4 + a12 * s2 - a23 * s0) * invDet;
+        double b33 = (a02 * s3 - a12 * s1 + a22 * s0) * invDet;
+
+        out[0] = b00;
+        out[1] = b01;
+        out[2] = b02;
+        out[3] = b03;
+        out[4] = b01;
+        out[5] = b11;
+        out[6] = b12;
+        out[7] = b13;
+        out[8] = b02;
+        out[9] = b12;
+        out[10] = b22;
+        out[11] = b23;
+        out[12] = b03;
+        out[13] = b13;
+        out[14] = b23;
+        out[15] = b33;
+        return true;
+    }
+
+    /**
+     * Multiplies the provided matrix by the provided vector
+     *
+     * @param m   the matrix
+     * @param v   the vector, 4 values
+     * @param out the product, 4 values, which must not be the same array as v
+     */
+    public static void multiply(double[] m, double[] v, double[] out) {
+        for (int row = 0; row < 4; row++) {
+            int i = row * 4;
+            out[row] = m[i] * v[0] + m[i + 1] * v[1] + m[i + 2] * v[2] + m[i + 3] * v[3];
+        }
+    }
+}
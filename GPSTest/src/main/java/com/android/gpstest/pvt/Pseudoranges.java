@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * Computes pseudoranges from the fields of GnssClock and GnssMeasurement, as described in
+ * "Using GNSS Raw Measurements on Android Devices" (European GNSS Agency, 2017).  Inputs are
+ * primitives so this class doesn't depend on the Android APIs.
+ *
+ * Only constellations that use GPS time (GPS, QZSS and Galileo, ignoring the few nanoseconds of
+ * the Galileo to GPS time offset) are supported, so a fix needs a single receiver clock bias.
+ */
+public class Pseudoranges {
+
+    // Same values as GnssStatus.CONSTELLATION_*
+    public static final int CONSTELLATION_GPS = 1;
+
+    public static final int CONSTELLATION_QZSS = 4;
+
+    public static final int CONSTELLATION_GALILEO = 6;
+
+    // Same values as GnssMeasurement.STATE_*
+    public static final int STATE_TOW_DECODED = 8;
+
+    public static final int STATE_TOW_KNOWN = 16384;
+
+    public static final long WEEK_NANOS = 604800L * 1000000000L;
+
+    // Signals from GNSS satellites, including geostationary ones, take less than this to arrive
+    private static final double MAX_TRAVEL_TIME_NANOS = 200.0E6;
+
+    private Pseudoranges() {
+    }
+
+    /**
+     * Returns true if the provided constellation uses GPS time
+     *
+     * @param constellationType one of the GnssStatus.CONSTELLATION_* values
+     * @return true if the provided constellation uses GPS time
+     */
+    public static boolean usesGpsTime(int constellationType) {
+        return constellationType == CONSTELLATION_GPS
+                || constellationType == CONSTELLATION_QZSS
+                || constellationType == CONSTELLATION_GALILEO;
+    }
+
+    /**
+     * Returns true if the provided measurement state has the time of week, which is needed to
+     * compute a full pseudorange
+     *
+     * @param state the GnssMeasurement.getState() value
+     * @return true if the provided measurement state has the time of week
+     */
+    public static boolean hasTimeOfWeek(int state) {
+        return (state & (STATE_TOW_DECODED | STATE_TOW_KNOWN)) != 0;
+    }
+
+    /**
+     * Returns the GPS time of the measurement, from the GnssClock fields
+     *
+     * @param timeNanos     GnssClock.getTimeNanos()
+     * @param fullBiasNanos GnssClock.getFullBiasNanos()
+     * @param biasNanos     GnssClock.getBiasNanos(), or 0 if it isn't available
+     * @return the GPS time of the measurement, in seconds since 6 January 1980
+     */
+    public static double getGpsTimeSeconds(long timeNanos, long fullBiasNanos, double biasNanos) {
+        return ((timeNanos - fullBiasNanos) - biasNanos) * 1.0E-9;
+    }
+
+    /**
+     * Computes the pseudorange of a measurement of a satellite that uses GPS time
+     *
+     * @param timeNanos           GnssClock.getTimeNanos()
+     * @param fullBiasNanos       GnssClock.getFullBiasNanos()
+     * @param biasNanos           GnssClock.getBiasNanos(), or 0 if it isn't available
+     * @param timeOffsetNanos     GnssMeasurement.getTimeOffsetNanos()
+     * @param receivedSvTimeNanos GnssMeasurement.getReceivedSvTimeNanos(), with the time of week
+     *                            decoded or known
+     * @return the pseudorange in meters, or NaN if the signal travel time isn't plausible
+     */
+    public static double computePseudorangeMeters(long timeNanos, long fullBiasNanos,
+            double biasNanos, double timeOffsetNanos, long receivedSvTimeNanos) {
+        long receivedNanos = timeNanos - fullBiasNanos;
+        // Time of week of reception - the integer part is exact, the rest is sub-nanosecond
+        long weekNanos = receivedNanos % WEEK_NANOS;
+        double travelNanos = (weekNanos - receivedSvTimeNanos) + (timeOffsetNanos - biasNanos);
+        // Reception and transmission can be in different weeks
+        if (travelNanos > WEEK_NANOS / 2) {
+            travelNanos -= WEEK_NANOS;
+        } else if (travelNanos < -WEEK_NANOS / 2) {
+            travelNanos += WEEK_NANOS;
+        }
+        if (travelNanos <= 0.0 || travelNanos > MAX_TRAVEL_TIME_NANOS) {
+            return Double.NaN;
+        }
+        return travelNanos * 1.0E-9 * Wgs84.SPEED_OF_LIGHT;
+    }
+}
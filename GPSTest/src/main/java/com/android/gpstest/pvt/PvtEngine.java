@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+import android.location.GnssClock;
+import android.location.GnssMeasurement;
+import android.location.GnssMeasurementsEvent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Computes fixes from raw GNSS measurements on a background thread, so they can be compared to
+ * the fixes from the GNSS chipset.
+ *
+ * The fields needed from each GnssMeasurementsEvent are copied into preallocated arrays on the
+ * calling thread, and the latest copy is solved on the background thread.  If measurements arrive
+ * faster than they are solved, older epochs are skipped instead of queued.
+ */
+@RequiresApi(api = Build.VERSION_CODES.N)
+public class PvtEngine {
+
+    public static final String TAG = "PvtEngine";
+
+    // Pseudoranges are never trusted more than this, in meters
+    private static final double MIN_SIGMA_METERS = 1.0;
+
+    // Signals below this frequency (L5/E5a) have different delays than L1/E1, so they aren't used
+    private static final double MIN_CARRIER_FREQUENCY_HZ = 1.5E9;
+
+    private final SatellitePositionProvider mProvider;
+
+    private HandlerThread mThread;
+
+    private Handler mHandler;
+
+    // Filled by the thread that receives measurements, and swapped with mWorking by the solver
+    private MeasurementBatch mPending = new MeasurementBatch();
+
+    private MeasurementBatch mWorking = new MeasurementBatch();
+
+    private boolean mSolvePosted;
+
+    // Only used on the solver thread
+    private final PvtSolver mSolver = new PvtSolver();
+
+    private final PvtSolution mSolution = new PvtSolution();
+
+    private final double[] mState = new double[SatellitePositionProvider.STATE_SIZE];
+
+    // Latest solution, guarded by itself
+    private final PvtSolution mLatest = new PvtSolution();
+
+    private boolean mHasLatest;
+
+    private final Runnable mSolve = new Runnable() {
+        @Override
+        public void run() {
+            solve();
+        }
+    };
+
+    /**
+     * @param provider source of satellite positions for the measured satellites
+     */
+    public PvtEngine(SatellitePositionProvider provider) {
+        mProvider = provider;
+    }
+
+    /**
+     * Starts the background thread, if it isn't running
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Stops the background thread.  Measurements received while stopped are ignored.
+     */
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+        mSolvePosted = false;
+    }
+
+    /**
+     * Queues the provided measurements to be solved, replacing measurements that haven't been
+     * solved yet
+     */
+    public void onGnssMeasurements(GnssMeasurementsEvent event) {
+        synchronized (this) {
+            if (mHandler == null) {
+                return;
+            }
+            mPending.set(event);
+            if (!mSolvePosted) {
+                mHandler.post(mSolve);
+                mSolvePosted = true;
+            }
+        }
+    }
+
+    /**
+     * Copies the latest solution to the provided solution
+     *
+     * @return true if there is a solution, false if no measurements have been solved yet
+     */
+    public boolean getLatestSolution(PvtSolution out) {
+        synchronized (mLatest) {
+            if (!mHasLatest) {
+                return false;
+            }
+            mLatest.copyTo(out);
+            return true;
+        }
+    }
+
+    private void solve() {
+        MeasurementBatch batch;
+        synchronized (this) {
+            batch = mPending;
+            mPending = mWorking;
+            mWorking = batch;
+            mSolvePosted = false;
+        }
+        if (!batch.mHasFullBias) {
+            // The receiver doesn't know GPS time yet
+            return;
+        }
+        double gpsTimeSeconds = Pseudoranges.getGpsTimeSeconds(batch.mTimeNanos,
+                batch.mFullBiasNanos, batch.mBiasNanos);
+        mSolver.begin();
+        for (int i = 0; i < batch.mCount; i++) {
+            double pseudorange = Pseudoranges.computePseudorangeMeters(batch.mTimeNanos,
+                    batch.mFullBiasNanos, batch.mBiasNanos, batch.mTimeOffsetNanos[i],
+                    batch.mReceivedSvTimeNanos[i]);
+            if (Double.isNaN(pseudorange)) {
+                continue;
+            }
+            double transmitTime = gpsTimeSeconds + batch.mTimeOffsetNanos[i] * 1.0E-9
+                    - pseudorange / Wgs84.SPEED_OF_LIGHT;
+            if (!mProvider.getSatelliteState(batch.mConstellationType[i], batch.mSvid[i],
+                    transmitTime, mState)) {
+                continue;
+            }
+            double sigma = Math.max(MIN_SIGMA_METERS,
+                    batch.mReceivedSvTimeUncertaintyNanos[i] * 1.0E-9 * Wgs84.SPEED_OF_LIGHT);
+            if (!mSolver.add(mState, pseudorange, sigma, batch.mPseudorangeRate[i],
+                    batch.mPseudorangeRateUncertainty[i])) {
+                break;
+            }
+        }
+        if (mSolver.solve(mSolution)) {
+            mSolution.setTime(gpsTimeSeconds, batch.mElapsedRealtimeNanos);
+            synchronized (mLatest) {
+                mSolution.copyTo(mLatest);
+                mHasLatest = true;
+            }
+        }
+    }
+
+    /**
+     * The fields of a GnssMeasurementsEvent that are needed for a fix
+     */
+    private static class MeasurementBatch {
+
+        private static final int MAX_MEASUREMENTS = 128;
+
+        long mElapsedRealtimeNanos;
+
+        boolean mHasFullBias;
+
+        long mTimeNanos;
+
+        long mFullBiasNanos;
+
+        double mBiasNanos;
+
+        int mCount;
+
+        final int[] mConstellationType = new int[MAX_MEASUREMENTS];
+
+        final int[] mSvid = new int[MAX_MEASUREMENTS];
+
+        final double[] mTimeOffsetNanos = new double[MAX_MEASUREMENTS];
+
+        final long[] mReceivedSvTimeNanos = new long[MAX_MEASUREMENTS];
+
+        final double[] mReceivedSvTimeUncertaintyNanos = new double[MAX_MEASUREMENTS];
+
+        final double[] mPseudorangeRate = new double[MAX_MEASUREMENTS];
+
+        // NaN if the rate isn't usable
+        final double[] mPseudorangeRateUncertainty = new double[MAX_MEASUREMENTS];
+
+        void set(GnssMeasurementsEvent event) {
+            GnssClock clock = event.getClock();
+            mElapsedRealtimeNanos = SystemClock.elapsedRealtimeNanos();
+            mHasFullBias = clock.hasFullBiasNanos();
+            mTimeNanos = clock.getTimeNanos();
+            mFullBiasNanos = mHasFullBias ? clock.getFullBiasNanos() : 0;
+            mBiasNanos = clock.hasBiasNanos() ? clock.getBiasNanos() : 0.0;
+            mCount = 0;
+            for (GnssMeasurement m : event.getMeasurements()) {
+                if (mCount == MAX_MEASUREMENTS) {
+                    break;
+                }
+                if (!Pseudoranges.usesGpsTime(m.getConstellationType())
+                        || !Pseudoranges.hasTimeOfWeek(m.getState())
+                        || (m.hasCarrierFrequencyHz()
+                        && m.getCarrierFrequencyHz() < MIN_CARRIER_FREQUENCY_HZ)) {
+                    continue;
+                }
+                int i = mCount++;
+                mConstellationType[i] = m.getConstellationType();
+                mSvid[i] = m.getSvid();
+                mTimeOffsetNanos[i] = m.getTimeOffsetNanos();
+                mReceivedSvTimeNanos[i] = m.getReceivedSvTimeNanos();
+                mReceivedSvTimeUncertaintyNanos[i] = m.getReceivedSvTimeUncertaintyNanos();
+                mPseudorangeRate[i] = m.getPseudorangeRateMetersPerSecond();
+                mPseudorangeRateUncertainty[i] = m.getPseudorangeRateUncertaintyMetersPerSecond()
+                        > 0.0 ? m.getPseudorangeRateUncertaintyMetersPerSecond() : Double.NaN;
+            }
+        }
+    }
+}
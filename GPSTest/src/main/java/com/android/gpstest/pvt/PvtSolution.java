@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * A position, velocity and time solution computed from raw measurements.  Solutions are mutable
+ * so they can be reused for every epoch - use copyTo() to keep one.
+ */
+public class PvtSolution {
+
+    private double mGpsTimeSeconds;
+
+    private long mElapsedRealtimeNanos;
+
+    private final double[] mEcef = new double[3];
+
+    private final double[] mGeodetic = new double[3];
+
+    private double mClockBiasMeters;
+
+    private boolean mHasVelocity;
+
+    private final double[] mVelocity = new double[3];
+
+    private double mClockDriftMetersPerSecond;
+
+    private int mSatelliteCount;
+
+    private double mResidualRms;
+
+    /**
+     * Sets the position of the solution, and computes its latitude, longitude and height
+     *
+     * @param x               ECEF x, in meters
+     * @param y               ECEF y, in meters
+     * @param z               ECEF z, in meters
+     * @param clockBiasMeters receiver clock bias, in meters
+     */
+    public void setPosition(double x, double y, double z, double clockBiasMeters) {
+        mEcef[0] = x;
+        mEcef[1] = y;
+        mEcef[2] = z;
+        mClockBiasMeters = clockBiasMeters;
+        Wgs84.ecefToGeodetic(x, y, z, mGeodetic);
+    }
+
+    /**
+     * Sets the velocity of the solution
+     *
+     * @param vx                       ECEF x velocity, in meters per second
+     * @param vy                       ECEF y velocity, in meters per second
+     * @param vz                       ECEF z velocity, in meters per second
+     * @param clockDriftMetersPerSecond receiver clock drift, in meters per second
+     */
+    public void setVelocity(double vx, double vy, double vz, double clockDriftMetersPerSecond) {
+        mVelocity[0] = vx;
+        mVelocity[1] = vy;
+        mVelocity[2] = vz;
+        mClockDriftMetersPerSecond = clockDriftMetersPerSecond;
+        mHasVelocity = true;
+    }
+
+    public void clearVelocity() {
+        mHasVelocity = false;
+    }
+
+    public void setTime(double gpsTimeSeconds, long elapsedRealtimeNanos) {
+        mGpsTimeSeconds = gpsTimeSeconds;
+        mElapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    public void setStatistics(int satelliteCount, double residualRms) {
+        mSatelliteCount = satelliteCount;
+        mResidualRms = residualRms;
+    }
+
+    /**
+     * Copies this solution to the provided solution
+     */
+    public void copyTo(PvtSolution other) {
+        other.mGpsTimeSeconds = mGpsTimeSeconds;
+        other.mElapsedRealtimeNanos = mElapsedRealtimeNanos;
+        System.arraycopy(mEcef, 0, other.mEcef, 0, 3);
+        System.arraycopy(mGeodetic, 0, other.mGeodetic, 0, 3);
+        other.mClockBiasMeters = mClockBiasMeters;
+        other.mHasVelocity = mHasVelocity;
+        System.arraycopy(mVelocity, 0, other.mVelocity, 0, 3);
+        other.mClockDriftMetersPerSecond = mClockDriftMetersPerSecond;
+        other.mSatelliteCount = mSatelliteCount;
+        other.mResidualRms = mResidualRms;
+    }
+
+    /**
+     * Returns the GPS time of the solution, in seconds since 6 January 1980
+     *
+     * @return the GPS time of the solution, in seconds since 6 January 1980
+     */
+    public double getGpsTimeSeconds() {
+        return mGpsTimeSeconds;
+    }
+
+    /**
+     * Returns the time of the measurements on the SystemClock.elapsedRealtimeNanos() time base
+     *
+     * @return the time of the measurements on the SystemClock.elapsedRealtimeNanos() time base
+     */
+    public long getElapsedRealtimeNanos() {
+        return mElapsedRealtimeNanos;
+    }
+
+    public double getX() {
+        return mEcef[0];
+    }
+
+    public double getY() {
+        return mEcef[1];
+    }
+
+    public double getZ() {
+        return mEcef[2];
+    }
+
+    public double getLatitude() {
+        return mGeodetic[0];
+    }
+
+    public double getLongitude() {
+        return mGeodetic[1];
+    }
+
+    /**
+     * Returns the height above the WGS 84 ellipsoid, in meters
+     *
+     * @return the height above the WGS 84 ellipsoid, in meters
+     */
+    public double getAltitude() {
+        return mGeodetic[2];
+    }
+
+    public double getClockBiasMeters() {
+        return mClockBiasMeters;
+    }
+
+    public boolean hasVelocity() {
+        return mHasVelocity;
+    }
+
+    public double getVelocityX() {
+        return mVelocity[0];
+    }
+
+    public double getVelocityY() {
+        return mVelocity[1];
+    }
+
+    public double getVelocityZ() {
+        return mVelocity[2];
+    }
+
+    public double getClockDriftMetersPerSecond() {
+        return mClockDriftMetersPerSecond;
+    }
+
+    /**
+     * Returns the number of satellites used in the solution
+     *
+     * @return the number of satellites used in the solution
+     */
+    public int getSatelliteCount() {
+        return mSatelliteCount;
+    }
+
+    /**
+     * Returns the root mean square of the pseudorange residuals, in meters
+     *
+     * @return the root mean square of the pseudorange residuals, in meters
+     */
+    public double getResidualRms() {
+        return mResidualRms;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * Weighted least squares position, velocity and time solver for pseudoranges and pseudorange
+ * rates.  The position and receiver clock bias are found by Gauss-Newton iteration, starting from
+ * the previous solution, with the Earth's rotation during signal travel and a simple troposphere
+ * model taken into account.  The velocity and clock drift are then solved in a single step with
+ * the same geometry.
+ *
+ * Measurements are kept in preallocated arrays and the normal equations are solved with the
+ * closed-form inverse in Matrix4, so solving doesn't allocate.  This class is not thread-safe.
+ */
+public class PvtSolver {
+
+    public static final int MAX_SATELLITES = 64;
+
+    public static final int MIN_SATELLITES = 4;
+
+    private static final int MAX_ITERATIONS = 10;
+
+    private static final double CONVERGENCE_METERS = 1.0E-3;
+
+    // Solutions must be within this range of distances from the center of the Earth, in meters
+    private static final double MIN_RADIUS = 6.0E6;
+
+    private static final double MAX_RADIUS = 7.0E6;
+
+    // Troposphere delays are only applied once the estimate is near the surface of the Earth
+    private static final double MIN_TROPOSPHERE_RADIUS = 6.3E6;
+
+    // Zenith troposphere delay, in meters, and the simple mapping function offset
+    private static final double TROPOSPHERE_ZENITH_DELAY = 2.47;
+
+    private static final double TROPOSPHERE_MAPPING_OFFSET = 0.0121;
+
+    // Measurements, as structure of arrays
+    private final double[] mSatX = new double[MAX_SATELLITES];
+
+    private final double[] mSatY = new double[MAX_SATELLITES];
+
+    private final double[] mSatZ = new double[MAX_SATELLITES];
+
+    private final double[] mSatVx = new double[MAX_SATELLITES];
+
+    private final double[] mSatVy = new double[MAX_SATELLITES];
+
+    private final double[] mSatVz = new double[MAX_SATELLITES];
+
+    // Satellite clock bias in meters, and drift in meters per second
+    private final double[] mSatClockBias = new double[MAX_SATELLITES];
+
+    private final double[] mSatClockDrift = new double[MAX_SATELLITES];
+
+    private final double[] mPseudorange = new double[MAX_SATELLITES];
+
+    private final double[] mWeight = new double[MAX_SATELLITES];
+
+    private final double[] mRate = new double[MAX_SATELLITES];
+
+    // Zero if the measurement doesn't have a valid pseudorange rate
+    private final double[] mRateWeight = new double[MAX_SATELLITES];
+
+    // Unit vectors from the receiver to each satellite, from the last iteration
+    private final double[] mLosX = new double[MAX_SATELLITES];
+
+    private final double[] mLosY = new double[MAX_SATELLITES];
+
+    private final double[] mLosZ = new double[MAX_SATELLITES];
+
+    private int mCount;
+
+    // Current estimate - the previous solution is used as the initial estimate
+    private double mX, mY, mZ, mClockBias;
+
+    private final double[] mNormal = new double[Matrix4.SIZE];
+
+    private final double[] mH = new double[4];
+
+    private final double[] mRhs = new double[4];
+
+    private final double[] mDelta = new double[4];
+
+    /**
+     * Removes all measurements, to start a new epoch
+     */
+    public void begin() {
+        mCount = 0;
+    }
+
+    /**
+     * Adds a measurement to the current epoch
+     *
+     * @param satelliteState     the state of the satellite at transmit time, see
+     *                           SatellitePositionProvider
+     * @param pseudorangeMeters  the pseudorange, in meters
+     * @param sigmaMeters        standard deviation of the pseudorange, in meters
+     * @param rateMetersPerSecond the pseudorange rate, in meters per second
+     * @param rateSigma          standard deviation of the pseudorange rate, in meters per second,
+     *                           or NaN if the rate isn't valid
+     * @return true if the measurement was added, false if the epoch is full
+     */
+    public boolean add(double[] satelliteState, double pseudorangeMeters, double sigmaMeters,
+            double rateMetersPerSecond, double rateSigma) {
+        if (mCount == MAX_SATELLITES) {
+            return false;
+        }
+        int i = mCount++;
+        mSatX[i] = satelliteState[SatellitePositionProvider.X];
+        mSatY[i] = satelliteState[SatellitePositionProvider.Y];
+        mSatZ[i] = satelliteState[SatellitePositionProvider.Z];
+        mSatVx[i] = satelliteState[SatellitePositionProvider.VX];
+        mSatVy[i] = satelliteState[SatellitePositionProvider.VY];
+        mSatVz[i] = satelliteState[SatellitePositionProvider.VZ];
+        mSatClockBias[i] = satelliteState[SatellitePositionProvider.CLOCK_BIAS]
+                * Wgs84.SPEED_OF_LIGHT;
+        mSatClockDrift[i] = satelliteState[SatellitePositionProvider.CLOCK_DRIFT]
+                * Wgs84.SPEED_OF_LIGHT;
+        mPseudorange[i] = pseudorangeMeters;
+        mWeight[i] = 1.0 / (sigmaMeters * sigmaMeters);
+        mRate[i] = rateMetersPerSecond;
+        mRateWeight[i] = rateSigma > 0.0 ? 1.0 / (rateSigma * rateSigma) : 0.0;
+        return true;
+    }
+
+    /**
+     * Returns the number of measurements in the current epoch
+     *
+     * @return the number of measurements in the current epoch
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Forgets the previous solution, so the next solution starts from the center of the Earth
+     */
+    public void reset() {
+        mX = 0.0;
+        mY = 0.0;
+        mZ = 0.0;
+        mClockBias = 0.0;
+    }
+
+    /**
+     * Solves for the position, velocity and clock of the receiver from the measurements of the
+     * current epoch
+     *
+     * @param out the solution, if one was found.  Its time isn't changed.
+     * @return true if a solution was found, false if there aren't enough measurements or the
+     * solution didn't converge
+     */
+    public boolean solve(PvtSolution out) {
+        if (mCount < MIN_SATELLITES) {
+            return false;
+        }
+        double sumSquares = 0.0;
+        boolean converged = false;
+        for (int iteration = 0; iteration < MAX_ITERATIONS && !converged; iteration++) {
+            Matrix4.clear(mNormal);
+            mRhs[0] = mRhs[1] = mRhs[2] = mRhs[3] = 0.0;
+            sumSquares = 0.0;
+            double radius = Math.sqrt(mX * mX + mY * mY + mZ * mZ);
+            for (int i = 0; i < mCount; i++) {
+                double residual = residual(i, radius);
+                mH[0] = -mLosX[i];
+                mH[1] = -mLosY[i];
+                mH[2] = -mLosZ[i];
+                mH[3] = 1.0;
+                Matrix4.addOuterProduct(mNormal, mH, mWeight[i]);
+                for (int k = 0; k < 4; k++) {
+                    mRhs[k] += mWeight[i] * mH[k] * residual;
+                }
+                sumSquares += residual * residual;
+            }
+            if (!Matrix4.invertSymmetric(mNormal, mNormal)) {
+                reset();
+                return false;
+            }
+            Matrix4.multiply(mNormal, mRhs, mDelta);
+            mX += mDelta[0];
+            mY += mDelta[1];
+            mZ += mDelta[2];
+            mClockBias += mDelta[3];
+            converged = Math.sqrt(mDelta[0] * mDelta[0] + mDelta[1] * mDelta[1]
+                    + mDelta[2] * mDelta[2]) < CONVERGENCE_METERS;
+        }
+        double radius = Math.sqrt(mX * mX + mY * mY + mZ * mZ);
+        if (!converged || Double.isNaN(radius) || radius < MIN_RADIUS || radius > MAX_RADIUS) {
+            reset();
+            return false;
+        }
+        out.setPosition(mX, mY, mZ, mClockBias);
+        out.setStatistics(mCount, Math.sqrt(sumSquares / mCount));
+
+        if (solveVelocity()) {
+            out.setVelocity(mDelta[0], mDelta[1], mDelta[2], mDelta[3]);
+        } else {
+            out.clearVelocity();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the pseudorange residual of a measurement at the current estimate, and updates the
+     * line of sight to the satellite
+     *
+     * @param radius distance of the estimate from the center of the Earth
+     */
+    private double residual(int i, double radius) {
+        double dx = mSatX[i] - mX;
+        double dy = mSatY[i] - mY;
+        double dz = mSatZ[i] - mZ;
+        // The Earth rotates while the signal travels, so rotate the satellite into the ECEF
+        // frame at reception time
+        double theta = Wgs84.EARTH_ROTATION_RATE
+                * Math.sqrt(dx * dx + dy * dy + dz * dz) / Wgs84.SPEED_OF_LIGHT;
+        double sinTheta = Math.sin(theta);
+        double cosTheta = Math.cos(theta);
+        dx = mSatX[i] * cosTheta + mSatY[i] * sinTheta - mX;
+        dy = -mSatX[i] * sinTheta + mSatY[i] * cosTheta - mY;
+        double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        mLosX[i] = dx / range;
+        mLosY[i] = dy / range;
+        mLosZ[i] = dz / range;
+
+        double predicted = range + mClockBias - mSatClockBias[i];
+        if (radius > MIN_TROPOSPHERE_RADIUS) {
+            // Sine of the elevation, from the geocentric up direction
+            double sinElevation = (mLosX[i] * mX + mLosY[i] * mY + mLosZ[i] * mZ) / radius;
+            if (sinElevation > 0.0) {
+                predicted += TROPOSPHERE_ZENITH_DELAY
+                        / (sinElevation + TROPOSPHERE_MAPPING_OFFSET);
+            }
+        }
+        return mPseudorange[i] - predicted;
+    }
+
+    /**
+     * Solves for the velocity and clock drift with the lines of sight of the position solution,
+     * and leaves them in mDelta
+     *
+     * @return true if the velocity was solved, false if there aren't enough pseudorange rates
+     */
+    private boolean solveVelocity() {
+        Matrix4.clear(mNormal);
+        mRhs[0] = mRhs[1] = mRhs[2] = mRhs[3] = 0.0;
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            double weight = mRateWeight[i];
+            if (weight == 0.0) {
+                continue;
+            }
+            // rate = los . (satellite velocity - receiver velocity) + drift - satellite drift
+            double y = mRate[i] - (mLosX[i] * mSatVx[i] + mLosY[i] * mSatVy[i]
+                    + mLosZ[i] * mSatVz[i]) + mSatClockDrift[i];
+            mH[0] = -mLosX[i];
+            mH[1] = -mLosY[i];
+            mH[2] = -mLosZ[i];
+            mH[3] = 1.0;
+            Matrix4.addOuterProduct(mNormal, mH, weight);
+            for (int k = 0; k < 4; k++) {
+                mRhs[k] += weight * mH[k] * y;
+            }
+            count++;
+        }
+        if (count < MIN_SATELLITES || !Matrix4.invertSymmetric(mNormal, mNormal)) {
+            return false;
+        }
+        Matrix4.multiply(mNormal, mRhs, mDelta);
+        return true;
+    }
+}
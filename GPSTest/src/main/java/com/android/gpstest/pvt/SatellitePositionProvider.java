@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * Source of satellite positions, velocities and clock corrections, such as decoded broadcast
+ * ephemeris.  Implementations must be safe to call from the thread that computes fixes.
+ */
+public interface SatellitePositionProvider {
+
+    // Indexes of the values written by getSatelliteState()
+    int X = 0;
+    int Y = 1;
+    int Z = 2;
+    int VX = 3;
+    int VY = 4;
+    int VZ = 5;
+    int CLOCK_BIAS = 6;
+    int CLOCK_DRIFT = 7;
+
+    /**
+     * Number of values written by getSatelliteState()
+     */
+    int STATE_SIZE = 8;
+
+    /**
+     * Computes the state of a satellite at the provided transmit time
+     *
+     * @param constellationType constellation of the satellite, one of the
+     *                          GnssStatus.CONSTELLATION_* values
+     * @param svid              the satellite ID, as reported by GnssStatus
+     * @param gpsTimeSeconds    transmit time of the signal, in seconds of GPS time since
+     *                          6 January 1980
+     * @param out               ECEF position (m) and velocity (m/s), then the satellite clock bias
+     *                          (s, including the relativistic correction) and drift (s/s), at
+     *                          the indexes defined in this interface
+     * @return true if the state was computed, false if there is no valid ephemeris for the
+     * satellite
+     */
+    boolean getSatelliteState(int constellationType, int svid, double gpsTimeSeconds,
+            double[] out);
+}
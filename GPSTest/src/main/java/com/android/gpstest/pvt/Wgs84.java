@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.pvt;
+
+/**
+ * WGS 84 constants, and conversions between Earth-centered Earth-fixed (ECEF) coordinates and
+ * latitude, longitude and height above the ellipsoid.  Results are written to arrays owned by the
+ * caller.
+ */
+public class Wgs84 {
+
+    public static final double SEMI_MAJOR_AXIS = 6378137.0; // meters
+
+    public static final double FLATTENING = 1.0 / 298.257223563;
+
+    public static final double ECCENTRICITY_SQUARED = FLATTENING * (2.0 - FLATTENING);
+
+    public static final double EARTH_ROTATION_RATE = 7.2921151467E-5; // radians per second
+
+    public static final double GM = 3.986005E14; // m^3/s^2, as used by GPS broadcast ephemeris
+
+    public static final double SPEED_OF_LIGHT = 299792458.0; // meters per second
+
+    private static final double SEMI_MINOR_AXIS = SEMI_MAJOR_AXIS * (1.0 - FLATTENING);
+
+    private static final double SECOND_ECCENTRICITY_SQUARED =
+            ECCENTRICITY_SQUARED / (1.0 - ECCENTRICITY_SQUARED);
+
+    private Wgs84() {
+    }
+
+    /**
+     * Converts ECEF coordinates to latitude, longitude and height, with Bowring's method, which is
+     * accurate to millimeters near the surface of the Earth
+     *
+     * @param out latitude and longitude in degrees, then height above the ellipsoid in meters
+     */
+    public static void ecefToGeodetic(double x, double y, double z, double[] out) {
+        double p = Math.sqrt(x * x + y * y);
+        if (p < 1.0E-9) {
+            // On the polar axis
+            out[0] = z >= 0 ? 90.0 : -90.0;
+            out[1] = 0.0;
+            out[2] = Math.abs(z) - SEMI_MINOR_AXIS;
+            return;
+        }
+        double theta = Math.atan2(z * SEMI_MAJOR_AXIS, p * SEMI_MINOR_AXIS);
+        double sinTheta = Math.sin(theta);
+        double cosTheta = Math.cos(theta);
+        double latitude = Math.atan2(
+                z + SECOND_ECCENTRICITY_SQUARED * SEMI_MINOR_AXIS * sinTheta * sinTheta * sinTheta,
+                p - ECCENTRICITY_SQUARED * SEMI_MAJOR_AXIS * cosTheta * cosTheta * cosTheta);
+        double sinLatitude = Math.sin(latitude);
+        double n = SEMI_MAJOR_AXIS / Math.sqrt(1.0 - ECCENTRICITY_SQUARED * sinLatitude * sinLatitude);
+        double cosLatitude = Math.cos(latitude);
+        double height;
+        if (Math.abs(cosLatitude) > 1.0E-6) {
+            height = p / cosLatitude - n;
+        } else {
+            height = Math.abs(z) - SEMI_MINOR_AXIS;
+        }
+        out[0] = Math.toDegrees(latitude);
+        out[1] = Math.toDegrees(Math.atan2(y, x));
+        out[2] = height;
+    }
+
+    /**
+     * Converts latitude, longitude and height above the ellipsoid to ECEF coordinates
+     *
+     * @param latitude  latitude, in degrees
+     * @param longitude longitude, in degrees
+     * @param height    height above the ellipsoid, in meters
+     * @param out       x, y and z, in meters
+     */
+    public static void geodeticToEcef(double latitude, double longitude, double height,
+            double[] out) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        double sinPhi = Math.sin(phi);
+        double cosPhi = Math.cos(phi);
+        double n = SEMI_MAJOR_AXIS / Math.sqrt(1.0 - ECCENTRICITY_SQUARED * sinPhi * sinPhi);
+        out[0] = (n + height) * cosPhi * Math.cos(lambda);
+        out[1] = (n + height) * cosPhi * Math.sin(lambda);
+        out[2] = (n * (1.0 - ECCENTRICITY_SQUARED) + height) * sinPhi;
+    }
+}
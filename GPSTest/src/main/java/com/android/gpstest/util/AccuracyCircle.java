@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+/**
+ * Vertices of a circle around a location on the Earth, for drawing the horizontal accuracy of a
+ * fix on maps that don't have a native circle shape.  Vertices are updated in place from a
+ * precomputed unit circle, so updating the circle for each fix doesn't allocate.
+ *
+ * The circle is projected on a local flat approximation of the Earth, which is accurate for
+ * accuracy radii (meters to a few kilometers) away from the poles.
+ */
+public class AccuracyCircle {
+
+    /**
+     * Number of vertices in the circle - one every 6 degrees, like osmdroid Polygon.pointsAsCircle()
+     */
+    public static final int VERTEX_COUNT = 60;
+
+    // Mean radius of the Earth, in meters
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    // Keeps longitude offsets finite at the poles
+    private static final double MIN_COS_LATITUDE = 1.0E-6;
+
+    // Unit circle, clockwise from north
+    private static final double[] SIN = new double[VERTEX_COUNT];
+
+    private static final double[] COS = new double[VERTEX_COUNT];
+
+    static {
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            double angle = 2.0 * Math.PI * i / VERTEX_COUNT;
+            SIN[i] = Math.sin(angle);
+            COS[i] = Math.cos(angle);
+        }
+    }
+
+    private final double[] mLatitudes = new double[VERTEX_COUNT];
+
+    private final double[] mLongitudes = new double[VERTEX_COUNT];
+
+    /**
+     * Moves the circle to the provided center and radius
+     *
+     * @param latitude     latitude of the center, in degrees
+     * @param longitude    longitude of the center, in degrees
+     * @param radiusMeters radius of the circle, in meters
+     */
+    public void update(double latitude, double longitude, double radiusMeters) {
+        double latitudeRadius = Math.toDegrees(radiusMeters / EARTH_RADIUS_METERS);
+        double longitudeRadius = latitudeRadius
+                / Math.max(MIN_COS_LATITUDE, Math.cos(Math.toRadians(latitude)));
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            mLatitudes[i] = latitude + latitudeRadius * COS[i];
+            mLongitudes[i] = longitude + longitudeRadius * SIN[i];
+        }
+    }
+
+    /**
+     * Returns the latitude of the provided vertex, in degrees
+     *
+     * @return the latitude of the provided vertex, in degrees
+     */
+    public double getLatitude(int vertex) {
+        return mLatitudes[vertex];
+    }
+
+    /**
+     * Returns the longitude of the provided vertex, in degrees
+     *
+     * @return the longitude of the provided vertex, in degrees
+     */
+    public double getLongitude(int vertex) {
+        return mLongitudes[vertex];
+    }
+}
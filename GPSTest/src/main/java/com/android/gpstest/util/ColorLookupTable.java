@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+/**
+ * A color ramp (e.g., for C/N0 or SNR) precomputed into a fixed number of entries, so looking up a
+ * color is a single multiply and array read no matter how many color stops define the ramp.
+ * Values below the first threshold use the first color, and values above the last threshold use
+ * the last color.
+ *
+ * Colors are ARGB ints, the same format as android.graphics.Color.  Instances are immutable.
+ */
+public class ColorLookupTable {
+
+    public static final int DEFAULT_SIZE = 256;
+
+    private final int[] mColors;
+
+    private final float mMin;
+
+    private final float mScale;
+
+    /**
+     * @param thresholds values of each color stop, in increasing order (at least two)
+     * @param colors     ARGB color of each color stop, the same length as thresholds
+     * @param size       number of entries in the table (at least two)
+     */
+    public ColorLookupTable(float[] thresholds, int[] colors, int size) {
+        if (thresholds.length < 2 || thresholds.length != colors.length) {
+            throw new IllegalArgumentException("Need at least two thresholds, and one color per threshold");
+        }
+        if (size < 2) {
+            throw new IllegalArgumentException("Table size must be at least 2");
+        }
+        mMin = thresholds[0];
+        float max = thresholds[thresholds.length - 1];
+        mScale = (size - 1) / (max - mMin);
+        mColors = new int[size];
+
+        int stop = 0;
+        for (int i = 0; i < size; i++) {
+            float value = mMin + i / mScale;
+            while (stop < thresholds.length - 2 && value > thresholds[stop + 1]) {
+                stop++;
+            }
+            float f = (value - thresholds[stop]) / (thresholds[stop + 1] - thresholds[stop]);
+            mColors[i] = interpolate(colors[stop], colors[stop + 1], Math.max(0.0f, Math.min(1.0f, f)));
+        }
+    }
+
+    /**
+     * Returns the number of entries in this table
+     *
+     * @return the number of entries in this table
+     */
+    public int size() {
+        return mColors.length;
+    }
+
+    /**
+     * Returns the index of the entry for the provided value, between 0 and size() - 1
+     *
+     * @param value value to look up (e.g., C/N0 in dB-Hz)
+     * @return the index of the entry for the provided value
+     */
+    public int getIndex(float value) {
+        // Also catches NaN, which fails both comparisons below
+        if (!(value > mMin)) {
+            return 0;
+        }
+        int index = (int) ((value - mMin) * mScale + 0.5f);
+        return index < mColors.length ? index : mColors.length - 1;
+    }
+
+    /**
+     * Returns the color of the entry at the provided index
+     *
+     * @param index index between 0 and size() - 1, from getIndex()
+     * @return the ARGB color of the entry at the provided index
+     */
+    public int getColorAt(int index) {
+        return mColors[index];
+    }
+
+    /**
+     * Returns the color for the provided value
+     *
+     * @param value value to look up (e.g., C/N0 in dB-Hz)
+     * @return the ARGB color for the provided value
+     */
+    public int getColor(float value) {
+        return mColors[getIndex(value)];
+    }
+
+    /**
+     * Linearly interpolates the red, green and blue channels of two colors, returning an opaque
+     * color
+     */
+    private static int interpolate(int c1, int c2, float f) {
+        int r = (int) (((c2 >> 16) & 0xFF) * f + ((c1 >> 16) & 0xFF) * (1.0f - f));
+        int g = (int) (((c2 >> 8) & 0xFF) * f + ((c1 >> 8) & 0xFF) * (1.0f - f));
+        int b = (int) ((c2 & 0xFF) * f + (c1 & 0xFF) * (1.0f - f));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
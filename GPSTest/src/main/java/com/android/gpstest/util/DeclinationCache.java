@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+import java.util.Arrays;
+
+/**
+ * A least recently used cache of magnetic declinations, so the geomagnetic model only needs to be
+ * evaluated when the device moves to a new cell of BUCKET_DEGREES latitude and longitude, or into
+ * a new period of BUCKET_MILLIS (an average month) since 1970.  Declination changes by far less
+ * than a degree within a cell and a month, which is below the accuracy of phone compasses.
+ * Altitude isn't part of the key, as its effect on declination is negligible at the altitudes
+ * phones are used.
+ *
+ * Entries are kept in preallocated arrays found through an IntIntHashMap, so lookups and inserts
+ * don't allocate.  This class is not thread-safe.
+ */
+public class DeclinationCache {
+
+    public static final double BUCKET_DEGREES = 0.1;
+
+    // Average length of a Gregorian month
+    public static final long BUCKET_MILLIS = 2629746000L;
+
+    private static final int LATITUDE_BUCKETS = (int) Math.round(180 / BUCKET_DEGREES) + 1;
+
+    private static final int LONGITUDE_BUCKETS = (int) Math.round(360 / BUCKET_DEGREES);
+
+    // Months are kept modulo this, to fit the key in an int - entries this far apart never meet
+    // in a cache of this size
+    private static final int MONTH_BUCKETS = 256;
+
+    private final IntIntHashMap mSlotByKey;
+
+    private final int[] mKeys;
+
+    private final float[] mDeclinations;
+
+    // Value of mUseCount when each slot was last used, for finding the least recently used slot
+    private final long[] mLastUsed;
+
+    private long mUseCount;
+
+    private int mSize;
+
+    /**
+     * @param capacity the maximum number of declinations to keep
+     */
+    public DeclinationCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive - " + capacity);
+        }
+        mSlotByKey = new IntIntHashMap(capacity);
+        mKeys = new int[capacity];
+        mDeclinations = new float[capacity];
+        mLastUsed = new long[capacity];
+    }
+
+    /**
+     * Returns the key of the cell and month containing the provided location and time
+     *
+     * @param latitude   latitude in degrees
+     * @param longitude  longitude in degrees
+     * @param timeMillis time in milliseconds since January 1, 1970 UTC
+     * @return the key of the cell and month containing the provided location and time
+     */
+    public static int getKey(double latitude, double longitude, long timeMillis) {
+        int row = (int) Math.round((Math.min(Math.max(latitude, -90), 90) + 90) / BUCKET_DEGREES);
+        int column = (int) Math.floor((longitude + 180) / BUCKET_DEGREES) % LONGITUDE_BUCKETS;
+        if (column < 0) {
+            column += LONGITUDE_BUCKETS;
+        }
+        // Math.floorMod() isn't available before Android 7.0
+        long months = timeMillis / BUCKET_MILLIS;
+        if (timeMillis < 0 && months * BUCKET_MILLIS != timeMillis) {
+            months--;
+        }
+        int month = (int) (months % MONTH_BUCKETS);
+        if (month < 0) {
+            month += MONTH_BUCKETS;
+        }
+        return (month * LATITUDE_BUCKETS + row) * LONGITUDE_BUCKETS + column;
+    }
+
+    /**
+     * Returns the declination for the provided key, and marks it as recently used
+     *
+     * @param key key from getKey()
+     * @return the declination for the provided key in degrees, or NaN if it isn't in the cache
+     */
+    public float get(int key) {
+        int slot = mSlotByKey.get(key);
+        if (slot == IntIntHashMap.NOT_FOUND) {
+            return Float.NaN;
+        }
+        mLastUsed[slot] = ++mUseCount;
+        return mDeclinations[slot];
+    }
+
+    /**
+     * Adds the declination for the provided key, replacing the least recently used declination if
+     * the cache is full
+     *
+     * @param key         key from getKey()
+     * @param declination declination in degrees
+     */
+    public void put(int key, float declination) {
+        int slot = mSlotByKey.get(key);
+        if (slot == IntIntHashMap.NOT_FOUND) {
+            if (mSize < mKeys.length) {
+                slot = mSize++;
+            } else {
+                slot = 0;
+                for (int i = 1; i < mSize; i++) {
+                    if (mLastUsed[i] < mLastUsed[slot]) {
+                        slot = i;
+                    }
+                }
+                mSlotByKey.remove(mKeys[slot]);
+            }
+            mKeys[slot] = key;
+            mSlotByKey.put(key, slot);
+        }
+        mDeclinations[slot] = declination;
+        mLastUsed[slot] = ++mUseCount;
+    }
+
+    /**
+     * Returns the number of declinations in the cache
+     *
+     * @return the number of declinations in the cache
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Removes all declinations from the cache
+     */
+    public void clear() {
+        mSlotByKey.clear();
+        Arrays.fill(mLastUsed, 0);
+        mSize = 0;
+    }
+}
@@ -24,6 +24,8 @@ import android.hardware.SensorManager;
 import android.location.GnssMeasurement;
 import android.location.GnssNavigationMessage;
 import android.location.GnssStatus;
+import android.location.GpsSatellite;
+import android.location.GpsStatus;
 import android.location.LocationManager;
 import android.os.Build;
 import android.text.TextUtils;
@@ -33,6 +35,7 @@ import com.android.gpstest.Application;
 import com.android.gpstest.DilutionOfPrecision;
 import com.android.gpstest.model.GnssType;
 import com.android.gpstest.model.SatelliteName;
+import com.android.gpstest.model.SatelliteStatusPartition;
 import com.android.gpstest.model.SbasType;
 
 import java.lang.reflect.InvocationTargetException;
@@ -46,6 +49,7 @@ import static com.android.gpstest.model.GnssType.NAVSTAR;
 import static com.android.gpstest.model.GnssType.QZSS;
 import static com.android.gpstest.model.GnssType.SBAS;
 import static com.android.gpstest.model.GnssType.UNKNOWN;
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
 
 public class GpsTestUtil {
 
@@ -59,6 +63,32 @@ public class GpsTestUtil {
 
     private static StringBuilder mNmeaOutput = new StringBuilder();
 
+    /**
+     * Lookup tables so types are resolved with a single array access for every signal in every
+     * GnssStatus update, instead of walking the range checks in the methods that build them
+     */
+    private static final int MAX_LEGACY_PRN = 330;
+
+    private static final int MAX_SBAS_SVID = 255;
+
+    private static final GnssType[] GNSS_TYPE_BY_PRN = new GnssType[MAX_LEGACY_PRN + 1];
+
+    private static final GnssType[] GNSS_TYPE_BY_CONSTELLATION = new GnssType[8];
+
+    private static final SbasType[] SBAS_TYPE_BY_SVID = new SbasType[MAX_SBAS_SVID + 1];
+
+    static {
+        for (int prn = 0; prn <= MAX_LEGACY_PRN; prn++) {
+            GNSS_TYPE_BY_PRN[prn] = createGnssType(prn);
+        }
+        for (int type = 0; type < GNSS_TYPE_BY_CONSTELLATION.length; type++) {
+            GNSS_TYPE_BY_CONSTELLATION[type] = createGnssConstellationType(type);
+        }
+        for (int svid = 0; svid <= MAX_SBAS_SVID; svid++) {
+            SBAS_TYPE_BY_SVID[svid] = createSbasConstellationType(svid);
+        }
+    }
+
     /**
      * Returns the Global Navigation Satellite System (GNSS) for a satellite given the PRN.  For
      * Android 6.0.1 (API Level 23) and lower.  Android 7.0 and higher should use getGnssConstellationType()
@@ -68,6 +98,13 @@ public class GpsTestUtil {
      */
     @Deprecated
     public static GnssType getGnssType(int prn) {
+        if (prn >= 0 && prn <= MAX_LEGACY_PRN) {
+            return GNSS_TYPE_BY_PRN[prn];
+        }
+        return UNKNOWN;
+    }
+
+    private static GnssType createGnssType(int prn) {
         if (prn >= 1 && prn <= 32) {
             return NAVSTAR;
         } else if (prn == 33) {
@@ -115,6 +152,13 @@ public class GpsTestUtil {
      */
     @RequiresApi(api = Build.VERSION_CODES.N)
     public static GnssType getGnssConstellationType(int gnssConstellationType) {
+        if (gnssConstellationType >= 0 && gnssConstellationType < GNSS_TYPE_BY_CONSTELLATION.length) {
+            return GNSS_TYPE_BY_CONSTELLATION[gnssConstellationType];
+        }
+        return UNKNOWN;
+    }
+
+    private static GnssType createGnssConstellationType(int gnssConstellationType) {
         switch (gnssConstellationType) {
             case GnssStatus.CONSTELLATION_GPS:
                 return NAVSTAR;
@@ -144,6 +188,13 @@ public class GpsTestUtil {
      */
     @RequiresApi(api = Build.VERSION_CODES.N)
     public static SbasType getSbasConstellationType(int svid) {
+        if (svid >= 0 && svid <= MAX_SBAS_SVID) {
+            return SBAS_TYPE_BY_SVID[svid];
+        }
+        return SbasType.UNKNOWN;
+    }
+
+    private static SbasType createSbasConstellationType(int svid) {
         if (svid == 120 || svid == 123 || svid == 126 || svid == 136) {
             return SbasType.EGNOS;
         } else if (svid == 131 || svid == 133 || svid == 135 || svid == 138) {
@@ -285,6 +336,85 @@ public class GpsTestUtil {
         return String.valueOf(svid) + " " + String.valueOf(constellationType);
     }
 
+    /**
+     * Partitions the satellites in the provided GnssStatus into GNSS and SBAS signals in a single
+     * pass, clearing any signals already in the partitions.  Constellation and SBAS types are
+     * resolved once per signal here, so consumers of the partitions don't need to derive them again.
+     *
+     * @param status GnssStatus to partition
+     * @param gnss   partition that GNSS signals are written to
+     * @param sbas   partition that SBAS signals are written to
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static void partitionGnssStatus(GnssStatus status, SatelliteStatusPartition gnss,
+            SatelliteStatusPartition sbas) {
+        gnss.clear();
+        sbas.clear();
+        final boolean carrierFrequenciesSupported = isGnssCarrierFrequenciesSupported();
+        final int length = status.getSatelliteCount();
+        for (int i = 0; i < length; i++) {
+            int svid = status.getSvid(i);
+            GnssType gnssType = getGnssConstellationType(status.getConstellationType(i));
+            float carrierFrequencyHz = NO_DATA;
+            if (carrierFrequenciesSupported && status.hasCarrierFrequencyHz(i)) {
+                carrierFrequencyHz = status.getCarrierFrequencyHz(i);
+            }
+            SatelliteStatusPartition partition;
+            SbasType sbasType;
+            if (gnssType == SBAS) {
+                partition = sbas;
+                sbasType = getSbasConstellationType(svid);
+            } else {
+                partition = gnss;
+                sbasType = SbasType.UNKNOWN;
+            }
+            partition.add(svid, gnssType, sbasType,
+                    status.getCn0DbHz(i),
+                    status.hasAlmanacData(i),
+                    status.hasEphemerisData(i),
+                    status.usedInFix(i),
+                    status.getElevationDegrees(i),
+                    status.getAzimuthDegrees(i),
+                    carrierFrequencyHz);
+        }
+    }
+
+    /**
+     * Partitions the satellites in the provided legacy GpsStatus into GNSS and SBAS signals in a
+     * single pass, clearing any signals already in the partitions.  For Android 6.0.1 and lower.
+     *
+     * @param status GpsStatus to partition
+     * @param gnss   partition that GNSS signals are written to
+     * @param sbas   partition that SBAS signals are written to
+     */
+    @Deprecated
+    public static void partitionGpsStatus(GpsStatus status, SatelliteStatusPartition gnss,
+            SatelliteStatusPartition sbas) {
+        gnss.clear();
+        sbas.clear();
+        for (GpsSatellite satellite : status.getSatellites()) {
+            int prn = satellite.getPrn();
+            GnssType gnssType = getGnssType(prn);
+            SatelliteStatusPartition partition;
+            SbasType sbasType;
+            if (gnssType == SBAS) {
+                partition = sbas;
+                sbasType = getSbasConstellationTypeLegacy(prn);
+            } else {
+                partition = gnss;
+                sbasType = SbasType.UNKNOWN;
+            }
+            partition.add(prn, gnssType, sbasType,
+                    satellite.getSnr(),
+                    satellite.hasAlmanac(),
+                    satellite.hasEphemeris(),
+                    satellite.usedInFix(),
+                    satellite.getElevation(),
+                    satellite.getAzimuth(),
+                    NO_DATA);
+        }
+    }
+
 
     /**
      * Outputs the provided nmea message and timestamp to log
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from int keys to int values using open addressing, so lookups, inserts and removals
+ * don't box values or allocate entries.  Android's SparseIntArray uses a binary search and isn't
+ * available in local unit tests, so we use this for per-satellite and per-signal state instead.
+ *
+ * This class is not thread-safe.
+ */
+public class IntIntHashMap {
+
+    /**
+     * Value returned by get() when the key isn't in the map
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] mKeys;
+
+    private int[] mValues;
+
+    private boolean[] mUsed;
+
+    private int mSize;
+
+    private int mMask;
+
+    public IntIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without resizing
+     */
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new int[capacity];
+        mValues = new int[capacity];
+        mUsed = new boolean[capacity];
+        mMask = capacity - 1;
+        mSize = 0;
+    }
+
+    /**
+     * Returns the value for the provided key, or NOT_FOUND if the key isn't in the map
+     *
+     * @param key key to look up
+     * @return the value for the provided key, or NOT_FOUND if the key isn't in the map
+     */
+    public int get(int key) {
+        int i = indexOf(key);
+        return i < 0 ? NOT_FOUND : mValues[i];
+    }
+
+    /**
+     * Returns true if the map contains the provided key, false if it does not
+     *
+     * @param key key to look up
+     * @return true if the map contains the provided key, false if it does not
+     */
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Adds the key and value to the map, replacing any existing value for the key
+     *
+     * @param key   key to add
+     * @param value value to associate with the key
+     */
+    public void put(int key, int value) {
+        if ((mSize + 1) * 2 > mKeys.length) {
+            grow();
+        }
+        int i = hash(key) & mMask;
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                mValues[i] = value;
+                return;
+            }
+            i = (i + 1) & mMask;
+        }
+        mUsed[i] = true;
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    /**
+     * Removes the provided key from the map
+     *
+     * @param key key to remove
+     * @return the value that was associated with the key, or NOT_FOUND if the key wasn't in the map
+     */
+    public int remove(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return NOT_FOUND;
+        }
+        int removed = mValues[i];
+        // Shift following entries of the same probe sequence back, so no tombstones are needed
+        int hole = i;
+        int j = (i + 1) & mMask;
+        while (mUsed[j]) {
+            int home = hash(mKeys[j]) & mMask;
+            // Move the entry at j into the hole if its home slot isn't cyclically in (hole, j]
+            if ((j > hole && (home <= hole || home > j)) || (j < hole && (home <= hole && home > j))) {
+                mKeys[hole] = mKeys[j];
+                mValues[hole] = mValues[j];
+                hole = j;
+            }
+            j = (j + 1) & mMask;
+        }
+        mUsed[hole] = false;
+        mSize--;
+        return removed;
+    }
+
+    /**
+     * Removes all entries from the map, keeping the allocated capacity
+     */
+    public void clear() {
+        Arrays.fill(mUsed, false);
+        mSize = 0;
+    }
+
+    /**
+     * Returns the number of entries in the map
+     *
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return mSize;
+    }
+
+    private int indexOf(int key) {
+        int i = hash(key) & mMask;
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        boolean[] oldUsed = mUsed;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        // Spread the bits so sequential svids and packed keys don't cluster
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+/**
+ * Decides when a map camera that follows the device orientation needs to move.  Camera positions
+ * requested by sensor updates are compared to the last applied position, and changes of bearing,
+ * tilt and target smaller than the dead-bands are ignored, so sensor noise doesn't move the map.
+ *
+ * The camera target can be offset from the device position in the direction of the bearing.  The
+ * offset is computed on a local tangent plane, which is accurate for offsets of a few hundred
+ * meters and avoids the trigonometry of a great circle offset.
+ */
+public class MapCameraFilter {
+
+    public static final double DEFAULT_BEARING_DEADBAND = 1.0; // degrees
+
+    public static final double DEFAULT_TILT_DEADBAND = 1.0; // degrees
+
+    public static final double DEFAULT_TARGET_DEADBAND = 0.5; // meters
+
+    // Mean radius of the Earth, in meters
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(EARTH_RADIUS_METERS);
+
+    // Keeps longitude offsets finite at the poles
+    private static final double MIN_COS_LATITUDE = 1.0E-6;
+
+    private final double mBearingDeadband;
+
+    private final double mTiltDeadband;
+
+    private final double mTargetDeadband;
+
+    private boolean mApplied;
+
+    private double mLatitude, mLongitude, mBearing, mTilt;
+
+    public MapCameraFilter() {
+        this(DEFAULT_BEARING_DEADBAND, DEFAULT_TILT_DEADBAND, DEFAULT_TARGET_DEADBAND);
+    }
+
+    /**
+     * @param bearingDeadband smallest change of bearing that moves the camera, in degrees
+     * @param tiltDeadband    smallest change of tilt that moves the camera, in degrees
+     * @param targetDeadband  smallest change of target that moves the camera, in meters
+     */
+    public MapCameraFilter(double bearingDeadband, double tiltDeadband, double targetDeadband) {
+        mBearingDeadband = bearingDeadband;
+        mTiltDeadband = tiltDeadband;
+        mTargetDeadband = targetDeadband;
+    }
+
+    /**
+     * Requests a camera position, and returns true if the camera should move to it.  If it should,
+     * the position becomes the last applied position, available from the getters.
+     *
+     * @param latitude     latitude of the device, in degrees
+     * @param longitude    longitude of the device, in degrees
+     * @param bearing      bearing of the camera, in degrees
+     * @param tilt         tilt of the camera, in degrees
+     * @param offsetMeters distance of the camera target from the device, in the direction of the
+     *                     bearing
+     * @return true if the camera should move to the requested position, false if the change is
+     * within the dead-bands
+     */
+    public boolean update(double latitude, double longitude, double bearing, double tilt,
+            double offsetMeters) {
+        double bearingRadians = Math.toRadians(bearing);
+        double targetLatitude = latitude
+                + offsetMeters * Math.cos(bearingRadians) / METERS_PER_DEGREE;
+        double targetLongitude = longitude
+                + offsetMeters * Math.sin(bearingRadians) / metersPerDegreeLongitude(latitude);
+
+        if (mApplied
+                && angleDifference(bearing, mBearing) < mBearingDeadband
+                && Math.abs(tilt - mTilt) < mTiltDeadband
+                && distance(targetLatitude, targetLongitude, mLatitude, mLongitude)
+                < mTargetDeadband) {
+            return false;
+        }
+        mLatitude = targetLatitude;
+        mLongitude = targetLongitude;
+        mBearing = bearing;
+        mTilt = tilt;
+        mApplied = true;
+        return true;
+    }
+
+    /**
+     * Forgets the last applied position, so the next update() moves the camera.  Call it when the
+     * camera was moved by something else, such as the user.
+     */
+    public void reset() {
+        mApplied = false;
+    }
+
+    /**
+     * Returns the latitude of the last applied camera target, in degrees
+     *
+     * @return the latitude of the last applied camera target, in degrees
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * Returns the longitude of the last applied camera target, in degrees
+     *
+     * @return the longitude of the last applied camera target, in degrees
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getBearing() {
+        return mBearing;
+    }
+
+    public double getTilt() {
+        return mTilt;
+    }
+
+    /**
+     * Returns the absolute difference between two angles, between 0 and 180 degrees
+     *
+     * @return the absolute difference between two angles, between 0 and 180 degrees
+     */
+    static double angleDifference(double a, double b) {
+        double difference = Math.abs(a - b) % 360.0;
+        return difference > 180.0 ? 360.0 - difference : difference;
+    }
+
+    private static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.max(MIN_COS_LATITUDE, Math.cos(Math.toRadians(latitude)));
+    }
+
+    private static double distance(double latitude1, double longitude1, double latitude2,
+            double longitude2) {
+        double x = (longitude2 - longitude1) * metersPerDegreeLongitude(latitude1);
+        double y = (latitude2 - latitude1) * METERS_PER_DEGREE;
+        return Math.sqrt(x * x + y * y);
+    }
+}
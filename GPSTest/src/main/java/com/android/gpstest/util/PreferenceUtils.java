@@ -195,4 +195,22 @@ public class PreferenceUtils {
         }
         return 0;  // Default to the first option
     }
+
+    /**
+     * Returns how long satellite trails are shown in the sky view, in minutes, or 0 if trails
+     * aren't shown
+     *
+     * @return how long satellite trails are shown in the sky view, in minutes, or 0 if trails
+     * aren't shown
+     */
+    public static int getSkyTrailDurationMinutes() {
+        Resources r = Application.get().getResources();
+        String minutes = Application.getPrefs().getString(
+                r.getString(R.string.pref_key_sky_trail_minutes), "0");
+        try {
+            return Integer.parseInt(minutes);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 }
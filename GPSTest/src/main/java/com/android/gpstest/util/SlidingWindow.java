@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+/**
+ * The mean and standard deviation of the last N values added, kept in a ring buffer with running
+ * sums so adding a value and reading the statistics are O(1).  The sums are recomputed from the
+ * buffer each time it wraps, so rounding errors don't accumulate.
+ *
+ * This class is not thread-safe.
+ */
+public class SlidingWindow {
+
+    private final double[] mValues;
+
+    private int mNext;
+
+    private int mSize;
+
+    private double mSum;
+
+    private double mSumOfSquares;
+
+    /**
+     * @param capacity the number of values in the window
+     */
+    public SlidingWindow(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive - " + capacity);
+        }
+        mValues = new double[capacity];
+    }
+
+    /**
+     * Adds a value, removing the oldest value if the window is full
+     */
+    public void add(double value) {
+        if (mSize == mValues.length) {
+            double oldest = mValues[mNext];
+            mSum -= oldest;
+            mSumOfSquares -= oldest * oldest;
+        } else {
+            mSize++;
+        }
+        mValues[mNext] = value;
+        mSum += value;
+        mSumOfSquares += value * value;
+        mNext++;
+        if (mNext == mValues.length) {
+            mNext = 0;
+            recomputeSums();
+        }
+    }
+
+    private void recomputeSums() {
+        mSum = 0;
+        mSumOfSquares = 0;
+        for (int i = 0; i < mSize; i++) {
+            mSum += mValues[i];
+            mSumOfSquares += mValues[i] * mValues[i];
+        }
+    }
+
+    /**
+     * Removes all values
+     */
+    public void clear() {
+        mNext = 0;
+        mSize = 0;
+        mSum = 0;
+        mSumOfSquares = 0;
+    }
+
+    /**
+     * Returns the number of values in the window
+     *
+     * @return the number of values in the window
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the mean of the values in the window
+     *
+     * @return the mean of the values in the window, or NaN if it's empty
+     */
+    public double getMean() {
+        return mSize == 0 ? Double.NaN : mSum / mSize;
+    }
+
+    /**
+     * Returns the population standard deviation of the values in the window
+     *
+     * @return the standard deviation of the values in the window, or NaN if it's empty
+     */
+    public double getStandardDeviation() {
+        if (mSize == 0) {
+            return Double.NaN;
+        }
+        double mean = mSum / mSize;
+        return Math.sqrt(Math.max(0.0, mSumOfSquares / mSize - mean * mean));
+    }
+}
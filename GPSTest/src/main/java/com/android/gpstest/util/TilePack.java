@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only pack of map tiles in a single file, for using maps without a network connection.
+ * The whole file is memory-mapped, and tiles are found by a binary search of the index, so reading
+ * a tile doesn't touch the file system or copy the tile.
+ *
+ * The file is big-endian:
+ * <pre>
+ * header (16 bytes): int magic "GTPK", short version, short tile size in pixels,
+ *                    byte minimum zoom, byte maximum zoom, short reserved, int tile count
+ * index (20 bytes per tile, sorted by key): long key (see getKey()), long offset, int length
+ * tiles: the image of each tile, at the offset from the start of the file
+ * </pre>
+ * See TilePackWriter for creating packs.  This class is thread-safe.
+ */
+public class TilePack {
+
+    public static final int MAGIC = 0x4754504B; // "GTPK"
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 16;
+
+    public static final int INDEX_ENTRY_SIZE = 20;
+
+    public static final int MAX_ZOOM = 28;
+
+    private final File mFile;
+
+    private final RandomAccessFile mRandomAccessFile;
+
+    private final MappedByteBuffer mBuffer;
+
+    private final int mTileSize;
+
+    private final int mMinZoom;
+
+    private final int mMaxZoom;
+
+    private final int mTileCount;
+
+    private TilePack(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer)
+            throws IOException {
+        mFile = file;
+        mRandomAccessFile = randomAccessFile;
+        mBuffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " isn't a tile pack");
+        }
+        int version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported tile pack version " + version);
+        }
+        mTileSize = buffer.getShort(6);
+        mMinZoom = buffer.get(8);
+        mMaxZoom = buffer.get(9);
+        mTileCount = buffer.getInt(12);
+        if (mTileCount < 0
+                || HEADER_SIZE + (long) mTileCount * INDEX_ENTRY_SIZE > buffer.limit()) {
+            throw new IOException(file + " has a truncated index");
+        }
+    }
+
+    /**
+     * Opens and memory-maps the provided tile pack
+     *
+     * @param file the tile pack to open
+     * @return the opened tile pack, which must be closed with close()
+     * @throws IOException if the file can't be read, or isn't a tile pack
+     */
+    public static TilePack open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return new TilePack(file, randomAccessFile, buffer);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the key of a tile in the index, which sorts tiles by zoom, then x, then y
+     *
+     * @return the key of a tile in the index
+     */
+    public static long getKey(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("Zoom " + zoom + " isn't supported");
+        }
+        return ((long) zoom << 56) | ((long) x << 28) | y;
+    }
+
+    /**
+     * Returns the image of the provided tile, without copying it from the mapped file
+     *
+     * @return a read-only buffer with the image of the provided tile between its position and
+     * limit, or null if the pack doesn't have the tile
+     */
+    public ByteBuffer getTile(int zoom, int x, int y) {
+        int entry = find(zoom, x, y);
+        if (entry == -1) {
+            return null;
+        }
+        int position = HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+        long offset = mBuffer.getLong(position + 8);
+        int length = mBuffer.getInt(position + 16);
+        if (offset < 0 || length < 0 || offset + length > mBuffer.limit()) {
+            return null;
+        }
+        ByteBuffer tile = mBuffer.duplicate();
+        tile.limit((int) offset + length);
+        tile.position((int) offset);
+        return tile;
+    }
+
+    /**
+     * Returns a stream of the image of the provided tile, which reads directly from the mapped file
+     *
+     * @return a stream of the image of the provided tile, or null if the pack doesn't have the tile
+     */
+    public InputStream openTile(int zoom, int x, int y) {
+        ByteBuffer tile = getTile(zoom, x, y);
+        return tile != null ? new ByteBufferInputStream(tile) : null;
+    }
+
+    /**
+     * Returns true if the pack has the provided tile
+     *
+     * @return true if the pack has the provided tile
+     */
+    public boolean hasTile(int zoom, int x, int y) {
+        return find(zoom, x, y) != -1;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns the width and height of the tiles, in pixels
+     *
+     * @return the width and height of the tiles, in pixels
+     */
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    public int getMinZoom() {
+        return mMinZoom;
+    }
+
+    public int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    public int getTileCount() {
+        return mTileCount;
+    }
+
+    /**
+     * Closes the file.  The mapping is released when the pack is garbage collected.
+     */
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Returns the index entry of the provided tile, or -1 if the pack doesn't have it
+     */
+    private int find(int zoom, int x, int y) {
+        if (zoom < mMinZoom || zoom > mMaxZoom) {
+            return -1;
+        }
+        long key = getKey(zoom, x, y);
+        int low = 0;
+        int high = mTileCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = mBuffer.getLong(HEADER_SIZE + middle * INDEX_ENTRY_SIZE);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a buffer from its position to its limit
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+
+        private int mMark;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+            mMark = buffer.position();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, mBuffer.remaining()));
+            mBuffer.position(mBuffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            // Decoders can rewind without buffering a copy of the tile
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mMark = mBuffer.position();
+        }
+
+        @Override
+        public synchronized void reset() {
+            mBuffer.position(mMark);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Writes a tile pack that can be read with TilePack.  Tile images are streamed to a temporary file
+ * as they are added, so only the index is kept in memory, and the pack is assembled by close().
+ */
+public class TilePackWriter {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final File mFile;
+
+    private final File mDataFile;
+
+    private final int mTileSize;
+
+    private OutputStream mData;
+
+    private long mDataLength;
+
+    private int mCount;
+
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+
+    private long[] mOffsets = new long[INITIAL_CAPACITY];
+
+    private int[] mLengths = new int[INITIAL_CAPACITY];
+
+    private int mMinZoom = TilePack.MAX_ZOOM;
+
+    private int mMaxZoom = 0;
+
+    /**
+     * @param file     the tile pack to write
+     * @param tileSize width and height of the tiles, in pixels
+     */
+    public TilePackWriter(File file, int tileSize) throws IOException {
+        mFile = file;
+        mTileSize = tileSize;
+        mDataFile = new File(file.getPath() + ".tmp");
+        mData = new BufferedOutputStream(new FileOutputStream(mDataFile));
+    }
+
+    /**
+     * Adds a tile to the pack
+     *
+     * @param image the encoded image of the tile, such as a PNG
+     */
+    public void add(int zoom, int x, int y, byte[] image) throws IOException {
+        if (mData == null) {
+            throw new IllegalStateException("The tile pack has been closed");
+        }
+        long key = TilePack.getKey(zoom, x, y);
+        if (mCount == mKeys.length) {
+            int capacity = mCount * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mLengths = Arrays.copyOf(mLengths, capacity);
+        }
+        mKeys[mCount] = key;
+        mOffsets[mCount] = mDataLength;
+        mLengths[mCount] = image.length;
+        mCount++;
+        mData.write(image);
+        mDataLength += image.length;
+        mMinZoom = Math.min(mMinZoom, zoom);
+        mMaxZoom = Math.max(mMaxZoom, zoom);
+    }
+
+    /**
+     * Writes the pack and deletes the temporary file
+     *
+     * @throws IllegalArgumentException if the same tile was added more than once
+     */
+    public void close() throws IOException {
+        if (mData == null) {
+            return;
+        }
+        mData.close();
+        mData = null;
+        try {
+            writePack();
+        } finally {
+            if (!mDataFile.delete()) {
+                mDataFile.deleteOnExit();
+            }
+        }
+    }
+
+    private void writePack() throws IOException {
+        // The index is sorted by key so readers can binary search it
+        Integer[] order = new Integer[mCount];
+        for (int i = 0; i < mCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long keyA = mKeys[a];
+                long keyB = mKeys[b];
+                return keyA < keyB ? -1 : (keyA == keyB ? 0 : 1);
+            }
+        });
+        for (int i = 1; i < mCount; i++) {
+            if (mKeys[order[i]] == mKeys[order[i - 1]]) {
+                throw new IllegalArgumentException("A tile was added more than once");
+            }
+        }
+
+        long dataStart = TilePack.HEADER_SIZE + (long) mCount * TilePack.INDEX_ENTRY_SIZE;
+        if (dataStart + mDataLength > Integer.MAX_VALUE) {
+            throw new IOException("Tile packs are limited to 2 GB");
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mFile)));
+        InputStream data = null;
+        try {
+            out.writeInt(TilePack.MAGIC);
+            out.writeShort(TilePack.VERSION);
+            out.writeShort(mTileSize);
+            out.writeByte(mCount > 0 ? mMinZoom : 0);
+            out.writeByte(mCount > 0 ? mMaxZoom : 0);
+            out.writeShort(0);
+            out.writeInt(mCount);
+            for (Integer i : order) {
+                out.writeLong(mKeys[i]);
+                out.writeLong(dataStart + mOffsets[i]);
+                out.writeInt(mLengths[i]);
+            }
+            data = new BufferedInputStream(new FileInputStream(mDataFile));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = data.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+            if (data != null) {
+                data.close();
+            }
+        }
+    }
+}
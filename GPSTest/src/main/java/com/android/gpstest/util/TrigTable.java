@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.util;
+
+/**
+ * Sine and cosine of angles in degrees from a precomputed table, for code that runs every frame
+ * (e.g., projecting satellites onto the sky plot).  The table has a resolution of about 0.09
+ * degrees, which is well below a pixel at sky plot sizes.
+ */
+public class TrigTable {
+
+    // Must be a power of two, so indexes can wrap with a mask
+    private static final int SIZE = 4096;
+
+    private static final int MASK = SIZE - 1;
+
+    private static final float INDEX_PER_DEGREE = SIZE / 360.0f;
+
+    // A quarter turn, used to get the cosine from the sine table
+    private static final int QUARTER = SIZE / 4;
+
+    private static final float[] SIN = new float[SIZE];
+
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            SIN[i] = (float) Math.sin(i * 2.0 * Math.PI / SIZE);
+        }
+    }
+
+    /**
+     * Returns the sine of the provided angle
+     *
+     * @param degrees angle in degrees, of any sign or magnitude
+     * @return the sine of the provided angle
+     */
+    public static float sin(float degrees) {
+        return SIN[toIndex(degrees)];
+    }
+
+    /**
+     * Returns the cosine of the provided angle
+     *
+     * @param degrees angle in degrees, of any sign or magnitude
+     * @return the cosine of the provided angle
+     */
+    public static float cos(float degrees) {
+        return SIN[(toIndex(degrees) + QUARTER) & MASK];
+    }
+
+    private static int toIndex(float degrees) {
+        // Round to the nearest entry, wrapping negative angles and angles past 360
+        return (int) Math.floor(degrees * INDEX_PER_DEGREE + 0.5f) & MASK;
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.TextureView;
+
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteTrails;
+import com.android.gpstest.model.SkyHeatmap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Sky plot that draws on its own render thread instead of the UI thread, so drawing never blocks
+ * the UI thread during bursts of GNSS and orientation updates.  The render thread draws at most
+ * once per vsync, and only when something has changed since the last frame.
+ *
+ * The UI thread publishes state to the render thread without locks - orientation and flags
+ * through volatile fields, and epochs through an AtomicReference that hands over ownership of one
+ * epoch reference.  The render thread groups the signals of the epoch it takes and immediately
+ * releases it, so it never holds an epoch across frames.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+public class GpsSkyTextureView extends TextureView implements SkyPlotView,
+        TextureView.SurfaceTextureListener {
+
+    private static final String TAG = "GpsSkyTextureView";
+
+    private final SkyPlotRenderer mRenderer;
+
+    // Latest epoch that the render thread hasn't taken yet - whoever swaps it out owns its reference
+    private final AtomicReference<GnssEpoch> mPendingEpoch = new AtomicReference<>();
+
+    private final AtomicBoolean mClearRequested = new AtomicBoolean();
+
+    // True if a frame has been requested and not yet drawn
+    private final AtomicBoolean mDirty = new AtomicBoolean();
+
+    // Snapshots read by the render thread
+    private volatile double mOrientation;
+
+    private volatile boolean mStarted;
+
+    private volatile boolean mUseCn0Colors = true;
+
+    private volatile int mSize;
+
+    private volatile int mTrailDurationMinutes;
+
+    private volatile SkyHeatmap mHeatmap;
+
+    private volatile int mSelectedKey = SatelliteGroups.NO_KEY;
+
+    // Only used by the UI thread
+    private boolean mUseLegacyGnssApi = false;
+
+    private boolean mIsSnrBad = false;
+
+    private float mCn0InViewAvg;
+
+    private float mCn0UsedAvg;
+
+    private GestureDetector mGestureDetector;
+
+    private OnSatelliteSelectedListener mOnSatelliteSelectedListener;
+
+    private RenderThread mRenderThread;
+
+    // Only used by the render thread
+    private final SatelliteGroups mSatellites = new SatelliteGroups();
+
+    private final SkyPlotAnimator mAnimator = new SkyPlotAnimator();
+
+    private double mAnimatorOrientation = Double.NaN;
+
+    // Satellite trails, or null if they aren't shown
+    private SatelliteTrails mTrails;
+
+    public GpsSkyTextureView(Context context) {
+        this(context, null);
+    }
+
+    public GpsSkyTextureView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mRenderer = new SkyPlotRenderer(context);
+        // Let the background show outside of the horizon circle
+        setOpaque(false);
+        setSurfaceTextureListener(this);
+
+        mGestureDetector = new GestureDetector(context,
+                new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(MotionEvent e) {
+                        // Receive the rest of the gesture
+                        return mOnSatelliteSelectedListener != null;
+                    }
+
+                    @Override
+                    public boolean onSingleTapUp(MotionEvent e) {
+                        onSatelliteTouched(e, false);
+                        return true;
+                    }
+
+                    @Override
+                    public void onLongPress(MotionEvent e) {
+                        onSatelliteTouched(e, true);
+                    }
+                });
+    }
+
+    @Override
+    public void setStarted() {
+        mStarted = true;
+        requestRender();
+    }
+
+    @Override
+    public void setStopped() {
+        mStarted = false;
+        GnssEpoch pending = mPendingEpoch.getAndSet(null);
+        if (pending != null) {
+            pending.release();
+        }
+        mClearRequested.set(true);
+        mCn0InViewAvg = 0.0f;
+        mCn0UsedAvg = 0.0f;
+        requestRender();
+    }
+
+    @Override
+    public void setGnssEpoch(GnssEpoch epoch) {
+        mUseLegacyGnssApi = epoch.isLegacy();
+        mIsSnrBad = SkyPlotRenderer.isSnrBad(epoch, mIsSnrBad);
+        mUseCn0Colors = SkyPlotRenderer.useCn0Colors(mUseLegacyGnssApi, mIsSnrBad);
+        mCn0InViewAvg = epoch.getCn0InViewAvg();
+        mCn0UsedAvg = epoch.getCn0UsedAvg();
+
+        // The reference retained here is released by whichever thread swaps the epoch out
+        epoch.retain();
+        GnssEpoch replaced = mPendingEpoch.getAndSet(epoch);
+        if (replaced != null) {
+            // The render thread never took this one
+            replaced.release();
+        }
+        mStarted = true;
+        requestRender();
+    }
+
+    @Override
+    public void onOrientationChanged(double orientation, double tilt) {
+        mOrientation = orientation;
+        requestRender();
+    }
+
+    @Override
+    public void setTrailDurationMinutes(int minutes) {
+        mTrailDurationMinutes = minutes;
+        requestRender();
+    }
+
+    @Override
+    public void setHeatmap(SkyHeatmap heatmap) {
+        mHeatmap = heatmap;
+        requestRender();
+    }
+
+    @Override
+    public void setSelectedSatellite(int key) {
+        mSelectedKey = key;
+        requestRender();
+    }
+
+    @Override
+    public void setOnSatelliteSelectedListener(OnSatelliteSelectedListener listener) {
+        mOnSatelliteSelectedListener = listener;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return mGestureDetector.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+
+    private void onSatelliteTouched(MotionEvent e, final boolean longPress) {
+        RenderThread renderThread = mRenderThread;
+        if (mOnSatelliteSelectedListener != null && renderThread != null) {
+            // Satellites are indexed by the render thread, so look them up there
+            renderThread.findSatellite(e.getX(), e.getY(), longPress);
+        }
+    }
+
+    @Override
+    public int getSatelliteColor(float snrCn0) {
+        return mRenderer.getSatelliteColor(snrCn0, mUseCn0Colors);
+    }
+
+    @Override
+    public float getSnrCn0InViewAvg() {
+        return mCn0InViewAvg;
+    }
+
+    @Override
+    public float getSnrCn0UsedAvg() {
+        return mCn0UsedAvg;
+    }
+
+    @Override
+    public boolean isUsingLegacyGpsApi() {
+        return mUseLegacyGnssApi;
+    }
+
+    @Override
+    public boolean isSnrBad() {
+        return mIsSnrBad;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Use the width of the screen as the measured dimension for width and height of view
+        // This allows other views in the same layout to be visible on the screen (#124)
+        int specSize = MeasureSpec.getSize(widthMeasureSpec);
+        setMeasuredDimension(specSize, specSize);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        GnssEpoch pending = mPendingEpoch.getAndSet(null);
+        if (pending != null) {
+            pending.release();
+        }
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+        mSize = Math.min(width, height);
+        mRenderThread = new RenderThread();
+        mRenderThread.start();
+        // The new surface is empty, so draw the current state
+        mDirty.set(false);
+        requestRender();
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+        mSize = Math.min(width, height);
+        requestRender();
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+        if (mRenderThread != null) {
+            // Wait for the render thread so it doesn't draw on the surface after it's released
+            mRenderThread.shutdown();
+            mRenderThread = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+    }
+
+    /**
+     * Asks the render thread to draw a frame at the next vsync, unless one is already pending
+     */
+    private void requestRender() {
+        RenderThread renderThread = mRenderThread;
+        if (renderThread != null && mDirty.compareAndSet(false, true)) {
+            renderThread.scheduleFrame();
+        }
+    }
+
+    /**
+     * Takes the latest epoch from the UI thread (if there is a new one) and draws a frame
+     *
+     * @param nowMillis frame time, from SystemClock.uptimeMillis()
+     * @return true if the animation is still running and another frame should be drawn
+     */
+    private boolean render(long nowMillis) {
+        if (mClearRequested.getAndSet(false)) {
+            mSatellites.clear();
+            mAnimator.clearSatellites();
+        }
+        updateTrailDuration();
+        SkyHeatmap heatmap = mHeatmap;
+        mRenderer.setHeatmap(heatmap);
+        mRenderer.setSelectedSatellite(mSelectedKey);
+        GnssEpoch epoch = mPendingEpoch.getAndSet(null);
+        if (epoch != null) {
+            mSatellites.beginEpoch();
+            mSatellites.addSignals(epoch.getGnss());
+            mSatellites.addSignals(epoch.getSbas());
+            mSatellites.endEpoch();
+            if (mTrails != null) {
+                mTrails.add(mSatellites, epoch.getElapsedRealtimeMillis());
+            }
+            if (heatmap != null) {
+                heatmap.add(mSatellites);
+            }
+            // Values were copied into the groups, so the epoch isn't needed anymore
+            epoch.release();
+            mAnimator.setTargets(mSatellites, nowMillis);
+        }
+        double orientation = mOrientation;
+        if (orientation != mAnimatorOrientation) {
+            mAnimatorOrientation = orientation;
+            mAnimator.setOrientation(orientation, nowMillis);
+        }
+        boolean animating = mAnimator.update(nowMillis);
+
+        Canvas c = lockCanvas();
+        if (c == null) {
+            return false;
+        }
+        try {
+            c.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            mRenderer.draw(c, mSize, orientation, mStarted, mSatellites, mUseCn0Colors, mAnimator);
+        } finally {
+            unlockCanvasAndPost(c);
+        }
+        return animating;
+    }
+
+    /**
+     * Applies the trail duration set by the UI thread - called on the render thread
+     */
+    private void updateTrailDuration() {
+        int minutes = mTrailDurationMinutes;
+        if (minutes <= 0) {
+            if (mTrails != null) {
+                mTrails = null;
+                mRenderer.setTrails(null);
+            }
+        } else if (mTrails == null) {
+            mTrails = new SatelliteTrails(TimeUnit.MINUTES.toMillis(minutes));
+            mRenderer.setTrails(mTrails);
+        } else {
+            mTrails.setDurationMillis(TimeUnit.MINUTES.toMillis(minutes));
+        }
+    }
+
+    /**
+     * Thread that draws frames paced by its own Choreographer, which calls back at vsync
+     */
+    private class RenderThread extends HandlerThread implements Choreographer.FrameCallback {
+
+        private Handler mHandler;
+
+        private Choreographer mChoreographer;
+
+        // Only used on this thread
+        private boolean mFrameScheduled;
+
+        private final Runnable mScheduleFrame = new Runnable() {
+            @Override
+            public void run() {
+                if (!mFrameScheduled) {
+                    mFrameScheduled = true;
+                    mChoreographer.postFrameCallback(RenderThread.this);
+                }
+            }
+        };
+
+        RenderThread() {
+            super(TAG);
+        }
+
+        @Override
+        protected void onLooperPrepared() {
+            // Choreographer.getInstance() returns the Choreographer of the calling thread's looper
+            mChoreographer = Choreographer.getInstance();
+        }
+
+        /**
+         * Schedules a frame for the next vsync - can be called from any thread
+         */
+        void scheduleFrame() {
+            Handler handler = getHandler();
+            if (handler != null) {
+                handler.post(mScheduleFrame);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            // Clear the flag before reading state, so changes made while drawing request another frame
+            mDirty.set(false);
+            // Frame time uses the same clock as SystemClock.uptimeMillis()
+            if (render(frameTimeNanos / 1000000)) {
+                // Keep animating at vsync until everything reaches its target
+                mFrameScheduled = true;
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        /**
+         * Finds the satellite drawn closest to the provided position on this thread, and reports
+         * it to the listener on the UI thread - can be called from any thread
+         */
+        void findSatellite(final float x, final float y, final boolean longPress) {
+            Handler handler = getHandler();
+            if (handler == null) {
+                return;
+            }
+            handler.post(() -> {
+                final int key = mRenderer.findSatellite(x, y);
+                post(() -> {
+                    if (mOnSatelliteSelectedListener != null) {
+                        mOnSatelliteSelectedListener.onSatelliteSelected(key, longPress);
+                    }
+                });
+            });
+        }
+
+        /**
+         * Stops drawing and waits for this thread to finish - called from the UI thread
+         */
+        void shutdown() {
+            Handler handler = getHandler();
+            if (handler != null) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mChoreographer != null) {
+                            mChoreographer.removeFrameCallback(RenderThread.this);
+                        }
+                        mRenderer.release();
+                        quit();
+                    }
+                });
+            } else {
+                quit();
+            }
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for render thread: " + e);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized Handler getHandler() {
+            if (mHandler == null && getLooper() != null) {
+                mHandler = new Handler(getLooper());
+            }
+            return mHandler;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.view;
+
+import com.android.gpstest.model.SatelliteGroup;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.util.IntIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Interpolates satellite positions and the device orientation over time, so the sky plot moves
+ * smoothly between GNSS epochs and orientation sensor samples.  Each new target starts a linear
+ * animation from the currently displayed value.  Satellites animate over the measured interval
+ * between epochs, and angles always take the shortest way around the circle.
+ *
+ * State is kept in primitive arrays indexed by a slot per satellite, so updates and lookups don't
+ * allocate once the arrays have grown to the number of satellites in view.  This class is not
+ * thread-safe - it must be used by the thread that draws the sky plot.
+ */
+public class SkyPlotAnimator {
+
+    public static final long DEFAULT_ORIENTATION_DURATION_MILLIS = 100;
+
+    // Limits for the satellite animation duration, which follows the interval between epochs
+    static final long MIN_SATELLITE_DURATION_MILLIS = 100;
+
+    static final long MAX_SATELLITE_DURATION_MILLIS = 2000;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long mOrientationDurationMillis;
+
+    private final IntIntHashMap mSlotByKey = new IntIntHashMap();
+
+    private int[] mFreeSlots = new int[INITIAL_CAPACITY];
+
+    private int mFreeSlotCount;
+
+    // Number of slots ever used - slots between 0 and this count are either in use or free
+    private int mSlotCount;
+
+    private int[] mKey = new int[INITIAL_CAPACITY];
+
+    private int[] mSeenTargets = new int[INITIAL_CAPACITY];
+
+    private float[] mStartElevation = new float[INITIAL_CAPACITY];
+
+    private float[] mStartAzimuth = new float[INITIAL_CAPACITY];
+
+    private float[] mTargetElevation = new float[INITIAL_CAPACITY];
+
+    private float[] mTargetAzimuth = new float[INITIAL_CAPACITY];
+
+    private float[] mElevation = new float[INITIAL_CAPACITY];
+
+    private float[] mAzimuth = new float[INITIAL_CAPACITY];
+
+    private int mTargets;
+
+    private long mSatelliteStartMillis;
+
+    private long mSatelliteDurationMillis = MAX_SATELLITE_DURATION_MILLIS;
+
+    private boolean mHasSatelliteTargets;
+
+    // True if any satellite has a target different from where it started
+    private boolean mSatellitesMoving;
+
+    private boolean mHasOrientation;
+
+    private double mStartOrientation;
+
+    private double mTargetOrientation;
+
+    private double mOrientation;
+
+    private long mOrientationStartMillis;
+
+    public SkyPlotAnimator() {
+        this(DEFAULT_ORIENTATION_DURATION_MILLIS);
+    }
+
+    /**
+     * @param orientationDurationMillis time to animate to a new orientation, which should be close
+     *                                  to the interval between orientation sensor samples
+     */
+    public SkyPlotAnimator(long orientationDurationMillis) {
+        mOrientationDurationMillis = orientationDurationMillis;
+    }
+
+    /**
+     * Sets the positions of the provided satellites as the new targets.  Satellites that are
+     * already shown animate from their current position, new satellites appear at their target,
+     * and satellites that aren't in the provided groups are forgotten.
+     *
+     * @param satellites satellites of the latest epoch
+     * @param nowMillis  current time, from SystemClock.uptimeMillis()
+     */
+    public void setTargets(SatelliteGroups satellites, long nowMillis) {
+        // Freeze the displayed positions, which are the start of the new animation
+        update(nowMillis);
+        if (mHasSatelliteTargets) {
+            mSatelliteDurationMillis = Math.max(MIN_SATELLITE_DURATION_MILLIS,
+                    Math.min(MAX_SATELLITE_DURATION_MILLIS, nowMillis - mSatelliteStartMillis));
+        }
+        mSatelliteStartMillis = nowMillis;
+        mHasSatelliteTargets = true;
+        mSatellitesMoving = false;
+        mTargets++;
+
+        int numSats = satellites.size();
+        for (int i = 0; i < numSats; i++) {
+            SatelliteGroup satellite = satellites.get(i);
+            float elevation = satellite.getElevationDegrees();
+            float azimuth = satellite.getAzimuthDegrees();
+            int slot = mSlotByKey.get(satellite.getKey());
+            if (slot == IntIntHashMap.NOT_FOUND) {
+                slot = obtainSlot(satellite.getKey());
+                mElevation[slot] = elevation;
+                mAzimuth[slot] = azimuth;
+            }
+            if (!hasPosition(mElevation[slot], mAzimuth[slot])
+                    || !hasPosition(elevation, azimuth)) {
+                // Don't animate from or to the center of the plot when the position is unknown
+                mElevation[slot] = elevation;
+                mAzimuth[slot] = azimuth;
+            }
+            mStartElevation[slot] = mElevation[slot];
+            mStartAzimuth[slot] = mAzimuth[slot];
+            mTargetElevation[slot] = elevation;
+            mTargetAzimuth[slot] = azimuth;
+            mSeenTargets[slot] = mTargets;
+            mSatellitesMoving |= mStartElevation[slot] != elevation
+                    || mStartAzimuth[slot] != azimuth;
+        }
+
+        // Forget satellites that are no longer in view
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (mSeenTargets[slot] != mTargets && mSeenTargets[slot] != 0) {
+                mSlotByKey.remove(mKey[slot]);
+                mSeenTargets[slot] = 0;
+                mFreeSlots[mFreeSlotCount++] = slot;
+            }
+        }
+    }
+
+    /**
+     * Sets a new target orientation, which is animated to from the current orientation.  The
+     * first orientation is shown immediately.
+     *
+     * @param orientation orientation of the device, in degrees from north
+     * @param nowMillis   current time, from SystemClock.uptimeMillis()
+     */
+    public void setOrientation(double orientation, long nowMillis) {
+        if (!mHasOrientation) {
+            mHasOrientation = true;
+            mOrientation = orientation;
+        } else {
+            update(nowMillis);
+        }
+        mStartOrientation = mOrientation;
+        mTargetOrientation = orientation;
+        mOrientationStartMillis = nowMillis;
+    }
+
+    /**
+     * Removes all satellites, keeping the orientation
+     */
+    public void clearSatellites() {
+        mSlotByKey.clear();
+        mSlotCount = 0;
+        mFreeSlotCount = 0;
+        mHasSatelliteTargets = false;
+    }
+
+    /**
+     * Updates the displayed positions and orientation for the provided time
+     *
+     * @param nowMillis current time, from SystemClock.uptimeMillis()
+     * @return true if something is still animating and another frame should be drawn, false if
+     * all values have reached their targets
+     */
+    public boolean update(long nowMillis) {
+        boolean animating = false;
+
+        if (mHasSatelliteTargets) {
+            float f = fraction(nowMillis - mSatelliteStartMillis, mSatelliteDurationMillis);
+            for (int slot = 0; slot < mSlotCount; slot++) {
+                if (mSeenTargets[slot] == 0) {
+                    continue;
+                }
+                mElevation[slot] = mStartElevation[slot]
+                        + (mTargetElevation[slot] - mStartElevation[slot]) * f;
+                mAzimuth[slot] = (float) interpolateAngle(mStartAzimuth[slot],
+                        mTargetAzimuth[slot], f);
+            }
+            animating = mSatellitesMoving && f < 1.0f;
+        }
+
+        if (mHasOrientation) {
+            float f = fraction(nowMillis - mOrientationStartMillis, mOrientationDurationMillis);
+            mOrientation = interpolateAngle(mStartOrientation, mTargetOrientation, f);
+            animating |= mStartOrientation != mTargetOrientation && f < 1.0f;
+        }
+        return animating;
+    }
+
+    /**
+     * Returns the displayed elevation of the provided satellite, or its actual elevation if it
+     * isn't animated
+     *
+     * @return the displayed elevation of the provided satellite, in degrees
+     */
+    public float getElevationDegrees(SatelliteGroup satellite) {
+        int slot = mSlotByKey.get(satellite.getKey());
+        return slot == IntIntHashMap.NOT_FOUND ? satellite.getElevationDegrees() : mElevation[slot];
+    }
+
+    /**
+     * Returns the displayed azimuth of the provided satellite, or its actual azimuth if it isn't
+     * animated
+     *
+     * @return the displayed azimuth of the provided satellite, in degrees between 0 and 360
+     */
+    public float getAzimuthDegrees(SatelliteGroup satellite) {
+        int slot = mSlotByKey.get(satellite.getKey());
+        return slot == IntIntHashMap.NOT_FOUND ? satellite.getAzimuthDegrees() : mAzimuth[slot];
+    }
+
+    /**
+     * Returns the displayed orientation
+     *
+     * @param orientation orientation to return if no orientation has been set
+     * @return the displayed orientation, in degrees between 0 and 360
+     */
+    public double getOrientation(double orientation) {
+        return mHasOrientation ? mOrientation : orientation;
+    }
+
+    /**
+     * Interpolates between two angles the shortest way around the circle
+     *
+     * @param start  start angle, in degrees
+     * @param target target angle, in degrees
+     * @param f      fraction of the way from start to target, between 0 and 1
+     * @return the interpolated angle, in degrees between 0 and 360
+     */
+    static double interpolateAngle(double start, double target, float f) {
+        double delta = target - start;
+        // Wrap the difference into [-180, 180)
+        delta -= 360.0 * Math.floor((delta + 180.0) / 360.0);
+        double angle = start + delta * f;
+        angle -= 360.0 * Math.floor(angle / 360.0);
+        return angle;
+    }
+
+    private static float fraction(long elapsedMillis, long durationMillis) {
+        if (elapsedMillis >= durationMillis || durationMillis <= 0) {
+            return 1.0f;
+        }
+        return elapsedMillis <= 0 ? 0.0f : (float) elapsedMillis / durationMillis;
+    }
+
+    private static boolean hasPosition(float elevation, float azimuth) {
+        return elevation != 0.0f || azimuth != 0.0f;
+    }
+
+    private int obtainSlot(int key) {
+        int slot;
+        if (mFreeSlotCount > 0) {
+            slot = mFreeSlots[--mFreeSlotCount];
+        } else {
+            if (mSlotCount == mKey.length) {
+                grow(mSlotCount * 2);
+            }
+            slot = mSlotCount++;
+        }
+        mKey[slot] = key;
+        mSlotByKey.put(key, slot);
+        return slot;
+    }
+
+    private void grow(int capacity) {
+        mFreeSlots = Arrays.copyOf(mFreeSlots, capacity);
+        mKey = Arrays.copyOf(mKey, capacity);
+        mSeenTargets = Arrays.copyOf(mSeenTargets, capacity);
+        mStartElevation = Arrays.copyOf(mStartElevation, capacity);
+        mStartAzimuth = Arrays.copyOf(mStartAzimuth, capacity);
+        mTargetElevation = Arrays.copyOf(mTargetElevation, capacity);
+        mTargetAzimuth = Arrays.copyOf(mTargetAzimuth, capacity);
+        mElevation = Arrays.copyOf(mElevation, capacity);
+        mAzimuth = Arrays.copyOf(mAzimuth, capacity);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.view;
+
+import com.android.gpstest.model.SatelliteGroups;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of satellite positions on the sky plot, for finding the satellite under a touch.
+ * The grid is rebuilt while satellites are projected for each frame - reset() then add() for each
+ * satellite - and a lookup only searches the 3x3 cells around the touch, so it takes constant time
+ * no matter how many satellites are drawn.
+ *
+ * Cells are invalidated with a stamp instead of being cleared, so rebuilding costs O(satellites)
+ * and doesn't allocate once the arrays have grown.  This class is not thread-safe - it must be
+ * used by the thread that draws the sky plot.
+ */
+public class SkyPlotHitIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private float mCellSize = 1.0f;
+
+    private int mColumns;
+
+    // Stamp of the rebuild that last wrote each cell - cells with an older stamp are empty
+    private int[] mCellStamp = new int[0];
+
+    // Index of the first point in each cell, linked through mNext
+    private int[] mCellHead = new int[0];
+
+    private int mStamp;
+
+    private int mCount;
+
+    private int[] mKey = new int[INITIAL_CAPACITY];
+
+    private float[] mX = new float[INITIAL_CAPACITY];
+
+    private float[] mY = new float[INITIAL_CAPACITY];
+
+    private int[] mNext = new int[INITIAL_CAPACITY];
+
+    /**
+     * Removes all satellites, and sets up the grid for a new frame
+     *
+     * @param size     size of the (square) sky plot, in pixels
+     * @param cellSize size of a grid cell in pixels, which must be at least the touch radius
+     */
+    public void reset(int size, float cellSize) {
+        mCellSize = Math.max(1.0f, cellSize);
+        mColumns = Math.max(1, (int) Math.ceil(size / mCellSize));
+        int cells = mColumns * mColumns;
+        if (mCellHead.length < cells) {
+            mCellHead = new int[cells];
+            mCellStamp = new int[cells];
+            mStamp = 0;
+        }
+        mStamp++;
+        mCount = 0;
+    }
+
+    /**
+     * Adds a satellite at the provided position on the sky plot
+     *
+     * @param key key of the satellite, see SatelliteGroups.createKey()
+     */
+    public void add(int key, float x, float y) {
+        if (mCount == mKey.length) {
+            int capacity = mCount * 2;
+            mKey = Arrays.copyOf(mKey, capacity);
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mNext = Arrays.copyOf(mNext, capacity);
+        }
+        int cell = cellIndex(column(y), column(x));
+        if (mCellStamp[cell] != mStamp) {
+            mCellStamp[cell] = mStamp;
+            mCellHead[cell] = -1;
+        }
+        int point = mCount++;
+        mKey[point] = key;
+        mX[point] = x;
+        mY[point] = y;
+        mNext[point] = mCellHead[cell];
+        mCellHead[cell] = point;
+    }
+
+    /**
+     * Returns the satellite closest to the provided position, within the provided radius
+     *
+     * @param radius maximum distance from the position, in pixels, no larger than the cell size
+     * @return the key of the closest satellite, or SatelliteGroups.NO_KEY if there are no
+     * satellites within the radius
+     */
+    public int find(float x, float y, float radius) {
+        if (mColumns == 0) {
+            return SatelliteGroups.NO_KEY;
+        }
+        int key = SatelliteGroups.NO_KEY;
+        float best = radius * radius;
+        int row = column(y);
+        int column = column(x);
+        for (int r = Math.max(0, row - 1); r <= Math.min(mColumns - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(mColumns - 1, column + 1); c++) {
+                int cell = cellIndex(r, c);
+                if (mCellStamp[cell] != mStamp) {
+                    continue;
+                }
+                for (int point = mCellHead[cell]; point != -1; point = mNext[point]) {
+                    float dx = mX[point] - x;
+                    float dy = mY[point] - y;
+                    float distance = dx * dx + dy * dy;
+                    // Points are linked newest first, and satellites added later are drawn on
+                    // top, so they win ties within a cell
+                    if (distance < best) {
+                        best = distance;
+                        key = mKey[point];
+                    }
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Returns the number of satellites added since the last reset()
+     *
+     * @return the number of satellites added since the last reset()
+     */
+    public int size() {
+        return mCount;
+    }
+
+    private int column(float position) {
+        return Math.max(0, Math.min(mColumns - 1, (int) (position / mCellSize)));
+    }
+
+    private int cellIndex(int row, int column) {
+        return row * mColumns + column;
+    }
+}
@@ -0,0 +1,878 @@
+/*
+ * Copyright (C) 2008-2013 The Android Open Source Project,
+ * Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import com.android.gpstest.R;
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.SatelliteGroup;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteTrails;
+import com.android.gpstest.model.SkyHeatmap;
+import com.android.gpstest.util.ColorLookupTable;
+import com.android.gpstest.util.MathUtils;
+import com.android.gpstest.util.TrigTable;
+import com.android.gpstest.util.UIUtils;
+
+import java.util.Arrays;
+
+import androidx.core.content.ContextCompat;
+
+import static com.android.gpstest.view.GpsSkyView.MAX_VALUE_CN0;
+import static com.android.gpstest.view.GpsSkyView.MAX_VALUE_SNR;
+import static com.android.gpstest.view.GpsSkyView.MIN_VALUE_CN0;
+import static com.android.gpstest.view.GpsSkyView.MIN_VALUE_SNR;
+
+/**
+ * Draws the sky plot - the horizon, grid, north indicator and one glyph per satellite - onto a
+ * Canvas.  Shared by GpsSkyView, which draws on the UI thread, and GpsSkyTextureView, which draws
+ * on its own render thread.
+ *
+ * This class is not thread-safe - each instance must only be used by one thread at a time,
+ * except for getSatelliteColor(), which only reads immutable tables.
+ */
+public class SkyPlotRenderer {
+
+    private static final float PRN_TEXT_SCALE = 0.7f;
+
+    // PRN labels are cached so drawing doesn't allocate a String per satellite per frame
+    private static final int MAX_CACHED_PRN = 400;
+
+    private static final String[] PRN_LABELS = new String[MAX_CACHED_PRN + 1];
+
+    // Width and height of the heatmap image, which is scaled to the sky plot
+    private static final int HEATMAP_SIZE = 256;
+
+    private static final int HEATMAP_ALPHA = 140;
+
+    private final int SAT_RADIUS;
+
+    // Maximum distance from a satellite for a touch to select it
+    private final int HIT_RADIUS;
+
+    // Satellite colors and fill paints, precomputed over the SNR and C/N0 ranges
+    private ColorLookupTable mSnrColorTable;
+
+    private Paint[] mSnrPaints;
+
+    private ColorLookupTable mCn0ColorTable;
+
+    private Paint[] mCn0Paints;
+
+    private Paint mHorizonActiveFillPaint, mHorizonInactiveFillPaint, mHorizonStrokePaint,
+            mGridStrokePaint, mSatelliteFillPaint, mSatelliteStrokePaint, mSatelliteUsedStrokePaint,
+            mNorthPaint, mNorthFillPaint, mPrnIdPaint, mNotInViewPaint;
+
+    // Cached static background layer, see drawBackground()
+    private Bitmap mBackground;
+
+    private boolean mBackgroundStarted;
+
+    private Paint mBackgroundPaint;
+
+    // Satellite glyphs centered on (0, 0), built once and translated to each satellite
+    private Path mTrianglePath, mDiamondPath, mPentagonPath, mHexagonPath;
+
+    // North arrow pointing up, rotated with the canvas - rebuilt only when the size changes
+    private final Path mNorthPath = new Path();
+
+    private int mNorthPathSize;
+
+    // Satellite trails, or null if they aren't shown
+    private SatelliteTrails mTrails;
+
+    private Paint mTrailPaint;
+
+    // Path cached for each trail slot, with the slot version and point count it was built from
+    private Path[] mTrailPaths = new Path[0];
+
+    private int[] mTrailVersions = new int[0];
+
+    private long[] mTrailAddedCounts = new long[0];
+
+    private int mTrailPathSize;
+
+    // Signal strength heatmap drawn under the satellites, or null if it isn't shown
+    private SkyHeatmap mHeatmap;
+
+    private Paint mHeatmapPaint;
+
+    // Heatmap image with north up, updated one changed cell at a time
+    private Bitmap mHeatmapBitmap;
+
+    private int[] mHeatmapPixels;
+
+    // Pixels of each heatmap cell, as a cell's range mHeatmapCellStart[cell] to
+    // mHeatmapCellStart[cell + 1] in mHeatmapCellPixels
+    private int[] mHeatmapCellStart;
+
+    private int[] mHeatmapCellPixels;
+
+    private int[] mHeatmapChangedCells;
+
+    private float[] mHeatmapMeans;
+
+    // Generation and colors the heatmap image was built with
+    private int mHeatmapGeneration;
+
+    private boolean mHeatmapUseCn0Colors;
+
+    private boolean mHeatmapValid;
+
+    // Positions of the satellites drawn in the last frame, for finding the satellite under a touch
+    private final SkyPlotHitIndex mHitIndex = new SkyPlotHitIndex();
+
+    // Key of the selected satellite, or SatelliteGroups.NO_KEY if no satellite is selected
+    private int mSelectedKey = SatelliteGroups.NO_KEY;
+
+    private Paint mSelectionPaint, mSelectedTrailPaint;
+
+    // State of the frame being drawn, set by draw()
+    private double mOrientation;
+
+    private boolean mStarted;
+
+    private boolean mUseCn0Colors;
+
+    private SkyPlotAnimator mAnimator;
+
+    // Distance from the center of the plot per degree below zenith, for the current size
+    private float mRadiusPerDegree;
+
+    public SkyPlotRenderer(Context context) {
+        SAT_RADIUS = UIUtils.dpToPixels(context, 5);
+        HIT_RADIUS = UIUtils.dpToPixels(context, 24);
+
+        mHorizonActiveFillPaint = new Paint();
+        mHorizonActiveFillPaint.setColor(Color.WHITE);
+        mHorizonActiveFillPaint.setStyle(Paint.Style.FILL);
+        mHorizonActiveFillPaint.setAntiAlias(true);
+
+        mHorizonInactiveFillPaint = new Paint();
+        mHorizonInactiveFillPaint.setColor(Color.LTGRAY);
+        mHorizonInactiveFillPaint.setStyle(Paint.Style.FILL);
+        mHorizonInactiveFillPaint.setAntiAlias(true);
+
+        mHorizonStrokePaint = new Paint();
+        mHorizonStrokePaint.setColor(Color.BLACK);
+        mHorizonStrokePaint.setStyle(Paint.Style.STROKE);
+        mHorizonStrokePaint.setStrokeWidth(2.0f);
+        mHorizonStrokePaint.setAntiAlias(true);
+
+        mGridStrokePaint = new Paint();
+        mGridStrokePaint.setColor(ContextCompat.getColor(context, R.color.gray));
+        mGridStrokePaint.setStyle(Paint.Style.STROKE);
+        mGridStrokePaint.setAntiAlias(true);
+
+        mSatelliteFillPaint = new Paint();
+        mSatelliteFillPaint.setColor(ContextCompat.getColor(context, R.color.yellow));
+        mSatelliteFillPaint.setStyle(Paint.Style.FILL);
+        mSatelliteFillPaint.setAntiAlias(true);
+
+        mSatelliteStrokePaint = new Paint();
+        mSatelliteStrokePaint.setColor(Color.BLACK);
+        mSatelliteStrokePaint.setStyle(Paint.Style.STROKE);
+        mSatelliteStrokePaint.setStrokeWidth(2.0f);
+        mSatelliteStrokePaint.setAntiAlias(true);
+
+        mSatelliteUsedStrokePaint = new Paint();
+        mSatelliteUsedStrokePaint.setColor(Color.BLACK);
+        mSatelliteUsedStrokePaint.setStyle(Paint.Style.STROKE);
+        mSatelliteUsedStrokePaint.setStrokeWidth(8.0f);
+        mSatelliteUsedStrokePaint.setAntiAlias(true);
+
+        int[] colors = new int[]{ContextCompat.getColor(context, R.color.gray),
+                ContextCompat.getColor(context, R.color.red),
+                ContextCompat.getColor(context, R.color.yellow),
+                ContextCompat.getColor(context, R.color.green)};
+
+        mSnrColorTable = new ColorLookupTable(
+                new float[]{MIN_VALUE_SNR, 10.0f, 20.0f, MAX_VALUE_SNR}, colors,
+                ColorLookupTable.DEFAULT_SIZE);
+        mSnrPaints = createSatellitePaints(mSnrColorTable);
+
+        mCn0ColorTable = new ColorLookupTable(
+                new float[]{MIN_VALUE_CN0, 21.67f, 33.3f, MAX_VALUE_CN0}, colors,
+                ColorLookupTable.DEFAULT_SIZE);
+        mCn0Paints = createSatellitePaints(mCn0ColorTable);
+
+        // Filter the background bitmap so grid lines stay smooth when it's rotated
+        mBackgroundPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mBackgroundPaint.setAntiAlias(true);
+
+        mNorthPaint = new Paint();
+        mNorthPaint.setColor(Color.BLACK);
+        mNorthPaint.setStyle(Paint.Style.STROKE);
+        mNorthPaint.setStrokeWidth(4.0f);
+        mNorthPaint.setAntiAlias(true);
+
+        mNorthFillPaint = new Paint();
+        mNorthFillPaint.setColor(Color.GRAY);
+        mNorthFillPaint.setStyle(Paint.Style.FILL);
+        mNorthFillPaint.setStrokeWidth(4.0f);
+        mNorthFillPaint.setAntiAlias(true);
+
+        mPrnIdPaint = new Paint();
+        mPrnIdPaint.setColor(Color.BLACK);
+        mPrnIdPaint.setStyle(Paint.Style.STROKE);
+        mPrnIdPaint
+                .setTextSize(UIUtils.dpToPixels(context, SAT_RADIUS * PRN_TEXT_SCALE));
+        mPrnIdPaint.setAntiAlias(true);
+
+        mNotInViewPaint = new Paint();
+        mNotInViewPaint.setColor(ContextCompat.getColor(context, R.color.not_in_view_sat));
+        mNotInViewPaint.setStyle(Paint.Style.FILL);
+        mNotInViewPaint.setStrokeWidth(4.0f);
+        mNotInViewPaint.setAntiAlias(true);
+
+        mTrailPaint = new Paint();
+        mTrailPaint.setColor(ContextCompat.getColor(context, R.color.gray));
+        mTrailPaint.setAlpha(160);
+        mTrailPaint.setStyle(Paint.Style.STROKE);
+        mTrailPaint.setStrokeWidth(UIUtils.dpToPixels(context, 2));
+        mTrailPaint.setStrokeJoin(Paint.Join.ROUND);
+        mTrailPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTrailPaint.setAntiAlias(true);
+
+        mSelectionPaint = new Paint();
+        mSelectionPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        mSelectionPaint.setStyle(Paint.Style.STROKE);
+        mSelectionPaint.setStrokeWidth(UIUtils.dpToPixels(context, 3));
+        mSelectionPaint.setAntiAlias(true);
+
+        mSelectedTrailPaint = new Paint(mTrailPaint);
+        mSelectedTrailPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        mSelectedTrailPaint.setStrokeWidth(UIUtils.dpToPixels(context, 3));
+
+        // Translucent, so the grid and horizon show through
+        mHeatmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mHeatmapPaint.setAlpha(HEATMAP_ALPHA);
+
+        createGlyphs();
+    }
+
+    /**
+     * Sets the signal strength heatmap to draw under the satellites
+     *
+     * @param heatmap heatmap to draw, or null to not draw a heatmap
+     */
+    public void setHeatmap(SkyHeatmap heatmap) {
+        if (heatmap != mHeatmap) {
+            mHeatmap = heatmap;
+            mHeatmapValid = false;
+        }
+    }
+
+    /**
+     * Sets the trails to draw behind the satellites
+     *
+     * @param trails trails to draw, or null to not draw trails.  Trails must be updated on the
+     *               thread that calls draw().
+     */
+    public void setTrails(SatelliteTrails trails) {
+        mTrails = trails;
+        // Slots may refer to different satellites now
+        mTrailPathSize = 0;
+    }
+
+    /**
+     * Highlights the provided satellite and its trail
+     *
+     * @param key key of the satellite to highlight (see SatelliteGroups.createKey()), or
+     *            SatelliteGroups.NO_KEY to not highlight a satellite
+     */
+    public void setSelectedSatellite(int key) {
+        mSelectedKey = key;
+    }
+
+    /**
+     * Returns the satellite drawn closest to the provided position in the last frame
+     *
+     * @param x position on the sky plot, in pixels
+     * @param y position on the sky plot, in pixels
+     * @return the key of the closest satellite within the touch radius, or SatelliteGroups.NO_KEY
+     * if there isn't one
+     */
+    public int findSatellite(float x, float y) {
+        return mHitIndex.find(x, y, HIT_RADIUS);
+    }
+
+    /**
+     * Draws the sky plot
+     *
+     * @param c            canvas to draw on
+     * @param s            size of the (square) sky plot, in pixels
+     * @param orientation  orientation of the device, in degrees from north
+     * @param started      true if GNSS is started, false if it isn't
+     * @param satellites   satellites to draw
+     * @param useCn0Colors true to color satellites using the C/N0 ranges, false to use the SNR ranges
+     * @param animator     animator that interpolates satellite positions and the orientation, which
+     *                     must have been updated for this frame, or null to draw the actual values
+     */
+    public void draw(Canvas c, int s, double orientation, boolean started,
+            SatelliteGroups satellites, boolean useCn0Colors, SkyPlotAnimator animator) {
+        mOrientation = animator != null ? animator.getOrientation(orientation) : orientation;
+        mStarted = started;
+        mUseCn0Colors = useCn0Colors;
+        mAnimator = animator;
+        mRadiusPerDegree = elevationToRadius(s, 0.0f) / 90.0f;
+
+        drawBackground(c, s);
+
+        if (mHeatmap != null) {
+            drawHeatmap(c, s);
+        }
+
+        if (mTrails != null) {
+            drawTrails(c, s);
+        }
+
+        drawNorthIndicator(c, s);
+
+        mHitIndex.reset(s, HIT_RADIUS);
+        int numSats = satellites.size();
+        for (int i = 0; i < numSats; i++) {
+            SatelliteGroup satellite = satellites.get(i);
+            if (satellite.getElevationDegrees() != 0.0f || satellite.getAzimuthDegrees() != 0.0f) {
+                drawSatellite(c, s, satellite);
+            }
+        }
+    }
+
+    /**
+     * Releases the cached background bitmap - it's rebuilt on the next draw
+     */
+    public void release() {
+        if (mBackground != null) {
+            mBackground.recycle();
+            mBackground = null;
+        }
+        if (mHeatmapBitmap != null) {
+            mHeatmapBitmap.recycle();
+            mHeatmapBitmap = null;
+            mHeatmapValid = false;
+        }
+    }
+
+    /**
+     * Draws the static background layer - the horizon, azimuth grid lines and elevation rings -
+     * rotated for the current orientation.  The layer doesn't change between frames, so it's
+     * drawn once into a bitmap and only rebuilt when the size or started state changes.
+     */
+    private void drawBackground(Canvas c, int s) {
+        if (s <= 0) {
+            return;
+        }
+        if (mBackground == null || mBackground.getWidth() != s) {
+            if (mBackground != null) {
+                mBackground.recycle();
+            }
+            mBackground = Bitmap.createBitmap(s, s, Bitmap.Config.ARGB_8888);
+            drawHorizon(new Canvas(mBackground), s);
+            mBackgroundStarted = mStarted;
+        } else if (mBackgroundStarted != mStarted) {
+            mBackground.eraseColor(Color.TRANSPARENT);
+            drawHorizon(new Canvas(mBackground), s);
+            mBackgroundStarted = mStarted;
+        }
+
+        float radius = s / 2;
+        c.save();
+        c.rotate((float) -mOrientation, radius, radius);
+        c.drawBitmap(mBackground, 0, 0, mBackgroundPaint);
+        c.restore();
+    }
+
+    /**
+     * Draws the horizon, grid lines and elevation rings for an orientation of 0 (north up)
+     */
+    private void drawHorizon(Canvas c, int s) {
+        float radius = s / 2;
+
+        c.drawCircle(radius, radius, radius,
+                mStarted ? mHorizonActiveFillPaint : mHorizonInactiveFillPaint);
+        c.drawLine(0, radius, 2 * radius, radius, mGridStrokePaint);
+        c.drawLine(radius, 0, radius, 2 * radius, mGridStrokePaint);
+        c.drawCircle(radius, radius, elevationToRadius(s, 60.0f), mGridStrokePaint);
+        c.drawCircle(radius, radius, elevationToRadius(s, 30.0f), mGridStrokePaint);
+        c.drawCircle(radius, radius, elevationToRadius(s, 0.0f), mGridStrokePaint);
+        c.drawCircle(radius, radius, radius, mHorizonStrokePaint);
+    }
+
+    /**
+     * Draws the signal strength heatmap inside the horizon, rotated for the current orientation.
+     * The heatmap image has a fixed size and is scaled to the sky plot, and only the pixels of
+     * cells that changed since the last frame are recolored.
+     */
+    private void drawHeatmap(Canvas c, int s) {
+        if (mHeatmapBitmap == null) {
+            createHeatmapRaster();
+            mHeatmapBitmap = Bitmap.createBitmap(HEATMAP_SIZE, HEATMAP_SIZE,
+                    Bitmap.Config.ARGB_8888);
+            mHeatmapValid = false;
+        }
+        int generation = mHeatmap.getGeneration();
+        if (!mHeatmapValid || generation != mHeatmapGeneration
+                || mHeatmapUseCn0Colors != mUseCn0Colors) {
+            // Recolor every cell
+            mHeatmap.getMeans(mHeatmapMeans);
+            Arrays.fill(mHeatmapPixels, Color.TRANSPARENT);
+            for (int cell = 0; cell < SkyHeatmap.CELL_COUNT; cell++) {
+                fillHeatmapCell(cell, mHeatmapMeans[cell]);
+            }
+            mHeatmapBitmap.setPixels(mHeatmapPixels, 0, HEATMAP_SIZE, 0, 0, HEATMAP_SIZE,
+                    HEATMAP_SIZE);
+            mHeatmapGeneration = generation;
+            mHeatmapUseCn0Colors = mUseCn0Colors;
+            mHeatmapValid = true;
+        } else {
+            int changed = mHeatmap.drainChangedCells(mHeatmapChangedCells, mHeatmapMeans);
+            if (changed > 0) {
+                // Only copy the rows that contain changed pixels to the bitmap
+                int top = HEATMAP_SIZE;
+                int bottom = -1;
+                for (int i = 0; i < changed; i++) {
+                    int cell = mHeatmapChangedCells[i];
+                    fillHeatmapCell(cell, mHeatmapMeans[i]);
+                    for (int j = mHeatmapCellStart[cell]; j < mHeatmapCellStart[cell + 1]; j++) {
+                        int y = mHeatmapCellPixels[j] / HEATMAP_SIZE;
+                        top = Math.min(top, y);
+                        bottom = Math.max(bottom, y);
+                    }
+                }
+                if (bottom >= top) {
+                    mHeatmapBitmap.setPixels(mHeatmapPixels, top * HEATMAP_SIZE, HEATMAP_SIZE,
+                            0, top, HEATMAP_SIZE, bottom - top + 1);
+                }
+            }
+        }
+
+        float radius = s / 2;
+        float horizon = elevationToRadius(s, 0.0f);
+        c.save();
+        c.rotate((float) -mOrientation, radius, radius);
+        c.translate(radius - horizon, radius - horizon);
+        c.scale(2 * horizon / HEATMAP_SIZE, 2 * horizon / HEATMAP_SIZE);
+        c.drawBitmap(mHeatmapBitmap, 0, 0, mHeatmapPaint);
+        c.restore();
+    }
+
+    private void fillHeatmapCell(int cell, float mean) {
+        int color = mean > 0.0f ? getColorTable(mUseCn0Colors).getColor(mean) : Color.TRANSPARENT;
+        for (int j = mHeatmapCellStart[cell]; j < mHeatmapCellStart[cell + 1]; j++) {
+            mHeatmapPixels[mHeatmapCellPixels[j]] = color;
+        }
+    }
+
+    /**
+     * Maps each pixel of the heatmap image inside the horizon to the heatmap cell at its azimuth
+     * and elevation, grouped by cell so a cell can be recolored without searching the image
+     */
+    private void createHeatmapRaster() {
+        int pixelCount = HEATMAP_SIZE * HEATMAP_SIZE;
+        int[] pixelCell = new int[pixelCount];
+        mHeatmapCellStart = new int[SkyHeatmap.CELL_COUNT + 1];
+        float center = HEATMAP_SIZE / 2.0f;
+        for (int p = 0; p < pixelCount; p++) {
+            float dx = (p % HEATMAP_SIZE) + 0.5f - center;
+            float dy = (p / HEATMAP_SIZE) + 0.5f - center;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy) / center;
+            if (distance > 1.0f) {
+                pixelCell[p] = -1;
+                continue;
+            }
+            float elevation = 90.0f * (1.0f - distance);
+            // Clockwise from north (up)
+            float azimuth = (float) Math.toDegrees(Math.atan2(dx, -dy));
+            int cell = SkyHeatmap.getCell(elevation, azimuth);
+            pixelCell[p] = cell;
+            mHeatmapCellStart[cell + 1]++;
+        }
+        for (int cell = 0; cell < SkyHeatmap.CELL_COUNT; cell++) {
+            mHeatmapCellStart[cell + 1] += mHeatmapCellStart[cell];
+        }
+        mHeatmapCellPixels = new int[mHeatmapCellStart[SkyHeatmap.CELL_COUNT]];
+        int[] next = Arrays.copyOf(mHeatmapCellStart, SkyHeatmap.CELL_COUNT);
+        for (int p = 0; p < pixelCount; p++) {
+            if (pixelCell[p] >= 0) {
+                mHeatmapCellPixels[next[pixelCell[p]]++] = p;
+            }
+        }
+        mHeatmapPixels = new int[pixelCount];
+        mHeatmapChangedCells = new int[SkyHeatmap.CELL_COUNT];
+        mHeatmapMeans = new float[SkyHeatmap.CELL_COUNT];
+    }
+
+    /**
+     * Draws the trail of each satellite, rotated for the current orientation.  Trail paths are
+     * cached, and only new points are appended unless points were removed from the trail.
+     */
+    private void drawTrails(Canvas c, int s) {
+        int slotCount = mTrails.getSlotCount();
+        if (mTrailPaths.length < slotCount) {
+            int capacity = Math.max(slotCount, mTrailPaths.length * 2);
+            mTrailPaths = Arrays.copyOf(mTrailPaths, capacity);
+            mTrailVersions = Arrays.copyOf(mTrailVersions, capacity);
+            mTrailAddedCounts = Arrays.copyOf(mTrailAddedCounts, capacity);
+        }
+        boolean rebuildAll = mTrailPathSize != s;
+        mTrailPathSize = s;
+
+        float radius = s / 2;
+        float scale = elevationToRadius(s, 0.0f);
+        c.save();
+        c.rotate((float) -mOrientation, radius, radius);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int count = mTrails.getPointCount(slot);
+            if (count < 2) {
+                continue;
+            }
+            Path path = mTrailPaths[slot];
+            if (path == null) {
+                path = new Path();
+                mTrailPaths[slot] = path;
+            }
+            long added = mTrails.getAddedCount(slot);
+            int first;
+            if (rebuildAll || path.isEmpty() || mTrailVersions[slot] != mTrails.getVersion(slot)) {
+                path.rewind();
+                path.moveTo(radius + mTrails.getX(slot, 0) * scale,
+                        radius + mTrails.getY(slot, 0) * scale);
+                first = 1;
+            } else {
+                // Only append points added since the path was built
+                first = (int) Math.max(1, count - (added - mTrailAddedCounts[slot]));
+            }
+            for (int i = first; i < count; i++) {
+                path.lineTo(radius + mTrails.getX(slot, i) * scale,
+                        radius + mTrails.getY(slot, i) * scale);
+            }
+            mTrailVersions[slot] = mTrails.getVersion(slot);
+            mTrailAddedCounts[slot] = added;
+            c.drawPath(path, mTrails.getKey(slot) == mSelectedKey ? mSelectedTrailPaint
+                    : mTrailPaint);
+        }
+        c.restore();
+    }
+
+    private void drawNorthIndicator(Canvas c, int s) {
+        float radius = s / 2;
+        if (mNorthPathSize != s) {
+            createNorthPath(s);
+        }
+
+        // Rotate arrow around center point
+        c.save();
+        c.rotate((float) -mOrientation, radius, radius);
+        c.drawPath(mNorthPath, mNorthPaint);
+        c.drawPath(mNorthPath, mNorthFillPaint);
+        c.restore();
+    }
+
+    private void createNorthPath(int s) {
+        float radius = s / 2;
+        final float ARROW_HEIGHT_SCALE = 0.05f;
+        final float ARROW_WIDTH_SCALE = 0.1f;
+
+        float x1, y1;  // Tip of arrow
+        x1 = radius;
+        y1 = elevationToRadius(s, 90.0f);
+
+        float x2, y2;
+        x2 = x1 + radius * ARROW_HEIGHT_SCALE;
+        y2 = y1 + radius * ARROW_WIDTH_SCALE;
+
+        float x3, y3;
+        x3 = x1 - radius * ARROW_HEIGHT_SCALE;
+        y3 = y1 + radius * ARROW_WIDTH_SCALE;
+
+        mNorthPath.reset();
+        mNorthPath.setFillType(Path.FillType.EVEN_ODD);
+        mNorthPath.moveTo(x1, y1);
+        mNorthPath.lineTo(x2, y2);
+        mNorthPath.lineTo(x3, y3);
+        mNorthPath.lineTo(x1, y1);
+        mNorthPath.close();
+        mNorthPathSize = s;
+    }
+
+    /**
+     * Draws a single glyph for all signals from the provided satellite - the fill color uses the
+     * strongest band, and the satellite is outlined as used if any of its bands were used in the fix
+     */
+    private void drawSatellite(Canvas c, int s, SatelliteGroup satellite) {
+        float radius, angle;
+        float x, y;
+        // Place PRN text slightly below drawn satellite
+        final double PRN_X_SCALE = 1.4;
+        final double PRN_Y_SCALE = 3.8;
+
+        float elev, azim;
+        if (mAnimator != null) {
+            elev = mAnimator.getElevationDegrees(satellite);
+            azim = mAnimator.getAzimuthDegrees(satellite);
+        } else {
+            elev = satellite.getElevationDegrees();
+            azim = satellite.getAzimuthDegrees();
+        }
+        float snrCn0 = satellite.getMaxCn0DbHz();
+        boolean usedInFix = satellite.getUsedInFix();
+
+        Paint fillPaint;
+        if (snrCn0 == 0.0f) {
+            // Satellite can't be seen
+            fillPaint = mNotInViewPaint;
+        } else {
+            // Calculate fill color based on signal strength
+            fillPaint = getSatellitePaint(snrCn0);
+        }
+
+        Paint strokePaint;
+        if (usedInFix) {
+            strokePaint = mSatelliteUsedStrokePaint;
+        } else {
+            strokePaint = mSatelliteStrokePaint;
+        }
+
+        // Same as elevationToRadius(), without the division
+        radius = (90.0f - elev) * mRadiusPerDegree;
+        angle = (float) (azim - mOrientation);
+
+        x = (s / 2) + (radius * TrigTable.sin(angle));
+        y = (s / 2) - (radius * TrigTable.cos(angle));
+        mHitIndex.add(satellite.getKey(), x, y);
+
+        if (satellite.getKey() == mSelectedKey) {
+            c.drawCircle(x, y, SAT_RADIUS * 2.2f, mSelectionPaint);
+        }
+
+        // Change shape based on satellite operator
+        switch (satellite.getGnssType()) {
+            case NAVSTAR:
+                c.drawCircle(x, y, SAT_RADIUS, fillPaint);
+                c.drawCircle(x, y, SAT_RADIUS, strokePaint);
+                break;
+            case GLONASS:
+                c.drawRect(x - SAT_RADIUS, y - SAT_RADIUS, x + SAT_RADIUS, y + SAT_RADIUS,
+                        fillPaint);
+                c.drawRect(x - SAT_RADIUS, y - SAT_RADIUS, x + SAT_RADIUS, y + SAT_RADIUS,
+                        strokePaint);
+                break;
+            case QZSS:
+                drawGlyph(c, mHexagonPath, x, y, fillPaint, strokePaint);
+                break;
+            case BEIDOU:
+                drawGlyph(c, mPentagonPath, x, y, fillPaint, strokePaint);
+                break;
+            case GALILEO:
+                drawGlyph(c, mTrianglePath, x, y, fillPaint, strokePaint);
+//            case GAGAN:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case ANIK:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case GALAXY_15:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case INMARSAT_3F2:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case INMARSAT_3F5:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case INMARSAT_4F3:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case SES_5:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+//            case ASTRA_5B:
+//                // SBAS
+//                drawGlyph(c, mDiamondPath, x, y, fillPaint, strokePaint);
+//                break;
+        }
+
+        c.drawText(getPrnLabel(satellite.getSvid()), x - (int) (SAT_RADIUS * PRN_X_SCALE),
+                y + (int) (SAT_RADIUS * PRN_Y_SCALE), mPrnIdPaint);
+    }
+
+    private void drawGlyph(Canvas c, Path glyph, float x, float y, Paint fillPaint,
+            Paint strokePaint) {
+        c.save();
+        c.translate(x, y);
+        c.drawPath(glyph, fillPaint);
+        c.drawPath(glyph, strokePaint);
+        c.restore();
+    }
+
+    private static String getPrnLabel(int prn) {
+        if (prn < 0 || prn > MAX_CACHED_PRN) {
+            return String.valueOf(prn);
+        }
+        String label = PRN_LABELS[prn];
+        if (label == null) {
+            label = String.valueOf(prn);
+            PRN_LABELS[prn] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Builds the satellite glyphs centered on (0, 0) - called once SAT_RADIUS is known
+     */
+    private void createGlyphs() {
+        mTrianglePath = new Path();
+        mTrianglePath.setFillType(Path.FillType.EVEN_ODD);
+        // Top
+        mTrianglePath.moveTo(0, -SAT_RADIUS);
+        // Lower left
+        mTrianglePath.lineTo(-SAT_RADIUS, SAT_RADIUS);
+        // Lower right
+        mTrianglePath.lineTo(SAT_RADIUS, SAT_RADIUS);
+        mTrianglePath.lineTo(0, -SAT_RADIUS);
+        mTrianglePath.close();
+
+        mDiamondPath = new Path();
+        mDiamondPath.moveTo(0, -SAT_RADIUS);
+        mDiamondPath.lineTo(-SAT_RADIUS * 1.5f, 0);
+        mDiamondPath.lineTo(0, SAT_RADIUS);
+        mDiamondPath.lineTo(SAT_RADIUS * 1.5f, 0);
+        mDiamondPath.close();
+
+        mPentagonPath = new Path();
+        mPentagonPath.moveTo(0, -SAT_RADIUS);
+        mPentagonPath.lineTo(-SAT_RADIUS, -(SAT_RADIUS / 3));
+        mPentagonPath.lineTo(-2 * (SAT_RADIUS / 3), SAT_RADIUS);
+        mPentagonPath.lineTo(2 * (SAT_RADIUS / 3), SAT_RADIUS);
+        mPentagonPath.lineTo(SAT_RADIUS, -(SAT_RADIUS / 3));
+        mPentagonPath.close();
+
+        final float MULTIPLIER = 0.6f;
+        final float SIDE_MULTIPLIER = 1.4f;
+        mHexagonPath = new Path();
+        // Top-left
+        mHexagonPath.moveTo(-SAT_RADIUS * MULTIPLIER, -SAT_RADIUS);
+        // Left
+        mHexagonPath.lineTo(-SAT_RADIUS * SIDE_MULTIPLIER, 0);
+        // Bottom
+        mHexagonPath.lineTo(-SAT_RADIUS * MULTIPLIER, SAT_RADIUS);
+        mHexagonPath.lineTo(SAT_RADIUS * MULTIPLIER, SAT_RADIUS);
+        // Right
+        mHexagonPath.lineTo(SAT_RADIUS * SIDE_MULTIPLIER, 0);
+        // Top-right
+        mHexagonPath.lineTo(SAT_RADIUS * MULTIPLIER, -SAT_RADIUS);
+        mHexagonPath.close();
+    }
+
+    /**
+     * Creates one fill paint for each entry of the provided color table
+     */
+    private Paint[] createSatellitePaints(ColorLookupTable table) {
+        Paint[] paints = new Paint[table.size()];
+        for (int i = 0; i < paints.length; i++) {
+            paints[i] = new Paint(mSatelliteFillPaint);
+            paints[i].setColor(table.getColorAt(i));
+        }
+        return paints;
+    }
+
+    private ColorLookupTable getColorTable(boolean useCn0Colors) {
+        // Use C/N0 ranges/colors for both C/N0 and SNR on Android 7.0 and higher (see #76), and
+        // legacy SNR ranges/colors for Android versions less than Android 7.0 or if user selects
+        // legacy API (see #76)
+        return useCn0Colors ? mCn0ColorTable : mSnrColorTable;
+    }
+
+    /**
+     * Returns the precomputed fill paint for a satellite with the provided SNR or C/N0
+     */
+    private Paint getSatellitePaint(float snrCn0) {
+        if (mUseCn0Colors) {
+            return mCn0Paints[mCn0ColorTable.getIndex(snrCn0)];
+        } else {
+            return mSnrPaints[mSnrColorTable.getIndex(snrCn0)];
+        }
+    }
+
+    /**
+     * Gets the paint color for a satellite based on provided SNR or C/N0 and the thresholds defined in this class
+     *
+     * @param snrCn0       the SNR to use (if using legacy GpsStatus) or the C/N0 to use (if using is
+     *                     GnssStatus) to generate the satellite color based on signal quality
+     * @param useCn0Colors true to use the C/N0 ranges, false to use the SNR ranges
+     * @return the paint color for a satellite based on provided SNR or C/N0
+     */
+    public int getSatelliteColor(float snrCn0, boolean useCn0Colors) {
+        return getColorTable(useCn0Colors).getColor(snrCn0);
+    }
+
+    /**
+     * Returns true if satellites should be colored using the C/N0 ranges, or false if they should
+     * use the legacy SNR ranges
+     *
+     * @param useLegacyGnssApi true if signals came from the legacy GpsStatus API
+     * @param isSnrBad         true if bad SNR data has been detected (see #153)
+     * @return true if satellites should be colored using the C/N0 ranges
+     */
+    public static boolean useCn0Colors(boolean useLegacyGnssApi, boolean isSnrBad) {
+        return !useLegacyGnssApi || isSnrBad;
+    }
+
+    /**
+     * Check if the SNR values are bad (see #153) - once bad, SNR stays bad until signals come from
+     * GnssStatus again
+     *
+     * @param epoch    latest epoch
+     * @param isSnrBad true if bad SNR data was already detected
+     * @return true if bad SNR data has been detected
+     */
+    public static boolean isSnrBad(GnssEpoch epoch, boolean isSnrBad) {
+        if (!epoch.isLegacy()) {
+            return false;
+        }
+        // If either of the avg SNR values are greater than the max SNR value, mark the data as suspect
+        float inViewAvg = epoch.getCn0InViewAvg();
+        float usedAvg = epoch.getCn0UsedAvg();
+        return isSnrBad || (MathUtils.isValidFloat(inViewAvg) && inViewAvg > MAX_VALUE_SNR) ||
+                (MathUtils.isValidFloat(usedAvg) && usedAvg > MAX_VALUE_SNR);
+    }
+
+    /**
+     * Returns the distance from the center of the sky plot for the provided elevation
+     *
+     * @param s    size of the (square) sky plot, in pixels
+     * @param elev elevation, in degrees
+     * @return the distance from the center of the sky plot, in pixels
+     */
+    public float elevationToRadius(int s, float elev) {
+        return ((s / 2) - SAT_RADIUS) * (1.0f - (elev / 90.0f));
+    }
+}
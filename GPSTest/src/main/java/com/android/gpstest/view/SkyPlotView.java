@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest.view;
+
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.SkyHeatmap;
+
+/**
+ * A view that shows satellite positions on a circle representing the sky - implemented by
+ * GpsSkyView, which draws on the UI thread, and GpsSkyTextureView, which draws on its own render
+ * thread.  All methods must be called from the UI thread.
+ */
+public interface SkyPlotView {
+
+    /**
+     * Listener for taps and long presses on the sky plot
+     */
+    interface OnSatelliteSelectedListener {
+
+        /**
+         * Called on the UI thread when the sky plot is tapped or long-pressed
+         *
+         * @param key       key of the satellite under the touch (see SatelliteGroups.createKey()),
+         *                  or SatelliteGroups.NO_KEY if the touch wasn't on a satellite
+         * @param longPress true if the sky plot was long-pressed, false if it was tapped
+         */
+        void onSatelliteSelected(int key, boolean longPress);
+    }
+
+    void setStarted();
+
+    void setStopped();
+
+    /**
+     * Shows the satellites in the provided epoch, which is retained until the next epoch is set
+     * or the view is stopped
+     *
+     * @param epoch epoch to show
+     */
+    void setGnssEpoch(GnssEpoch epoch);
+
+    void onOrientationChanged(double orientation, double tilt);
+
+    /**
+     * Shows the trail of each satellite over the provided time
+     *
+     * @param minutes how long trails are shown for, in minutes, or 0 to hide trails
+     */
+    void setTrailDurationMinutes(int minutes);
+
+    /**
+     * Accumulates the signals of each new epoch into the provided heatmap, and draws it under the
+     * satellites
+     *
+     * @param heatmap heatmap to update and draw, or null to not show a heatmap
+     */
+    void setHeatmap(SkyHeatmap heatmap);
+
+    /**
+     * Highlights the provided satellite and its trail
+     *
+     * @param key key of the satellite to highlight (see SatelliteGroups.createKey()), or
+     *            SatelliteGroups.NO_KEY to not highlight a satellite
+     */
+    void setSelectedSatellite(int key);
+
+    void setOnSatelliteSelectedListener(OnSatelliteSelectedListener listener);
+
+    /**
+     * Gets the paint color for a satellite based on provided SNR or C/N0
+     *
+     * @param snrCn0 the SNR to use (if using legacy GpsStatus) or the C/N0 to use (if using is
+     *               GnssStatus) to generate the satellite color based on signal quality
+     * @return the paint color for a satellite based on provided SNR or C/N0
+     */
+    int getSatelliteColor(float snrCn0);
+
+    /**
+     * Returns the average signal strength of satellites that are in view of the device (i.e.,
+     * value is not 0), or 0 if the average can't be calculated
+     *
+     * @return the average signal strength of satellites that are in view of the device
+     */
+    float getSnrCn0InViewAvg();
+
+    /**
+     * Returns the average signal strength of satellites that are being used to calculate a
+     * location fix, or 0 if the average can't be calculated
+     *
+     * @return the average signal strength of satellites used to calculate a location fix
+     */
+    float getSnrCn0UsedAvg();
+
+    /**
+     * Returns true if the app is monitoring the legacy GpsStatus.Listener, or false if the app is monitoring the GnssStatus.Callback
+     * @return true if the app is monitoring the legacy GpsStatus.Listener, or false if the app is monitoring the GnssStatus.Callback
+     */
+    boolean isUsingLegacyGpsApi();
+
+    /**
+     * Returns true if bad SNR data has been detected (avgs exceeded max SNR threshold), or false if no SNR is observed (i.e., C/N0 data is observed) or SNR data seems ok
+     * @return true if bad SNR data has been detected (avgs exceeded max SNR threshold), or false if no SNR is observed (i.e., C/N0 data is observed) or SNR data seems ok
+     */
+    boolean isSnrBad();
+}
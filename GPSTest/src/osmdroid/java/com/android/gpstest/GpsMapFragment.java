@@ -19,32 +19,47 @@ package com.android.gpstest;
 
 import android.content.SharedPreferences;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
-import android.location.GpsStatus;
 import android.location.Location;
-import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
-import androidx.annotation.RequiresApi;
+import android.util.Log;
 import androidx.fragment.app.Fragment;
 import androidx.core.content.ContextCompat;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.TrackRecorder;
+import com.android.gpstest.util.AccuracyCircle;
+import com.android.gpstest.util.TilePack;
+import com.android.gpstest.util.UIUtils;
+
 import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.Polygon;
+import org.osmdroid.views.overlay.Polyline;
 import org.osmdroid.views.overlay.gestures.RotationGestureOverlay;
 
 import java.util.ArrayList;
+import java.util.Locale;
 
 public class GpsMapFragment extends Fragment implements GpsTestListener {
 
     public final static String TAG = "GpsMapFragment";
 
+    // Width of the track line, in dp
+    public static final float TRACK_WIDTH_DP = 4.0f;
+
+    // When no vertices were added, the end of the track follows the newest fix at most this often
+    public static final long TRACK_TAIL_UPDATE_THRESHOLD = 1000; // milliseconds
+
     private MapView mMap;
 
     RotationGestureOverlay mRotationGestureOverlay;
@@ -53,6 +68,35 @@ public class GpsMapFragment extends Fragment implements GpsTestListener {
 
     Polygon mHorAccPolygon;
 
+    // Single line for the whole track
+    Polyline mTrackLine;
+
+    // Overlays that have been added to the current map, so the overlay list isn't searched per fix
+    private boolean mMarkerAdded, mHorAccPolygonAdded, mTrackLineAdded;
+
+    // Reused for every fix - the points are updated in place and passed to the polygon again
+    private final AccuracyCircle mHorAccCircle = new AccuracyCircle();
+
+    private final ArrayList<GeoPoint> mHorAccPoints = new ArrayList<>(AccuracyCircle.VERTEX_COUNT);
+
+    private final GeoPoint mPosition = new GeoPoint(0.0, 0.0);
+
+    // Points of the track line.  The Polyline keeps references to these GeoPoints instead of
+    // copying them, so a point is only moved in place when setPoints() is called in the same
+    // update.  The last point follows the newest fix, and gets a new GeoPoint each fix.
+    private final ArrayList<GeoPoint> mTrackPoints = new ArrayList<>();
+
+    private int mTrackPointCount;
+
+    private int mTrackVertexCount;
+
+    private int mTrackVersion;
+
+    private long mLastTrackUpdateTime;
+
+    // Last fix, formatted into the marker title only when its info window is shown
+    private double mLatitude, mLongitude, mAltitude;
+
     private boolean mGotFix;
 
     // User preferences for map rotation based on sensors
@@ -65,16 +109,50 @@ public class GpsMapFragment extends Fragment implements GpsTestListener {
         mMap.setMultiTouchControls(true);
         mMap.setBuiltInZoomControls(false);
         mMap.getController().setZoom(3.0f);
+        useTilePack(inflater);
 
         mRotationGestureOverlay = new RotationGestureOverlay(mMap);
         mRotationGestureOverlay.setEnabled(true);
         mMap.getOverlays().add(mRotationGestureOverlay);
 
+        // Overlays are added to the new map on the next fix
+        mMarker = null;
+        mHorAccPolygon = null;
+        mTrackLine = null;
+        mMarkerAdded = false;
+        mHorAccPolygonAdded = false;
+        mTrackLineAdded = false;
+
         GpsTestActivity.getInstance().addListener(this);
 
         return mMap;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Releases the tile providers, including the tile pack
+        mMap.onDetach();
+    }
+
+    /**
+     * Shows tiles from the newest tile pack in the app's "tiles" external files directory, if
+     * there is one, instead of downloading tiles
+     */
+    private void useTilePack(LayoutInflater inflater) {
+        TilePack pack = TilePackTileProvider.openNewestPack(
+                inflater.getContext().getExternalFilesDir("tiles"));
+        if (pack == null) {
+            return;
+        }
+        TilePackTileProvider provider = new TilePackTileProvider(pack);
+        mMap.setTileProvider(new MapTileProviderArray(provider.getTileSource(),
+                new SimpleRegisterReceiver(inflater.getContext()),
+                new MapTileModuleProviderBase[]{provider}));
+        mMap.setUseDataConnection(false);
+        Log.d(TAG, "Using tile pack " + pack.getFile());
+    }
+
     @Override
     public void onPause() {
         super.onPause();
@@ -101,45 +179,159 @@ public class GpsMapFragment extends Fragment implements GpsTestListener {
     }
 
     public void onLocationChanged(Location loc) {
-        GeoPoint startPoint = new GeoPoint(loc.getLatitude(), loc.getLongitude());
+        mLatitude = loc.getLatitude();
+        mLongitude = loc.getLongitude();
+        mAltitude = loc.getAltitude();
+        mPosition.setCoords(mLatitude, mLongitude);
         if (!mGotFix) {
-            mMap.getController().setCenter(startPoint);
+            mMap.getController().setCenter(mPosition);
             mMap.getController().setZoom(20.0f);
         }
 
+        // Added first, so the track is drawn below the accuracy circle and marker
+        updateTrack();
+
         if (loc.hasAccuracy()) {
             // Add horizontal accuracy uncertainty as polygon
             if (mHorAccPolygon == null) {
                 mHorAccPolygon = new Polygon();
             }
-            ArrayList<GeoPoint> circle = Polygon.pointsAsCircle(startPoint, loc.getAccuracy());
-            if (circle != null) {
-                mHorAccPolygon.setPoints(circle);
-            }
+            updateHorAccPoints(loc.getAccuracy());
+            mHorAccPolygon.setPoints(mHorAccPoints);
 
-            if (!mMap.getOverlays().contains(mHorAccPolygon)) {
+            if (!mHorAccPolygonAdded) {
                 mHorAccPolygon.setStrokeWidth(0.5f);
                 mHorAccPolygon.setFillColor(ContextCompat.getColor(Application.get(), R.color.horizontal_accuracy));
                 mMap.getOverlays().add(mHorAccPolygon);
+                mHorAccPolygonAdded = true;
             }
         }
 
         if (mMarker == null) {
             mMarker = new Marker(mMap);
+            mMarker.setOnMarkerClickListener(new Marker.OnMarkerClickListener() {
+                @Override
+                public boolean onMarkerClick(Marker marker, MapView mapView) {
+                    if (marker.isInfoWindowShown()) {
+                        marker.closeInfoWindow();
+                    } else {
+                        updateMarkerTitle();
+                        marker.showInfoWindow();
+                    }
+                    return true;
+                }
+            });
         }
 
-        mMarker.setPosition(startPoint);
-        mMarker.setTitle(String.format("%.6f\u00B0, %.6f\u00B0, %.1f m", loc.getLatitude(), loc.getLongitude(), loc.getAltitude()));
+        mMarker.setPosition(mPosition);
+        if (mMarker.isInfoWindowShown()) {
+            // Refresh the open info window with the new fix
+            updateMarkerTitle();
+            mMarker.showInfoWindow();
+        }
 
-        if (!mMap.getOverlays().contains(mMarker)) {
+        if (!mMarkerAdded) {
             // This is the first fix when this fragment is active
             mMarker.setIcon(ContextCompat.getDrawable(Application.get(), R.drawable.ic_marker));
             mMarker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
             mMap.getOverlays().add(mMarker);
+            mMarkerAdded = true;
         }
         mGotFix = true;
     }
 
+    /**
+     * Updates the track line from the track recorded by the activity.  New vertices are appended
+     * to the points, and the points are only rebuilt when the recorder simplified the track
+     * again.
+     */
+    private void updateTrack() {
+        TrackRecorder track = GpsTestActivity.getInstance().getTrack();
+        if (!track.hasLast()) {
+            return;
+        }
+        boolean changed = false;
+        if (mTrackLine == null) {
+            mTrackLine = new Polyline();
+            mTrackLine.setColor(ContextCompat.getColor(Application.get(), R.color.track));
+            mTrackLine.setWidth(UIUtils.dpToPixels(Application.get(), TRACK_WIDTH_DP));
+            mTrackPointCount = 0;
+            mTrackVertexCount = 0;
+            changed = true;
+        } else if (mTrackVersion != track.getVersion()) {
+            mTrackPointCount = 0;
+            mTrackVertexCount = 0;
+            changed = true;
+        } else {
+            // Overwrite the point that followed the previous fix
+            mTrackPointCount = mTrackVertexCount;
+        }
+        mTrackVersion = track.getVersion();
+        for (int i = mTrackVertexCount; i < track.getVertexCount(); i++) {
+            setTrackPoint(track.getLatitude(i), track.getLongitude(i));
+            changed = true;
+        }
+        mTrackVertexCount = track.getVertexCount();
+        // The line may not be updated for the tail alone, and would draw a GeoPoint moved in
+        // place with the projection and bounds it cached for the old position
+        GeoPoint tail = new GeoPoint(track.getLastLatitude(), track.getLastLongitude());
+        if (mTrackPointCount < mTrackPoints.size()) {
+            mTrackPoints.set(mTrackPointCount, tail);
+        } else {
+            mTrackPoints.add(tail);
+        }
+        mTrackPointCount++;
+        while (mTrackPoints.size() > mTrackPointCount) {
+            mTrackPoints.remove(mTrackPoints.size() - 1);
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (changed || now - mLastTrackUpdateTime > TRACK_TAIL_UPDATE_THRESHOLD) {
+            mTrackLine.setPoints(mTrackPoints);
+            mLastTrackUpdateTime = now;
+        }
+        if (!mTrackLineAdded) {
+            mMap.getOverlays().add(mTrackLine);
+            mTrackLineAdded = true;
+        }
+    }
+
+    /**
+     * Sets the next point of the track line, reusing its GeoPoint.  Only used when setPoints() is
+     * called afterwards, as the line shares the GeoPoints.
+     */
+    private void setTrackPoint(double latitude, double longitude) {
+        if (mTrackPointCount < mTrackPoints.size()) {
+            mTrackPoints.get(mTrackPointCount).setCoords(latitude, longitude);
+        } else {
+            mTrackPoints.add(new GeoPoint(latitude, longitude));
+        }
+        mTrackPointCount++;
+    }
+
+    /**
+     * Moves the points of the horizontal accuracy circle to the last fix, reusing the GeoPoints
+     *
+     * @param accuracy horizontal accuracy of the fix, in meters
+     */
+    private void updateHorAccPoints(float accuracy) {
+        mHorAccCircle.update(mLatitude, mLongitude, accuracy);
+        for (int i = 0; i < AccuracyCircle.VERTEX_COUNT; i++) {
+            if (i < mHorAccPoints.size()) {
+                mHorAccPoints.get(i).setCoords(mHorAccCircle.getLatitude(i),
+                        mHorAccCircle.getLongitude(i));
+            } else {
+                mHorAccPoints.add(new GeoPoint(mHorAccCircle.getLatitude(i),
+                        mHorAccCircle.getLongitude(i)));
+            }
+        }
+    }
+
+    private void updateMarkerTitle() {
+        mMarker.setTitle(String.format(Locale.getDefault(), "%.6f\u00B0, %.6f\u00B0, %.1f m",
+                mLatitude, mLongitude, mAltitude));
+    }
+
     public void onStatusChanged(String provider, int status, Bundle extras) {
     }
 
@@ -149,18 +341,13 @@ public class GpsMapFragment extends Fragment implements GpsTestListener {
     public void onProviderDisabled(String provider) {
     }
 
-    @Deprecated
-    public void onGpsStatusChanged(int event, GpsStatus status) {
-    }
-
     @Override
     public void onGnssFirstFix(int ttffMillis) {
 
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status) {
+    public void onGnssEpoch(GnssEpoch epoch) {
     }
 
     @Override
@@ -180,6 +367,14 @@ public class GpsMapFragment extends Fragment implements GpsTestListener {
     public void onNmeaMessage(String message, long timestamp) {
     }
 
+    @Override
+    public void onSatelliteSelected(int key) {
+    }
+
+    @Override
+    public void onGnssAnomaly(int anomaly, double value) {
+    }
+
     @Override
     public void onOrientationChanged(double orientation, double tilt) {
         // For performance reasons, only proceed if this fragment is visible
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.gpstest.util.TilePack;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Serves map tiles from a TilePack, without a network connection.  Tiles are decoded straight from
+ * the memory-mapped pack, and decoded tiles are kept in an LRU cache sized to the memory available
+ * to the app, so panning back over an area doesn't decode its tiles again.
+ *
+ * Tiles are drawn with a plain Drawable instead of a BitmapDrawable, because osmdroid recycles the
+ * bitmaps of BitmapDrawables evicted from its own cache, and the bitmaps are still in our cache.
+ */
+public class TilePackTileProvider extends MapTileModuleProviderBase {
+
+    public final static String TAG = "TilePackTileProvider";
+
+    /**
+     * Extension of tile pack files in the app's "tiles" external files directory
+     */
+    public static final String FILE_EXTENSION = ".gtp";
+
+    private final TilePack mPack;
+
+    private final LruCache<Long, Bitmap> mBitmapCache;
+
+    private final ITileSource mTileSource;
+
+    public TilePackTileProvider(TilePack pack) {
+        super(Configuration.getInstance().getTileFileSystemThreads(),
+                Configuration.getInstance().getTileFileSystemMaxQueueSize());
+        mPack = pack;
+        mTileSource = new XYTileSource(pack.getFile().getName(), pack.getMinZoom(),
+                pack.getMaxZoom(), pack.getTileSize(), FILE_EXTENSION, new String[0]);
+        // Use an eighth of the memory available to the app for decoded tiles
+        int cacheSize = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        mBitmapCache = new LruCache<Long, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Opens the most recently modified tile pack in the provided directory
+     *
+     * @param dir directory that contains tile packs, or null if external storage isn't available
+     * @return the opened tile pack, or null if there isn't a readable tile pack in the directory
+     */
+    public static TilePack openNewestPack(File dir) {
+        if (dir == null) {
+            return null;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        File newest = null;
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_EXTENSION)
+                    && (newest == null || file.lastModified() > newest.lastModified())) {
+                newest = file;
+            }
+        }
+        if (newest == null) {
+            return null;
+        }
+        try {
+            return TilePack.open(newest);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening tile pack " + newest + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a tile source that describes the tiles in the pack
+     *
+     * @return a tile source that describes the tiles in the pack
+     */
+    public ITileSource getTileSource() {
+        return mTileSource;
+    }
+
+    @Override
+    public boolean getUsesDataConnection() {
+        return false;
+    }
+
+    @Override
+    protected String getName() {
+        return "Tile pack provider";
+    }
+
+    @Override
+    protected String getThreadGroupName() {
+        return "tilepack";
+    }
+
+    @Override
+    public TileLoader getTileLoader() {
+        return new PackTileLoader();
+    }
+
+    @Override
+    public int getMinimumZoomLevel() {
+        return mPack.getMinZoom();
+    }
+
+    @Override
+    public int getMaximumZoomLevel() {
+        return mPack.getMaxZoom();
+    }
+
+    @Override
+    public void setTileSource(ITileSource tileSource) {
+        // The pack has a single set of tiles
+    }
+
+    @Override
+    public void detach() {
+        super.detach();
+        mBitmapCache.evictAll();
+        try {
+            mPack.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing tile pack: " + e);
+        }
+    }
+
+    private class PackTileLoader extends MapTileModuleProviderBase.TileLoader {
+
+        @Override
+        public Drawable loadTile(long mapTileIndex) {
+            Bitmap bitmap = mBitmapCache.get(mapTileIndex);
+            if (bitmap == null) {
+                InputStream in = mPack.openTile(MapTileIndex.getZoom(mapTileIndex),
+                        MapTileIndex.getX(mapTileIndex), MapTileIndex.getY(mapTileIndex));
+                if (in == null) {
+                    return null;
+                }
+                bitmap = BitmapFactory.decodeStream(in);
+                if (bitmap == null) {
+                    Log.w(TAG, "Couldn't decode tile " + MapTileIndex.toString(mapTileIndex));
+                    return null;
+                }
+                mBitmapCache.put(mapTileIndex, bitmap);
+            }
+            return new TileDrawable(bitmap);
+        }
+    }
+
+    /**
+     * Draws a cached tile bitmap, scaled to the bounds of the drawable
+     */
+    private static class TileDrawable extends Drawable {
+
+        private final Bitmap mBitmap;
+
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        TileDrawable(Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            mPaint.setAlpha(alpha);
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            mPaint.setColorFilter(colorFilter);
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return mBitmap.getWidth();
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return mBitmap.getHeight();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.util.AccuracyCircle;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class AccuracyCircleTest {
+
+    // Meters per degree of latitude
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    /**
+     * Test that vertices are at the radius from the center, clockwise from north
+     */
+    @Test
+    public void testUpdate() {
+        AccuracyCircle circle = new AccuracyCircle();
+        circle.update(0.0, 10.0, 1000.0);
+        double radiusDegrees = 1000.0 / METERS_PER_DEGREE;
+
+        // North
+        assertEquals(radiusDegrees, circle.getLatitude(0), 1.0E-6);
+        assertEquals(10.0, circle.getLongitude(0), 1.0E-9);
+        // East
+        int east = AccuracyCircle.VERTEX_COUNT / 4;
+        assertEquals(0.0, circle.getLatitude(east), 1.0E-9);
+        assertEquals(10.0 + radiusDegrees, circle.getLongitude(east), 1.0E-6);
+
+        // Longitude degrees get wider towards the poles
+        circle.update(60.0, -80.0, 1000.0);
+        assertEquals(60.0 + radiusDegrees, circle.getLatitude(0), 1.0E-6);
+        assertEquals(-80.0 + 2 * radiusDegrees, circle.getLongitude(east), 1.0E-6);
+        int south = AccuracyCircle.VERTEX_COUNT / 2;
+        assertEquals(60.0 - radiusDegrees, circle.getLatitude(south), 1.0E-6);
+    }
+}
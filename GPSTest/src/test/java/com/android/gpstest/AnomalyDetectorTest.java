@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.anomaly.AnomalyDetector;
+import com.android.gpstest.pvt.Pseudoranges;
+
+import org.junit.Test;
+
+import static com.android.gpstest.anomaly.AnomalyDetector.ANOMALY_AGC_CHANGE;
+import static com.android.gpstest.anomaly.AnomalyDetector.ANOMALY_CLOCK_JUMP;
+import static com.android.gpstest.anomaly.AnomalyDetector.ANOMALY_CN0_DROP;
+import static com.android.gpstest.anomaly.AnomalyDetector.ANOMALY_DOPPLER;
+import static com.android.gpstest.anomaly.AnomalyDetector.ANOMALY_NONE;
+import static com.android.gpstest.anomaly.AnomalyDetector.ANOMALY_UNIFORM_CN0;
+import static junit.framework.Assert.assertEquals;
+
+public class AnomalyDetectorTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static final int SATELLITES = 8;
+
+    /**
+     * Test that a drop of C/N0 on all satellites is raised once, and clears when C/N0 recovers
+     */
+    @Test
+    public void testCn0Drop() {
+        AnomalyDetector detector = new AnomalyDetector();
+        for (int epoch = 0; epoch < 20; epoch++) {
+            assertEquals(ANOMALY_NONE, status(detector, 0.0f, 3.0f));
+        }
+        assertEquals(ANOMALY_CN0_DROP, status(detector, -10.0f, 3.0f));
+        assertEquals(10.0, detector.getValue(ANOMALY_CN0_DROP), 0.5);
+        assertEquals(ANOMALY_NONE, status(detector, -12.0f, 3.0f));
+        assertEquals(ANOMALY_CN0_DROP, detector.getActive());
+        assertEquals(ANOMALY_NONE, status(detector, 0.0f, 3.0f));
+        assertEquals(ANOMALY_NONE, detector.getActive());
+
+        // A drop on only some satellites isn't jamming
+        detector.beginStatus();
+        for (int svid = 1; svid <= SATELLITES; svid++) {
+            detector.addCn0(svid, svid <= 2 ? 5.0f : 30.0f + svid * 3.0f);
+        }
+        assertEquals(ANOMALY_NONE, detector.endStatus());
+    }
+
+    /**
+     * Test that many satellites with the same high C/N0 are raised
+     */
+    @Test
+    public void testUniformCn0() {
+        AnomalyDetector detector = new AnomalyDetector();
+        assertEquals(ANOMALY_NONE, status(detector, 0.0f, 3.0f));
+        assertEquals(ANOMALY_UNIFORM_CN0, status(detector, 18.0f, 0.1f));
+        assertEquals(ANOMALY_NONE, status(detector, 18.0f, 0.1f));
+        assertEquals(ANOMALY_NONE, status(detector, 0.0f, 3.0f));
+        assertEquals(ANOMALY_NONE, detector.getActive());
+    }
+
+    /**
+     * Test AGC changes, inconsistent Doppler and clock jumps from measurements
+     */
+    @Test
+    public void testMeasurements() {
+        AnomalyDetector detector = new AnomalyDetector();
+        int epoch = 0;
+        for (; epoch < 15; epoch++) {
+            assertEquals(ANOMALY_NONE, measurements(detector, epoch, 0.0, 0.0, 0.0));
+        }
+        assertEquals(ANOMALY_AGC_CHANGE, measurements(detector, epoch++, -8.0, 0.0, 0.0));
+        assertEquals(-8.0, detector.getValue(ANOMALY_AGC_CHANGE), 0.5);
+        assertEquals(ANOMALY_NONE, measurements(detector, epoch++, 0.0, 0.0, 0.0));
+
+        assertEquals(ANOMALY_DOPPLER, measurements(detector, epoch++, 0.0, 50.0, 0.0));
+        assertEquals(4.0, detector.getValue(ANOMALY_DOPPLER), 0.0);
+        assertEquals(ANOMALY_NONE, measurements(detector, epoch++, 0.0, 50.0, 0.0));
+        assertEquals(ANOMALY_NONE, detector.getActive());
+
+        assertEquals(ANOMALY_CLOCK_JUMP, measurements(detector, epoch++, 0.0, 50.0, 5000.0));
+        assertEquals(5000.0, detector.getValue(ANOMALY_CLOCK_JUMP), 1.0E-3);
+        assertEquals(ANOMALY_NONE, measurements(detector, epoch++, 0.0, 50.0, 5000.0));
+        assertEquals(ANOMALY_NONE, detector.getActive());
+    }
+
+    /**
+     * Adds a GnssStatus epoch of satellites whose C/N0 is spread around 40 dB-Hz
+     *
+     * @param offset added to the C/N0 of all satellites
+     * @param spread difference between the C/N0 of consecutive satellites
+     * @return the raised anomalies
+     */
+    private static int status(AnomalyDetector detector, float offset, float spread) {
+        detector.beginStatus();
+        for (int svid = 1; svid <= SATELLITES; svid++) {
+            detector.addCn0(svid, 40.0f + offset + (svid - SATELLITES / 2) * spread);
+        }
+        return detector.endStatus();
+    }
+
+    /**
+     * Adds a GnssMeasurementsEvent of 8 satellites, whose clock drifts 100 ns/s
+     *
+     * @param agcOffset   added to the AGC level of all signals
+     * @param rateOffset  added to the pseudorange rate of half of the signals
+     * @param clockOffset added to the clock bias
+     * @return the raised anomalies
+     */
+    private static int measurements(AnomalyDetector detector, int epoch, double agcOffset,
+            double rateOffset, double clockOffset) {
+        int raised = detector.beginMeasurements(epoch * SECOND, 0, true,
+                -1200000000000000000L + 100L * epoch, clockOffset, true, 100.0);
+        for (int svid = 1; svid <= SATELLITES; svid++) {
+            double rate = -500.0 + svid * 100.0 + (svid % 2 == 0 ? rateOffset : 0.0);
+            detector.addMeasurement(Pseudoranges.CONSTELLATION_GPS, svid, 1575.42E6, rate, true,
+                    30.0 + (epoch % 2) * 0.5 + agcOffset);
+        }
+        return raised | detector.endMeasurements();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.util.ColorLookupTable;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ColorLookupTableTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int GREEN = 0xFF00FF00;
+    private static final int BLUE = 0xFF0000FF;
+
+    /**
+     * Test that colors are interpolated between stops and clamped outside of them
+     */
+    @Test
+    public void testGetColor() {
+        ColorLookupTable table = new ColorLookupTable(new float[]{10.0f, 20.0f, 30.0f},
+                new int[]{RED, GREEN, BLUE}, 21);
+        assertEquals(21, table.size());
+
+        // Clamped
+        assertEquals(RED, table.getColor(0.0f));
+        assertEquals(RED, table.getColor(Float.NaN));
+        assertEquals(BLUE, table.getColor(100.0f));
+
+        // Stops
+        assertEquals(RED, table.getColor(10.0f));
+        assertEquals(GREEN, table.getColor(20.0f));
+        assertEquals(BLUE, table.getColor(30.0f));
+
+        // Halfway between stops
+        assertEquals(0xFF7F7F00, table.getColor(15.0f));
+        assertEquals(0xFF007F7F, table.getColor(25.0f));
+
+        // Values are rounded to the nearest entry
+        assertEquals(10, table.getIndex(20.4f));
+        assertEquals(11, table.getIndex(20.6f));
+    }
+}
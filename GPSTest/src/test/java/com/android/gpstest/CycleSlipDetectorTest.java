@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.pvt.CycleSlipDetector;
+import com.android.gpstest.pvt.Pseudoranges;
+
+import org.junit.Test;
+
+import static com.android.gpstest.pvt.CycleSlipDetector.ADR_STATE_CYCLE_SLIP;
+import static com.android.gpstest.pvt.CycleSlipDetector.ADR_STATE_RESET;
+import static com.android.gpstest.pvt.CycleSlipDetector.ADR_STATE_VALID;
+import static com.android.gpstest.pvt.CycleSlipDetector.SLIP_DOPPLER;
+import static com.android.gpstest.pvt.CycleSlipDetector.SLIP_GEOMETRY_FREE;
+import static com.android.gpstest.pvt.CycleSlipDetector.SLIP_NONE;
+import static com.android.gpstest.pvt.CycleSlipDetector.SLIP_REPORTED;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class CycleSlipDetectorTest {
+
+    private static final double L1 = 1575.42E6;
+
+    private static final double L5 = 1176.45E6;
+
+    private static final long SECOND = 1000000000L;
+
+    // Pseudorange rate of the test satellite, in meters per second
+    private static final double RATE = -250.0;
+
+    /**
+     * Test that continuous signals have no slips, and that their arcs are measured
+     */
+    @Test
+    public void testContinuous() {
+        CycleSlipDetector detector = new CycleSlipDetector();
+        for (int t = 0; t < 10; t++) {
+            // A reset at the start of tracking isn't a slip
+            int state = t == 0 ? ADR_STATE_VALID | ADR_STATE_RESET : ADR_STATE_VALID;
+            assertEquals(SLIP_NONE, add(detector, t, L1, state, RATE * t, 0.01));
+            assertEquals(SLIP_NONE, add(detector, t, L5, state, RATE * t + 0.001 * t, 0.01));
+        }
+        assertEquals(2, detector.getSignalCount());
+        assertEquals(L1, detector.getCarrierFrequencyHz(0), 0.0);
+        assertEquals(1, detector.getSvid(1));
+        assertEquals(Pseudoranges.CONSTELLATION_GPS, detector.getConstellationType(1));
+        assertEquals(10, detector.getValidEpochCount(0));
+        assertEquals(0, detector.getSlipCount(0));
+        assertEquals(0, detector.getSlipCount(1));
+        assertEquals(9.0, detector.getArcSeconds(0), 1.0E-9);
+        assertEquals(9.0, detector.getLongestArcSeconds(1), 1.0E-9);
+        assertTrue(detector.isContinuous(0, 9 * SECOND));
+    }
+
+    /**
+     * Test slips reported by the device and found by the Doppler test
+     */
+    @Test
+    public void testReportedAndDopplerSlips() {
+        CycleSlipDetector detector = new CycleSlipDetector();
+        for (int t = 0; t < 5; t++) {
+            add(detector, t, L1, ADR_STATE_VALID, RATE * t, 0.01);
+        }
+        assertEquals(SLIP_REPORTED,
+                add(detector, 5, L1, ADR_STATE_VALID | ADR_STATE_CYCLE_SLIP, RATE * 5, 0.01));
+        assertEquals(0.0, detector.getArcSeconds(0), 0.0);
+        assertEquals(4.0, detector.getLongestArcSeconds(0), 1.0E-9);
+
+        // One L1 cycle is about 19 cm
+        assertEquals(SLIP_NONE, add(detector, 6, L1, ADR_STATE_VALID, RATE * 6, 0.01));
+        assertEquals(SLIP_DOPPLER, add(detector, 7, L1, ADR_STATE_VALID, RATE * 7 + 0.19, 0.01));
+        assertEquals(SLIP_NONE, add(detector, 8, L1, ADR_STATE_VALID, RATE * 8 + 0.19, 0.01));
+        assertEquals(1, detector.getReportedSlipCount(0));
+        assertEquals(1, detector.getDopplerSlipCount(0));
+        assertEquals(2, detector.getSlipCount(0));
+
+        // An invalid ADR ends the arc without a slip, and so does a gap in tracking
+        assertEquals(SLIP_NONE, add(detector, 9, L1, 0, 0.0, 0.01));
+        assertFalse(detector.isContinuous(0, 9 * SECOND));
+        assertEquals(SLIP_NONE, add(detector, 10, L1, ADR_STATE_VALID, 1000.0, 0.01));
+        assertEquals(SLIP_NONE, add(detector, 20, L1, ADR_STATE_VALID, 5000.0, 0.01));
+        assertEquals(0.0, detector.getArcSeconds(0), 0.0);
+        assertEquals(2, detector.getSlipCount(0));
+        assertEquals(12, detector.getEpochCount(0));
+        assertEquals(11, detector.getValidEpochCount(0));
+    }
+
+    /**
+     * Test a slip too small for the noisy Doppler test that the geometry-free test finds
+     */
+    @Test
+    public void testGeometryFreeSlip() {
+        CycleSlipDetector detector = new CycleSlipDetector();
+        for (int t = 0; t < 5; t++) {
+            assertEquals(SLIP_NONE, add(detector, t, L1, ADR_STATE_VALID, RATE * t, 1.0));
+            assertEquals(SLIP_NONE, add(detector, t, L5, ADR_STATE_VALID, RATE * t, 1.0));
+        }
+        // Both signals are flagged, since the combination can't tell which one slipped
+        assertEquals(SLIP_NONE, add(detector, 5, L1, ADR_STATE_VALID, RATE * 5 + 0.5, 1.0));
+        assertEquals(SLIP_GEOMETRY_FREE, add(detector, 5, L5, ADR_STATE_VALID, RATE * 5, 1.0));
+        assertEquals(1, detector.getGeometryFreeSlipCount(0));
+        assertEquals(1, detector.getGeometryFreeSlipCount(1));
+        assertEquals(0, detector.getDopplerSlipCount(0));
+        assertEquals(SLIP_NONE, add(detector, 6, L1, ADR_STATE_VALID, RATE * 6 + 0.5, 1.0));
+        assertEquals(SLIP_NONE, add(detector, 6, L5, ADR_STATE_VALID, RATE * 6, 1.0));
+        assertEquals(1.0, detector.getArcSeconds(0), 1.0E-9);
+
+        detector.clear();
+        assertEquals(0, detector.getSignalCount());
+    }
+
+    /**
+     * Adds a signal of the test satellite, whose L1 and L5 signals have the same rate
+     */
+    private static int add(CycleSlipDetector detector, int seconds, double carrierFrequencyHz,
+            int state, double adr, double rateUncertainty) {
+        return detector.add(seconds * SECOND, Pseudoranges.CONSTELLATION_GPS, 1,
+                carrierFrequencyHz, state, adr, 0.002, RATE, rateUncertainty);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.util.DeclinationCache;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class DeclinationCacheTest {
+
+    // October 15, 2018 UTC
+    private static final long TIME = 1539561600000L;
+
+    private static final long DAY = 86400000L;
+
+    /**
+     * Test that locations and times in the same cell and month have the same key
+     */
+    @Test
+    public void testKey() {
+        int key = DeclinationCache.getKey(28.0512, -82.4138, TIME);
+        assertEquals(key, DeclinationCache.getKey(28.0512, -82.4138, TIME + DAY));
+        assertEquals(key, DeclinationCache.getKey(28.07, -82.42, TIME));
+        assertFalse(key == DeclinationCache.getKey(28.0512, -82.5138, TIME));
+        assertFalse(key == DeclinationCache.getKey(28.2512, -82.4138, TIME));
+        assertFalse(key == DeclinationCache.getKey(28.0512, -82.4138, TIME + 40 * DAY));
+
+        // Longitudes wrap, and latitudes are clamped
+        assertEquals(DeclinationCache.getKey(0, 180.05, TIME),
+                DeclinationCache.getKey(0, -179.95, TIME));
+        assertEquals(DeclinationCache.getKey(95, 0, TIME), DeclinationCache.getKey(90, 0, TIME));
+        assertTrue(DeclinationCache.getKey(-90, -180, 0) >= 0);
+        assertTrue(DeclinationCache.getKey(90, 179.99, -DAY) >= 0);
+    }
+
+    /**
+     * Test that the least recently used declination is replaced when the cache is full
+     */
+    @Test
+    public void testLeastRecentlyUsed() {
+        DeclinationCache cache = new DeclinationCache(2);
+        assertTrue(Float.isNaN(cache.get(1)));
+        cache.put(1, 1.0f);
+        cache.put(2, 2.0f);
+        assertEquals(2, cache.size());
+        assertEquals(1.0f, cache.get(1), 0.0f);
+
+        // 2 is the least recently used
+        cache.put(3, 3.0f);
+        assertEquals(2, cache.size());
+        assertTrue(Float.isNaN(cache.get(2)));
+        assertEquals(1.0f, cache.get(1), 0.0f);
+        assertEquals(3.0f, cache.get(3), 0.0f);
+
+        // Replacing a value doesn't evict anything
+        cache.put(3, -3.0f);
+        assertEquals(-3.0f, cache.get(3), 0.0f);
+        assertEquals(1.0f, cache.get(1), 0.0f);
+
+        cache.put(4, 4.0f);
+        assertTrue(Float.isNaN(cache.get(3)));
+        assertEquals(4.0f, cache.get(4), 0.0f);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(Float.isNaN(cache.get(1)));
+
+        try {
+            new DeclinationCache(0);
+            fail("Should have thrown an IllegalArgumentException for a zero capacity");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.pvt.DopCalculator;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class DopCalculatorTest {
+
+    private static final int GPS = 0;
+
+    private static final int GALILEO = 2;
+
+    /**
+     * Test DOP of one satellite overhead and three evenly spaced on the horizon, which can be
+     * worked out by hand
+     */
+    @Test
+    public void testCompute() {
+        DopCalculator calculator = new DopCalculator();
+        calculator.begin();
+        assertTrue(calculator.add(GPS, 1, 90.0f, 0.0f));
+        assertTrue(calculator.add(GPS, 2, 0.0f, 0.0f));
+        assertTrue(calculator.add(GPS, 3, 0.0f, 120.0f));
+        assertTrue(calculator.add(GPS, 4, 0.0f, 240.0f));
+        // Another signal from the same satellite
+        assertFalse(calculator.add(GPS, 4, 0.0f, 240.0f));
+        assertEquals(4, calculator.getCount());
+
+        DilutionOfPrecision dop = new DilutionOfPrecision();
+        assertTrue(Double.isNaN(dop.getTimeDop()));
+        assertTrue(calculator.compute(DopCalculator.ALL_GROUPS, dop));
+        assertEquals(Math.sqrt(8.0 / 3.0), dop.getPositionDop(), 1.0E-6);
+        assertEquals(Math.sqrt(4.0 / 3.0), dop.getHorizontalDop(), 1.0E-6);
+        assertEquals(Math.sqrt(4.0 / 3.0), dop.getVerticalDop(), 1.0E-6);
+        assertEquals(Math.sqrt(1.0 / 3.0), dop.getTimeDop(), 1.0E-6);
+    }
+
+    /**
+     * Test DOP of single constellations and of all but one constellation
+     */
+    @Test
+    public void testGroups() {
+        DopCalculator calculator = new DopCalculator();
+        calculator.begin();
+        calculator.add(GPS, 1, 80.0f, 10.0f);
+        calculator.add(GPS, 2, 30.0f, 100.0f);
+        calculator.add(GPS, 3, 25.0f, 200.0f);
+        calculator.add(GPS, 4, 40.0f, 300.0f);
+        calculator.add(GALILEO, 1, 60.0f, 150.0f);
+        calculator.add(GALILEO, 2, 15.0f, 250.0f);
+        // Same svid as a GPS satellite, but a different constellation
+        calculator.add(GALILEO, 4, 20.0f, 50.0f);
+        assertEquals(7, calculator.getCount());
+
+        DilutionOfPrecision all = new DilutionOfPrecision();
+        assertTrue(calculator.compute(DopCalculator.ALL_GROUPS, all));
+        DilutionOfPrecision gps = new DilutionOfPrecision();
+        assertTrue(calculator.compute(DopCalculator.getGroupMask(GPS), gps));
+        // Adding satellites never makes the geometry worse
+        assertTrue(all.getPositionDop() < gps.getPositionDop());
+        assertTrue(all.getTimeDop() < gps.getTimeDop());
+
+        // Excluding Galileo is the same as only GPS
+        DilutionOfPrecision withoutGalileo = new DilutionOfPrecision();
+        assertTrue(calculator.compute(DopCalculator.ALL_GROUPS
+                & ~DopCalculator.getGroupMask(GALILEO), withoutGalileo));
+        assertEquals(gps.getPositionDop(), withoutGalileo.getPositionDop(), 1.0E-9);
+
+        // Three Galileo satellites can't give a solution
+        assertFalse(calculator.compute(DopCalculator.getGroupMask(GALILEO), withoutGalileo));
+
+        // All satellites on the horizon can't resolve up from the clock
+        calculator.begin();
+        for (int i = 0; i < 6; i++) {
+            calculator.add(GPS, i, 0.0f, i * 60.0f);
+        }
+        assertFalse(calculator.compute(DopCalculator.ALL_GROUPS, all));
+
+        try {
+            calculator.add(32, 1, 10.0f, 10.0f);
+            fail("Groups above 31 should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
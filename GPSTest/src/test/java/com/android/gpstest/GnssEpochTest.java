@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.GnssEpoch;
+import com.android.gpstest.model.GnssEpochPool;
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteStatusPartition;
+import com.android.gpstest.model.SbasType;
+
+import org.junit.Test;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class GnssEpochTest {
+
+    /**
+     * Test the averages and counts of a finished epoch
+     */
+    @Test
+    public void testFinish() {
+        GnssEpochPool pool = new GnssEpochPool();
+        GnssEpoch epoch = pool.obtain();
+        epoch.getGnss().add(1, GnssType.NAVSTAR, SbasType.UNKNOWN, 30.0f, true, true, true, 10.0f, 20.0f, NO_DATA);
+        epoch.getGnss().add(2, GnssType.NAVSTAR, SbasType.UNKNOWN, 20.0f, true, true, false, 10.0f, 20.0f, NO_DATA);
+        epoch.getGnss().add(3, GnssType.NAVSTAR, SbasType.UNKNOWN, 0.0f, true, false, false, 10.0f, 20.0f, NO_DATA);
+        epoch.getSbas().add(131, GnssType.SBAS, SbasType.WAAS, 40.0f, true, true, true, 10.0f, 20.0f, NO_DATA);
+        epoch.finish(false, 1000L, SatelliteStatusPartition.SORT_BY_SIGNAL_STRENGTH);
+
+        assertFalse(epoch.isLegacy());
+        assertEquals(1000L, epoch.getElapsedRealtimeMillis());
+        assertEquals(4, epoch.getSvCount());
+        assertEquals(2, epoch.getUsedInFixCount());
+        assertEquals(30.0f, epoch.getCn0InViewAvg());
+        assertEquals(35.0f, epoch.getCn0UsedAvg());
+        assertEquals(0, epoch.getGnss().getSortedIndex(0));
+        assertEquals(2, epoch.getGnss().getSortedIndex(2));
+    }
+
+    /**
+     * Test that epochs are only recycled after the last reference is released
+     */
+    @Test
+    public void testReferenceCounting() {
+        GnssEpochPool pool = new GnssEpochPool();
+        GnssEpoch epoch = pool.obtain();
+        epoch.getGnss().add(1, GnssType.NAVSTAR, SbasType.UNKNOWN, 30.0f, true, true, true, 10.0f, 20.0f, NO_DATA);
+        epoch.finish(true, 0L, SatelliteStatusPartition.SORT_BY_CONSTELLATION);
+
+        // A consumer keeps the epoch after the producer releases it
+        epoch.retain();
+        epoch.release();
+        GnssEpoch other = pool.obtain();
+        assertNotSame(epoch, other);
+        assertEquals(1, epoch.getSvCount());
+        assertTrue(epoch.isLegacy());
+
+        // After the consumer releases it, the epoch is reused and comes back empty
+        epoch.release();
+        GnssEpoch reused = pool.obtain();
+        assertSame(epoch, reused);
+        assertEquals(0, reused.getSvCount());
+        assertFalse(reused.isLegacy());
+
+        reused.release();
+        try {
+            reused.release();
+            fail("Releasing a recycled epoch should throw an exception");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
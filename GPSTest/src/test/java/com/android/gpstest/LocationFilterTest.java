@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.pvt.LocationFilter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class LocationFilterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    // Meters per degree of latitude, close enough for the tolerances of these tests
+    private static final double METERS_PER_DEGREE = 111000.0;
+
+    private static final double LATITUDE = 28.0;
+
+    private static final double LONGITUDE = -82.0;
+
+    /**
+     * Test that noise is reduced for a stationary receiver
+     */
+    @Test
+    public void testStationary() {
+        LocationFilter filter = new LocationFilter();
+        Random random = new Random(1);
+        double rawError = 0;
+        double filteredError = 0;
+        for (int t = 0; t < 120; t++) {
+            double north = 5.0 * random.nextGaussian();
+            double up = 8.0 * random.nextGaussian();
+            boolean filtered = filter.update(t * SECOND, LATITUDE + north / METERS_PER_DEGREE,
+                    LONGITUDE, 5.0, true, 10.0 + up, 8.0, false, 0, 0, 0);
+            assertEquals(t > 0, filtered);
+            if (t >= 20) {
+                rawError += north * north;
+                double error = (filter.getLatitude() - LATITUDE) * METERS_PER_DEGREE;
+                filteredError += error * error;
+            }
+        }
+        assertTrue(filteredError < rawError / 4);
+        assertTrue(filter.getHorizontalAccuracy() < 5.0);
+        assertTrue(filter.getVerticalAccuracy() < 8.0);
+        assertEquals(10.0, filter.getAltitude(), 3 * filter.getVerticalAccuracy());
+        assertEquals(0.0, filter.getSpeed(), 0.5);
+        assertEquals(LONGITUDE, filter.getLongitude(), 1.0E-6);
+        assertEquals(119, filter.getUpdateCount());
+        assertEquals(0, filter.getResetCount());
+    }
+
+    /**
+     * Test that the filter follows a receiver moving at a constant velocity
+     */
+    @Test
+    public void testConstantVelocity() {
+        LocationFilter filter = new LocationFilter();
+        Random random = new Random(2);
+        double east = 0;
+        for (int t = 0; t < 60; t++) {
+            east = 10.0 * t;
+            double noise = 3.0 * random.nextGaussian();
+            double longitude = LONGITUDE + (east + noise)
+                    / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE)));
+            filter.update(t * SECOND, LATITUDE, longitude, 3.0, false, 0, 0, true,
+                    10.0 + 0.2 * random.nextGaussian(), 90.0, 0.2);
+        }
+        assertFalse(filter.hasAltitude());
+        assertEquals(10.0, filter.getSpeed(), 0.2);
+        assertEquals(90.0, filter.getBearing(), 2.0);
+        assertEquals(10.0, filter.getVelocity(LocationFilter.EAST), 0.2);
+        double filteredEast = (filter.getLongitude() - LONGITUDE) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(LATITUDE));
+        assertEquals(east, filteredEast, 5.0);
+        assertEquals(LATITUDE, filter.getLatitude(), 1.0E-5);
+        assertTrue(filter.getSpeedAccuracy() < 0.5);
+    }
+
+    /**
+     * Test that the process noise adapts when the receiver starts moving without reported
+     * velocities, and that the frame follows long trips
+     */
+    @Test
+    public void testAdaptiveProcessNoise() {
+        LocationFilter filter = new LocationFilter();
+        for (int t = 0; t < 30; t++) {
+            filter.update(t * SECOND, LATITUDE, LONGITUDE, 5.0, false, 0, 0, false, 0, 0, 0);
+        }
+        double stationaryNoise = filter.getHorizontalProcessNoise();
+        double north = 0;
+        for (int t = 30; t < 1000; t++) {
+            north += 30.0;
+            filter.update(t * SECOND, LATITUDE + north / METERS_PER_DEGREE, LONGITUDE, 5.0,
+                    false, 0, 0, false, 0, 0, 0);
+            if (t == 35) {
+                assertTrue(filter.getHorizontalProcessNoise() > stationaryNoise);
+            }
+        }
+        assertEquals(30.0, filter.getSpeed(), 0.5);
+        assertEquals(0.0, filter.getBearing() > 180 ? filter.getBearing() - 360
+                : filter.getBearing(), 1.0);
+        assertEquals(LATITUDE + north / METERS_PER_DEGREE, filter.getLatitude(), 1.0E-4);
+        assertEquals(0, filter.getResetCount());
+    }
+
+    /**
+     * Test that the filter restarts after gaps and outliers, and at the antimeridian
+     */
+    @Test
+    public void testReset() {
+        LocationFilter filter = new LocationFilter();
+        assertFalse(filter.isInitialized());
+        assertFalse(filter.update(0, LATITUDE, 179.9999, 5.0, false, 0, 0, false, 0, 0, 0));
+        assertTrue(filter.update(SECOND, LATITUDE, -179.9999, 5.0, false, 0, 0, false, 0, 0, 0));
+        assertEquals(180.0, Math.abs(filter.getLongitude()), 1.0E-3);
+
+        // Gap
+        assertFalse(filter.update(20 * SECOND, LATITUDE, LONGITUDE, 5.0, false, 0, 0, false, 0,
+                0, 0));
+        assertEquals(1, filter.getResetCount());
+        assertEquals(LONGITUDE, filter.getLongitude(), 1.0E-9);
+
+        // Outlier, 100 km away
+        assertFalse(filter.update(21 * SECOND, LATITUDE + 1.0, LONGITUDE, 5.0, false, 0, 0, false,
+                0, 0, 0));
+        assertEquals(2, filter.getResetCount());
+        assertEquals(LATITUDE + 1.0, filter.getLatitude(), 1.0E-9);
+
+        try {
+            filter.update(22 * SECOND, LATITUDE, LONGITUDE, 0.0, false, 0, 0, false, 0, 0, 0);
+            fail("Should have thrown an IllegalArgumentException for a zero accuracy");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
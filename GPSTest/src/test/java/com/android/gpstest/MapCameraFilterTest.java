@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.util.MapCameraFilter;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class MapCameraFilterTest {
+
+    private static final double LATITUDE = 28.0587;
+
+    private static final double LONGITUDE = -82.4139;
+
+    /**
+     * Test that changes within the dead-bands don't move the camera
+     */
+    @Test
+    public void testDeadband() {
+        MapCameraFilter filter = new MapCameraFilter();
+        assertTrue(filter.update(LATITUDE, LONGITUDE, 359.5, 30.0, 0.0));
+        // Bearing wraps around north
+        assertFalse(filter.update(LATITUDE, LONGITUDE, 0.2, 30.5, 0.0));
+        assertEquals(359.5, filter.getBearing(), 0.0);
+        assertTrue(filter.update(LATITUDE, LONGITUDE, 1.0, 30.5, 0.0));
+        assertTrue(filter.update(LATITUDE, LONGITUDE, 1.0, 32.0, 0.0));
+
+        // About 0.1 m, then 1 m north
+        assertFalse(filter.update(LATITUDE + 0.000001, LONGITUDE, 1.0, 32.0, 0.0));
+        assertTrue(filter.update(LATITUDE + 0.00001, LONGITUDE, 1.0, 32.0, 0.0));
+
+        filter.reset();
+        assertTrue(filter.update(LATITUDE + 0.00001, LONGITUDE, 1.0, 32.0, 0.0));
+    }
+
+    /**
+     * Test offsetting the camera target in the direction of the bearing
+     */
+    @Test
+    public void testOffset() {
+        MapCameraFilter filter = new MapCameraFilter();
+        // 150 m east - one degree of latitude is about 111195 m
+        assertTrue(filter.update(LATITUDE, LONGITUDE, 90.0, 45.0, 150.0));
+        assertEquals(LATITUDE, filter.getLatitude(), 1.0E-9);
+        double metersPerDegreeLongitude = 111195.0 * Math.cos(Math.toRadians(LATITUDE));
+        assertEquals(LONGITUDE + 150.0 / metersPerDegreeLongitude, filter.getLongitude(), 1.0E-6);
+
+        // 150 m south
+        assertTrue(filter.update(LATITUDE, LONGITUDE, 180.0, 45.0, 150.0));
+        assertEquals(LATITUDE - 150.0 / 111195.0, filter.getLatitude(), 1.0E-6);
+        assertEquals(LONGITUDE, filter.getLongitude(), 1.0E-9);
+    }
+}
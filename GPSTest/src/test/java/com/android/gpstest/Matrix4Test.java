@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.pvt.Matrix4;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class Matrix4Test {
+
+    /**
+     * Test the closed-form inverse of a symmetric matrix built from observations
+     */
+    @Test
+    public void testInvertSymmetric() {
+        double[] m = new double[Matrix4.SIZE];
+        double[][] rows = {
+                {0.3, -0.5, 0.81, 1.0},
+                {-0.7, 0.2, 0.68, 1.0},
+                {0.1, 0.9, 0.42, 1.0},
+                {0.6, 0.6, 0.53, 1.0},
+                {-0.2, -0.8, 0.56, 1.0}
+        };
+        for (int i = 0; i < rows.length; i++) {
+            Matrix4.addOuterProduct(m, rows[i], 1.0 + i);
+        }
+        Matrix4.mirror(m);
+        double[] inverse = new double[Matrix4.SIZE];
+        assertTrue(Matrix4.invertSymmetric(m, inverse));
+
+        // m * inverse is the identity
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                double sum = 0.0;
+                for (int k = 0; k < 4; k++) {
+                    sum += m[row * 4 + k] * inverse[k * 4 + column];
+                }
+                assertEquals(row == column ? 1.0 : 0.0, sum, 1.0E-9);
+            }
+        }
+
+        double[] v = {1.0, 2.0, 3.0, 4.0};
+        double[] product = new double[4];
+        Matrix4.multiply(m, v, product);
+        double[] solved = new double[4];
+        Matrix4.multiply(inverse, product, solved);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(v[i], solved[i], 1.0E-9);
+        }
+
+        // Inverting in place
+        assertTrue(Matrix4.invertSymmetric(m, m));
+        assertEquals(inverse[6], m[6], 1.0E-12);
+
+        // Three observations can't determine four unknowns
+        Matrix4.clear(m);
+        for (int i = 0; i < 3; i++) {
+            Matrix4.addOuterProduct(m, rows[i], 1.0);
+        }
+        assertFalse(Matrix4.invertSymmetric(m, inverse));
+    }
+}
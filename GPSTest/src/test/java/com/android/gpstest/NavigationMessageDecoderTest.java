@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.nav.EphemerisStore;
+import com.android.gpstest.nav.GalileoInavDecoder;
+import com.android.gpstest.nav.GpsLnavDecoder;
+import com.android.gpstest.nav.KeplerOrbit;
+import com.android.gpstest.nav.NavigationMessageDecoder;
+import com.android.gpstest.pvt.Pseudoranges;
+import com.android.gpstest.pvt.SatellitePositionProvider;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class NavigationMessageDecoderTest {
+
+    private static final int GPS_SVID = 5;
+
+    private static final int GALILEO_SVID = 11;
+
+    // Raw broadcast values, before scaling
+    private static final long SQRT_A = Math.round(5153.65 * Math.pow(2, 19));
+
+    private static final long ECCENTRICITY = Math.round(0.0123 * Math.pow(2, 33));
+
+    private static final long M0 = Math.round(0.4 * Math.pow(2, 31));
+
+    private static final long OMEGA0 = Math.round(-0.7 * Math.pow(2, 31));
+
+    private static final long I0 = Math.round(0.31 * Math.pow(2, 31));
+
+    private static final long OMEGA = Math.round(0.2 * Math.pow(2, 31));
+
+    private static final long CRS = -1234;
+
+    private static final long CUC = 2345;
+
+    private static final long OMEGA_DOT = -2700;
+
+    private static final long IDOT = -300;
+
+    private static final long AF0 = -123456;
+
+    private static final long AF1 = -25;
+
+    private static final int TOE_SECONDS = 345600;
+
+    /**
+     * Test the GPS word parity check
+     */
+    @Test
+    public void testGpsParity() {
+        // Telemetry word with the preamble and all other data bits zero
+        assertEquals(0x8B0000, GpsLnavDecoder.decodeWord(0x22C00012, 0));
+        // With D30 of the previous word set, the data bits are complemented
+        assertEquals(0xABCDEF, GpsLnavDecoder.decodeWord(0x150C8430, 1));
+        assertEquals(0x123456, GpsLnavDecoder.decodeWord(0x3B72EA7E, 3));
+        // A single flipped bit fails
+        assertEquals(-1, GpsLnavDecoder.decodeWord(0x22C00012 ^ (1 << 20), 0));
+        assertEquals(-1, GpsLnavDecoder.decodeWord(0x22C00012, 2));
+    }
+
+    /**
+     * Test the Galileo CRC against the standard check value
+     */
+    @Test
+    public void testCrc24q() {
+        assertEquals(0xCDE703, GalileoInavDecoder.crc24q("123456789".getBytes(), 72));
+    }
+
+    /**
+     * Test decoding a GPS ephemeris from subframes 1 to 3, and storing it by issue of data
+     */
+    @Test
+    public void testGpsEphemeris() {
+        EphemerisStore store = new EphemerisStore();
+        NavigationMessageDecoder decoder = new NavigationMessageDecoder(store);
+        int version = store.getVersion();
+
+        byte[][] subframes = gpsEphemerisSubframes(42, 0);
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[0]));
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[1]));
+        // A corrupted subframe is ignored
+        byte[] corrupted = subframes[2].clone();
+        corrupted[25] ^= 0x10;
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                corrupted));
+        assertEquals(version, store.getVersion());
+        assertTrue(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[2]));
+        assertTrue(store.getVersion() != version);
+
+        double[] p = new double[KeplerOrbit.SIZE];
+        assertEquals(42, store.getEphemeris(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, p));
+        assertEphemeris(p);
+        assertEquals(-13 * Math.pow(2, -31), p[KeplerOrbit.GROUP_DELAY], 1.0E-20);
+        assertEquals(AF0 * Math.pow(2, -31), p[KeplerOrbit.AF0], 1.0E-20);
+        assertEquals(AF1 * Math.pow(2, -43), p[KeplerOrbit.AF1], 1.0E-25);
+
+        // The same ephemeris again doesn't change the store
+        version = store.getVersion();
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[2]));
+        assertEquals(version, store.getVersion());
+
+        // Subframes from a new upload only replace the ephemeris once all three match
+        subframes = gpsEphemerisSubframes(43, 0);
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[1]));
+        assertEquals(42, store.getEphemeris(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, p));
+        decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[0]);
+        assertTrue(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                subframes[2]));
+        assertEquals(43, store.getEphemeris(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, p));
+
+        // An unhealthy satellite isn't used
+        subframes = gpsEphemerisSubframes(44, 1);
+        for (byte[] subframe : subframes) {
+            decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                    subframe);
+        }
+        assertEquals(44, store.getEphemeris(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, p));
+        assertFalse(store.getSatelliteState(Pseudoranges.CONSTELLATION_GPS, GPS_SVID,
+                2000 * KeplerOrbit.SECONDS_PER_WEEK + TOE_SECONDS,
+                new double[SatellitePositionProvider.STATE_SIZE]));
+    }
+
+    /**
+     * Test decoding a GPS almanac page
+     */
+    @Test
+    public void testGpsAlmanac() {
+        EphemerisStore store = new EphemerisStore();
+        NavigationMessageDecoder decoder = new NavigationMessageDecoder(store);
+        int[] words = gpsWords(5);
+        setGpsField(words, 3, 1, 2, 1);
+        setGpsField(words, 3, 3, 6, 17);
+        setGpsField(words, 3, 9, 16, 20000);
+        setGpsField(words, 4, 1, 8, 144);
+        setGpsField(words, 4, 9, 16, -1000);
+        setGpsField(words, 6, 1, 24, 10554460);
+        setGpsField(words, 10, 1, 8, -3);
+        setGpsField(words, 10, 9, 11, -7);
+        setGpsField(words, 10, 20, 3, 5);
+        assertTrue(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                encodeGpsSubframe(words)));
+
+        double[] p = new double[KeplerOrbit.SIZE];
+        assertEquals(144 << 12, store.getAlmanac(Pseudoranges.CONSTELLATION_GPS, 17, p));
+        assertEquals(EphemerisStore.NO_ISSUE,
+                store.getEphemeris(Pseudoranges.CONSTELLATION_GPS, 17, p));
+        store.getAlmanac(Pseudoranges.CONSTELLATION_GPS, 17, p);
+        assertEquals(20000 * Math.pow(2, -21), p[KeplerOrbit.ECCENTRICITY], 1.0E-12);
+        assertEquals((0.3 - 1000 * Math.pow(2, -19)) * KeplerOrbit.PI, p[KeplerOrbit.I0], 1.0E-12);
+        assertEquals(10554460 * Math.pow(2, -11), p[KeplerOrbit.SQRT_A], 1.0E-9);
+        assertEquals((-3 * 8 + 5) * Math.pow(2, -20), p[KeplerOrbit.AF0], 1.0E-15);
+        assertEquals(-7 * Math.pow(2, -38), p[KeplerOrbit.AF1], 1.0E-20);
+    }
+
+    /**
+     * Test decoding a Galileo ephemeris from I/NAV words 1 to 5
+     */
+    @Test
+    public void testGalileoEphemeris() {
+        EphemerisStore store = new EphemerisStore();
+        NavigationMessageDecoder decoder = new NavigationMessageDecoder(store);
+        int iod = 517;
+        byte[][] words = galileoWords(iod);
+
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                GALILEO_SVID, encodeGalileoPage(words[4])));
+        for (int i = 0; i < 3; i++) {
+            assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                    GALILEO_SVID, encodeGalileoPage(words[i])));
+        }
+        // A page that fails its CRC is ignored
+        byte[] corrupted = encodeGalileoPage(words[3]);
+        corrupted[5] ^= 0x01;
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                GALILEO_SVID, corrupted));
+        assertTrue(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                GALILEO_SVID, encodeGalileoPage(words[3])));
+
+        double[] p = new double[KeplerOrbit.SIZE];
+        assertEquals(iod, store.getEphemeris(Pseudoranges.CONSTELLATION_GALILEO, GALILEO_SVID,
+                p));
+        assertEphemeris(p);
+        assertEquals(TOE_SECONDS, p[KeplerOrbit.TOC], 0.0);
+        assertEquals(AF0 * Math.pow(2, -34), p[KeplerOrbit.AF0], 1.0E-20);
+        assertEquals(AF1 * Math.pow(2, -46), p[KeplerOrbit.AF1], 1.0E-25);
+        assertEquals(-20 * Math.pow(2, -32), p[KeplerOrbit.GROUP_DELAY], 1.0E-20);
+        assertEquals(0.0, p[KeplerOrbit.HEALTH], 0.0);
+    }
+
+    /**
+     * Test that a Galileo ephemeris waits for word 5, which is sent after words 1 and 3, and that
+     * a later word 5 updates the health without a new issue of data
+     */
+    @Test
+    public void testGalileoHealth() {
+        EphemerisStore store = new EphemerisStore();
+        NavigationMessageDecoder decoder = new NavigationMessageDecoder(store);
+        int iod = 517;
+        byte[][] words = galileoWords(iod);
+
+        for (int i = 0; i < 4; i++) {
+            assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                    GALILEO_SVID, encodeGalileoPage(words[i])));
+        }
+        double[] p = new double[KeplerOrbit.SIZE];
+        assertEquals(EphemerisStore.NO_ISSUE,
+                store.getEphemeris(Pseudoranges.CONSTELLATION_GALILEO, GALILEO_SVID, p));
+        assertTrue(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                GALILEO_SVID, encodeGalileoPage(words[4])));
+        assertEquals(iod, store.getEphemeris(Pseudoranges.CONSTELLATION_GALILEO, GALILEO_SVID,
+                p));
+        assertEquals(-20 * Math.pow(2, -32), p[KeplerOrbit.GROUP_DELAY], 1.0E-20);
+        assertEquals(0.0, p[KeplerOrbit.HEALTH], 0.0);
+
+        // The same words again don't change the store
+        int version = store.getVersion();
+        assertFalse(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                GALILEO_SVID, encodeGalileoPage(words[4])));
+        assertEquals(version, store.getVersion());
+
+        // E1-B signal health "out of service"
+        setBits(words[4], 69, 2, 1);
+        assertTrue(decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GAL_I,
+                GALILEO_SVID, encodeGalileoPage(words[4])));
+        assertEquals(iod, store.getEphemeris(Pseudoranges.CONSTELLATION_GALILEO, GALILEO_SVID,
+                p));
+        assertEquals(1.0, p[KeplerOrbit.HEALTH], 0.0);
+    }
+
+    /**
+     * Returns Galileo I/NAV words 1 to 5 with the test ephemeris
+     */
+    private static byte[][] galileoWords(int iod) {
+        byte[][] words = new byte[5][16];
+        for (int type = 1; type <= 5; type++) {
+            setBits(words[type - 1], 0, 6, type);
+            if (type < 5) {
+                setBits(words[type - 1], 6, 10, iod);
+            }
+        }
+        setBits(words[0], 16, 14, TOE_SECONDS / 60);
+        setBits(words[0], 30, 32, M0);
+        setBits(words[0], 62, 32, ECCENTRICITY);
+        setBits(words[0], 94, 32, SQRT_A);
+        setBits(words[1], 16, 32, OMEGA0);
+        setBits(words[1], 48, 32, I0);
+        setBits(words[1], 80, 32, OMEGA);
+        setBits(words[1], 112, 14, IDOT);
+        setBits(words[2], 16, 24, OMEGA_DOT);
+        setBits(words[2], 56, 16, CUC);
+        setBits(words[2], 104, 16, CRS);
+        setBits(words[3], 16, 6, GALILEO_SVID);
+        setBits(words[3], 54, 14, TOE_SECONDS / 60);
+        setBits(words[3], 68, 31, AF0);
+        setBits(words[3], 99, 21, AF1);
+        setBits(words[4], 57, 10, -20);
+        return words;
+    }
+
+    /**
+     * Test satellite states computed from a decoded ephemeris
+     */
+    @Test
+    public void testSatelliteState() {
+        EphemerisStore store = new EphemerisStore();
+        NavigationMessageDecoder decoder = new NavigationMessageDecoder(store);
+        for (byte[] subframe : gpsEphemerisSubframes(42, 0)) {
+            decoder.onNavigationMessage(NavigationMessageDecoder.TYPE_GPS_L1CA, GPS_SVID,
+                    subframe);
+        }
+        double time = 2000 * KeplerOrbit.SECONDS_PER_WEEK + TOE_SECONDS + 1234.5;
+        double[] state = new double[SatellitePositionProvider.STATE_SIZE];
+        double[] before = new double[SatellitePositionProvider.STATE_SIZE];
+        double[] after = new double[SatellitePositionProvider.STATE_SIZE];
+        assertTrue(store.getSatelliteState(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, time,
+                state));
+        double radius = Math.sqrt(state[0] * state[0] + state[1] * state[1]
+                + state[2] * state[2]);
+        assertTrue(radius > 26.0E6 && radius < 27.0E6);
+
+        // Velocity and clock drift match the change over one second
+        store.getSatelliteState(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, time - 0.5, before);
+        store.getSatelliteState(Pseudoranges.CONSTELLATION_GPS, GPS_SVID, time + 0.5, after);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(after[i] - before[i], state[SatellitePositionProvider.VX + i], 1.0E-3);
+        }
+        assertEquals(after[SatellitePositionProvider.CLOCK_BIAS]
+                        - before[SatellitePositionProvider.CLOCK_BIAS],
+                state[SatellitePositionProvider.CLOCK_DRIFT], 1.0E-15);
+
+        // Too far from the time of ephemeris, or not a supported satellite
+        assertFalse(store.getSatelliteState(Pseudoranges.CONSTELLATION_GPS, GPS_SVID,
+                time + 6 * 3600, state));
+        assertFalse(store.getSatelliteState(Pseudoranges.CONSTELLATION_GPS, GPS_SVID + 1, time,
+                state));
+        assertFalse(store.getSatelliteState(3, GPS_SVID, time, state));
+    }
+
+    private static void assertEphemeris(double[] p) {
+        assertEquals(TOE_SECONDS, p[KeplerOrbit.TOE], 0.0);
+        assertEquals(SQRT_A * Math.pow(2, -19), p[KeplerOrbit.SQRT_A], 1.0E-9);
+        assertEquals(ECCENTRICITY * Math.pow(2, -33), p[KeplerOrbit.ECCENTRICITY], 1.0E-15);
+        assertEquals(M0 * Math.pow(2, -31) * KeplerOrbit.PI, p[KeplerOrbit.M0], 1.0E-12);
+        assertEquals(OMEGA0 * Math.pow(2, -31) * KeplerOrbit.PI, p[KeplerOrbit.OMEGA0], 1.0E-12);
+        assertEquals(I0 * Math.pow(2, -31) * KeplerOrbit.PI, p[KeplerOrbit.I0], 1.0E-12);
+        assertEquals(OMEGA * Math.pow(2, -31) * KeplerOrbit.PI, p[KeplerOrbit.OMEGA], 1.0E-12);
+        assertEquals(CRS * Math.pow(2, -5), p[KeplerOrbit.CRS], 1.0E-9);
+        assertEquals(CUC * Math.pow(2, -29), p[KeplerOrbit.CUC], 1.0E-15);
+        assertEquals(OMEGA_DOT * Math.pow(2, -43) * KeplerOrbit.PI, p[KeplerOrbit.OMEGA_DOT],
+                1.0E-20);
+        assertEquals(IDOT * Math.pow(2, -43) * KeplerOrbit.PI, p[KeplerOrbit.IDOT], 1.0E-20);
+    }
+
+    /**
+     * Returns subframes 1 to 3 of a GPS ephemeris with the provided issue of data and health
+     */
+    private static byte[][] gpsEphemerisSubframes(int iode, int health) {
+        int[] sf1 = gpsWords(1);
+        setGpsField(sf1, 3, 17, 6, health);
+        setGpsField(sf1, 3, 23, 2, 1);
+        setGpsField(sf1, 7, 17, 8, -13);
+        setGpsField(sf1, 8, 1, 8, iode);
+        setGpsField(sf1, 8, 9, 16, TOE_SECONDS / 16);
+        setGpsField(sf1, 9, 9, 16, AF1);
+        setGpsField(sf1, 10, 1, 22, AF0);
+
+        int[] sf2 = gpsWords(2);
+        setGpsField(sf2, 3, 1, 8, iode);
+        setGpsField(sf2, 3, 9, 16, CRS);
+        setGpsField32(sf2, 4, M0);
+        setGpsField(sf2, 6, 1, 16, CUC);
+        setGpsField32(sf2, 6, ECCENTRICITY);
+        setGpsField32(sf2, 8, SQRT_A);
+        setGpsField(sf2, 10, 1, 16, TOE_SECONDS / 16);
+
+        int[] sf3 = gpsWords(3);
+        setGpsField32(sf3, 3, OMEGA0);
+        setGpsField32(sf3, 5, I0);
+        setGpsField32(sf3, 7, OMEGA);
+        setGpsField(sf3, 9, 1, 24, OMEGA_DOT);
+        setGpsField(sf3, 10, 1, 8, iode);
+        setGpsField(sf3, 10, 9, 14, IDOT);
+        return new byte[][]{encodeGpsSubframe(sf1), encodeGpsSubframe(sf2),
+                encodeGpsSubframe(sf3)};
+    }
+
+    /**
+     * Returns the data bits of a subframe with the telemetry word and subframe ID set
+     */
+    private static int[] gpsWords(int subframeId) {
+        int[] words = new int[GpsLnavDecoder.WORDS_PER_SUBFRAME];
+        words[0] = 0x8B0000;
+        setGpsField(words, 2, 20, 3, subframeId);
+        return words;
+    }
+
+    private static void setGpsField(int[] words, int word, int first, int length, long value) {
+        int shift = 25 - first - length;
+        int mask = (int) ((1L << length) - 1) << shift;
+        words[word - 1] = (words[word - 1] & ~mask) | (((int) value << shift) & mask);
+    }
+
+    private static void setGpsField32(int[] words, int word, long value) {
+        setGpsField(words, word, 17, 8, value >> 24);
+        setGpsField(words, word + 1, 1, 24, value);
+    }
+
+    /**
+     * Adds parity to the provided data bits, and packs the words as GnssNavigationMessage does
+     */
+    private static byte[] encodeGpsSubframe(int[] words) {
+        byte[] data = new byte[GpsLnavDecoder.SUBFRAME_BYTES];
+        int previous = 0;
+        for (int i = 0; i < words.length; i++) {
+            int word = encodeGpsWord(words[i], previous);
+            if (i == words.length - 1) {
+                // Bits 23 and 24 of word 10 are chosen so the word ends with two zero bits
+                for (int t = 1; t < 4 && (word & 3) != 0; t++) {
+                    word = encodeGpsWord((words[i] & ~3) | t, previous);
+                }
+            }
+            setBits(data, i * 32, 32, word);
+            previous = word;
+        }
+        return data;
+    }
+
+    private static int encodeGpsWord(int data, int previous) {
+        int bits = (previous & 1) != 0 ? data ^ 0xFFFFFF : data;
+        return (bits << 6) | GpsLnavDecoder.getParity(data, previous);
+    }
+
+    /**
+     * Packs a word into the even and odd parts of a nominal page, with its CRC
+     */
+    private static byte[] encodeGalileoPage(byte[] word) {
+        byte[] page = new byte[GalileoInavDecoder.PAGE_BYTES];
+        for (int i = 0; i < 14; i++) {
+            setBits(page, 2 + i * 8, 8, word[i]);
+        }
+        setBits(page, 114, 1, 1);
+        setBits(page, 116, 8, word[14]);
+        setBits(page, 124, 8, word[15]);
+        setBits(page, 196, 24, GalileoInavDecoder.crc24q(page, 196));
+        return page;
+    }
+
+    private static void setBits(byte[] data, int start, int length, long value) {
+        for (int i = start + length - 1; i >= start; i--) {
+            int mask = 1 << (7 - (i & 7));
+            if ((value & 1) != 0) {
+                data[i >> 3] |= mask;
+            } else {
+                data[i >> 3] &= ~mask;
+            }
+            value >>= 1;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.nav.EphemerisStore;
+import com.android.gpstest.nav.KeplerOrbit;
+import com.android.gpstest.nav.OrbitBatch;
+import com.android.gpstest.pvt.Pseudoranges;
+import com.android.gpstest.pvt.SatellitePositionProvider;
+import com.android.gpstest.pvt.Wgs84;
+
+import org.junit.Test;
+
+import static com.android.gpstest.TestOrbits.TOE;
+import static com.android.gpstest.TestOrbits.WEEK_START;
+import static com.android.gpstest.TestOrbits.orbit;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class OrbitBatchTest {
+
+    /**
+     * Test that batch results match the single satellite computation
+     */
+    @Test
+    public void testCompute() {
+        EphemerisStore store = new EphemerisStore();
+        for (int svid = 1; svid <= 8; svid++) {
+            store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, svid, 1, orbit(svid, 0.01));
+            store.putEphemeris(Pseudoranges.CONSTELLATION_GALILEO, svid, 1, orbit(svid, 0.0003));
+        }
+        OrbitBatch batch = new OrbitBatch(0);
+        assertTrue(batch.load(store));
+        assertFalse(batch.load(store));
+
+        double time = WEEK_START + TOE + 1800.25;
+        batch.compute(time);
+        assertEquals(time, batch.getTime(), 0.0);
+        double[] state = new double[SatellitePositionProvider.STATE_SIZE];
+        int valid = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (!batch.isValid(i)) {
+                continue;
+            }
+            valid++;
+            assertFalse(batch.isFromAlmanac(i));
+            assertTrue(store.getSatelliteState(batch.getConstellationType(i), batch.getSvid(i),
+                    time, state));
+            assertEquals(state[SatellitePositionProvider.X], batch.getX(i), 1.0E-6);
+            assertEquals(state[SatellitePositionProvider.Y], batch.getY(i), 1.0E-6);
+            assertEquals(state[SatellitePositionProvider.Z], batch.getZ(i), 1.0E-6);
+            assertEquals(state[SatellitePositionProvider.VX], batch.getVelocityX(i), 1.0E-9);
+            assertEquals(state[SatellitePositionProvider.VY], batch.getVelocityY(i), 1.0E-9);
+            assertEquals(state[SatellitePositionProvider.VZ], batch.getVelocityZ(i), 1.0E-9);
+            assertEquals(state[SatellitePositionProvider.CLOCK_BIAS], batch.getClockBias(i),
+                    1.0E-18);
+            assertEquals(state[SatellitePositionProvider.CLOCK_DRIFT], batch.getClockDrift(i),
+                    1.0E-18);
+        }
+        assertEquals(16, valid);
+    }
+
+    /**
+     * Test that results are cached per time bucket, and only recomputed for changed satellites
+     */
+    @Test
+    public void testBuckets() {
+        EphemerisStore store = new EphemerisStore();
+        store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, 1, orbit(1, 0.01));
+        store.putAlmanac(Pseudoranges.CONSTELLATION_GPS, 2, 1, orbit(2, 0.01));
+        OrbitBatch batch = new OrbitBatch(10.0);
+        batch.load(store);
+        assertTrue(batch.isValid(0));
+        assertTrue(batch.isFromAlmanac(1));
+        assertFalse(batch.isValid(2));
+
+        batch.compute(WEEK_START + TOE + 12.0);
+        assertEquals(WEEK_START + TOE + 10.0, batch.getTime(), 0.0);
+        double x = batch.getX(0);
+        batch.compute(WEEK_START + TOE + 19.9);
+        assertEquals(x, batch.getX(0), 0.0);
+        batch.compute(WEEK_START + TOE + 20.0);
+        assertTrue(x != batch.getX(0));
+
+        // A new ephemeris is computed even within the same bucket
+        double[] params = orbit(1, 0.02);
+        store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, 2, params);
+        x = batch.getX(0);
+        double almanacX = batch.getX(1);
+        assertTrue(batch.load(store));
+        batch.compute(WEEK_START + TOE + 25.0);
+        assertTrue(x != batch.getX(0));
+        assertEquals(almanacX, batch.getX(1), 0.0);
+
+        // So is a new group delay with the same issue of data
+        double clockBias = batch.getClockBias(0);
+        params[KeplerOrbit.GROUP_DELAY] += 1.0E-8;
+        store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, 2, params);
+        assertTrue(batch.load(store));
+        batch.compute(WEEK_START + TOE + 25.0);
+        assertEquals(clockBias - 1.0E-8, batch.getClockBias(0), 1.0E-15);
+
+        // Unhealthy satellites aren't valid
+        params[KeplerOrbit.HEALTH] = 1;
+        store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, 3, params);
+        batch.load(store);
+        assertFalse(batch.isValid(0));
+
+        try {
+            new OrbitBatch(-1.0);
+            fail("Negative buckets should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test the azimuth and elevation of a satellite seen from below it
+     */
+    @Test
+    public void testAzimuthElevation() {
+        EphemerisStore store = new EphemerisStore();
+        store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, 1, orbit(1, 0.01));
+        OrbitBatch batch = new OrbitBatch(0);
+        batch.load(store);
+        batch.compute(WEEK_START + TOE);
+
+        double[] below = new double[3];
+        Wgs84.ecefToGeodetic(batch.getX(0), batch.getY(0), batch.getZ(0), below);
+        float[] azimuth = new float[batch.size()];
+        float[] elevation = new float[batch.size()];
+        batch.computeAzimuthElevation(below[0], below[1], 0.0, azimuth, elevation);
+        assertEquals(90.0f, elevation[0], 1.0E-4f);
+        assertTrue(Float.isNaN(elevation[1]));
+
+        // From 10 degrees south, the satellite is to the north
+        batch.computeAzimuthElevation(below[0] - 10.0, below[1], 0.0, azimuth, elevation);
+        assertTrue(elevation[0] > 0.0f && elevation[0] < 90.0f);
+        assertEquals(0.0f, Math.min(azimuth[0], 360.0f - azimuth[0]), 1.0f);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.pvt.Pseudoranges;
+import com.android.gpstest.pvt.PvtSolution;
+import com.android.gpstest.pvt.PvtSolver;
+import com.android.gpstest.pvt.SatellitePositionProvider;
+import com.android.gpstest.pvt.Wgs84;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class PvtSolverTest {
+
+    private static final double LATITUDE = 28.0587;
+
+    private static final double LONGITUDE = -82.4139;
+
+    private static final double HEIGHT = 10.0;
+
+    private static final double ORBIT_RADIUS = 26560000.0;
+
+    // Azimuth and elevation of the simulated satellites, in degrees
+    private static final double[][] SKY = {
+            {10, 75}, {60, 40}, {130, 20}, {200, 55}, {250, 15}, {300, 35}, {340, 10}
+    };
+
+    /**
+     * Test converting between ECEF and geodetic coordinates
+     */
+    @Test
+    public void testWgs84() {
+        double[] ecef = new double[3];
+        double[] geodetic = new double[3];
+        Wgs84.geodeticToEcef(LATITUDE, LONGITUDE, HEIGHT, ecef);
+        Wgs84.ecefToGeodetic(ecef[0], ecef[1], ecef[2], geodetic);
+        assertEquals(LATITUDE, geodetic[0], 1.0E-9);
+        assertEquals(LONGITUDE, geodetic[1], 1.0E-9);
+        assertEquals(HEIGHT, geodetic[2], 1.0E-3);
+
+        Wgs84.geodeticToEcef(0.0, 0.0, 0.0, ecef);
+        assertEquals(Wgs84.SEMI_MAJOR_AXIS, ecef[0], 1.0E-6);
+    }
+
+    /**
+     * Test computing pseudoranges from clock and measurement fields
+     */
+    @Test
+    public void testPseudoranges() {
+        long weekStart = 2000 * Pseudoranges.WEEK_NANOS;
+        long timeOfWeek = 345600L * 1000000000L + 123456789L;
+        long timeNanos = 1000000000L;
+        long fullBiasNanos = timeNanos - (weekStart + timeOfWeek);
+        double pseudorange = Pseudoranges.computePseudorangeMeters(timeNanos, fullBiasNanos,
+                0.25, 0.0, timeOfWeek - 70000000L);
+        assertEquals((70000000.0 - 0.25) * 1.0E-9 * Wgs84.SPEED_OF_LIGHT, pseudorange, 1.0E-6);
+
+        // Transmitted at the end of the previous week
+        fullBiasNanos = timeNanos - (weekStart + 10000000L);
+        pseudorange = Pseudoranges.computePseudorangeMeters(timeNanos, fullBiasNanos, 0.0, 0.0,
+                Pseudoranges.WEEK_NANOS - 60000000L);
+        assertEquals(0.07 * Wgs84.SPEED_OF_LIGHT, pseudorange, 1.0E-6);
+
+        // Implausible travel time
+        assertTrue(Double.isNaN(Pseudoranges.computePseudorangeMeters(timeNanos, fullBiasNanos,
+                0.0, 0.0, 20000000L)));
+
+        assertEquals(2000 * 604800.0,
+                Pseudoranges.getGpsTimeSeconds(timeNanos, timeNanos - weekStart, 0.0), 1.0E-6);
+        assertTrue(Pseudoranges.hasTimeOfWeek(Pseudoranges.STATE_TOW_DECODED | 1));
+        assertFalse(Pseudoranges.hasTimeOfWeek(1));
+        assertTrue(Pseudoranges.usesGpsTime(Pseudoranges.CONSTELLATION_GALILEO));
+        assertFalse(Pseudoranges.usesGpsTime(3));
+    }
+
+    /**
+     * Test solving position, velocity and clock from simulated measurements
+     */
+    @Test
+    public void testSolve() {
+        double[] receiver = new double[3];
+        Wgs84.geodeticToEcef(LATITUDE, LONGITUDE, HEIGHT, receiver);
+        double clockBias = 12345.6;
+        double[] velocity = {1.5, -2.0, 0.5};
+        double clockDrift = 3.0;
+
+        PvtSolver solver = new PvtSolver();
+        solver.begin();
+        double[] state = new double[SatellitePositionProvider.STATE_SIZE];
+        for (int i = 0; i < SKY.length; i++) {
+            double pseudorange = simulate(receiver, SKY[i][0], SKY[i][1], i, state);
+            double[] los = lineOfSight(receiver, SKY[i][0], SKY[i][1]);
+            double rate = los[0] * (state[SatellitePositionProvider.VX] - velocity[0])
+                    + los[1] * (state[SatellitePositionProvider.VY] - velocity[1])
+                    + los[2] * (state[SatellitePositionProvider.VZ] - velocity[2])
+                    + clockDrift
+                    - state[SatellitePositionProvider.CLOCK_DRIFT] * Wgs84.SPEED_OF_LIGHT;
+            assertTrue(solver.add(state, pseudorange + clockBias, 5.0 + i, rate, 0.1));
+        }
+        assertEquals(SKY.length, solver.getCount());
+
+        PvtSolution solution = new PvtSolution();
+        assertTrue(solver.solve(solution));
+        assertEquals(receiver[0], solution.getX(), 1.0E-3);
+        assertEquals(receiver[1], solution.getY(), 1.0E-3);
+        assertEquals(receiver[2], solution.getZ(), 1.0E-3);
+        assertEquals(clockBias, solution.getClockBiasMeters(), 1.0E-3);
+        assertEquals(LATITUDE, solution.getLatitude(), 1.0E-8);
+        assertEquals(LONGITUDE, solution.getLongitude(), 1.0E-8);
+        assertEquals(HEIGHT, solution.getAltitude(), 1.0E-3);
+        assertEquals(SKY.length, solution.getSatelliteCount());
+        assertEquals(0.0, solution.getResidualRms(), 1.0E-3);
+
+        assertTrue(solution.hasVelocity());
+        assertEquals(velocity[0], solution.getVelocityX(), 1.0E-3);
+        assertEquals(velocity[1], solution.getVelocityY(), 1.0E-3);
+        assertEquals(velocity[2], solution.getVelocityZ(), 1.0E-3);
+        assertEquals(clockDrift, solution.getClockDriftMetersPerSecond(), 1.0E-3);
+
+        PvtSolution copy = new PvtSolution();
+        solution.copyTo(copy);
+        assertEquals(solution.getZ(), copy.getZ());
+
+        // Not enough satellites
+        solver.begin();
+        for (int i = 0; i < 3; i++) {
+            solver.add(state, 2.0E7, 5.0, 0.0, Double.NaN);
+        }
+        assertFalse(solver.solve(solution));
+    }
+
+    /**
+     * Returns the unit vector from the receiver to a satellite at the provided azimuth and
+     * elevation, in ECEF
+     */
+    private static double[] lineOfSight(double[] receiver, double azimuth, double elevation) {
+        double phi = Math.toRadians(LATITUDE);
+        double lambda = Math.toRadians(LONGITUDE);
+        double az = Math.toRadians(azimuth);
+        double el = Math.toRadians(elevation);
+        double e = Math.cos(el) * Math.sin(az);
+        double n = Math.cos(el) * Math.cos(az);
+        double u = Math.sin(el);
+        return new double[]{
+                -Math.sin(lambda) * e - Math.sin(phi) * Math.cos(lambda) * n
+                        + Math.cos(phi) * Math.cos(lambda) * u,
+                Math.cos(lambda) * e - Math.sin(phi) * Math.sin(lambda) * n
+                        + Math.cos(phi) * Math.sin(lambda) * u,
+                Math.cos(phi) * n + Math.sin(phi) * u
+        };
+    }
+
+    /**
+     * Simulates a satellite in the provided direction, and returns its pseudorange without the
+     * receiver clock bias
+     *
+     * @param state the state of the satellite at transmit time
+     */
+    private static double simulate(double[] receiver, double azimuth, double elevation, int index,
+            double[] state) {
+        double[] los = lineOfSight(receiver, azimuth, elevation);
+        double dot = receiver[0] * los[0] + receiver[1] * los[1] + receiver[2] * los[2];
+        double r2 = receiver[0] * receiver[0] + receiver[1] * receiver[1]
+                + receiver[2] * receiver[2];
+        double range = -dot + Math.sqrt(dot * dot - r2 + ORBIT_RADIUS * ORBIT_RADIUS);
+        double x = receiver[0] + range * los[0];
+        double y = receiver[1] + range * los[1];
+        double z = receiver[2] + range * los[2];
+
+        // Position at transmit time, in the ECEF frame of transmit time
+        double theta = Wgs84.EARTH_ROTATION_RATE * range / Wgs84.SPEED_OF_LIGHT;
+        state[SatellitePositionProvider.X] = x * Math.cos(theta) - y * Math.sin(theta);
+        state[SatellitePositionProvider.Y] = x * Math.sin(theta) + y * Math.cos(theta);
+        state[SatellitePositionProvider.Z] = z;
+        state[SatellitePositionProvider.VX] = 1000.0 * (index - 3);
+        state[SatellitePositionProvider.VY] = -500.0 * index;
+        state[SatellitePositionProvider.VZ] = 2500.0;
+        state[SatellitePositionProvider.CLOCK_BIAS] = 1.0E-5 * index;
+        state[SatellitePositionProvider.CLOCK_DRIFT] = 1.0E-11 * index;
+
+        // Troposphere delay of the solver, with the geocentric elevation
+        double sinElevation = dot / Math.sqrt(r2);
+        double troposphere = 2.47 / (sinElevation + 0.0121);
+        return range - state[SatellitePositionProvider.CLOCK_BIAS] * Wgs84.SPEED_OF_LIGHT
+                + troposphere;
+    }
+}
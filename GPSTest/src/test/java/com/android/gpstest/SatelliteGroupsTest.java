@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.ConstellationType;
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteGroup;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteStatusPartition;
+import com.android.gpstest.model.SbasType;
+import com.android.gpstest.util.IntIntHashMap;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class SatelliteGroupsTest {
+
+    private static final float L1 = 1575.42E6f;
+    private static final float L5 = 1176.45E6f;
+
+    /**
+     * Test grouping L1 and L5 signals from the same satellite
+     */
+    @Test
+    public void testGroupBySatellite() {
+        SatelliteGroups groups = new SatelliteGroups();
+        groups.beginEpoch();
+        groups.addSignal(GnssType.NAVSTAR, 5, 30.0f, L5, 45.0f, 90.0f, true, true, false);
+        groups.addSignal(GnssType.NAVSTAR, 5, 40.0f, L1, 45.0f, 90.0f, true, true, true);
+        groups.addSignal(GnssType.GALILEO, 5, 25.0f, L1, 20.0f, 180.0f, true, false, false);
+        groups.endEpoch();
+
+        assertEquals(2, groups.size());
+
+        SatelliteGroup gps = groups.find(GnssType.NAVSTAR, 5);
+        assertEquals(2, gps.getBandCount());
+        // Bands are ordered by descending carrier frequency
+        assertEquals(L1, gps.getCarrierFrequencyHz(0));
+        assertEquals(40.0f, gps.getCn0DbHz(0));
+        assertTrue(gps.getUsedInFix(0));
+        assertEquals(L5, gps.getCarrierFrequencyHz(1));
+        assertEquals(30.0f, gps.getCn0DbHz(1));
+        assertFalse(gps.getUsedInFix(1));
+        assertTrue(gps.getUsedInFix());
+        assertEquals(40.0f, gps.getMaxCn0DbHz());
+
+        SatelliteGroup galileo = groups.find(GnssType.GALILEO, 5);
+        assertEquals(1, galileo.getBandCount());
+        assertFalse(galileo.getUsedInFix());
+        assertFalse(galileo.getHasEphemeris());
+    }
+
+    /**
+     * Test that signals and satellites that are no longer reported are removed
+     */
+    @Test
+    public void testIncrementalUpdate() {
+        SatelliteGroups groups = new SatelliteGroups();
+        groups.beginEpoch();
+        for (int svid = 1; svid <= 32; svid++) {
+            groups.addSignal(GnssType.NAVSTAR, svid, 30.0f, L1, 45.0f, 90.0f, true, true, true);
+            groups.addSignal(GnssType.NAVSTAR, svid, 25.0f, L5, 45.0f, 90.0f, true, true, false);
+        }
+        groups.endEpoch();
+        assertEquals(32, groups.size());
+
+        // Only odd svids are still in view, and they've lost the L5 signal
+        groups.beginEpoch();
+        for (int svid = 1; svid <= 32; svid += 2) {
+            groups.addSignal(GnssType.NAVSTAR, svid, 31.0f, L1, 46.0f, 91.0f, true, true, false);
+        }
+        groups.endEpoch();
+        assertEquals(16, groups.size());
+
+        for (int svid = 1; svid <= 32; svid++) {
+            SatelliteGroup group = groups.find(GnssType.NAVSTAR, svid);
+            if (svid % 2 == 0) {
+                assertNull(group);
+            } else {
+                assertEquals(svid, group.getSvid());
+                assertEquals(1, group.getBandCount());
+                assertEquals(31.0f, group.getCn0DbHz(0));
+                assertEquals(46.0f, group.getElevationDegrees());
+                assertFalse(group.getUsedInFix());
+            }
+        }
+
+        groups.clear();
+        assertEquals(0, groups.size());
+        assertNull(groups.find(GnssType.NAVSTAR, 1));
+    }
+
+    /**
+     * Test ordering satellites like their sorted signals
+     */
+    @Test
+    public void testSortLike() {
+        SatelliteStatusPartition p = new SatelliteStatusPartition(ConstellationType.GNSS);
+        p.add(7, GnssType.NAVSTAR, SbasType.UNKNOWN, 25.0f, true, true, true, 10.0f, 20.0f, L5);
+        p.add(12, GnssType.GALILEO, SbasType.UNKNOWN, 30.0f, true, true, false, 10.0f, 20.0f, L1);
+        p.add(3, GnssType.NAVSTAR, SbasType.UNKNOWN, 20.0f, true, false, false, 10.0f, 20.0f, L1);
+        p.add(7, GnssType.NAVSTAR, SbasType.UNKNOWN, 35.0f, true, true, true, 10.0f, 20.0f, L1);
+        p.sort(SatelliteStatusPartition.SORT_BY_SIGNAL_STRENGTH);
+
+        SatelliteGroups groups = new SatelliteGroups();
+        groups.beginEpoch();
+        groups.addSignals(p);
+        // A satellite without signals in the partition
+        groups.addSignal(GnssType.BEIDOU, 1, 20.0f, L1, 10.0f, 20.0f, false, false, false);
+        groups.endEpoch();
+        groups.sortLike(p);
+
+        // Each satellite takes the position of its strongest signal
+        assertEquals(4, groups.size());
+        assertEquals(7, groups.getSorted(0).getSvid());
+        assertEquals(2, groups.getSorted(0).getBandCount());
+        assertEquals(3, groups.getSortedSignal(0));
+        assertEquals(12, groups.getSorted(1).getSvid());
+        assertEquals(1, groups.getSortedSignal(1));
+        assertEquals(3, groups.getSorted(2).getSvid());
+        assertEquals(GnssType.BEIDOU, groups.getSorted(3).getGnssType());
+        assertEquals(SatelliteGroups.NO_KEY, groups.getSortedSignal(3));
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CONSTELLATION);
+        groups.sortLike(p);
+        assertEquals(3, groups.getSorted(0).getSvid());
+        assertEquals(7, groups.getSorted(1).getSvid());
+        assertEquals(0, groups.getSortedSignal(1));
+        assertEquals(12, groups.getSorted(2).getSvid());
+    }
+
+    /**
+     * Test adding, growing, and removing entries in the map
+     */
+    @Test
+    public void testIntIntHashMap() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 31, i);
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i += 3) {
+            assertEquals(i, map.remove(i * 31));
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (i % 3 == 0) {
+                assertFalse(map.containsKey(i * 31));
+                assertEquals(IntIntHashMap.NOT_FOUND, map.get(i * 31));
+            } else {
+                assertEquals(i, map.get(i * 31));
+            }
+        }
+        assertEquals(IntIntHashMap.NOT_FOUND, map.remove(-5));
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(31));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.ConstellationType;
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteStatusPartition;
+import com.android.gpstest.model.SbasType;
+
+import org.junit.Test;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SatelliteStatusPartitionTest {
+
+    private static final float L1 = 1575.42E6f;
+    private static final float L5 = 1176.45E6f;
+
+    private static SatelliteStatusPartition createGnssPartition() {
+        SatelliteStatusPartition p = new SatelliteStatusPartition(ConstellationType.GNSS);
+        p.add(12, GnssType.GALILEO, SbasType.UNKNOWN, 30.0f, true, true, false, 10.0f, 20.0f, L1);
+        p.add(7, GnssType.NAVSTAR, SbasType.UNKNOWN, 25.0f, true, true, true, 10.0f, 20.0f, L5);
+        p.add(3, GnssType.NAVSTAR, SbasType.UNKNOWN, 40.0f, true, false, false, 10.0f, 20.0f, L1);
+        p.add(7, GnssType.NAVSTAR, SbasType.UNKNOWN, 35.0f, true, true, true, 10.0f, 20.0f, L1);
+        p.add(2, GnssType.GALILEO, SbasType.UNKNOWN, 0.0f, true, false, false, 10.0f, 20.0f, NO_DATA);
+        return p;
+    }
+
+    /**
+     * Test the values and counts stored for each signal
+     */
+    @Test
+    public void testAdd() {
+        SatelliteStatusPartition p = createGnssPartition();
+        assertEquals(5, p.size());
+        assertEquals(2, p.getUsedInFixCount());
+        assertEquals(4, p.getInViewCount());
+        assertEquals(130.0f, p.getCn0InViewSum());
+        assertEquals(60.0f, p.getCn0UsedSum());
+
+        assertEquals(GnssType.NAVSTAR, p.getGnssType(1));
+        assertEquals(7, p.getSvid(1));
+        assertTrue(p.getUsedInFix(1));
+        assertFalse(p.getHasEphemeris(2));
+        assertTrue(p.getHasCarrierFrequency(0));
+        assertFalse(p.getHasCarrierFrequency(4));
+
+        p.clear();
+        assertTrue(p.isEmpty());
+        assertEquals(0, p.getUsedInFixCount());
+
+        // Make sure the arrays grow
+        for (int i = 0; i < 200; i++) {
+            p.add(i, GnssType.BEIDOU, SbasType.UNKNOWN, i, false, false, false, 0.0f, 0.0f, NO_DATA);
+        }
+        assertEquals(200, p.size());
+        assertEquals(199, p.getSvid(199));
+    }
+
+    /**
+     * Test each sort option, which must match the arrays.xml sort_sats order
+     */
+    @Test
+    public void testSort() {
+        SatelliteStatusPartition p = createGnssPartition();
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CONSTELLATION);
+        assertOrder(p, 2, 1, 3, 4, 0);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CARRIER_FREQUENCY);
+        assertOrder(p, 4, 1, 2, 3, 0);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_SIGNAL_STRENGTH);
+        assertOrder(p, 2, 3, 0, 1, 4);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_USED_IN_FIX);
+        assertOrder(p, 1, 3, 4, 2, 0);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CONSTELLATION_CARRIER_FREQUENCY);
+        assertOrder(p, 1, 2, 3, 4, 0);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CONSTELLATION_SIGNAL_STRENGTH);
+        assertOrder(p, 2, 3, 1, 0, 4);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CONSTELLATION_USED_IN_FIX);
+        assertOrder(p, 1, 3, 2, 4, 0);
+    }
+
+    /**
+     * Test that SBAS partitions sort by SBAS type instead of GNSS type
+     */
+    @Test
+    public void testSortSbas() {
+        SatelliteStatusPartition p = new SatelliteStatusPartition(ConstellationType.SBAS);
+        p.add(138, GnssType.SBAS, SbasType.WAAS, 30.0f, true, true, false, 10.0f, 20.0f, L1);
+        p.add(136, GnssType.SBAS, SbasType.EGNOS, 30.0f, true, true, false, 10.0f, 20.0f, L1);
+        p.add(131, GnssType.SBAS, SbasType.WAAS, 30.0f, true, true, false, 10.0f, 20.0f, L1);
+
+        p.sort(SatelliteStatusPartition.SORT_BY_CONSTELLATION);
+        assertOrder(p, 2, 0, 1);
+    }
+
+    private static void assertOrder(SatelliteStatusPartition p, int... indexes) {
+        for (int position = 0; position < indexes.length; position++) {
+            assertEquals(indexes[position], p.getSortedIndex(position));
+        }
+    }
+}
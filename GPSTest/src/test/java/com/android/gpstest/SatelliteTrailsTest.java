@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SatelliteTrails;
+
+import org.junit.Test;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class SatelliteTrailsTest {
+
+    private static final float DELTA = 0.002f;
+
+    private static final long MINUTE = 60 * 1000;
+
+    private static void setPosition(SatelliteGroups groups, float elevation, float azimuth) {
+        groups.beginEpoch();
+        groups.addSignal(GnssType.NAVSTAR, 5, 30.0f, NO_DATA, elevation, azimuth, true, true, true);
+        groups.endEpoch();
+    }
+
+    /**
+     * Test projection and decimation of points
+     */
+    @Test
+    public void testAdd() {
+        SatelliteGroups groups = new SatelliteGroups();
+        SatelliteTrails trails = new SatelliteTrails(10 * MINUTE);
+
+        // Due east on the horizon
+        setPosition(groups, 0.0f, 90.0f);
+        trails.add(groups, 0);
+        assertEquals(1, trails.getSlotCount());
+        assertEquals(1, trails.getPointCount(0));
+        assertEquals(1.0f, trails.getX(0, 0), DELTA);
+        assertEquals(0.0f, trails.getY(0, 0), DELTA);
+
+        // Too close to the last point
+        setPosition(groups, 0.5f, 90.0f);
+        trails.add(groups, 1000);
+        assertEquals(1, trails.getPointCount(0));
+
+        // Far enough - 45 degrees to the north
+        setPosition(groups, 45.0f, 0.0f);
+        trails.add(groups, 2000);
+        assertEquals(2, trails.getPointCount(0));
+        assertEquals(2, trails.getAddedCount(0));
+        assertEquals(0.0f, trails.getX(0, 1), DELTA);
+        assertEquals(-0.5f, trails.getY(0, 1), DELTA);
+    }
+
+    /**
+     * Test that trails stay bounded, and expired points are removed in batches
+     */
+    @Test
+    public void testBounded() {
+        SatelliteGroups groups = new SatelliteGroups();
+        SatelliteTrails trails = new SatelliteTrails(1000 * MINUTE);
+
+        for (int i = 0; i < 1000; i++) {
+            setPosition(groups, (i % 90) + 0.1f, 0.0f);
+            trails.add(groups, i * 1000);
+            assertTrue(trails.getPointCount(0) <= SatelliteTrails.MAX_POINTS);
+        }
+        assertEquals(1000, trails.getAddedCount(0));
+
+        // Points expire after the duration
+        trails.setDurationMillis(MINUTE);
+        int version = trails.getVersion(0);
+        setPosition(groups, 89.0f, 180.0f);
+        trails.add(groups, 1000 * 1000);
+        assertEquals(61, trails.getPointCount(0));
+        assertTrue(version != trails.getVersion(0));
+
+        // Satellite isn't seen anymore, so its trail expires
+        groups.beginEpoch();
+        groups.endEpoch();
+        trails.add(groups, 1000 * 1000 + 2 * MINUTE);
+        assertEquals(0, trails.getPointCount(0));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.model.SkyHeatmap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+import static junit.framework.Assert.assertEquals;
+
+public class SkyHeatmapTest {
+
+    private static final float DELTA = 0.001f;
+
+    private static final float L1_HZ = 1575.42E6f;
+
+    private static final float L5_HZ = 1176.45E6f;
+
+    /**
+     * Test mapping positions to cells
+     */
+    @Test
+    public void testGetCell() {
+        assertEquals(0, SkyHeatmap.getCell(0.0f, 0.0f));
+        assertEquals(0, SkyHeatmap.getCell(1.9f, 1.9f));
+        assertEquals(1, SkyHeatmap.getCell(1.0f, 2.0f));
+        assertEquals(SkyHeatmap.AZIMUTH_CELLS, SkyHeatmap.getCell(2.0f, 0.0f));
+        assertEquals(SkyHeatmap.AZIMUTH_CELLS - 1, SkyHeatmap.getCell(0.0f, -1.0f));
+        assertEquals(0, SkyHeatmap.getCell(0.0f, 360.0f));
+        // Zenith is in the top row
+        assertEquals(SkyHeatmap.CELL_COUNT - SkyHeatmap.AZIMUTH_CELLS,
+                SkyHeatmap.getCell(90.0f, 0.0f));
+
+        int cell = SkyHeatmap.getCell(45.0f, 91.0f);
+        assertEquals(44, SkyHeatmap.getCellElevation(cell));
+        assertEquals(90, SkyHeatmap.getCellAzimuth(cell));
+
+        assertEquals(SkyHeatmap.UNKNOWN_BAND, SkyHeatmap.getBand(GnssType.NAVSTAR, NO_DATA));
+        assertEquals(1575, SkyHeatmap.getBand(GnssType.NAVSTAR, L1_HZ));
+        // GLONASS FDMA channels share a band
+        assertEquals(SkyHeatmap.getBand(GnssType.GLONASS, 1598.0625E6f),
+                SkyHeatmap.getBand(GnssType.GLONASS, 1605.375E6f));
+    }
+
+    /**
+     * Test accumulating means and counts per layer and in the combined layer
+     */
+    @Test
+    public void testAdd() {
+        SatelliteGroups groups = new SatelliteGroups();
+        SkyHeatmap heatmap = new SkyHeatmap();
+        int cell = SkyHeatmap.getCell(30.0f, 120.0f);
+
+        groups.beginEpoch();
+        groups.addSignal(GnssType.NAVSTAR, 5, 30.0f, L1_HZ, 30.0f, 120.0f, true, true, true);
+        groups.addSignal(GnssType.NAVSTAR, 5, 40.0f, L5_HZ, 30.0f, 120.0f, true, true, true);
+        // Not in view
+        groups.addSignal(GnssType.GALILEO, 3, NO_DATA, L1_HZ, 60.0f, 10.0f, true, true, false);
+        groups.endEpoch();
+        heatmap.add(groups);
+
+        groups.beginEpoch();
+        groups.addSignal(GnssType.NAVSTAR, 5, 34.0f, L1_HZ, 30.5f, 121.0f, true, true, true);
+        groups.endEpoch();
+        heatmap.add(groups);
+
+        assertEquals(2, heatmap.getLayerCount());
+        assertEquals(GnssType.NAVSTAR, heatmap.getLayerGnssType(0));
+        assertEquals(1575, heatmap.getLayerBand(0));
+        assertEquals(2, heatmap.getCount(0, cell));
+        assertEquals(32.0f, heatmap.getMean(0, cell), DELTA);
+        assertEquals(1176, heatmap.getLayerBand(1));
+        assertEquals(1, heatmap.getCount(1, cell));
+        assertEquals(40.0f, heatmap.getMean(1, cell), DELTA);
+
+        // Combined layer
+        int[] cells = new int[SkyHeatmap.CELL_COUNT];
+        float[] means = new float[SkyHeatmap.CELL_COUNT];
+        assertEquals(1, heatmap.drainChangedCells(cells, means));
+        assertEquals(cell, cells[0]);
+        assertEquals(104.0f / 3, means[0], DELTA);
+        assertEquals(0, heatmap.drainChangedCells(cells, means));
+
+        int generation = heatmap.getGeneration();
+        heatmap.clear();
+        assertEquals(0, heatmap.getLayerCount());
+        assertEquals(generation + 1, heatmap.getGeneration());
+        heatmap.getMeans(means);
+        assertEquals(0.0f, means[cell], DELTA);
+    }
+
+    /**
+     * Test the CSV and binary exports
+     */
+    @Test
+    public void testExport() throws Exception {
+        SatelliteGroups groups = new SatelliteGroups();
+        SkyHeatmap heatmap = new SkyHeatmap();
+        groups.beginEpoch();
+        groups.addSignal(GnssType.NAVSTAR, 5, 30.0f, L1_HZ, 30.0f, 120.0f, true, true, true);
+        groups.addSignal(GnssType.GALILEO, 3, 25.5f, L1_HZ, 60.0f, 10.0f, true, true, false);
+        groups.endEpoch();
+        heatmap.add(groups);
+
+        StringWriter csv = new StringWriter();
+        heatmap.writeCsv(csv);
+        assertEquals("constellation,band_mhz,azimuth_deg,elevation_deg,mean_cn0_dbhz,count\n"
+                + "NAVSTAR,1575,120,30,30.00,1\n"
+                + "GALILEO,1575,10,60,25.50,1\n", csv.toString());
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        heatmap.writeBinary(binary);
+        // Header, then for each layer a name, band, count and one 10-byte cell
+        int expected = 16 + (2 + "NAVSTAR".length() + 8 + 10) + (2 + "GALILEO".length() + 8 + 10);
+        assertEquals(expected, binary.size());
+    }
+}
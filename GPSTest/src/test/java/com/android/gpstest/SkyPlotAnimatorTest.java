@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.GnssType;
+import com.android.gpstest.model.SatelliteGroup;
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.util.TrigTable;
+import com.android.gpstest.view.SkyPlotAnimator;
+
+import org.junit.Test;
+
+import static com.android.gpstest.model.SatelliteStatus.NO_DATA;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SkyPlotAnimatorTest {
+
+    private static final float DELTA = 0.001f;
+
+    private static void setPosition(SatelliteGroups groups, float elevation, float azimuth) {
+        groups.beginEpoch();
+        groups.addSignal(GnssType.NAVSTAR, 5, 30.0f, NO_DATA, elevation, azimuth, true, true, true);
+        groups.endEpoch();
+    }
+
+    /**
+     * Test that satellites animate from their displayed position over the interval between epochs
+     */
+    @Test
+    public void testSatelliteAnimation() {
+        SatelliteGroups groups = new SatelliteGroups();
+        SkyPlotAnimator animator = new SkyPlotAnimator();
+
+        // New satellites are shown at their position immediately
+        setPosition(groups, 10.0f, 350.0f);
+        animator.setTargets(groups, 0);
+        assertFalse(animator.update(0));
+        SatelliteGroup satellite = groups.find(GnssType.NAVSTAR, 5);
+        assertEquals(10.0f, animator.getElevationDegrees(satellite), DELTA);
+        assertEquals(350.0f, animator.getAzimuthDegrees(satellite), DELTA);
+
+        // Next epoch one second later animates over one second, crossing north the short way
+        setPosition(groups, 20.0f, 10.0f);
+        animator.setTargets(groups, 1000);
+        assertTrue(animator.update(1500));
+        assertEquals(15.0f, animator.getElevationDegrees(satellite), DELTA);
+        assertEquals(0.0f, animator.getAzimuthDegrees(satellite), DELTA);
+        assertFalse(animator.update(2000));
+        assertEquals(20.0f, animator.getElevationDegrees(satellite), DELTA);
+        assertEquals(10.0f, animator.getAzimuthDegrees(satellite), DELTA);
+
+        // Satellites without a position aren't animated
+        setPosition(groups, 0.0f, 0.0f);
+        animator.setTargets(groups, 3000);
+        assertEquals(0.0f, animator.getElevationDegrees(satellite), DELTA);
+        assertEquals(0.0f, animator.getAzimuthDegrees(satellite), DELTA);
+    }
+
+    /**
+     * Test orientation animation, which takes the shortest way around the circle
+     */
+    @Test
+    public void testOrientationAnimation() {
+        SkyPlotAnimator animator = new SkyPlotAnimator(100);
+        assertEquals(45.0, animator.getOrientation(45.0), DELTA);
+
+        animator.setOrientation(20.0, 0);
+        assertEquals(20.0, animator.getOrientation(0.0), DELTA);
+
+        animator.setOrientation(300.0, 0);
+        assertTrue(animator.update(50));
+        assertEquals(340.0, animator.getOrientation(0.0), DELTA);
+        assertFalse(animator.update(100));
+        assertEquals(300.0, animator.getOrientation(0.0), DELTA);
+    }
+
+    /**
+     * Test the sine and cosine table against Math
+     */
+    @Test
+    public void testTrigTable() {
+        for (float degrees = -720.0f; degrees <= 720.0f; degrees += 0.37f) {
+            double radians = Math.toRadians(degrees);
+            assertEquals(Math.sin(radians), TrigTable.sin(degrees), 0.002);
+            assertEquals(Math.cos(radians), TrigTable.cos(degrees), 0.002);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.SatelliteGroups;
+import com.android.gpstest.view.SkyPlotHitIndex;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class SkyPlotHitIndexTest {
+
+    /**
+     * Test finding the closest satellite within the touch radius, including across cells
+     */
+    @Test
+    public void testFind() {
+        SkyPlotHitIndex index = new SkyPlotHitIndex();
+        index.reset(1000, 50.0f);
+        index.add(1, 100.0f, 100.0f);
+        index.add(2, 120.0f, 100.0f);
+        // Just across a cell boundary from the touch below
+        index.add(3, 151.0f, 300.0f);
+        assertEquals(3, index.size());
+
+        assertEquals(1, index.find(105.0f, 100.0f, 50.0f));
+        assertEquals(2, index.find(118.0f, 102.0f, 50.0f));
+        assertEquals(3, index.find(148.0f, 300.0f, 50.0f));
+        // Too far from any satellite
+        assertEquals(SatelliteGroups.NO_KEY, index.find(500.0f, 500.0f, 50.0f));
+        // Outside of the plot
+        assertEquals(SatelliteGroups.NO_KEY, index.find(-10.0f, 2000.0f, 50.0f));
+
+        // Satellites drawn later are on top, so they win ties
+        index.add(4, 100.0f, 100.0f);
+        assertEquals(4, index.find(100.0f, 100.0f, 50.0f));
+
+        // Satellites from the previous frame are removed
+        index.reset(1000, 50.0f);
+        assertEquals(SatelliteGroups.NO_KEY, index.find(100.0f, 100.0f, 50.0f));
+        index.add(5, 990.0f, 990.0f);
+        assertEquals(5, index.find(999.0f, 999.0f, 50.0f));
+    }
+
+    /**
+     * Test that the index grows past its initial capacity, and grid size changes
+     */
+    @Test
+    public void testGrow() {
+        SkyPlotHitIndex index = new SkyPlotHitIndex();
+        index.reset(100, 10.0f);
+        for (int i = 0; i < 500; i++) {
+            index.add(i, i % 100, (i / 100) * 20.0f);
+        }
+        assertEquals(500, index.size());
+        assertEquals(250, index.find(50.0f, 40.0f, 0.5f));
+
+        index.reset(4000, 10.0f);
+        index.add(7, 3995.0f, 5.0f);
+        assertEquals(7, index.find(3990.0f, 5.0f, 10.0f));
+    }
+}
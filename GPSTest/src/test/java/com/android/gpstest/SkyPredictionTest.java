@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.nav.EphemerisStore;
+import com.android.gpstest.nav.KeplerOrbit;
+import com.android.gpstest.nav.OrbitBatch;
+import com.android.gpstest.nav.SkyPrediction;
+import com.android.gpstest.pvt.Pseudoranges;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static com.android.gpstest.TestOrbits.TOE;
+import static com.android.gpstest.TestOrbits.WEEK_START;
+import static com.android.gpstest.TestOrbits.orbit;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class SkyPredictionTest {
+
+    private static final double LATITUDE = 28.0587;
+
+    private static final double LONGITUDE = -82.4139;
+
+    /**
+     * Test that parallel and sequential predictions match the batch computed at each step
+     */
+    @Test
+    public void testCompute() {
+        EphemerisStore store = createStore();
+        double start = WEEK_START + TOE - 3600.0;
+        SkyPrediction sequential = SkyPrediction.compute(store, LATITUDE, LONGITUDE, 10.0, start,
+                60.0, 121);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        SkyPrediction parallel;
+        try {
+            parallel = SkyPrediction.compute(store, LATITUDE, LONGITUDE, 10.0, start, 60.0, 121,
+                    pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(121, parallel.getStepCount());
+
+        OrbitBatch batch = new OrbitBatch(0);
+        batch.load(store);
+        float[] azimuth = new float[batch.size()];
+        float[] elevation = new float[batch.size()];
+        for (int step = 0; step < parallel.getStepCount(); step += 7) {
+            batch.compute(parallel.getTime(step));
+            batch.computeAzimuthElevation(LATITUDE, LONGITUDE, 10.0, azimuth, elevation);
+            for (int slot = 0; slot < parallel.size(); slot++) {
+                assertEquals(azimuth[slot], parallel.getAzimuthDegrees(step, slot), 0.0f);
+                assertEquals(elevation[slot], parallel.getElevationDegrees(step, slot), 0.0f);
+                assertEquals(elevation[slot], sequential.getElevationDegrees(step, slot), 0.0f);
+            }
+        }
+
+        int gpsSlot = 0;
+        assertTrue(parallel.isValid(gpsSlot));
+        assertFalse(parallel.isFromAlmanac(gpsSlot));
+        assertEquals(Pseudoranges.CONSTELLATION_GPS, parallel.getConstellationType(gpsSlot));
+        assertEquals(1, parallel.getSvid(gpsSlot));
+        int almanacSlot = 2;
+        assertTrue(parallel.isFromAlmanac(almanacSlot));
+        assertFalse(parallel.isValid(5));
+        assertTrue(Float.isNaN(parallel.getElevationDegrees(60, 5)));
+    }
+
+    /**
+     * Test that changes to the store after the prediction starts don't change it
+     */
+    @Test
+    public void testSnapshot() {
+        EphemerisStore store = createStore();
+        EphemerisStore snapshot = new EphemerisStore(store);
+        assertEquals(store.getVersion(), snapshot.getVersion());
+        store.clear();
+        double[] params = new double[KeplerOrbit.SIZE];
+        assertEquals(1, snapshot.getEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, params));
+        assertEquals(EphemerisStore.NO_ISSUE,
+                store.getEphemeris(Pseudoranges.CONSTELLATION_GPS, 1, params));
+    }
+
+    /**
+     * Test conversion of times to steps and to GPS time
+     */
+    @Test
+    public void testTimes() {
+        SkyPrediction prediction = SkyPrediction.compute(createStore(), LATITUDE, LONGITUDE, 0.0,
+                WEEK_START + TOE, 30.0, 10);
+        assertEquals(0, prediction.getStep(WEEK_START));
+        assertEquals(1, prediction.getStep(WEEK_START + TOE + 40.0));
+        assertEquals(9, prediction.getStep(WEEK_START + TOE + 1.0E6));
+        assertEquals(WEEK_START + TOE + 90.0, prediction.getTime(3), 0.0);
+
+        // 1 January 2018, which is the Monday of GPS week 1982
+        assertEquals(1982 * KeplerOrbit.SECONDS_PER_WEEK + 86400.0
+                        + SkyPrediction.GPS_LEAP_SECONDS,
+                SkyPrediction.getGpsTimeSeconds(1514764800000L), 0.0);
+
+        try {
+            SkyPrediction.compute(createStore(), LATITUDE, LONGITUDE, 0.0, WEEK_START, 0.0, 10);
+            fail("Steps must have a length");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static EphemerisStore createStore() {
+        EphemerisStore store = new EphemerisStore();
+        for (int svid = 1; svid <= 4; svid++) {
+            if (svid == 3) {
+                store.putAlmanac(Pseudoranges.CONSTELLATION_GPS, svid, 1, orbit(svid, 0.01));
+            } else {
+                store.putEphemeris(Pseudoranges.CONSTELLATION_GPS, svid, 1, orbit(svid, 0.01));
+            }
+            store.putEphemeris(Pseudoranges.CONSTELLATION_GALILEO, svid, 1, orbit(svid, 0.01));
+        }
+        return store;
+    }
+}
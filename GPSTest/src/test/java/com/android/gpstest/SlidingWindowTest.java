@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.util.SlidingWindow;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class SlidingWindowTest {
+
+    /**
+     * Test the statistics as values are added and the oldest values are removed
+     */
+    @Test
+    public void testStatistics() {
+        SlidingWindow window = new SlidingWindow(4);
+        assertTrue(Double.isNaN(window.getMean()));
+        assertTrue(Double.isNaN(window.getStandardDeviation()));
+
+        window.add(2.0);
+        window.add(4.0);
+        assertEquals(2, window.size());
+        assertEquals(3.0, window.getMean(), 1.0E-12);
+        assertEquals(1.0, window.getStandardDeviation(), 1.0E-12);
+
+        // 2 and 4 are removed
+        for (int i = 0; i < 6; i++) {
+            window.add(10.0);
+        }
+        assertEquals(4, window.size());
+        assertEquals(10.0, window.getMean(), 1.0E-12);
+        assertEquals(0.0, window.getStandardDeviation(), 1.0E-6);
+
+        window.add(14.0);
+        assertEquals(11.0, window.getMean(), 1.0E-12);
+
+        window.clear();
+        assertEquals(0, window.size());
+
+        try {
+            new SlidingWindow(0);
+            fail("Windows must have a capacity");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
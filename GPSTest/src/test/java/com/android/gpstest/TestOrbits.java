@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.nav.KeplerOrbit;
+
+/**
+ * Orbit parameters of made up satellites, shared by the tests of orbit computations
+ */
+final class TestOrbits {
+
+    static final double TOE = 345600.0;
+
+    static final double WEEK_START = 2000 * KeplerOrbit.SECONDS_PER_WEEK;
+
+    private TestOrbits() {
+    }
+
+    /**
+     * Returns orbit parameters of a satellite in one of six planes
+     */
+    static double[] orbit(int svid, double eccentricity) {
+        double[] p = new double[KeplerOrbit.SIZE];
+        p[KeplerOrbit.TOE] = TOE;
+        p[KeplerOrbit.TOC] = TOE;
+        p[KeplerOrbit.SQRT_A] = 5153.6;
+        p[KeplerOrbit.ECCENTRICITY] = eccentricity;
+        p[KeplerOrbit.M0] = svid * 0.9;
+        p[KeplerOrbit.DELTA_N] = 4.5E-9;
+        p[KeplerOrbit.OMEGA0] = (svid % 6) * Math.PI / 3.0;
+        p[KeplerOrbit.I0] = 0.96;
+        p[KeplerOrbit.OMEGA] = 0.5;
+        p[KeplerOrbit.OMEGA_DOT] = -8.0E-9;
+        p[KeplerOrbit.IDOT] = 1.0E-10;
+        p[KeplerOrbit.CUC] = 1.0E-6;
+        p[KeplerOrbit.CUS] = 5.0E-6;
+        p[KeplerOrbit.CRC] = 200.0;
+        p[KeplerOrbit.CRS] = 20.0;
+        p[KeplerOrbit.CIC] = 1.0E-7;
+        p[KeplerOrbit.CIS] = -1.0E-7;
+        p[KeplerOrbit.AF0] = 1.0E-4 * svid;
+        p[KeplerOrbit.AF1] = 1.0E-12;
+        p[KeplerOrbit.GROUP_DELAY] = 5.0E-9;
+        return p;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.util.TilePack;
+import com.android.gpstest.util.TilePackWriter;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class TilePackTest {
+
+    /**
+     * Test writing a tile pack and reading tiles from it
+     */
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File file = File.createTempFile("tiles", ".gtp");
+        try {
+            TilePackWriter writer = new TilePackWriter(file, 256);
+            // Added out of order
+            writer.add(12, 1100, 1700, new byte[]{1, 2, 3});
+            writer.add(3, 2, 5, new byte[]{4});
+            writer.add(12, 1099, 1701, new byte[]{5, 6});
+            writer.add(12, 1100, 1699, new byte[0]);
+            writer.close();
+
+            TilePack pack = TilePack.open(file);
+            assertEquals(256, pack.getTileSize());
+            assertEquals(3, pack.getMinZoom());
+            assertEquals(12, pack.getMaxZoom());
+            assertEquals(4, pack.getTileCount());
+
+            ByteBuffer tile = pack.getTile(12, 1100, 1700);
+            assertEquals(3, tile.remaining());
+            assertEquals(1, tile.get());
+            assertEquals(2, tile.get());
+            assertEquals(3, tile.get());
+            assertEquals(1, pack.getTile(3, 2, 5).remaining());
+            assertEquals(0, pack.getTile(12, 1100, 1699).remaining());
+
+            InputStream in = pack.openTile(12, 1099, 1701);
+            assertEquals(2, in.available());
+            in.mark(2);
+            assertEquals(5, in.read());
+            in.reset();
+            byte[] bytes = new byte[4];
+            assertEquals(2, in.read(bytes, 0, bytes.length));
+            assertEquals(6, bytes[1]);
+            assertEquals(-1, in.read());
+
+            assertNull(pack.getTile(12, 1100, 1701));
+            assertNull(pack.openTile(13, 1100, 1700));
+            assertFalse(pack.hasTile(2, 2, 5));
+            assertTrue(pack.hasTile(3, 2, 5));
+            pack.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that duplicate tiles are rejected
+     */
+    @Test
+    public void testDuplicateTile() throws Exception {
+        File file = File.createTempFile("tiles", ".gtp");
+        try {
+            TilePackWriter writer = new TilePackWriter(file, 256);
+            writer.add(5, 1, 1, new byte[]{1});
+            writer.add(5, 1, 1, new byte[]{2});
+            writer.close();
+            fail("Duplicate tiles should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        } finally {
+            file.delete();
+        }
+    }
+}
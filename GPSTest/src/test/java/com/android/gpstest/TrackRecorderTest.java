@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Sean J. Barbeau (sjbarbeau@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.gpstest;
+
+import com.android.gpstest.model.TrackRecorder;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TrackRecorderTest {
+
+    // About one meter of latitude, in degrees
+    private static final double METER = 1.0 / 111195.0;
+
+    private static final double DELTA = 1.0E-9;
+
+    /**
+     * Test that straight lines are reduced to their corners
+     */
+    @Test
+    public void testStraightLines() {
+        TrackRecorder track = new TrackRecorder(2.0, 0.5, TrackRecorder.DEFAULT_MAX_VERTICES);
+        assertFalse(track.hasLast());
+
+        // 100 m north in 1 m steps, then 100 m back south along a line 50 m to the east
+        for (int i = 0; i <= 100; i++) {
+            track.add(i * METER, 0.0);
+        }
+        for (int i = 100; i >= 0; i--) {
+            track.add(i * METER, 50 * METER);
+        }
+        assertTrue(track.hasLast());
+        assertEquals(0.0, track.getLastLatitude(), DELTA);
+        assertEquals(50 * METER, track.getLastLongitude(), DELTA);
+
+        // The window is bounded, so long lines get a vertex every MAX_WINDOW fixes
+        assertTrue(track.getVertexCount() < 10);
+        assertEquals(0.0, track.getLatitude(0), DELTA);
+        assertEquals(0.0, track.getLongitude(0), DELTA);
+        // Corners are kept
+        boolean foundCorner = false;
+        for (int i = 0; i < track.getVertexCount(); i++) {
+            if (Math.abs(track.getLatitude(i) - 100 * METER) < DELTA
+                    && Math.abs(track.getLongitude(i)) < DELTA) {
+                foundCorner = true;
+            }
+        }
+        assertTrue(foundCorner);
+    }
+
+    /**
+     * Test that turning back along the same line keeps the turnaround
+     */
+    @Test
+    public void testOutAndBack() {
+        TrackRecorder track = new TrackRecorder();
+
+        // 30 m north, 30 m back south, then 40 m east, in 2 m steps
+        for (int i = 0; i <= 30; i += 2) {
+            track.add(i * METER, 0.0);
+        }
+        for (int i = 28; i >= 0; i -= 2) {
+            track.add(i * METER, 0.0);
+        }
+        for (int i = 2; i <= 40; i += 2) {
+            track.add(0.0, i * METER);
+        }
+
+        // A vertex within the tolerance of the turnaround is kept
+        boolean foundTurnaround = false;
+        for (int i = 0; i < track.getVertexCount(); i++) {
+            if (Math.abs(track.getLatitude(i) - 30 * METER)
+                    <= TrackRecorder.DEFAULT_TOLERANCE_METERS * METER + DELTA) {
+                foundTurnaround = true;
+            }
+        }
+        assertTrue(foundTurnaround);
+        assertEquals(0.0, track.getLastLatitude(), DELTA);
+        assertEquals(40 * METER, track.getLastLongitude(), DELTA);
+    }
+
+    /**
+     * Test that fixes that don't move are dropped
+     */
+    @Test
+    public void testMinDistance() {
+        TrackRecorder track = new TrackRecorder();
+        for (int i = 0; i < 1000; i++) {
+            track.add(10.0 + (i % 2) * 0.1 * METER, 20.0);
+        }
+        assertEquals(1, track.getVertexCount());
+        assertEquals(10.0, track.getLastLatitude(), DELTA);
+    }
+
+    /**
+     * Test that a long, winding track stays bounded
+     */
+    @Test
+    public void testBounded() {
+        TrackRecorder track = new TrackRecorder(1.0, 0.5, 100);
+        int version = track.getVersion();
+        for (int i = 0; i < 36000; i++) {
+            // Zig-zag 20 m to each side every 10 fixes
+            double east = ((i / 10) % 2 == 0 ? (i % 10) : 10 - (i % 10)) * 2 * METER;
+            track.add(i * METER, east);
+            assertTrue(track.getVertexCount() <= 100);
+        }
+        assertTrue(track.getVersion() != version);
+        assertTrue(track.getToleranceMeters() > 1.0);
+        // The start is always kept
+        assertEquals(0.0, track.getLatitude(0), DELTA);
+
+        track.clear();
+        assertEquals(0, track.getVertexCount());
+        assertFalse(track.hasLast());
+    }
+}